@@ -2,16 +2,15 @@ package org.example.codechuyennoi.Image;
 
 import org.springframework.stereotype.Service;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Lớp giả lập việc sinh ảnh AI từ danh sách prompt (câu mô tả).
- * Hiện tại chỉ copy ảnh mẫu (placeholder) cho mỗi prompt.
+ * Hiện tại chỉ dùng ảnh mẫu (placeholder) cho mỗi prompt. Ảnh được lưu qua {@link ImageStore} theo nội dung,
+ * nên ảnh trùng nhau chỉ nằm trên đĩa một lần và các prompt dùng chung một đường dẫn.
  *
  * ✅ Ghi chú: Sau này nếu muốn dùng AI thật (ví dụ như Stable Diffusion, DALL·E, Midjourney, v.v.),
  * thay đoạn code trong phương thức `generateImages(...)`
@@ -23,9 +22,15 @@ public class AiImageGenerator {
     // Đường dẫn đến ảnh mẫu giả lập (placeholder)
     private static final String PLACEHOLDER_IMAGE_PATH = "D:\\anhtrutien\\bichdao.jpg"; // ảnh cố định dùng thay thế ảnh AI
 
+    private final ImageStore imageStore;
+
+    public AiImageGenerator(ImageStore imageStore) {
+        this.imageStore = imageStore;
+    }
+
     /**
      * Sinh danh sách ảnh ứng với danh sách prompt truyền vào.
-     * Hiện tại thay thế bằng cách sao chép ảnh mẫu.
+     * Hiện tại thay thế bằng ảnh mẫu.
      *
      * @param prompts Danh sách prompt mô tả ảnh (ví dụ: "a dragon flying over a castle at sunset")
      * @return Danh sách đường dẫn tới ảnh được tạo
@@ -33,26 +38,21 @@ public class AiImageGenerator {
     public List<String> generateImages(List<String> prompts) {
         List<String> imagePaths = new ArrayList<>();
 
-        // Thư mục đầu ra để lưu ảnh
-        File outputDir = new File("output/images");
-        if (!outputDir.exists()) outputDir.mkdirs(); // tạo thư mục nếu chưa có
-
         // Lặp qua từng prompt và tạo ảnh tương ứng
         for (int i = 0; i < prompts.size(); i++) {
-            String outputPath = new File(outputDir, "ai_img_" + i + ".jpg").getAbsolutePath();
             try {
                 /**
-                 * 🔁 Tạm thời: Copy ảnh mẫu cho mỗi prompt.
+                 * 🔁 Tạm thời: Dùng ảnh mẫu cho mỗi prompt.
                  *
                  * ❗ Sau này khi dùng AI thật:
-                 * 👉 Thay đoạn gọi `copyPlaceholderImage(outputPath)` bằng đoạn gọi API sinh ảnh thật.
-                 * 👉 Ví dụ: gọi Replicate API với prompt, nhận URL ảnh kết quả, tải về và lưu vào outputPath.
+                 * 👉 Thay đoạn gọi `copyPlaceholderImage()` bằng đoạn gọi API sinh ảnh thật.
+                 * 👉 Ví dụ: gọi Replicate API với prompt, tải ảnh kết quả về file tạm rồi đưa vào imageStore.put(...).
                  */
-                copyPlaceholderImage(outputPath);
+                Path imagePath = copyPlaceholderImage();
 
-                imagePaths.add(outputPath); // Thêm đường dẫn ảnh vừa tạo vào danh sách
+                imagePaths.add(imagePath.toString()); // Thêm đường dẫn ảnh vừa tạo vào danh sách
             } catch (IOException e) {
-                System.err.println("❌ Lỗi khi tạo ảnh mẫu: " + outputPath);
+                System.err.println("❌ Lỗi khi tạo ảnh mẫu cho prompt " + i);
                 e.printStackTrace();
             }
         }
@@ -61,15 +61,13 @@ public class AiImageGenerator {
     }
 
     /**
-     * Sao chép ảnh placeholder sang đường dẫn chỉ định.
+     * Đưa ảnh placeholder vào kho ảnh. Ảnh chỉ được chép ở lần đầu, các lần sau trả về cùng đường dẫn.
      * Hiện tại là cách giả lập đơn giản để test toàn bộ pipeline.
      *
-     * @param destinationPath Đường dẫn lưu ảnh đầu ra
+     * @return Đường dẫn ảnh trong kho
      * @throws IOException nếu lỗi khi copy
      */
-    private void copyPlaceholderImage(String destinationPath) throws IOException {
-        File src = new File(PLACEHOLDER_IMAGE_PATH); // File ảnh mẫu nguồn
-        File dest = new File(destinationPath);       // File đích mới
-        Files.copy(src.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING); // Ghi đè nếu tồn tại
+    private Path copyPlaceholderImage() throws IOException {
+        return imageStore.put(Path.of(PLACEHOLDER_IMAGE_PATH));
     }
 }
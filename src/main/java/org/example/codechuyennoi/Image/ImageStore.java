@@ -0,0 +1,92 @@
+package org.example.codechuyennoi.Image;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lớp ImageStore lưu ảnh theo nội dung: mỗi ảnh được đặt tên bằng SHA-256 của nội dung, nên ảnh giống nhau
+ * (ví dụ ảnh placeholder dùng cho mọi câu) chỉ được ghi xuống đĩa một lần và mọi câu dùng chung một đường dẫn.
+ *
+ * Mã băm của file nguồn được nhớ theo (đường dẫn, kích thước, thời điểm sửa) để không phải đọc lại file
+ * cho mỗi lần dùng.
+ */
+@Component
+public class ImageStore {
+    private static final Logger logger = LoggerFactory.getLogger(ImageStore.class);
+
+    private final Path storeDir;
+    private final Map<String, String> sourceHashes = new ConcurrentHashMap<>();
+
+    public ImageStore(@Value("${image.store.path:output/images}") String storePath) {
+        this.storeDir = Path.of(storePath);
+    }
+
+    /**
+     * Đưa file ảnh vào kho.
+     *
+     * @return đường dẫn tuyệt đối của ảnh trong kho (giống nhau với mọi file có cùng nội dung)
+     */
+    public Path put(Path source) throws IOException {
+        String sourceKey = source.toAbsolutePath().normalize() + "|" + Files.size(source) + "|"
+                + Files.getLastModifiedTime(source).toMillis();
+        String hash = sourceHashes.get(sourceKey);
+        if (hash == null) {
+            hash = sha256(source);
+            sourceHashes.put(sourceKey, hash);
+        }
+        Path target = entryPath(hash, extensionOf(source));
+        if (Files.exists(target)) {
+            return target;
+        }
+        Files.createDirectories(storeDir);
+        Path tmp = target.resolveSibling(target.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Lưu ảnh mới vào kho: {}", target);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return target;
+    }
+
+    private Path entryPath(String hash, String extension) {
+        return storeDir.resolve(hash + extension).toAbsolutePath();
+    }
+
+    private static String extensionOf(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot).toLowerCase() : "";
+    }
+
+    private static String sha256(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM không hỗ trợ SHA-256", e);
+        }
+    }
+}
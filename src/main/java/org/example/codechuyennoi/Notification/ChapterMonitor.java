@@ -1,71 +1,134 @@
 package org.example.codechuyennoi.Notification;
 
+import org.example.codechuyennoi.ProcessStory.ChapterManifest;
+import org.example.codechuyennoi.ProcessStory.ChapterManifestRegistry;
+import org.example.codechuyennoi.ProcessText.FetchResult;
+import org.example.codechuyennoi.ProcessText.HtmlFetcher;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Scope;
-import org.springframework.stereotype.Component;
 
 import java.io.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Lớp ChapterMonitor kiểm tra chương mới của một truyện. Mỗi lần {@link #pollOnce()} gửi một request
+ * có điều kiện (ETag/If-Modified-Since) tới trang mục lục; trang không đổi (304) thì không cần tải
+ * và phân tích lại. Ở chế độ thăm dò, chương mới nhất được tìm bằng {@link ChapterProbeSearch}
+ * thay vì đọc trang mục lục. Việc lên lịch các lần kiểm tra do {@link ChapterMonitorScheduler} đảm nhiệm.
+ */
+public class ChapterMonitor {
+    private static final Pattern CHAPTER_PATTERN = Pattern.compile("chuong-(\\d+)", Pattern.CASE_INSENSITIVE);
+
+    /** Kết quả một lần kiểm tra, dùng để điều chỉnh chu kỳ kiểm tra. */
+    public enum PollOutcome {
+        NOT_MODIFIED,
+        NO_NEW_CHAPTERS,
+        NEW_CHAPTERS,
+        ERROR
+    }
 
-@Scope("prototype")  // Tạo bean mới mỗi lần gọi
-public class ChapterMonitor implements Runnable {
     private final BlockingQueue<Integer> chapterQueue;
     private volatile int lastKnownChapter;
     private final String baseUrl;
+    private final HtmlFetcher htmlFetcher;
+    private final ChapterManifestRegistry manifests;
+    private ChapterManifest manifest;
     private Logger logger = LoggerFactory.getLogger(ChapterMonitor.class);
-    private File lastChapterFile;
     private String storyName;
+    // Validator của lần tải trang mục lục gần nhất
+    private volatile String etag;
+    private volatile String lastModified;
+    // Khác null khi dùng chế độ thăm dò URL chương thay cho trang mục lục
+    private ChapterProbeSearch probeSearch;
 
     public ChapterMonitor(BlockingQueue<Integer> chapterQueue,
-                         String baseUrl) {
+                         String baseUrl,
+                         HtmlFetcher htmlFetcher,
+                         ChapterManifestRegistry manifests) {
         this.chapterQueue = chapterQueue;
         this.baseUrl = baseUrl;
+        this.htmlFetcher = htmlFetcher;
+        this.manifests = manifests;
     }
 
     // Truyền storyName động
     public void initWithStoryName(String storyName) {
         this.storyName = storyName;
-        String lastChapterPath = "luutrutruyen/" + storyName + "/lastChapter.txt";
-        this.lastChapterFile = new File(lastChapterPath);
-        this.lastKnownChapter = loadLastKnownChapter();
+        this.manifest = manifests.forStory(storyName);
+        this.lastKnownChapter = loadLegacyLastKnownChapter();
         logger.info("Khởi tạo ChapterMonitor với storyName={} và lastKnownChapter={}", storyName, lastKnownChapter);
     }
 
-    @Override
-    public void run() {
-        while (!Thread.currentThread().isInterrupted()) {
-            try {
-                String now = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
-                logger.info("🕓 [{}] Đang kiểm tra chương mới tại: {}", now, baseUrl);
-
-                int newestChapter = checkNewestChapterFromSource();
-
-                if (newestChapter == -1) {
-                    handleErrorFetchingChapter();
-                } else if (newestChapter > lastKnownChapter) {
-                    handleNewChaptersFound(newestChapter);
-                } else {
-                    handleNoNewChapters();
-                }
-
-                Thread.sleep(15 * 60 * 1000); // 15 phút
-            } catch (InterruptedException e) {
-                logger.info("ChapterMonitor bị dừng bởi interrupt.");
-                Thread.currentThread().interrupt();
-            } catch (Exception e) {
-                logger.error("❌ Lỗi khi kiểm tra chương mới:", e);
-            }
+    /**
+     * Chuyển sang chế độ thăm dò: tìm chương mới nhất bằng HEAD/range request tới chuong-N.
+     * Chương đã tải (theo manifest) được coi là tồn tại mà không cần request.
+     */
+    public void enableProbeDiscovery(int maxProbes) {
+        this.probeSearch = new ChapterProbeSearch(baseUrl, htmlFetcher,
+                chapter -> manifest.has(chapter, ChapterManifest.FETCHED), maxProbes);
+    }
+
+    /**
+     * Kiểm tra chương mới một lần: chương mới (hoặc chương gần nhất bị thiếu) được đưa vào hàng đợi.
+     */
+    public PollOutcome pollOnce() throws InterruptedException {
+        if (probeSearch != null) {
+            return pollByProbing();
+        }
+        logger.info("🕓 Đang kiểm tra chương mới tại: {}", baseUrl);
+        Map<String, String> headers = new HashMap<>();
+        if (etag != null) {
+            headers.put("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            headers.put("If-Modified-Since", lastModified);
+        }
+        FetchResult result = htmlFetcher.fetch(baseUrl, headers);
+        if (result.getStatusCode() == 304) {
+            logger.info("Trang mục lục '{}' không thay đổi (304).", storyName);
+            handleNoNewChapters();
+            return PollOutcome.NOT_MODIFIED;
+        }
+        if (!result.isSuccess()) {
+            handleErrorFetchingChapter();
+            return PollOutcome.ERROR;
         }
+        int newestChapter = findNewestChapter(result.getBody());
+        if (newestChapter == -1) {
+            // Không lưu validator của trang không đọc được, để lần sau trang được tải và đọc lại thay vì nhận 304
+            handleErrorFetchingChapter();
+            return PollOutcome.ERROR;
+        }
+        etag = result.getHeaders().firstValue("ETag").orElse(null);
+        lastModified = result.getHeaders().firstValue("Last-Modified").orElse(null);
+        if (newestChapter > lastKnownChapter) {
+            handleNewChaptersFound(newestChapter);
+            return PollOutcome.NEW_CHAPTERS;
+        }
+        handleNoNewChapters();
+        return PollOutcome.NO_NEW_CHAPTERS;
+    }
+
+    private PollOutcome pollByProbing() throws InterruptedException {
+        logger.info("🕓 Đang thăm dò chương mới sau chương {} tại: {}", lastKnownChapter, baseUrl);
+        int newestChapter = probeSearch.findNewestChapter(lastKnownChapter);
+        if (newestChapter == -1) {
+            handleErrorFetchingChapter();
+            return PollOutcome.ERROR;
+        }
+        if (newestChapter > lastKnownChapter) {
+            handleNewChaptersFound(newestChapter);
+            return PollOutcome.NEW_CHAPTERS;
+        }
+        handleNoNewChapters();
+        return PollOutcome.NO_NEW_CHAPTERS;
     }
 
     private void handleErrorFetchingChapter() {
@@ -88,26 +151,17 @@ public class ChapterMonitor implements Runnable {
     private void handleNoNewChapters() throws InterruptedException {
         logger.info("✅ Không có chương mới. lastKnownChapter vẫn là {}", lastKnownChapter);
         int startCheck = Math.max(lastKnownChapter - 5 + 1, 1);
-        boolean updated = false;
         for (int ch = startCheck; ch <= lastKnownChapter; ch++) {
             if (!chapterFileExists(ch)) {
                 chapterQueue.put(ch);
                 logger.info("♻️ File chương {} bị thiếu. Đã đưa lại vào hàng đợi để xử lý lại.", ch);
-            } else {
-                if (ch == lastKnownChapter && !updated) {
-                    updateLastKnownChapter(ch);
-                    updated = true;
-                }
             }
         }
     }
 
-    private int checkNewestChapterFromSource() {
+    private int findNewestChapter(String html) {
         try {
-            Document doc = Jsoup.connect(baseUrl)
-                    .userAgent("Mozilla/5.0")
-                    .timeout(10_000)
-                    .get();
+            Document doc = Jsoup.parse(html, baseUrl);
 
             Elements chapterLinks = doc.select("a[href*=/chuong-]");
             if (chapterLinks.isEmpty()) {
@@ -121,16 +175,15 @@ public class ChapterMonitor implements Runnable {
                     .max(Integer::compare)
                     .orElse(-1);
 
-        } catch (IOException e) {
-            logger.error("Lỗi khi kết nối hoặc xử lý trang nguồn: {}", baseUrl, e);
+        } catch (Exception e) {
+            logger.error("Lỗi khi xử lý trang nguồn: {}", baseUrl, e);
             return -1;
         }
     }
 
     private int extractChapterNumber(String href) {
         try {
-            Pattern pattern = Pattern.compile("chuong-(\\d+)", Pattern.CASE_INSENSITIVE);
-            Matcher matcher = pattern.matcher(href);
+            Matcher matcher = CHAPTER_PATTERN.matcher(href);
             if (matcher.find()) {
                 return Integer.parseInt(matcher.group(1));
             }
@@ -140,7 +193,12 @@ public class ChapterMonitor implements Runnable {
         return -1;
     }
 
-    private int loadLastKnownChapter() {
+    /**
+     * Đọc lastKnownChapter từ file lastChapter.txt cũ của truyện (trước khi trạng thái được lưu chung
+     * trong {@link ChapterMonitorScheduler}).
+     */
+    private int loadLegacyLastKnownChapter() {
+        File lastChapterFile = new File("luutrutruyen/" + storyName + "/lastChapter.txt");
         if (!lastChapterFile.exists()) {
             logger.info("File lưu lastKnownChapter không tồn tại, bắt đầu từ 0.");
             return 0;
@@ -161,30 +219,41 @@ public class ChapterMonitor implements Runnable {
     private void updateLastKnownChapter(int newChapter) {
         logger.info("Cập nhật lastKnownChapter: {} -> {}", lastKnownChapter, newChapter);
         lastKnownChapter = newChapter;
-        saveLastKnownChapter(newChapter);
-    }
-
-    private void saveLastKnownChapter(int chapter) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(lastChapterFile, false))) {
-            writer.write(String.valueOf(chapter));
-            logger.info("Đã lưu lastKnownChapter vào file: {}", chapter);
-        } catch (IOException e) {
-            logger.error("Lỗi khi lưu lastKnownChapter vào file:", e);
-        }
     }
 
     private boolean chapterFileExists(int chapter) {
-        String dirPath = "luutrutruyen/" + storyName;
-        File dir = new File(dirPath);
-        if (!dir.exists()) {
-            if (!dir.mkdirs()) {
-                logger.error("Không thể tạo thư mục: {}", dirPath);
-            }
-        }
-        String filePath = dirPath + "/chuong-" + chapter + ".txt";
-        File chapterFile = new File(filePath);
-        boolean exists = chapterFile.exists() && chapterFile.length() > 0;
-        logger.debug("Kiểm tra chương {}: filePath={}, tồn tại và không rỗng = {}", chapter, filePath, exists);
+        // Hỏi manifest thay vì kiểm tra file trên đĩa cho từng chương
+        boolean exists = manifest.has(chapter, ChapterManifest.CLEANED);
+        logger.debug("Kiểm tra chương {}: đã làm sạch = {}", chapter, exists);
         return exists;
     }
+
+    public String getStoryName() {
+        return storyName;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public int getLastKnownChapter() {
+        return lastKnownChapter;
+    }
+
+    public void setLastKnownChapter(int lastKnownChapter) {
+        this.lastKnownChapter = lastKnownChapter;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setValidators(String etag, String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
 }
@@ -0,0 +1,278 @@
+package org.example.codechuyennoi.Notification;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.codechuyennoi.ProcessStory.ChapterManifestRegistry;
+import org.example.codechuyennoi.ProcessText.HtmlFetcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lớp ChapterMonitorScheduler theo dõi chương mới của nhiều truyện bằng một {@link ScheduledExecutorService}
+ * dùng chung thay vì mỗi truyện một thread.
+ *
+ * Chu kỳ kiểm tra của từng truyện tự điều chỉnh: về mức nhỏ nhất ngay khi có chương mới, giãn dần
+ * (x1.5) khi trang không đổi và giãn nhanh hơn (x2) khi lỗi, luôn cộng thêm nhiễu ngẫu nhiên để các truyện
+ * không kiểm tra dồn cùng lúc. Trạng thái của mọi truyện (chương đã biết, ETag/Last-Modified, chu kỳ)
+ * được lưu chung trong một file.
+ */
+@Service
+public class ChapterMonitorScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(ChapterMonitorScheduler.class);
+
+    private final HtmlFetcher htmlFetcher;
+    private final ChapterManifestRegistry manifests;
+    private final int threads;
+    private final long initialIntervalMs;
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final double jitter;
+    private final Path statePath;
+    private final String discoveryMode;
+    private final int maxProbes;
+
+    private ScheduledExecutorService scheduler;
+    private final Map<String, WatchedStory> watched = new ConcurrentHashMap<>();
+    // Trạng thái đã lưu, kể cả các truyện hiện không theo dõi
+    private final Map<String, SavedState> savedStates = new TreeMap<>();
+
+    public ChapterMonitorScheduler(HtmlFetcher htmlFetcher,
+                                   ChapterManifestRegistry manifests,
+                                   @Value("${monitor.scheduler.threads:2}") int threads,
+                                   @Value("${monitor.interval.initial-minutes:15}") long initialMinutes,
+                                   @Value("${monitor.interval.min-minutes:2}") long minMinutes,
+                                   @Value("${monitor.interval.max-minutes:120}") long maxMinutes,
+                                   @Value("${monitor.interval.jitter:0.2}") double jitter,
+                                   @Value("${monitor.state.path:luutrutruyen/monitor-state.tsv}") String statePath,
+                                   @Value("${monitor.discovery.mode:index}") String discoveryMode,
+                                   @Value("${monitor.discovery.max-probes:40}") int maxProbes) {
+        this.htmlFetcher = htmlFetcher;
+        this.manifests = manifests;
+        this.threads = Math.max(1, threads);
+        this.minIntervalMs = TimeUnit.MINUTES.toMillis(Math.max(1, minMinutes));
+        this.maxIntervalMs = Math.max(minIntervalMs, TimeUnit.MINUTES.toMillis(maxMinutes));
+        this.initialIntervalMs = Math.min(maxIntervalMs, Math.max(minIntervalMs, TimeUnit.MINUTES.toMillis(initialMinutes)));
+        this.jitter = Math.min(0.5, Math.max(0.0, jitter));
+        this.statePath = Path.of(statePath);
+        this.discoveryMode = discoveryMode;
+        this.maxProbes = maxProbes;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(threads, r -> {
+            Thread t = new Thread(r, "ChapterMonitor-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        loadState();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        saveState();
+    }
+
+    /**
+     * Bắt đầu theo dõi một truyện; chương mới được đưa vào hàng đợi cho trước.
+     * Nếu truyện đã được theo dõi thì lịch cũ bị thay thế.
+     */
+    public void watch(String storyName, String baseUrl, BlockingQueue<Integer> chapterQueue) {
+        unwatch(storyName);
+        ChapterMonitor monitor = new ChapterMonitor(chapterQueue, baseUrl, htmlFetcher, manifests);
+        monitor.initWithStoryName(storyName);
+        // index: đọc trang mục lục (request có điều kiện); probe: thăm dò trực tiếp URL chương
+        if ("probe".equalsIgnoreCase(discoveryMode)) {
+            monitor.enableProbeDiscovery(maxProbes);
+        }
+        long interval = initialIntervalMs;
+        synchronized (savedStates) {
+            SavedState saved = savedStates.get(storyName);
+            if (saved != null) {
+                monitor.setLastKnownChapter(Math.max(monitor.getLastKnownChapter(), saved.lastKnownChapter));
+                if (saved.baseUrl.equals(baseUrl)) {
+                    monitor.setValidators(saved.etag, saved.lastModified);
+                    interval = Math.min(maxIntervalMs, Math.max(minIntervalMs, saved.intervalMs));
+                }
+            }
+        }
+        WatchedStory story = new WatchedStory(monitor, interval);
+        watched.put(storyName, story);
+        // Lần kiểm tra đầu tiên chạy ngay (kèm nhiễu nhỏ) để bắt kịp chương ra trong lúc ứng dụng tắt
+        schedule(story, (long) (ThreadLocalRandom.current().nextDouble() * jitter * minIntervalMs));
+        logger.info("Bắt đầu theo dõi truyện '{}' (chu kỳ {} phút, lastKnownChapter={})",
+                storyName, TimeUnit.MILLISECONDS.toMinutes(interval), monitor.getLastKnownChapter());
+    }
+
+    public void unwatch(String storyName) {
+        WatchedStory story = watched.remove(storyName);
+        if (story != null) {
+            story.cancelled = true;
+            ScheduledFuture<?> next = story.next;
+            if (next != null) {
+                next.cancel(true);
+            }
+            logger.info("Dừng theo dõi truyện '{}'", storyName);
+        }
+    }
+
+    public int getWatchedCount() {
+        return watched.size();
+    }
+
+    private void schedule(WatchedStory story, long delayMs) {
+        if (story.cancelled || scheduler.isShutdown()) {
+            return;
+        }
+        story.next = scheduler.schedule(() -> poll(story), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll(WatchedStory story) {
+        ChapterMonitor monitor = story.monitor;
+        ChapterMonitor.PollOutcome outcome;
+        try {
+            outcome = monitor.pollOnce();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            logger.error("❌ Lỗi khi kiểm tra chương mới của '{}':", monitor.getStoryName(), e);
+            outcome = ChapterMonitor.PollOutcome.ERROR;
+        }
+        story.intervalMs = nextInterval(story.intervalMs, outcome);
+        remember(monitor, story.intervalMs);
+        long delay = withJitter(story.intervalMs);
+        logger.info("Truyện '{}': {}, kiểm tra lại sau {} giây", monitor.getStoryName(), outcome,
+                TimeUnit.MILLISECONDS.toSeconds(delay));
+        schedule(story, delay);
+    }
+
+    long nextInterval(long current, ChapterMonitor.PollOutcome outcome) {
+        switch (outcome) {
+            case NEW_CHAPTERS:
+                return minIntervalMs;
+            case ERROR:
+                return Math.min(maxIntervalMs, current * 2);
+            default:
+                return Math.min(maxIntervalMs, Math.max(minIntervalMs, (long) (current * 1.5)));
+        }
+    }
+
+    private long withJitter(long intervalMs) {
+        double factor = 1.0 + jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        return Math.max(1000, (long) (intervalMs * factor));
+    }
+
+    private void remember(ChapterMonitor monitor, long intervalMs) {
+        synchronized (savedStates) {
+            savedStates.put(monitor.getStoryName(), new SavedState(monitor.getBaseUrl(), monitor.getLastKnownChapter(),
+                    monitor.getEtag(), monitor.getLastModified(), intervalMs));
+        }
+        saveState();
+    }
+
+    private void loadState() {
+        if (!Files.exists(statePath)) {
+            return;
+        }
+        try {
+            synchronized (savedStates) {
+                for (String line : Files.readAllLines(statePath, StandardCharsets.UTF_8)) {
+                    String[] f = line.split("\t", -1);
+                    if (f.length != 6) {
+                        continue;
+                    }
+                    try {
+                        savedStates.put(f[0], new SavedState(f[1], Integer.parseInt(f[2]), emptyToNull(f[3]),
+                                emptyToNull(f[4]), Long.parseLong(f[5])));
+                    } catch (NumberFormatException e) {
+                        logger.warn("Bỏ qua dòng trạng thái theo dõi hỏng: {}", line);
+                    }
+                }
+            }
+            logger.info("Đã đọc trạng thái theo dõi của {} truyện từ {}", savedStates.size(), statePath);
+        } catch (IOException e) {
+            logger.warn("Không thể đọc trạng thái theo dõi {}: {}", statePath, e.getMessage());
+        }
+    }
+
+    /** Ghi trạng thái mọi truyện ra file tạm rồi đổi tên, để file không bao giờ bị ghi dở. */
+    private void saveState() {
+        synchronized (savedStates) {
+            try {
+                if (statePath.getParent() != null) {
+                    Files.createDirectories(statePath.getParent());
+                }
+                Path tmp = statePath.resolveSibling(statePath.getFileName() + ".tmp");
+                try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    for (Map.Entry<String, SavedState> e : savedStates.entrySet()) {
+                        SavedState s = e.getValue();
+                        writer.write(String.join("\t", e.getKey(), s.baseUrl, Integer.toString(s.lastKnownChapter),
+                                nullToEmpty(s.etag), nullToEmpty(s.lastModified), Long.toString(s.intervalMs)));
+                        writer.newLine();
+                    }
+                }
+                Files.move(tmp, statePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.error("Không thể lưu trạng thái theo dõi {}: {}", statePath, e.getMessage());
+            }
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ');
+    }
+
+    private static final class WatchedStory {
+        final ChapterMonitor monitor;
+        volatile long intervalMs;
+        volatile ScheduledFuture<?> next;
+        volatile boolean cancelled;
+
+        WatchedStory(ChapterMonitor monitor, long intervalMs) {
+            this.monitor = monitor;
+            this.intervalMs = intervalMs;
+        }
+    }
+
+    private static final class SavedState {
+        final String baseUrl;
+        final int lastKnownChapter;
+        final String etag;
+        final String lastModified;
+        final long intervalMs;
+
+        SavedState(String baseUrl, int lastKnownChapter, String etag, String lastModified, long intervalMs) {
+            this.baseUrl = baseUrl;
+            this.lastKnownChapter = lastKnownChapter;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.intervalMs = intervalMs;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.example.codechuyennoi.Notification;
+
+import org.example.codechuyennoi.ProcessText.FetchResult;
+import org.example.codechuyennoi.ProcessText.HtmlFetcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.BitSet;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * Lớp ChapterProbeSearch tìm chương mới nhất bằng cách thăm dò trực tiếp các URL chuong-N
+ * (HEAD hoặc GET 1 byte) thay vì tải và phân tích trang mục lục, nên không phụ thuộc vào việc trang mục lục
+ * có phân trang hay không.
+ *
+ * Bắt đầu từ lastKnownChapter, tìm lũy thừa (N+1, N+2, N+4, ...) tới khi gặp chương chưa có, rồi tìm nhị phân
+ * trong khoảng cuối: chỉ tốn O(log k) request với k chương mới. Chương đã thấy tồn tại được nhớ mãi
+ * (chương không biến mất), chương chưa có chỉ được nhớ trong một lần tìm.
+ */
+public class ChapterProbeSearch {
+    private static final Logger logger = LoggerFactory.getLogger(ChapterProbeSearch.class);
+
+    /** Kết quả thăm dò một chương. */
+    enum Probe {
+        EXISTS,
+        MISSING,
+        // Lỗi mạng hoặc server: không kết luận được
+        ERROR
+    }
+
+    private final IntFunction<Probe> prober;
+    private final IntPredicate knownExisting;
+    private final int maxProbes;
+    private final BitSet existing = new BitSet();
+    private final BitSet missing = new BitSet();
+    private int probeCount;
+
+    /**
+     * @param knownExisting chương đã biết chắc tồn tại mà không cần request (ví dụ đã tải, theo manifest)
+     * @param maxProbes     số request tối đa cho một lần tìm
+     */
+    public ChapterProbeSearch(String baseUrl, HtmlFetcher htmlFetcher, IntPredicate knownExisting, int maxProbes) {
+        this(chapter -> probeUrl(htmlFetcher, baseUrl, chapter), knownExisting, maxProbes);
+    }
+
+    ChapterProbeSearch(IntFunction<Probe> prober, IntPredicate knownExisting, int maxProbes) {
+        this.prober = prober;
+        this.knownExisting = knownExisting;
+        this.maxProbes = Math.max(1, maxProbes);
+    }
+
+    /**
+     * Tìm chương lớn nhất đang tồn tại, giả định các chương được đánh số liên tục.
+     *
+     * @param lastKnownChapter chương lớn nhất đã biết (0 nếu chưa biết)
+     * @return chương lớn nhất tìm được (không nhỏ hơn lastKnownChapter), hoặc -1 nếu thăm dò bị lỗi
+     */
+    public synchronized int findNewestChapter(int lastKnownChapter) {
+        missing.clear();
+        probeCount = 0;
+        int low = Math.max(0, lastKnownChapter);
+        int step = 1;
+        int high;
+        // Tìm lũy thừa: low luôn là chương tồn tại, high là chương đầu tiên chưa có
+        while (true) {
+            high = low + step;
+            Probe probe = probe(high);
+            if (probe == Probe.ERROR) {
+                return -1;
+            }
+            if (probe == Probe.MISSING) {
+                break;
+            }
+            low = high;
+            step = Math.min(step * 2, 1 << 20);
+            if (probeCount >= maxProbes) {
+                logger.warn("Đạt giới hạn {} lần thăm dò, dừng ở chương {}", maxProbes, low);
+                return low;
+            }
+        }
+        // Tìm nhị phân trong (low, high)
+        while (high - low > 1) {
+            if (probeCount >= maxProbes) {
+                logger.warn("Đạt giới hạn {} lần thăm dò, dừng ở chương {}", maxProbes, low);
+                return low;
+            }
+            int mid = low + (high - low) / 2;
+            Probe probe = probe(mid);
+            if (probe == Probe.ERROR) {
+                return -1;
+            }
+            if (probe == Probe.EXISTS) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        logger.info("Thăm dò xong: chương mới nhất {} sau {} request", low, probeCount);
+        return low;
+    }
+
+    /** Số request đã gửi trong lần tìm gần nhất. */
+    public synchronized int getLastProbeCount() {
+        return probeCount;
+    }
+
+    private Probe probe(int chapter) {
+        if (existing.get(chapter) || knownExisting.test(chapter)) {
+            existing.set(chapter);
+            return Probe.EXISTS;
+        }
+        if (missing.get(chapter)) {
+            return Probe.MISSING;
+        }
+        probeCount++;
+        Probe probe = prober.apply(chapter);
+        if (probe == Probe.EXISTS) {
+            existing.set(chapter);
+        } else if (probe == Probe.MISSING) {
+            missing.set(chapter);
+        }
+        return probe;
+    }
+
+    private static Probe probeUrl(HtmlFetcher htmlFetcher, String baseUrl, int chapter) {
+        FetchResult result = htmlFetcher.probe(baseUrl + "/chuong-" + chapter + "/");
+        int status = result.getStatusCode();
+        if (status == -1 || status == 429 || status >= 500) {
+            return Probe.ERROR;
+        }
+        // Nhiều trang chuyển hướng chương chưa có về trang truyện với mã 200: chỉ tính là tồn tại
+        // khi địa chỉ cuối cùng vẫn là chương đó
+        boolean ok = status >= 200 && status < 300 && pointsToChapter(result.getUrl(), chapter);
+        return ok ? Probe.EXISTS : Probe.MISSING;
+    }
+
+    static boolean pointsToChapter(String url, int chapter) {
+        String marker = "chuong-" + chapter;
+        int idx = url.indexOf(marker);
+        while (idx >= 0) {
+            int end = idx + marker.length();
+            if (end == url.length() || !Character.isDigit(url.charAt(end))) {
+                return true;
+            }
+            idx = url.indexOf(marker, end);
+        }
+        return false;
+    }
+}
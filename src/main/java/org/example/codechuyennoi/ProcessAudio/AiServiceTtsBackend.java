@@ -0,0 +1,192 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Backend TTS gọi API speech.aiservice.vn: một request POST trả về JSON chứa link audio, rồi tải file
+ * audio thẳng xuống đĩa. Mọi request dùng chung một {@link HttpClient} và chạy bất đồng bộ (sendAsync);
+ * hủy future trả về sẽ hủy request HTTP đang chạy và xóa file tải dở.
+ */
+@Component
+public class AiServiceTtsBackend implements TtsBackend {
+    static final String NAME = "aiservice";
+    private static final Logger logger = LoggerFactory.getLogger(AiServiceTtsBackend.class);
+    // Các khóa JSON thường chứa link audio, theo thứ tự ưu tiên
+    private static final String[] URL_FIELDS = {"url", "audio_url", "audioUrl", "link", "audio", "data"};
+
+    private final String apiUrl;
+    private final Duration requestTimeout;
+    private final HttpClient client;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public AiServiceTtsBackend(@Value("${tts.aiservice.url:https://speech.aiservice.vn/tts/tools/demo}") String apiUrl,
+                               @Value("${tts.connect-timeout-seconds:10}") long connectTimeoutSeconds,
+                               @Value("${tts.request-timeout-seconds:120}") long requestTimeoutSeconds) {
+        this.apiUrl = apiUrl;
+        this.requestTimeout = Duration.ofSeconds(requestTimeoutSeconds);
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(connectTimeoutSeconds))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public CompletableFuture<Path> synthesize(String text, String voice, String speed, Path target) {
+        String json;
+        try {
+            Map<String, String> body = new LinkedHashMap<>();
+            body.put("text", text);
+            body.put("voice", voice);
+            body.put("speed", speed);
+            json = objectMapper.writeValueAsString(body);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(apiUrl))
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        CompletableFuture<Path> result = new CompletableFuture<>();
+        // Request HTTP đang chạy (gọi API hoặc tải file); future kết quả bị hủy/quá hạn thì hủy luôn request này,
+        // vì hủy một future phụ thuộc (thenCompose) không dừng được sendAsync bên dưới
+        AtomicReference<CompletableFuture<?>> inFlight = new AtomicReference<>();
+        result.whenComplete((path, error) -> {
+            if (error != null) {
+                CompletableFuture<?> call = inFlight.get();
+                if (call != null) {
+                    call.cancel(true);
+                }
+            }
+        });
+        CompletableFuture<HttpResponse<String>> post = client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        track(inFlight, post, result);
+        post.whenComplete((response, error) -> {
+            if (error != null) {
+                result.completeExceptionally(unwrap(error));
+                return;
+            }
+            if (result.isDone()) {
+                return;
+            }
+            if (response.statusCode() != 200) {
+                result.completeExceptionally(new IOException(
+                        "Gọi API thất bại, HTTP " + response.statusCode() + ": " + response.body()));
+                return;
+            }
+            String audioUrl;
+            try {
+                audioUrl = parseAudioUrl(response.body());
+            } catch (CompletionException e) {
+                result.completeExceptionally(unwrap(e));
+                return;
+            }
+            logger.debug("Link audio: {}", audioUrl);
+            HttpRequest download = HttpRequest.newBuilder(URI.create(audioUrl))
+                    .timeout(requestTimeout)
+                    .GET()
+                    .build();
+            CompletableFuture<HttpResponse<Path>> get = client.sendAsync(download, HttpResponse.BodyHandlers.ofFile(target));
+            track(inFlight, get, result);
+            get.whenComplete((fileResponse, downloadError) -> {
+                if (downloadError == null && fileResponse.statusCode() == 200 && result.complete(target)) {
+                    return;
+                }
+                // Lỗi, hoặc kết quả đã bị hủy/quá hạn: file tải dở hay tải thừa không còn ai dùng
+                deleteQuietly(target);
+                result.completeExceptionally(downloadError != null ? unwrap(downloadError)
+                        : new IOException("Tải âm thanh thất bại, HTTP " + fileResponse.statusCode()));
+            });
+        });
+        return result;
+    }
+
+    /** Ghi nhận request đang chạy; nếu kết quả đã xong (bị hủy trong lúc gửi) thì hủy request ngay. */
+    private static void track(AtomicReference<CompletableFuture<?>> inFlight, CompletableFuture<?> call,
+                              CompletableFuture<Path> result) {
+        inFlight.set(call);
+        if (result.isDone()) {
+            call.cancel(true);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Không thể xóa file âm thanh tạm {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Lấy link audio từ JSON trả về: ưu tiên các khóa quen thuộc, không có thì lấy giá trị chuỗi đầu tiên
+     * có dạng URL http(s).
+     */
+    String parseAudioUrl(String body) {
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(body);
+        } catch (IOException e) {
+            throw new CompletionException(new IOException("Phản hồi TTS không phải JSON: " + body, e));
+        }
+        for (String field : URL_FIELDS) {
+            JsonNode node = root.get(field);
+            if (node != null && node.isTextual() && isHttpUrl(node.asText())) {
+                return node.asText();
+            }
+        }
+        String url = findFirstUrl(root);
+        if (url == null) {
+            throw new CompletionException(new IOException("Không tìm thấy link audio trong phản hồi: " + body));
+        }
+        return url;
+    }
+
+    private static String findFirstUrl(JsonNode node) {
+        if (node.isTextual()) {
+            return isHttpUrl(node.asText()) ? node.asText() : null;
+        }
+        Iterator<JsonNode> children = node.elements();
+        while (children.hasNext()) {
+            String url = findFirstUrl(children.next());
+            if (url != null) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isHttpUrl(String value) {
+        return value.startsWith("http://") || value.startsWith("https://");
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lớp AudioBookPublisher tạo bản chỉ có âm thanh (kiểu podcast) cho một khoảng chương: các file
+ * audio_chuong_N.mp3 trong output/&lt;truyện&gt;/ được nối thẳng theo frame bằng {@link Mp3Splicer}, không qua ffmpeg
+ * và không nén lại. Kèm theo là file mục lục ghi thời điểm bắt đầu từng chương.
+ */
+@Service
+public class AudioBookPublisher {
+    private static final Logger logger = LoggerFactory.getLogger(AudioBookPublisher.class);
+
+    // Cùng thư mục AudioGenerator ghi âm thanh từng chương
+    private static final Path OUTPUT_ROOT = Path.of("output");
+
+    /**
+     * Nối âm thanh các chương từ startChapter tới endChapter thành audio_chuong_&lt;start&gt;-&lt;end&gt;.mp3.
+     * Chương chưa có file âm thanh bị bỏ qua.
+     *
+     * @return đường dẫn file đã tạo, hoặc null nếu không có chương nào hoặc nối thất bại
+     */
+    public Path publishRange(String storyName, int startChapter, int endChapter) {
+        Path storyDir = OUTPUT_ROOT.resolve(storyName);
+        List<Path> inputs = new ArrayList<>();
+        List<Integer> chapters = new ArrayList<>();
+        for (int chapter = startChapter; chapter <= endChapter; chapter++) {
+            Path audio = storyDir.resolve("audio_chuong_" + chapter + ".mp3");
+            if (Files.isRegularFile(audio)) {
+                inputs.add(audio);
+                chapters.add(chapter);
+            } else {
+                logger.warn("Chương {} chưa có file âm thanh, bỏ qua khi ghép: {}", chapter, audio);
+            }
+        }
+        if (inputs.isEmpty()) {
+            logger.error("Không có file âm thanh nào của truyện '{}' từ chương {} đến {}", storyName, startChapter, endChapter);
+            return null;
+        }
+
+        String baseName = "audio_chuong_" + startChapter + "-" + endChapter;
+        Path output = storyDir.resolve(baseName + ".mp3");
+        try {
+            long[] durations = Mp3Splicer.splice(inputs, output);
+            writeChapterIndex(storyDir.resolve(baseName + ".txt"), chapters, durations);
+            long total = 0;
+            for (long d : durations) {
+                total += d;
+            }
+            logger.info("Đã ghép {} chương thành {} ({} giây, {} bytes)", inputs.size(), output,
+                    total / 1_000_000, Files.size(output));
+            return output;
+        } catch (IOException e) {
+            logger.error("Lỗi khi ghép âm thanh truyện '{}' chương {}-{}: {}", storyName, startChapter, endChapter,
+                    e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /** Mục lục dạng "HH:MM:SS Chương N", dán được vào phần mô tả hoặc ghi chú tập podcast. */
+    private static void writeChapterIndex(Path file, List<Integer> chapters, long[] durations) throws IOException {
+        StringBuilder index = new StringBuilder();
+        long offset = 0;
+        for (int i = 0; i < chapters.size(); i++) {
+            long seconds = offset / 1_000_000;
+            index.append(String.format("%02d:%02d:%02d Chương %d%n",
+                    seconds / 3600, (seconds / 60) % 60, seconds % 60, chapters.get(i)));
+            offset += durations[i];
+        }
+        Files.writeString(file, index, StandardCharsets.UTF_8);
+    }
+}
@@ -1,28 +1,49 @@
 package org.example.codechuyennoi.ProcessAudio;
 
-import com.google.protobuf.ByteString;
+import org.example.codechuyennoi.ProcessStory.Story;
+import org.example.codechuyennoi.ProcessText.SentenceSegmenter.Sentences;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
 
 @Service
 public class AudioGenerator {
     private static final Logger logger = LoggerFactory.getLogger(AudioGenerator.class);
     private final TextToSpeech ttsWrapper;
+    private final ChunkedTextToSpeech chunkedTts;
+    private final TtsCache ttsCache;
+    // true: đọc theo từng đoạn câu song song rồi ghép; false: gửi cả chương trong một request
+    private final boolean chunkedEnabled;
 
-    public AudioGenerator(TextToSpeech ttsWrapper) {
+    public AudioGenerator(TextToSpeech ttsWrapper,
+                          ChunkedTextToSpeech chunkedTts,
+                          TtsCache ttsCache,
+                          @Value("${tts.chunked.enabled:true}") boolean chunkedEnabled) {
         this.ttsWrapper = ttsWrapper;
+        this.chunkedTts = chunkedTts;
+        this.ttsCache = ttsCache;
+        this.chunkedEnabled = chunkedEnabled;
     }
 
     public AudioStory generateAudio(String storyName, int chapterNumber, String processedText) {
+        return generateAudio(new Story(storyName, chapterNumber, processedText));
+    }
+
+    /**
+     * Tạo âm thanh cho chương. Phụ đề và các đoạn TTS dùng chung cách chia câu của Story
+     * (cũng là cách chia dùng cho ảnh minh họa), nên câu thứ i ở ba nơi là một.
+     */
+    public AudioStory generateAudio(Story story) {
+        String storyName = story.getStoryName();
+        int chapterNumber = story.getChapterNumber();
+        String processedText = story.getProcessedText();
         if (processedText == null || processedText.isBlank()) {
             logger.warn("Văn bản đã xử lý rỗng cho truyện '{}', chương {}", storyName, chapterNumber);
             return null;
@@ -47,38 +68,69 @@ public class AudioGenerator {
         try {
             Files.createDirectories(subtitleFilePath.getParent());
             logger.info("Đã tạo/kiểm tra thư mục phụ đề: {}", subtitleFilePath.getParent());
-            // Chia văn bản thành các dòng
-            String[] lines = processedText.split("\\r?\\n|\\.|\\!|\\?");
-            List<String> subtitleLines = new ArrayList<>();
-            for (String line : lines) {
-                if (!line.trim().isEmpty()) {
-                    subtitleLines.add(line.trim());
+            // Mỗi câu một dòng phụ đề
+            Sentences sentences = story.getSegmentation();
+            StringBuilder subtitleText = new StringBuilder(processedText.length());
+            for (int i = 0; i < sentences.size(); i++) {
+                if (i > 0) {
+                    subtitleText.append('\n');
                 }
+                subtitleText.append(processedText, sentences.start(i), sentences.end(i));
             }
-            Files.write(subtitleFilePath, String.join("\n", subtitleLines).getBytes());
+            Files.write(subtitleFilePath, subtitleText.toString().getBytes(StandardCharsets.UTF_8));
             logger.info("Đã lưu file phụ đề: {}, kích thước: {} bytes", subtitleFilePath, Files.size(subtitleFilePath));
         } catch (Exception e) {
             logger.error("Lỗi khi lưu file phụ đề {}: {}", subtitleFilePath, e.getMessage(), e);
             return null;
         }
 
-        try {
-            ByteString audioContent = ttsWrapper.synthesize(processedText);
-            logger.info("Kích thước dữ liệu âm thanh: {} bytes", audioContent.size());
+        if (chunkedEnabled) {
+            return generateChunkedAudio(storyOutputDir, chapterNumber, story.getSegmentation());
+        }
 
+        try {
             String fileName = "audio_chuong_" + chapterNumber + ".mp3";
             File outputFile = new File(storyOutputDir, fileName);
 
-            try (FileOutputStream out = new FileOutputStream(outputFile)) {
-                out.write(audioContent.toByteArray());
+            // Đọc cả chương trong một request: cache theo nguyên chương
+            String cacheKey = TtsCache.key(processedText, ttsWrapper.getVoice(), ttsWrapper.getSpeed());
+            if (ttsCache.copyTo(cacheKey, outputFile.toPath())) {
+                logger.info("Lấy âm thanh chương {} từ cache TTS", chapterNumber);
+            } else {
+                // Âm thanh được tải thẳng xuống file, không giữ trong bộ nhớ
+                ttsWrapper.synthesizeToFile(processedText, outputFile.toPath());
+                ttsCache.putFile(cacheKey, outputFile.toPath(), true);
             }
 
             logger.info("File âm thanh đã tạo: {}, kích thước: {} bytes", outputFile.getAbsolutePath(), Files.size(outputFile.toPath()));
 
             return new AudioStory(outputFile.getAbsolutePath());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Bị ngắt khi tạo âm thanh chương {}", chapterNumber);
+            return null;
+        } catch (Exception e) {
+            logger.error("Lỗi khi tạo âm thanh: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private AudioStory generateChunkedAudio(File storyOutputDir, int chapterNumber, Sentences sentences) {
+        try {
+            File outputFile = new File(storyOutputDir, "audio_chuong_" + chapterNumber + ".mp3");
+            ChunkedAudio chunked = chunkedTts.synthesizeToFile(sentences, outputFile.toPath());
+            logger.info("File âm thanh đã tạo: {} ({} đoạn, {} ms), kích thước: {} bytes", outputFile.getAbsolutePath(),
+                    chunked.getChunks().size(), chunked.getTotalDurationMicros() / 1000, Files.size(outputFile.toPath()));
+
+            // Thời lượng từng câu đi kèm file để slideshow không phải đo lại và chia đều
+            return new AudioStory(outputFile.getAbsolutePath(), chunked.getSentenceDurationsMicros());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Bị ngắt khi tạo âm thanh chương {}", chapterNumber);
+            return null;
         } catch (Exception e) {
             logger.error("Lỗi khi tạo âm thanh: {}", e.getMessage(), e);
             return null;
         }
     }
-}
\ No newline at end of file
+}
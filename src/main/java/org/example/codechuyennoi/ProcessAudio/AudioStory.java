@@ -7,6 +7,8 @@ package org.example.codechuyennoi.ProcessAudio;
 public class AudioStory {
     // Biến lưu đường dẫn tới file âm thanh (.wav, .mp3, v.v.)
     private String audioFilePath;
+    // Thời lượng từng câu (micro giây) khi âm thanh được ghép từ nhiều đoạn TTS, null nếu không biết
+    private long[] sentenceDurationsMicros;
     /**
      * Constructor khởi tạo đối tượng AudioStory với đường dẫn file âm thanh.
      *
@@ -15,6 +17,11 @@ public class AudioStory {
     public AudioStory(String audioFilePath) {
         this.audioFilePath = audioFilePath;
     }
+
+    public AudioStory(String audioFilePath, long[] sentenceDurationsMicros) {
+        this.audioFilePath = audioFilePath;
+        this.sentenceDurationsMicros = sentenceDurationsMicros;
+    }
     /**
      * Getter để lấy đường dẫn file âm thanh.
      *
@@ -29,4 +36,12 @@ public class AudioStory {
     public void setAudioFilePath(String audioFilePath) {
         this.audioFilePath = audioFilePath;
     }
+    /**
+     * Thời lượng từng câu của chương (micro giây), cùng cách chia câu với ảnh và phụ đề.
+     *
+     * @return mảng thời lượng, hoặc null nếu âm thanh không được ghép từ các đoạn TTS
+     */
+    public long[] getSentenceDurationsMicros() {
+        return sentenceDurationsMicros;
+    }
 }
@@ -0,0 +1,52 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Lớp ChunkedAudio mô tả file âm thanh của một chương được ghép từ nhiều đoạn TTS:
+ * đường dẫn file, văn bản từng đoạn và thời lượng từng đoạn (micro giây) theo đúng thứ tự ghép, cùng
+ * thời lượng ước lượng của từng câu, để các bước sau (phụ đề, ảnh) dùng lại mà không phải đo lại file.
+ */
+public class ChunkedAudio {
+    private final Path audioFile;
+    private final List<String> chunks;
+    private final long[] chunkDurationsMicros;
+    private final long[] sentenceDurationsMicros;
+
+    public ChunkedAudio(Path audioFile, List<String> chunks, long[] chunkDurationsMicros,
+                        long[] sentenceDurationsMicros) {
+        this.audioFile = audioFile;
+        this.chunks = chunks;
+        this.chunkDurationsMicros = chunkDurationsMicros;
+        this.sentenceDurationsMicros = sentenceDurationsMicros;
+    }
+
+    public Path getAudioFile() {
+        return audioFile;
+    }
+
+    public List<String> getChunks() {
+        return chunks;
+    }
+
+    public long[] getChunkDurationsMicros() {
+        return chunkDurationsMicros;
+    }
+
+    /**
+     * Thời lượng từng câu của chương (cùng cách chia câu với ảnh và phụ đề): thời lượng mỗi đoạn được chia
+     * cho các câu trong đoạn theo số ký tự.
+     */
+    public long[] getSentenceDurationsMicros() {
+        return sentenceDurationsMicros;
+    }
+
+    public long getTotalDurationMicros() {
+        long total = 0;
+        for (long d : chunkDurationsMicros) {
+            total += d;
+        }
+        return total;
+    }
+}
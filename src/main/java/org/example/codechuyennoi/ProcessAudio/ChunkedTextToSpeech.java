@@ -0,0 +1,159 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import jakarta.annotation.PreDestroy;
+import org.example.codechuyennoi.ProcessText.SentenceSegmenter;
+import org.example.codechuyennoi.ProcessText.SentenceSegmenter.Sentences;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Lớp ChunkedTextToSpeech đọc một chương bằng nhiều request TTS nhỏ thay vì một request cho cả chương:
+ * văn bản được chia theo câu ({@link TextChunker}), các đoạn được gọi song song trong giới hạn cho phép,
+ * rồi âm thanh được ghép lại theo đúng thứ tự. Việc gọi lại đoạn lỗi do {@link TextToSpeech} lo (cùng một
+ * ngân sách thử lại và bộ ngắt mạch cho mọi request), ở đây không thử lại thêm lớp nào nữa.
+ * Đoạn đã đọc trước đó (cùng văn bản, giọng, tốc độ) được lấy từ {@link TtsCache} thay vì gọi lại API.
+ */
+@Service
+public class ChunkedTextToSpeech {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedTextToSpeech.class);
+
+    private final TextToSpeech textToSpeech;
+    private final TtsCache ttsCache;
+    private final int maxChars;
+    private final ExecutorService executor;
+
+    public ChunkedTextToSpeech(TextToSpeech textToSpeech,
+                               TtsCache ttsCache,
+                               @Value("${tts.chunk.max-chars:1500}") int maxChars,
+                               @Value("${tts.chunk.parallelism:4}") int parallelism) {
+        this.textToSpeech = textToSpeech;
+        this.ttsCache = ttsCache;
+        this.maxChars = maxChars;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread t = new Thread(r, "tts-chunk-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Đọc văn bản thành một file MP3 tại output. File chỉ xuất hiện khi mọi đoạn đều thành công.
+     * Âm thanh từng đoạn được tải thẳng xuống file và ghép theo ranh giới frame bằng {@link Mp3Splicer},
+     * nên bộ nhớ heap không phụ thuộc độ dài chương.
+     *
+     * @throws IOException nếu có đoạn vẫn lỗi sau khi {@link TextToSpeech} đã thử lại
+     */
+    public ChunkedAudio synthesizeToFile(String text, Path output) throws IOException, InterruptedException {
+        return synthesizeToFile(SentenceSegmenter.segment(text), output);
+    }
+
+    /** Như {@link #synthesizeToFile(String, Path)}, dùng lại kết quả chia câu đã có của chương. */
+    public ChunkedAudio synthesizeToFile(Sentences sentences, Path output) throws IOException, InterruptedException {
+        List<TextChunker.Piece> pieces = new ArrayList<>();
+        List<String> chunks = TextChunker.split(sentences, maxChars, pieces);
+        if (chunks.isEmpty()) {
+            throw new IOException("Văn bản rỗng, không có gì để đọc");
+        }
+        Path workDir = Files.createTempDirectory(output.toAbsolutePath().getParent(), output.getFileName() + ".chunks");
+        try {
+            Path[] audio = new Path[chunks.size()];
+            String[] keys = new String[chunks.size()];
+            List<Integer> pending = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                keys[i] = TtsCache.key(chunks.get(i), textToSpeech.getVoice(), textToSpeech.getSpeed());
+                // Lấy bản riêng vào thư mục tạm: file trong cache có thể bị loại trước khi ghép xong
+                Path cached = workDir.resolve("chunk-" + i + ".mp3");
+                if (ttsCache.copyTo(keys[i], cached)) {
+                    audio[i] = cached;
+                } else {
+                    pending.add(i);
+                }
+            }
+            if (pending.size() < chunks.size()) {
+                logger.info("Lấy {}/{} đoạn TTS từ cache", chunks.size() - pending.size(), chunks.size());
+            }
+            List<Integer> failed = synthesizeAll(chunks, keys, pending, audio, workDir);
+            if (!failed.isEmpty()) {
+                throw new IOException("TTS thất bại cho " + failed.size() + "/" + chunks.size() + " đoạn");
+            }
+
+            long[] durations = Mp3Splicer.splice(List.of(audio), output);
+            logger.info("Đã ghép {} đoạn TTS thành {}", chunks.size(), output);
+            return new ChunkedAudio(output, chunks, durations,
+                    TextChunker.sentenceDurations(pieces, durations, sentences.size()));
+        } finally {
+            deleteRecursively(workDir);
+        }
+    }
+
+    /** Gọi TTS song song cho các đoạn trong pending, trả về các đoạn lỗi. */
+    private List<Integer> synthesizeAll(List<String> chunks, String[] keys, List<Integer> pending, Path[] audio,
+                                          Path workDir) throws InterruptedException {
+        List<Future<Path>> futures = new ArrayList<>(pending.size());
+        for (int index : pending) {
+            String chunk = chunks.get(index);
+            Path target = workDir.resolve("chunk-" + index + ".mp3");
+            futures.add(executor.submit(() -> textToSpeech.synthesizeToFile(chunk, target)));
+        }
+        List<Integer> failed = new ArrayList<>();
+        try {
+            for (int i = 0; i < pending.size(); i++) {
+                int index = pending.get(i);
+                try {
+                    Path result = futures.get(i).get();
+                    if (Files.size(result) == 0) {
+                        throw new IOException("TTS trả về dữ liệu rỗng");
+                    }
+                    audio[index] = result;
+                    ttsCache.putFile(keys[index], result, true);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    logger.warn("Lỗi TTS đoạn {}: {}", index, cause.getMessage());
+                    failed.add(index);
+                } catch (IOException e) {
+                    logger.warn("Lỗi TTS đoạn {}: {}", index, e.getMessage());
+                    failed.add(index);
+                }
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw e;
+        }
+        return failed;
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    logger.warn("Không thể xóa file tạm {}: {}", file, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Không thể dọn thư mục tạm {}: {}", dir, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+/**
+ * Ngắt mạch cho một dịch vụ phía sau: sau failureThreshold lỗi liên tiếp thì mở mạch và từ chối mọi lần gọi
+ * trong openMillis; hết thời gian đó cho đúng một lần gọi thử (nửa mở), thành công thì đóng mạch lại,
+ * lỗi thì mở tiếp.
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(0, openMillis);
+    }
+
+    /** @return true nếu được phép gọi; khi nửa mở chỉ lần gọi thử đầu tiên được phép */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+        probeInFlight = false;
+    }
+
+    /**
+     * Lần gọi đã được phép nhưng kết thúc mà không có kết quả (bị ngắt, lỗi phía mình): không tính là thành công
+     * hay lỗi, chỉ trả lại lượt gọi thử khi đang nửa mở để lần gọi sau được thử.
+     */
+    synchronized void release() {
+        probeInFlight = false;
+    }
+
+    /** @return true nếu lần lỗi này làm mạch chuyển sang mở */
+    synchronized boolean onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            probeInFlight = false;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+}
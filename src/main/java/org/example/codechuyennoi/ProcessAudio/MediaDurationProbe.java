@@ -0,0 +1,294 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lớp MediaDurationProbe lấy thời lượng file âm thanh/video ngay trong tiến trình, không phải chạy ffprobe:
+ * - MP3: dùng số frame ghi trong tag Xing/Info/VBRI nếu có, không thì đếm mẫu qua từng frame;
+ * - MP4/M4A/MOV: đọc thời lượng trong box mvhd, mehd (MP4 phân mảnh) và mdhd của từng track, lấy giá trị lớn nhất.
+ * Chỉ đọc các byte header cần thiết bằng lệnh đọc theo vị trí. Định dạng khác (hoặc file không đọc được
+ * thời lượng) mới chạy ffprobe.
+ */
+@Component
+public class MediaDurationProbe {
+    private static final Logger logger = LoggerFactory.getLogger(MediaDurationProbe.class);
+    // Số byte đầu file dùng để nhận dạng định dạng và tìm frame MP3 đầu tiên
+    private static final int HEAD_SIZE = 64 * 1024;
+    private static final int BOX_HEADER_SIZE = 8;
+    private static final long FFPROBE_TIMEOUT_SECONDS = 30;
+
+    private final String ffprobePath;
+
+    public MediaDurationProbe(@Value("${ffprobe.path:ffprobe}") String ffprobePath) {
+        this.ffprobePath = ffprobePath;
+    }
+
+    /**
+     * Thời lượng file tính bằng micro giây.
+     *
+     * @return thời lượng, hoặc -1 nếu file không tồn tại hoặc không xác định được
+     */
+    public long probeMicros(Path file) {
+        if (!Files.isRegularFile(file)) {
+            logger.error("File media không tồn tại: {}", file);
+            return -1;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = Mp3FrameHeader.readAt(channel, 0, (int) Math.min(channel.size(), HEAD_SIZE));
+            long micros = -1;
+            if (isMp4(head)) {
+                micros = mp4DurationMicros(channel);
+            } else if (isMp3(head)) {
+                micros = mp3DurationMicros(channel, head);
+            }
+            if (micros > 0) {
+                return micros;
+            }
+        } catch (IOException e) {
+            logger.warn("Không đọc được header của {}: {}", file, e.getMessage());
+        }
+        return ffprobeMicros(file);
+    }
+
+    /** Như {@link #probeMicros(Path)} nhưng tính bằng giây, -1.0 nếu không xác định được. */
+    public double probeSeconds(String path) {
+        long micros = probeMicros(Path.of(path));
+        return micros < 0 ? -1.0 : micros / 1_000_000.0;
+    }
+
+    private static boolean isMp4(ByteBuffer head) {
+        return head.limit() >= BOX_HEADER_SIZE && boxType(head, 4).equals("ftyp");
+    }
+
+    private static boolean isMp3(ByteBuffer head) {
+        int off = Mp3FrameHeader.id3v2Size(head, 0);
+        return off > 0 || Mp3FrameHeader.parse(head, 0) != null;
+    }
+
+    /**
+     * Thời lượng MP3. File VBR (và file CBR do LAME tạo) có frame đầu chứa tổng số frame, khi đó
+     * không cần đọc hết file.
+     */
+    static long mp3DurationMicros(FileChannel channel, ByteBuffer head) throws IOException {
+        long start = Mp3FrameHeader.id3v2Size(head, 0);
+        ByteBuffer window = Mp3FrameHeader.readAt(channel, start, HEAD_SIZE);
+        for (int off = 0; off + Mp3FrameHeader.HEADER_SIZE <= window.limit(); off++) {
+            Mp3FrameHeader frame = Mp3FrameHeader.parse(window, off);
+            if (frame == null) {
+                continue;
+            }
+            long frames = frame.vbrFrameCount(window, off);
+            if (frames > 0) {
+                return Math.round(frames * frame.getSamplesPerFrame() * 1_000_000.0 / frame.getSampleRate());
+            }
+            break;
+        }
+        return Mp3FrameHeader.durationMicros(channel);
+    }
+
+    /** Thời lượng MP4 từ box moov, -1 nếu không có hoặc thời lượng bằng 0 (MP4 phân mảnh không có mehd). */
+    static long mp4DurationMicros(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long pos = 0;
+        while (pos + BOX_HEADER_SIZE <= size) {
+            Box box = readBox(channel, pos, size);
+            if (box == null) {
+                return -1;
+            }
+            if (box.type.equals("moov")) {
+                return moovDurationMicros(channel, box);
+            }
+            pos = box.end;
+        }
+        return -1;
+    }
+
+    private static long moovDurationMicros(FileChannel channel, Box moov) throws IOException {
+        long movieTimescale = 0;
+        long best = -1;
+        long mehdDuration = -1;
+        for (long pos = moov.bodyStart; pos + BOX_HEADER_SIZE <= moov.end; ) {
+            Box box = readBox(channel, pos, moov.end);
+            if (box == null) {
+                break;
+            }
+            switch (box.type) {
+                case "mvhd" -> {
+                    long[] header = readMediaHeader(channel, box);
+                    movieTimescale = header[0];
+                    best = Math.max(best, toMicros(header[1], header[0]));
+                }
+                case "mvex" -> mehdDuration = mehdDuration(channel, box);
+                case "trak" -> best = Math.max(best, trakDurationMicros(channel, box));
+                default -> {
+                    // box khác không chứa thời lượng
+                }
+            }
+            pos = box.end;
+        }
+        if (mehdDuration > 0 && movieTimescale > 0) {
+            best = Math.max(best, toMicros(mehdDuration, movieTimescale));
+        }
+        return best > 0 ? best : -1;
+    }
+
+    private static long trakDurationMicros(FileChannel channel, Box trak) throws IOException {
+        Box mdia = findChild(channel, trak, "mdia");
+        Box mdhd = mdia == null ? null : findChild(channel, mdia, "mdhd");
+        if (mdhd == null) {
+            return -1;
+        }
+        long[] header = readMediaHeader(channel, mdhd);
+        return toMicros(header[1], header[0]);
+    }
+
+    private static long mehdDuration(FileChannel channel, Box mvex) throws IOException {
+        Box mehd = findChild(channel, mvex, "mehd");
+        if (mehd == null) {
+            return -1;
+        }
+        ByteBuffer body = Mp3FrameHeader.readAt(channel, mehd.bodyStart, 12);
+        if (body.limit() < 8) {
+            return -1;
+        }
+        int version = body.get(0) & 0xFF;
+        return version == 1 && body.limit() >= 12 ? body.getLong(4) : body.getInt(4) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Đọc timescale và duration của box mvhd hoặc mdhd (hai box có cùng bố cục ở phần đầu).
+     *
+     * @return {timescale, duration}; duration = 0 nếu không rõ
+     */
+    private static long[] readMediaHeader(FileChannel channel, Box box) throws IOException {
+        ByteBuffer body = Mp3FrameHeader.readAt(channel, box.bodyStart, 32);
+        if (body.limit() < 20) {
+            return new long[]{0, 0};
+        }
+        int version = body.get(0) & 0xFF;
+        if (version == 1) {
+            // version, flags (4) + creation/modification time (8 + 8) + timescale (4) + duration (8)
+            if (body.limit() < 32) {
+                return new long[]{0, 0};
+            }
+            long duration = body.getLong(24);
+            return new long[]{body.getInt(20) & 0xFFFFFFFFL, duration == -1 ? 0 : duration};
+        }
+        // version, flags (4) + creation/modification time (4 + 4) + timescale (4) + duration (4)
+        long duration = body.getInt(16) & 0xFFFFFFFFL;
+        return new long[]{body.getInt(12) & 0xFFFFFFFFL, duration == 0xFFFFFFFFL ? 0 : duration};
+    }
+
+    private static Box findChild(FileChannel channel, Box parent, String type) throws IOException {
+        for (long pos = parent.bodyStart; pos + BOX_HEADER_SIZE <= parent.end; ) {
+            Box box = readBox(channel, pos, parent.end);
+            if (box == null) {
+                return null;
+            }
+            if (box.type.equals(type)) {
+                return box;
+            }
+            pos = box.end;
+        }
+        return null;
+    }
+
+    /** Đọc header box tại pos, null nếu header hỏng hoặc box vượt quá limit. */
+    private static Box readBox(FileChannel channel, long pos, long limit) throws IOException {
+        ByteBuffer header = Mp3FrameHeader.readAt(channel, pos, 16);
+        if (header.limit() < BOX_HEADER_SIZE) {
+            return null;
+        }
+        long size = header.getInt(0) & 0xFFFFFFFFL;
+        long bodyStart = pos + BOX_HEADER_SIZE;
+        if (size == 1) {
+            // Kích thước 64 bit nằm ngay sau type
+            if (header.limit() < 16) {
+                return null;
+            }
+            size = header.getLong(8);
+            bodyStart += 8;
+        } else if (size == 0) {
+            // Box kéo dài tới hết file/box cha
+            size = limit - pos;
+        }
+        if (size < bodyStart - pos || pos + size > limit) {
+            return null;
+        }
+        return new Box(boxType(header, 4), bodyStart, pos + size);
+    }
+
+    private static String boxType(ByteBuffer data, int off) {
+        char[] type = new char[4];
+        for (int i = 0; i < 4; i++) {
+            type[i] = (char) (data.get(off + i) & 0xFF);
+        }
+        return new String(type);
+    }
+
+    private static long toMicros(long duration, long timescale) {
+        if (timescale <= 0 || duration <= 0) {
+            return -1;
+        }
+        return Math.round(duration * 1_000_000.0 / timescale);
+    }
+
+    private long ffprobeMicros(Path file) {
+        logger.info("Không đọc được thời lượng {} trực tiếp, dùng ffprobe", file);
+        try {
+            ProcessBuilder pb = new ProcessBuilder(
+                    ffprobePath, "-v", "error",
+                    "-show_entries", "format=duration",
+                    "-of", "default=noprint_wrappers=1:nokey=1",
+                    file.toAbsolutePath().toString()
+            );
+            pb.redirectErrorStream(true);
+            Process process = pb.start();
+            String line;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                line = reader.readLine();
+            }
+            if (!process.waitFor(FFPROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                logger.error("ffprobe quá thời gian với file: {}", file);
+                return -1;
+            }
+            if (process.exitValue() != 0 || line == null || line.isBlank()) {
+                logger.error("ffprobe không trả về thời lượng cho file: {} (mã lỗi {})", file, process.exitValue());
+                return -1;
+            }
+            return Math.round(Double.parseDouble(line.trim()) * 1_000_000);
+        } catch (IOException | NumberFormatException e) {
+            logger.error("Lỗi khi chạy ffprobe cho {}: {}", file, e.getMessage());
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private static final class Box {
+        final String type;
+        final long bodyStart;
+        final long end;
+
+        Box(String type, long bodyStart, long end) {
+            this.type = type;
+            this.bodyStart = bodyStart;
+            this.end = end;
+        }
+    }
+}
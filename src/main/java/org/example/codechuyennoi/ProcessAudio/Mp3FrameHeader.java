@@ -0,0 +1,261 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Lớp Mp3FrameHeader đọc header 4 byte của một frame MPEG audio (MPEG 1/2/2.5, layer I/II/III):
+ * bitrate, tần số lấy mẫu, độ dài frame và số mẫu trong frame. Đủ để đếm thời lượng và cắt ghép file MP3
+ * theo ranh giới frame mà không cần giải mã.
+ */
+public final class Mp3FrameHeader {
+    public static final int HEADER_SIZE = 4;
+    // Tên các tag VBR nằm trong frame đầu tiên ("Xing", "Info", "VBRI")
+    private static final int XING = 0x58696E67;
+    private static final int INFO = 0x496E666F;
+    private static final int VBRI = 0x56425249;
+    // Vị trí tag VBRI tính từ đầu frame, cố định với mọi phiên bản MPEG
+    private static final int VBRI_OFFSET = HEADER_SIZE + 32;
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    private static final int[][] BITRATES_V1 = {
+            {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},  // layer I
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},     // layer II
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}       // layer III
+    };
+    private static final int[][] BITRATES_V2 = {
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},     // layer I
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},          // layer II
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}           // layer III
+    };
+    private static final int[][] SAMPLE_RATES = {
+            {11025, 12000, 8000},   // MPEG 2.5
+            {0, 0, 0},              // không dùng
+            {22050, 24000, 16000},  // MPEG 2
+            {44100, 48000, 32000}   // MPEG 1
+    };
+
+    private final int header;
+    private final boolean mpeg1;
+    private final int layer;
+    private final int bitrateKbps;
+    private final int sampleRate;
+    private final int samplesPerFrame;
+    private final int frameLength;
+    private final boolean mono;
+
+    private Mp3FrameHeader(int header, boolean mpeg1, int layer, int bitrateKbps, int sampleRate,
+                           int samplesPerFrame, int frameLength, boolean mono) {
+        this.header = header;
+        this.mpeg1 = mpeg1;
+        this.layer = layer;
+        this.bitrateKbps = bitrateKbps;
+        this.sampleRate = sampleRate;
+        this.samplesPerFrame = samplesPerFrame;
+        this.frameLength = frameLength;
+        this.mono = mono;
+    }
+
+    /**
+     * Đọc header frame tại vị trí off.
+     *
+     * @return header, hoặc null nếu 4 byte tại đó không phải header frame hợp lệ
+     */
+    public static Mp3FrameHeader parse(ByteBuffer data, int off) {
+        if (off < 0 || off + HEADER_SIZE > data.limit()) {
+            return null;
+        }
+        return parse(data.getInt(off));
+    }
+
+    public static Mp3FrameHeader parse(int header) {
+        if ((header >>> 21) != 0x7FF) {
+            return null;
+        }
+        int version = (header >>> 19) & 3;
+        int layerBits = (header >>> 17) & 3;
+        int bitrateIndex = (header >>> 12) & 0xF;
+        int sampleRateIndex = (header >>> 10) & 3;
+        if (version == 1 || layerBits == 0 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+            // Phiên bản/layer không hợp lệ; bitrate "free" không tính được độ dài frame nên cũng bỏ qua
+            return null;
+        }
+        boolean mpeg1 = version == 3;
+        int layer = 4 - layerBits;
+        int bitrate = (mpeg1 ? BITRATES_V1 : BITRATES_V2)[layer - 1][bitrateIndex];
+        int sampleRate = SAMPLE_RATES[version][sampleRateIndex];
+        int padding = (header >>> 9) & 1;
+        int samples;
+        int length;
+        if (layer == 1) {
+            samples = 384;
+            length = (12 * bitrate * 1000 / sampleRate + padding) * 4;
+        } else {
+            samples = (layer == 3 && !mpeg1) ? 576 : 1152;
+            length = samples / 8 * bitrate * 1000 / sampleRate + padding;
+        }
+        boolean mono = ((header >>> 6) & 3) == 3;
+        return new Mp3FrameHeader(header, mpeg1, layer, bitrate, sampleRate, samples, length, mono);
+    }
+
+    /** Độ dài tag ID3v2 ở đầu dữ liệu (kể cả header và footer), 0 nếu không có. */
+    public static int id3v2Size(ByteBuffer data, int off) {
+        if (off + 10 > data.limit() || data.get(off) != 'I' || data.get(off + 1) != 'D' || data.get(off + 2) != '3') {
+            return 0;
+        }
+        int size = ((data.get(off + 6) & 0x7F) << 21) | ((data.get(off + 7) & 0x7F) << 14)
+                | ((data.get(off + 8) & 0x7F) << 7) | (data.get(off + 9) & 0x7F);
+        boolean footer = (data.get(off + 5) & 0x10) != 0;
+        return 10 + size + (footer ? 10 : 0);
+    }
+
+    /**
+     * Tính thời lượng file MP3 bằng cách đếm mẫu qua từng frame, bỏ qua tag ID3, frame tag Xing/Info/VBRI
+     * và byte rác giữa các frame.
+     *
+     * @return thời lượng tính bằng micro giây, 0 nếu không tìm thấy frame nào
+     */
+    public static long durationMicros(FileChannel channel) throws IOException {
+        double[] micros = {0};
+        boolean[] first = {true};
+        scan(channel, (frame, window, off, position) -> {
+            // Frame tag Xing/Info/VBRI không chứa âm thanh
+            if (!first[0] || !frame.isVbrTagFrame(window, off)) {
+                micros[0] += frame.samplesPerFrame * 1_000_000.0 / frame.sampleRate;
+            }
+            first[0] = false;
+            return true;
+        });
+        return Math.round(micros[0]);
+    }
+
+    /** Nhận từng frame mà {@link #scan} tìm thấy. */
+    interface FrameVisitor {
+        /**
+         * @param window   cửa sổ đang đọc; header frame nằm tại off trong cửa sổ
+         * @param position vị trí frame trong file
+         * @return true để nhận frame và nhảy qua cả frame, false để coi là rác và dò tiếp từ byte sau
+         */
+        boolean visit(Mp3FrameHeader frame, ByteBuffer window, int off, long position);
+    }
+
+    /**
+     * Duyệt các frame của file MP3 theo thứ tự, bỏ tag ID3v2 ở đầu, tag ID3v1 ở cuối, frame không đủ byte
+     * ở cuối và byte rác giữa các frame. File được đọc qua một cửa sổ 64 KB dùng lại nên bộ nhớ không phụ thuộc
+     * kích thước file (và không map file, để file có thể xóa ngay sau đó trên mọi hệ điều hành).
+     */
+    static void scan(FileChannel channel, FrameVisitor visitor) throws IOException {
+        long size = channel.size();
+        ByteBuffer head = readAt(channel, 0, 10);
+        ByteBuffer tail = readAt(channel, Math.max(0, size - 128), (int) Math.min(size, 128));
+        long end = size >= 128 && tail.get(0) == 'T' && tail.get(1) == 'A' && tail.get(2) == 'G' ? size - 128 : size;
+        long pos = id3v2Size(head, 0);
+        ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+        long windowStart = 0;
+        window.limit(0);
+        while (pos + HEADER_SIZE <= end) {
+            if (pos < windowStart || pos + HEADER_SIZE > windowStart + window.limit()) {
+                windowStart = pos;
+                window.clear();
+                while (window.hasRemaining() && channel.read(window, windowStart + window.position()) > 0) {
+                    // đọc tới khi đầy cửa sổ hoặc hết file
+                }
+                window.flip();
+                if (window.limit() < HEADER_SIZE) {
+                    break;
+                }
+            }
+            int off = (int) (pos - windowStart);
+            Mp3FrameHeader frame = parse(window, off);
+            if (frame == null || pos + frame.frameLength > end || !visitor.visit(frame, window, off, pos)) {
+                pos++;
+                continue;
+            }
+            pos += frame.frameLength;
+        }
+    }
+
+    static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+            // đọc tới khi đủ length byte hoặc hết file
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /** Frame bắt đầu tại off có phải frame tag Xing/Info/VBRI (không chứa âm thanh) hay không. */
+    public boolean isVbrTagFrame(ByteBuffer data, int off) {
+        int xing = off + HEADER_SIZE + getSideInfoSize();
+        if (xing + 4 <= data.limit() && (data.getInt(xing) == XING || data.getInt(xing) == INFO)) {
+            return true;
+        }
+        return off + VBRI_OFFSET + 4 <= data.limit() && data.getInt(off + VBRI_OFFSET) == VBRI;
+    }
+
+    /**
+     * Số frame âm thanh của cả file ghi trong tag Xing/Info/VBRI của frame bắt đầu tại off.
+     *
+     * @return số frame, hoặc -1 nếu frame không có tag hoặc tag không ghi số frame
+     */
+    public long vbrFrameCount(ByteBuffer data, int off) {
+        int xing = off + HEADER_SIZE + getSideInfoSize();
+        if (xing + 12 <= data.limit() && (data.getInt(xing) == XING || data.getInt(xing) == INFO)) {
+            boolean hasFrames = (data.getInt(xing + 4) & 1) != 0;
+            return hasFrames ? data.getInt(xing + 8) & 0xFFFFFFFFL : -1;
+        }
+        int vbri = off + VBRI_OFFSET;
+        if (vbri + 18 <= data.limit() && data.getInt(vbri) == VBRI) {
+            return data.getInt(vbri + 14) & 0xFFFFFFFFL;
+        }
+        return -1;
+    }
+
+    /**
+     * Kích thước side information của frame layer III, tức khoảng cách từ cuối header tới
+     * vị trí tag Xing/Info nếu có.
+     */
+    public int getSideInfoSize() {
+        if (mpeg1) {
+            return mono ? 17 : 32;
+        }
+        return mono ? 9 : 17;
+    }
+
+    public int getHeader() {
+        return header;
+    }
+
+    public boolean isMpeg1() {
+        return mpeg1;
+    }
+
+    public int getLayer() {
+        return layer;
+    }
+
+    public int getBitrateKbps() {
+        return bitrateKbps;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getSamplesPerFrame() {
+        return samplesPerFrame;
+    }
+
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    public boolean isMono() {
+        return mono;
+    }
+
+    public long getDurationMicros() {
+        return samplesPerFrame * 1_000_000L / sampleRate;
+    }
+}
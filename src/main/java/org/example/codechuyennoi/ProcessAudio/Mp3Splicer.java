@@ -0,0 +1,167 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Lớp Mp3Splicer nối nhiều file MP3 thành một file theo ranh giới frame, không giải mã hay nén lại:
+ * tag ID3v1/ID3v2 và frame Xing/Info/VBRI của từng file bị bỏ, file kết quả có đúng một frame Xing (hoặc Info
+ * nếu mọi frame cùng bitrate) ghi tổng số frame và số byte để trình phát hiển thị và tua đúng thời lượng.
+ *
+ * Dữ liệu được chép bằng {@link FileChannel#transferTo} và frame header được đọc qua cửa sổ cố định của
+ * {@link Mp3FrameHeader#scan}, nên bộ nhớ dùng không phụ thuộc số file hay độ dài file. Các file phải cùng phiên bản MPEG, layer và
+ * tần số lấy mẫu (ví dụ cùng được tạo bởi một giọng TTS).
+ */
+public final class Mp3Splicer {
+    // Các bit phải giống nhau giữa mọi frame: sync, phiên bản MPEG, layer và tần số lấy mẫu
+    private static final int STREAM_MASK = 0xFFFE0C00;
+    private static final int PROTECTION_BIT = 1 << 16;
+    private static final int PADDING_BIT = 1 << 9;
+    // Tag Xing: tên (4) + cờ (4) + số frame (4) + số byte (4)
+    private static final int XING_TAG_SIZE = 16;
+    private static final int XING = 0x58696E67;
+    private static final int INFO = 0x496E666F;
+    private static final int XING_FLAGS_FRAMES_AND_BYTES = 0x3;
+
+    private Mp3Splicer() {
+    }
+
+    /**
+     * Nối các file inputs theo thứ tự thành output. output được ghi ra file tạm rồi đổi tên, nên không bao giờ
+     * bị ghi dở.
+     *
+     * @return thời lượng âm thanh của từng file đầu vào (micro giây), theo thứ tự inputs
+     * @throws IOException nếu có file không chứa frame MP3 nào hoặc các file khác định dạng với nhau
+     */
+    public static long[] splice(List<Path> inputs, Path output) throws IOException {
+        if (inputs.isEmpty()) {
+            throw new IOException("Không có file MP3 nào để nối");
+        }
+        long[] durations = new long[inputs.size()];
+        Path tmp = output.resolveSibling(output.getFileName() + ".part");
+        try {
+            Mp3FrameHeader first = null;
+            Mp3FrameHeader xingFrame = null;
+            long frames = 0;
+            int bitrateIndex = -1;
+            boolean constantBitrate = true;
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (int i = 0; i < inputs.size(); i++) {
+                    try (FileChannel in = FileChannel.open(inputs.get(i), StandardOpenOption.READ)) {
+                        Segment segment = scan(in, first == null ? 0 : first.getHeader());
+                        if (segment == null) {
+                            throw new IOException("Không tìm thấy frame MP3 trong " + inputs.get(i));
+                        }
+                        if (first == null) {
+                            first = segment.first;
+                            xingFrame = xingFrameFor(first);
+                            // Chừa chỗ cho frame Xing, ghi nội dung sau khi biết tổng số frame
+                            out.position(xingFrame.getFrameLength());
+                        } else if (((segment.first.getHeader() ^ first.getHeader()) & STREAM_MASK) != 0) {
+                            throw new IOException("File " + inputs.get(i) + " khác phiên bản/tần số lấy mẫu với file đầu");
+                        }
+                        if (bitrateIndex == -1) {
+                            bitrateIndex = segment.bitrateIndex;
+                        }
+                        constantBitrate &= segment.constantBitrate && segment.bitrateIndex == bitrateIndex;
+                        frames += segment.frames;
+                        durations[i] = Math.round(segment.frames * first.getSamplesPerFrame() * 1_000_000.0
+                                / first.getSampleRate());
+                        for (long pos = segment.start; pos < segment.end; ) {
+                            pos += in.transferTo(pos, segment.end - pos, out);
+                        }
+                    }
+                }
+                out.write(xingFrame(xingFrame, constantBitrate, frames, out.size()), 0);
+            }
+            Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return durations;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Tìm đoạn frame âm thanh của một file: bỏ tag ID3 ở hai đầu, frame Xing/Info/VBRI ở đầu và phần
+     * dư không đủ một frame ở cuối.
+     *
+     * @param reference header frame đầu của file đầu tiên (0 nếu đây là file đầu); frame khác luồng bị coi là rác
+     * @return đoạn âm thanh, hoặc null nếu không có frame nào
+     */
+    private static Segment scan(FileChannel in, int reference) throws IOException {
+        Segment[] found = new Segment[1];
+        Mp3FrameHeader.scan(in, (frame, window, off, position) -> {
+            Segment segment = found[0];
+            int expected = segment != null ? segment.first.getHeader() : reference;
+            if (expected != 0 && ((frame.getHeader() ^ expected) & STREAM_MASK) != 0) {
+                return false;
+            }
+            if (segment == null) {
+                if (frame.isVbrTagFrame(window, off)) {
+                    // Frame Xing/Info/VBRI cũ không chứa âm thanh; file ghép sẽ có frame Xing mới
+                    return true;
+                }
+                segment = new Segment(frame, position);
+                found[0] = segment;
+            }
+            segment.add(frame, position + frame.getFrameLength());
+            return true;
+        });
+        return found[0];
+    }
+
+    /** Header cho frame Xing: cùng luồng với frame đầu, không CRC, không padding, đủ lớn để chứa tag. */
+    private static Mp3FrameHeader xingFrameFor(Mp3FrameHeader first) {
+        int base = (first.getHeader() | PROTECTION_BIT) & ~PADDING_BIT;
+        Mp3FrameHeader candidate = Mp3FrameHeader.parse(base);
+        int needed = Mp3FrameHeader.HEADER_SIZE + first.getSideInfoSize() + XING_TAG_SIZE;
+        // Bitrate thấp (MPEG 2, 8 kbps) cho frame quá nhỏ: tăng dần bitrate tới khi đủ chỗ
+        for (int index = 1; index < 15 && (candidate == null || candidate.getFrameLength() < needed); index++) {
+            candidate = Mp3FrameHeader.parse((base & ~0xF000) | (index << 12));
+        }
+        return candidate;
+    }
+
+    private static ByteBuffer xingFrame(Mp3FrameHeader frame, boolean constantBitrate, long frames, long bytes) {
+        ByteBuffer buffer = ByteBuffer.allocate(frame.getFrameLength());
+        buffer.putInt(0, frame.getHeader());
+        int tag = Mp3FrameHeader.HEADER_SIZE + frame.getSideInfoSize();
+        buffer.putInt(tag, constantBitrate ? INFO : XING);
+        buffer.putInt(tag + 4, XING_FLAGS_FRAMES_AND_BYTES);
+        buffer.putInt(tag + 8, (int) Math.min(frames, 0xFFFFFFFFL));
+        buffer.putInt(tag + 12, (int) Math.min(bytes, 0xFFFFFFFFL));
+        return buffer;
+    }
+
+    private static final class Segment {
+        final Mp3FrameHeader first;
+        final long start;
+        final int bitrateIndex;
+        long end;
+        long frames;
+        boolean constantBitrate = true;
+
+        Segment(Mp3FrameHeader first, long start) {
+            this.first = first;
+            this.start = start;
+            this.bitrateIndex = bitrateIndex(first);
+        }
+
+        void add(Mp3FrameHeader frame, long frameEnd) {
+            frames++;
+            end = frameEnd;
+            constantBitrate &= bitrateIndex(frame) == bitrateIndex;
+        }
+
+        private static int bitrateIndex(Mp3FrameHeader frame) {
+            return (frame.getHeader() >>> 12) & 0xF;
+        }
+    }
+}
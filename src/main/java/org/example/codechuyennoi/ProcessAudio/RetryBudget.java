@@ -0,0 +1,31 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+/**
+ * Ngân sách gửi lại: mỗi request gốc nạp thêm ratio token (tối đa maxTokens), mỗi lần thử lại hoặc
+ * request dự phòng (hedge) tiêu một token. Khi dịch vụ lỗi hàng loạt, số request phát sinh thêm bị giới hạn
+ * ở một tỉ lệ cố định của lưu lượng bình thường thay vì nhân lên theo số lần thử.
+ */
+final class RetryBudget {
+    private final double ratio;
+    private final double maxTokens;
+    private double tokens;
+
+    RetryBudget(double ratio, double minTokens) {
+        this.ratio = Math.max(0, ratio);
+        this.maxTokens = Math.max(1, minTokens);
+        // Cho phép vài lần thử lại ngay từ đầu, trước khi có lưu lượng để tích lũy
+        this.tokens = this.maxTokens;
+    }
+
+    synchronized void recordRequest() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    synchronized boolean tryWithdraw() {
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+}
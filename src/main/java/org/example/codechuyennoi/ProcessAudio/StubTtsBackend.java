@@ -0,0 +1,98 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backend TTS giả lập chạy hoàn toàn offline: trả về file MP3 im lặng có thời lượng tỉ lệ với độ dài văn bản,
+ * sau một độ trễ ngẫu nhiên (có đuôi dài) và tỉ lệ lỗi cấu hình được. Dùng để chạy thử cả quy trình
+ * hoặc kiểm tra tải mà không gọi dịch vụ thật (tts.backend=stub).
+ */
+@Component
+public class StubTtsBackend implements TtsBackend {
+    static final String NAME = "stub";
+    // MPEG 1 layer III, 128 kbps, 44.1 kHz, stereo: frame 417 byte, khoảng 26 ms; dữ liệu toàn 0 là im lặng
+    private static final byte[] SILENT_FRAME = new byte[417];
+    // Tốc độ đọc ước lượng: khoảng 15 ký tự mỗi giây
+    private static final double MICROS_PER_CHAR = 1_000_000.0 / 15;
+    private static final double MICROS_PER_FRAME = 1152 * 1_000_000.0 / 44100;
+
+    static {
+        SILENT_FRAME[0] = (byte) 0xFF;
+        SILENT_FRAME[1] = (byte) 0xFB;
+        SILENT_FRAME[2] = (byte) 0x90;
+        SILENT_FRAME[3] = (byte) 0x00;
+    }
+
+    private final long latencyMs;
+    private final double failureRate;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "tts-stub");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public StubTtsBackend(@Value("${tts.stub.latency-ms:300}") long latencyMs,
+                          @Value("${tts.stub.failure-rate:0.0}") double failureRate) {
+        this.latencyMs = Math.max(0, latencyMs);
+        this.failureRate = Math.min(1.0, Math.max(0.0, failureRate));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public CompletableFuture<Path> synthesize(String text, String voice, String speed, Path target) {
+        CompletableFuture<Path> result = new CompletableFuture<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // Phân phối mũ quanh độ trễ trung bình để có đuôi dài như dịch vụ thật
+        long delay = (long) (-latencyMs * Math.log(1 - random.nextDouble()));
+        boolean fail = random.nextDouble() < failureRate;
+        timer.schedule(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (fail) {
+                result.completeExceptionally(new IOException("Lỗi giả lập từ backend stub"));
+                return;
+            }
+            try {
+                writeSilence(target, text.length());
+                if (!result.complete(target)) {
+                    // Bị hủy trong lúc ghi: file không còn ai dùng
+                    Files.deleteIfExists(target);
+                }
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    private static void writeSilence(Path target, int chars) throws IOException {
+        long frames = Math.max(1, Math.round(chars * MICROS_PER_CHAR / MICROS_PER_FRAME));
+        try (OutputStream out = Files.newOutputStream(target)) {
+            for (long i = 0; i < frames; i++) {
+                out.write(SILENT_FRAME);
+            }
+        }
+    }
+}
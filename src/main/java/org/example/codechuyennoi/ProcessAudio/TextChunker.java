@@ -0,0 +1,109 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import org.example.codechuyennoi.ProcessText.SentenceSegmenter;
+import org.example.codechuyennoi.ProcessText.SentenceSegmenter.Sentences;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lớp TextChunker chia văn bản một chương thành các đoạn để gọi TTS song song: dùng ranh giới câu của
+ * {@link SentenceSegmenter} (cùng cách chia với ảnh và phụ đề) rồi gom các câu liền nhau thành đoạn không vượt
+ * quá maxChars ký tự. Câu dài hơn maxChars được cắt tiếp tại dấu phẩy hoặc khoảng trắng gần giới hạn nhất.
+ */
+public final class TextChunker {
+
+    private TextChunker() {
+    }
+
+    public static List<String> split(String text, int maxChars) {
+        return split(SentenceSegmenter.segment(text), maxChars);
+    }
+
+    public static List<String> split(Sentences sentences, int maxChars) {
+        return split(sentences, maxChars, null);
+    }
+
+    /** Phần của một câu nằm trong một đoạn: chỉ số đoạn, chỉ số câu và số ký tự của phần đó. */
+    record Piece(int chunk, int sentence, int chars) {
+    }
+
+    /**
+     * Như {@link #split(Sentences, int)}; nếu pieces khác null thì nhận thêm các phần câu của từng đoạn
+     * theo thứ tự, để chia thời lượng của đoạn lại cho các câu.
+     */
+    static List<String> split(Sentences sentences, int maxChars, List<Piece> pieces) {
+        List<String> chunks = new ArrayList<>();
+        maxChars = Math.max(16, maxChars);
+        String text = sentences.getText();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < sentences.size(); i++) {
+            int start = sentences.start(i);
+            int end = sentences.end(i);
+            if (current.length() > 0 && current.length() + 1 + (end - start) > maxChars) {
+                chunks.add(current.toString());
+                current.setLength(0);
+            }
+            if (end - start > maxChars) {
+                // Câu quá dài: cắt thành nhiều đoạn, phần cuối được gom tiếp với các câu sau
+                String sentence = text.substring(start, end);
+                while (sentence.length() > maxChars) {
+                    int cut = cutPoint(sentence, maxChars);
+                    String head = sentence.substring(0, cut).trim();
+                    addPiece(pieces, chunks.size(), i, head.length());
+                    chunks.add(head);
+                    sentence = sentence.substring(cut).trim();
+                }
+                addPiece(pieces, chunks.size(), i, sentence.length());
+                current.append(sentence);
+                continue;
+            }
+            if (current.length() > 0) {
+                current.append(' ');
+            }
+            addPiece(pieces, chunks.size(), i, end - start);
+            current.append(text, start, end);
+        }
+        if (current.length() > 0) {
+            chunks.add(current.toString());
+        }
+        return chunks;
+    }
+
+    /**
+     * Thời lượng (micro giây) của từng câu: thời lượng mỗi đoạn được chia cho các phần câu trong đoạn
+     * theo số ký tự.
+     */
+    static long[] sentenceDurations(List<Piece> pieces, long[] chunkDurations, int sentenceCount) {
+        long[] chunkChars = new long[chunkDurations.length];
+        int[] chunkPieces = new int[chunkDurations.length];
+        for (Piece piece : pieces) {
+            chunkChars[piece.chunk()] += piece.chars();
+            chunkPieces[piece.chunk()]++;
+        }
+        long[] durations = new long[sentenceCount];
+        for (Piece piece : pieces) {
+            long chunkDuration = chunkDurations[piece.chunk()];
+            long chars = chunkChars[piece.chunk()];
+            durations[piece.sentence()] += chars > 0
+                    ? chunkDuration * piece.chars() / chars
+                    : chunkDuration / chunkPieces[piece.chunk()];
+        }
+        return durations;
+    }
+
+    private static void addPiece(List<Piece> pieces, int chunk, int sentence, int chars) {
+        if (pieces != null) {
+            pieces.add(new Piece(chunk, sentence, chars));
+        }
+    }
+
+    private static int cutPoint(String sentence, int maxChars) {
+        int comma = Math.max(sentence.lastIndexOf(',', maxChars - 1), sentence.lastIndexOf(';', maxChars - 1));
+        if (comma > maxChars / 2) {
+            return comma + 1;
+        }
+        int space = sentence.lastIndexOf(' ', maxChars);
+        return space > maxChars / 2 ? space : maxChars;
+    }
+}
@@ -1,64 +1,260 @@
 package org.example.codechuyennoi.ProcessAudio;
 
-import com.google.protobuf.ByteString;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URI;
-import java.net.URL;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Lớp TextToSpeech đọc văn bản qua một {@link TtsBackend} (chọn bằng tts.backend) và bọc lần gọi bằng các
+ * chính sách chống lỗi:
+ * - timeout cho từng request;
+ * - thử lại có giới hạn theo {@link RetryBudget}, để lúc dịch vụ lỗi hàng loạt không bị dồn thêm tải;
+ * - request dự phòng (hedging): nếu request chậm hơn p95 độ trễ gần đây thì gửi thêm một request song song,
+ *   lấy kết quả nào về trước, để giảm độ trễ đuôi;
+ * - ngắt mạch ({@link CircuitBreaker}) sau nhiều lỗi liên tiếp, lỗi ngay thay vì chờ timeout.
+ */
 @Service
 public class TextToSpeech {
     private static final Logger logger = LoggerFactory.getLogger(TextToSpeech.class);
-    private static final String API_URL = "https://speech.aiservice.vn/tts/tools/demo";
+    // Số mẫu độ trễ gần nhất dùng để tính ngưỡng gửi request dự phòng
+    private static final int LATENCY_SAMPLES = 128;
+    private static final int MIN_SAMPLES_FOR_HEDGING = 16;
 
-    public ByteString synthesize(String text) throws IOException, InterruptedException {
+    private final TtsBackend backend;
+    private final String voice;
+    private final String speed;
+    private final long requestTimeoutMs;
+    private final int maxAttempts;
+    private final boolean hedgeEnabled;
+    private final long hedgeMinDelayMs;
+    private final RetryBudget retryBudget;
+    private final CircuitBreaker circuitBreaker;
 
-        // Tạo JSON body đúng định dạng
-        String json = String.format("""
-                {
-                  "text":"%s",
-                  "voice": "hcm_thanhthao",
-                  "speed": "1.0"
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyCount;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public TextToSpeech(List<TtsBackend> backends,
+                        @Value("${tts.backend:aiservice}") String backendName,
+                        @Value("${tts.voice:hcm_thanhthao}") String voice,
+                        @Value("${tts.speed:1.0}") String speed,
+                        @Value("${tts.request-timeout-seconds:120}") long requestTimeoutSeconds,
+                        @Value("${tts.retry.max-attempts:3}") int maxAttempts,
+                        @Value("${tts.retry.budget-ratio:0.2}") double retryBudgetRatio,
+                        @Value("${tts.hedge.enabled:true}") boolean hedgeEnabled,
+                        @Value("${tts.hedge.min-delay-ms:3000}") long hedgeMinDelayMs,
+                        @Value("${tts.breaker.failure-threshold:5}") int breakerFailureThreshold,
+                        @Value("${tts.breaker.open-seconds:30}") long breakerOpenSeconds) {
+        this.backend = backends.stream()
+                .filter(b -> b.name().equalsIgnoreCase(backendName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Không có backend TTS tên '" + backendName + "'"));
+        this.voice = voice;
+        this.speed = speed;
+        this.requestTimeoutMs = TimeUnit.SECONDS.toMillis(Math.max(1, requestTimeoutSeconds));
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgeMinDelayMs = Math.max(0, hedgeMinDelayMs);
+        this.retryBudget = new RetryBudget(retryBudgetRatio, 10);
+        this.circuitBreaker = new CircuitBreaker(breakerFailureThreshold, TimeUnit.SECONDS.toMillis(breakerOpenSeconds));
+        logger.info("TTS dùng backend '{}'", backend.name());
+    }
+
+    @PreDestroy
+    public void logSummary() {
+        logger.info("TTS: {} request, {} lần thử lại, {} request dự phòng ({} về trước), {} bị từ chối do ngắt mạch",
+                requestCount.get(), retryCount.get(), hedgeCount.get(), hedgeWins.get(), rejectedCount.get());
+    }
+
+    public String getVoice() {
+        return voice;
+    }
+
+    public String getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Đọc văn bản và ghi file âm thanh vào target. Mỗi lần gọi backend ghi ra file riêng cạnh target,
+     * file của lần thành công được đổi tên thành target nên target không bao giờ bị ghi dở.
+     *
+     * @return đường dẫn target
+     * @throws IOException nếu mọi lần thử đều lỗi, hết ngân sách thử lại hoặc mạch đang mở
+     */
+    public Path synthesizeToFile(String text, Path target) throws IOException, InterruptedException {
+        IOException lastError = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (attempt > 1) {
+                if (!retryBudget.tryWithdraw()) {
+                    logger.warn("Hết ngân sách thử lại TTS, bỏ qua lần thử {}", attempt);
+                    break;
                 }
-                """, text.replace("\"", "\\\""));
-
-        // Tạo POST request
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(API_URL))
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(json))
-                .build();
-
-        HttpClient client = HttpClient.newHttpClient();
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-        if (response.statusCode() != 200) {
-            throw new IOException("Gọi API thất bại: " + response.body());
-        } else {
-            System.out.println("✅ Gọi API thành công: " + response.body());
+                retryCount.incrementAndGet();
+                Thread.sleep(500L * (1L << (attempt - 2)));
+            }
+            if (!circuitBreaker.tryAcquire()) {
+                rejectedCount.incrementAndGet();
+                throw new IOException("Dịch vụ TTS đang bị ngắt mạch sau nhiều lỗi liên tiếp", lastError);
+            }
+            retryBudget.recordRequest();
+            boolean settled = false;
+            try {
+                Path result = synthesizeHedged(text, target);
+                circuitBreaker.onSuccess();
+                settled = true;
+                return result;
+            } catch (IOException e) {
+                settled = true;
+                lastError = e;
+                if (circuitBreaker.onFailure()) {
+                    logger.error("TTS lỗi liên tiếp, ngắt mạch: {}", e.getMessage());
+                } else {
+                    logger.warn("Lỗi TTS (lần {}/{}): {}", attempt, maxAttempts, e.getMessage());
+                }
+            } finally {
+                if (!settled) {
+                    // Bị ngắt hoặc lỗi bất ngờ: không biết dịch vụ tốt hay xấu, chỉ trả lại lượt gọi thử nếu đang nửa mở
+                    circuitBreaker.release();
+                }
+            }
+        }
+        throw lastError != null ? lastError : new IOException("TTS thất bại");
+    }
+
+    private Path synthesizeHedged(String text, Path target) throws IOException, InterruptedException {
+        Path[] files = {
+                target.resolveSibling(target.getFileName() + ".try1"),
+                target.resolveSibling(target.getFileName() + ".try2")
+        };
+        CompletableFuture<Integer> winner = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger();
+        List<CompletableFuture<Path>> calls = new CopyOnWriteArrayList<>();
+        long started = System.nanoTime();
+        launch(text, files, 0, winner, running, calls);
+        if (hedgeEnabled) {
+            CompletableFuture.delayedExecutor(hedgeDelayMs(), TimeUnit.MILLISECONDS).execute(() -> {
+                // Request dự phòng cũng tính vào ngân sách thử lại vì nó là tải phát sinh thêm
+                if (!winner.isDone() && retryBudget.tryWithdraw()) {
+                    hedgeCount.incrementAndGet();
+                    launch(text, files, 1, winner, running, calls);
+                }
+            });
+        }
+        try {
+            int index = winner.get(requestTimeoutMs * 2, TimeUnit.MILLISECONDS);
+            recordLatency(System.nanoTime() - started);
+            if (index == 1) {
+                hedgeWins.incrementAndGet();
+            }
+            return Files.move(files[index], target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw new IOException("TTS quá thời gian " + requestTimeoutMs + " ms", cause);
+            }
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        } catch (TimeoutException e) {
+            throw new IOException("TTS quá thời gian " + requestTimeoutMs + " ms", e);
+        } finally {
+            // Hủy request còn chạy (backend hủy cả request HTTP). Request còn ghi file sau lúc này sẽ tự xóa
+            // file của nó khi kết thúc; ở đây chỉ dọn những gì đã có (kể cả file thắng nếu đổi tên lỗi)
+            winner.cancel(false);
+            calls.forEach(call -> call.cancel(true));
+            for (Path file : files) {
+                deleteQuietly(file);
+            }
         }
+    }
 
-        // Parse JSON để lấy link audio
-        String audioUrl = response.body().split("\"")[3];  // đơn giản, không dùng JSON parser
-        System.out.println("🎧 Link audio: " + audioUrl);
-
-        // Tải dữ liệu âm thanh từ link
-        URL url = new URL(audioUrl);
-        try (InputStream in = url.openStream(); ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            byte[] buffer = new byte[4096];
-            int n;
-            while ((n = in.read(buffer)) != -1) {
-                baos.write(buffer, 0, n);
+    private void launch(String text, Path[] files, int index, CompletableFuture<Integer> winner,
+                        AtomicInteger running, List<CompletableFuture<Path>> calls) {
+        running.incrementAndGet();
+        requestCount.incrementAndGet();
+        CompletableFuture<Path> call = backend.synthesize(text, voice, speed, files[index])
+                .orTimeout(requestTimeoutMs, TimeUnit.MILLISECONDS);
+        calls.add(call);
+        call.whenComplete((path, error) -> {
+            if (error == null && winner.complete(index)) {
+                return; // thắng: nơi gọi sẽ đổi tên file này thành target
+            }
+            // Thua, lỗi hoặc bị hủy: file của request này không còn ai dùng, tự xóa
+            deleteQuietly(files[index]);
+            if (error != null && running.decrementAndGet() == 0 && !(error instanceof CancellationException)) {
+                // Chỉ báo lỗi khi không còn request nào đang chạy
+                winner.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
             }
-            return ByteString.copyFrom(baos.toByteArray());
+        });
+        if (winner.isDone()) {
+            // Request dự phòng được gửi đúng lúc nơi gọi đã có kết quả hoặc đã bỏ cuộc
+            call.cancel(true);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Không thể xóa file TTS tạm {}: {}", file, e.getMessage());
         }
     }
+
+    /** Ngưỡng gửi request dự phòng: p95 độ trễ gần đây, không nhỏ hơn tts.hedge.min-delay-ms. */
+    private long hedgeDelayMs() {
+        long[] sorted;
+        synchronized (latencies) {
+            if (latencyCount < MIN_SAMPLES_FOR_HEDGING) {
+                return Math.max(hedgeMinDelayMs, requestTimeoutMs / 4);
+            }
+            sorted = Arrays.copyOf(latencies, Math.min(latencyCount, LATENCY_SAMPLES));
+        }
+        Arrays.sort(sorted);
+        long p95 = TimeUnit.NANOSECONDS.toMillis(sorted[(int) (sorted.length * 0.95)]);
+        return Math.max(hedgeMinDelayMs, p95);
+    }
+
+    private void recordLatency(long nanos) {
+        synchronized (latencies) {
+            latencies[latencyCount % LATENCY_SAMPLES] = nanos;
+            latencyCount++;
+        }
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
 }
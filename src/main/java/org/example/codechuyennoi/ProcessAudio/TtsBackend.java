@@ -0,0 +1,24 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Điểm mở rộng cho dịch vụ đọc văn bản. Mỗi backend là một Spring bean, được chọn bằng tên
+ * qua thuộc tính tts.backend; {@link TextToSpeech} lo thử lại, gửi request dự phòng (hedging)
+ * và ngắt mạch ở phía trên, nên backend chỉ cần thực hiện đúng một lần gọi.
+ */
+public interface TtsBackend {
+
+    /** Tên dùng trong thuộc tính tts.backend. */
+    String name();
+
+    /**
+     * Đọc văn bản và ghi file MP3 vào target, không chặn thread gọi.
+     *
+     * @return future hoàn thành với target khi file đã ghi xong, hoặc lỗi nếu lần gọi thất bại.
+     *         Hủy future sẽ hủy request đang chạy nếu backend hỗ trợ; lần gọi không hoàn tất được future
+     *         (lỗi, bị hủy, về sau khi đã bị hủy) phải tự xóa target.
+     */
+    CompletableFuture<Path> synthesize(String text, String voice, String speed, Path target);
+}
@@ -0,0 +1,308 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Lớp TtsCache lưu âm thanh TTS đã tạo xuống đĩa để chạy lại một chương (hoặc thử lại sau lỗi ffmpeg)
+ * không phải gọi lại API TTS cho văn bản đã đọc.
+ *
+ * Khóa là SHA-256 của (văn bản đã chuẩn hóa, giọng, tốc độ); mỗi mục là một file ab/&lt;khóa&gt;.mp3 được ghi ra
+ * file tạm rồi đổi tên, nên ứng dụng dừng giữa chừng không để lại mục ghi dở. Thời điểm sửa file được dùng
+ * làm thời điểm truy cập, nên không cần file index: thứ tự LRU được dựng lại bằng cách quét thư mục khi khởi động.
+ * Khi tổng dung lượng vượt tts.cache.max-bytes, mục lâu không dùng nhất bị xóa trước.
+ */
+@Component
+public class TtsCache {
+    private static final Logger logger = LoggerFactory.getLogger(TtsCache.class);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final String SUFFIX = ".mp3";
+
+    private final boolean enabled;
+    private final Path cacheDir;
+    private final long maxBytes;
+
+    // Thứ tự truy cập: phần tử đầu là mục lâu không dùng nhất; giá trị là kích thước file
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public TtsCache(@Value("${tts.cache.enabled:true}") boolean enabled,
+                    @Value("${tts.cache.path:tts-cache}") String cachePath,
+                    @Value("${tts.cache.max-bytes:2147483648}") long maxBytes) {
+        this.enabled = enabled;
+        this.cacheDir = Path.of(cachePath);
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            logger.info("Cache TTS đang tắt");
+            return;
+        }
+        try {
+            Files.createDirectories(cacheDir);
+            scan();
+            logger.info("Cache TTS: {} mục, {} bytes tại {}", entries.size(), totalBytes, cacheDir.toAbsolutePath());
+        } catch (IOException e) {
+            logger.warn("Không thể mở cache TTS tại {}: {}", cacheDir, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (enabled) {
+            logger.info("Cache TTS: {} lần trúng, {} lần trượt (tỉ lệ trúng {}%), {} mục bị loại",
+                    hits.get(), misses.get(), Math.round(getHitRatio() * 100), evictions.get());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Khóa cache của một đoạn văn bản với giọng và tốc độ cho trước. Văn bản được chuẩn hóa Unicode (NFC)
+     * và gộp khoảng trắng để các lần làm sạch khác nhau chút ít về khoảng trắng vẫn trúng cache.
+     */
+    public static String key(String text, String voice, String speed) {
+        String normalized = WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFC)).replaceAll(" ").trim();
+        return sha256(normalized + '\u0000' + voice + '\u0000' + speed);
+    }
+
+    /**
+     * Đặt bản sao âm thanh đã lưu của khóa vào target (hard link nếu được, không thì copy), thay file cũ
+     * một cách nguyên tử. Bản sao được tạo trong khi giữ khóa, nên mục không thể bị loại giữa chừng; sau đó
+     * target là file riêng của người gọi, cache có loại mục đi cũng không ảnh hưởng.
+     *
+     * @return true nếu có trong cache và đã đặt vào target
+     */
+    public boolean copyTo(String key, Path target) {
+        if (!enabled) {
+            return false;
+        }
+        Path tmp = target.resolveSibling(target.getFileName() + ".cache");
+        try {
+            Files.deleteIfExists(tmp);
+            synchronized (this) {
+                if (entries.get(key) == null) {
+                    misses.incrementAndGet();
+                    return false;
+                }
+                Path cached = entryPath(key);
+                try {
+                    linkOrCopy(cached, tmp);
+                    Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+                } catch (NoSuchFileException e) {
+                    logger.warn("Mục cache TTS {} bị mất: {}", key, e.getMessage());
+                    remove(key);
+                    misses.incrementAndGet();
+                    return false;
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            hits.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            logger.warn("Không thể lấy mục cache TTS {}: {}", key, e.getMessage());
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // chỉ là file tạm
+            }
+        }
+    }
+
+    /**
+     * Lưu file âm thanh vừa tạo cho khóa.
+     *
+     * @param keepSource false thì file nguồn được chuyển hẳn vào cache (không tốn thêm chỗ),
+     *                   true thì cache giữ một hard link/bản sao và file nguồn vẫn còn
+     */
+    public void putFile(String key, Path source, boolean keepSource) {
+        if (!enabled) {
+            return;
+        }
+        Path file = entryPath(key);
+        try {
+            long size = Files.size(source);
+            if (size == 0) {
+                return;
+            }
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(key + "." + Thread.currentThread().getId() + ".tmp");
+            try {
+                if (keepSource) {
+                    linkOrCopy(source, tmp);
+                } else {
+                    Files.move(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            synchronized (this) {
+                Long old = entries.put(key, size);
+                totalBytes += size - (old == null ? 0 : old);
+                evictIfNeeded();
+            }
+        } catch (IOException e) {
+            logger.warn("Không thể lưu cache TTS {}: {}", key, e.getMessage());
+        }
+    }
+
+    public synchronized void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+            delete(key);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    private void scan() throws IOException {
+        List<Scanned> found = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(cacheDir, 2)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    // File tạm của lần ghi bị dừng giữa chừng
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(SUFFIX)) {
+                    found.add(new Scanned(name.substring(0, name.length() - SUFFIX.length()),
+                            Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+                }
+            }
+        }
+        // Dựng lại thứ tự LRU theo thời điểm dùng gần nhất
+        found.sort(Comparator.comparingLong(f -> f.lastUsed));
+        synchronized (this) {
+            for (Scanned f : found) {
+                entries.put(f.key, f.size);
+                totalBytes += f.size;
+            }
+            evictIfNeeded();
+        }
+    }
+
+    private void evictIfNeeded() {
+        if (maxBytes <= 0) {
+            return;
+        }
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        int evicted = 0;
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            it.remove();
+            totalBytes -= entry.getValue();
+            delete(entry.getKey());
+            evicted++;
+        }
+        if (evicted > 0) {
+            evictions.addAndGet(evicted);
+            logger.info("Cache TTS vượt {} bytes, đã loại {} mục lâu không dùng", maxBytes, evicted);
+        }
+    }
+
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(entryPath(key));
+        } catch (NoSuchFileException ignored) {
+            // đã bị xóa
+        } catch (IOException e) {
+            logger.warn("Không thể xóa mục cache TTS {}: {}", key, e.getMessage());
+        }
+    }
+
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Khác phân vùng hoặc hệ thống file không hỗ trợ hard link
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path entryPath(String key) {
+        return cacheDir.resolve(key.substring(0, 2)).resolve(key + SUFFIX);
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM không hỗ trợ SHA-256", e);
+        }
+    }
+
+    private static final class Scanned {
+        final String key;
+        final long size;
+        final long lastUsed;
+
+        Scanned(String key, long size, long lastUsed) {
+            this.key = key;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package org.example.codechuyennoi.ProcessStory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Lớp ChapterManifest lưu trạng thái xử lý của mọi chương trong một truyện (đã tải, đã làm sạch,
+ * đã có giọng đọc, đã dựng video, đã upload) cùng hash nội dung văn bản, thay cho việc kiểm tra
+ * từng file chuong-N.txt trên đĩa.
+ *
+ * Trạng thái nằm trong bộ nhớ dưới dạng mảng byte cờ và mảng long hash, đánh chỉ số theo số chương.
+ * Trên đĩa gồm ảnh chụp manifest.bin và nhật ký ghi trước manifest.journal: mỗi thay đổi được nối vào
+ * nhật ký (bản ghi có CRC) và force xuống đĩa trước khi có hiệu lực trong bộ nhớ; khi mở thì đọc ảnh chụp
+ * rồi phát lại nhật ký và bỏ bản ghi cuối bị ghi dở.
+ * Nhật ký dài quá thì được gộp vào ảnh chụp mới.
+ */
+public class ChapterManifest implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ChapterManifest.class);
+
+    public static final int FETCHED = 1;
+    public static final int CLEANED = 1 << 1;
+    public static final int VOICED = 1 << 2;
+    public static final int RENDERED = 1 << 3;
+    public static final int UPLOADED = 1 << 4;
+
+    static final String SNAPSHOT_FILE = "manifest.bin";
+    static final String JOURNAL_FILE = "manifest.journal";
+    private static final int SNAPSHOT_MAGIC = 0x434D4631; // "CMF1"
+    // chương (int) + trạng thái (byte) + hash (long) + crc (int)
+    private static final int RECORD_SIZE = 4 + 1 + 8 + 4;
+    private static final int MIN_COMPACT_RECORDS = 1024;
+    private static final Pattern CHAPTER_FILE = Pattern.compile("chuong-(\\d+)\\.txt");
+
+    private final Path dir;
+    private byte[] states = new byte[64];
+    private long[] hashes = new long[64];
+    private int highestChapter;
+    private FileChannel journal;
+    private int journalRecords;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+
+    private ChapterManifest(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Mở manifest của truyện trong thư mục cho trước. Lần đầu (chưa có manifest) trạng thái được dựng
+     * từ một lần liệt kê thư mục: các file chuong-N.txt không rỗng được coi là đã tải và làm sạch.
+     */
+    public static ChapterManifest open(Path storyDir) throws IOException {
+        Files.createDirectories(storyDir);
+        ChapterManifest manifest = new ChapterManifest(storyDir);
+        Path snapshot = storyDir.resolve(SNAPSHOT_FILE);
+        Path journalPath = storyDir.resolve(JOURNAL_FILE);
+        boolean fresh = !Files.exists(snapshot) && !Files.exists(journalPath);
+        if (!fresh) {
+            manifest.loadSnapshot(snapshot);
+            manifest.replayJournal(journalPath);
+        }
+        manifest.journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        manifest.journal.position(manifest.journal.size());
+        if (fresh) {
+            manifest.seedFromDirectory();
+        }
+        return manifest;
+    }
+
+    public synchronized int state(int chapter) {
+        return chapter > 0 && chapter < states.length ? states[chapter] & 0xFF : 0;
+    }
+
+    public boolean has(int chapter, int flags) {
+        return (state(chapter) & flags) == flags;
+    }
+
+    /**
+     * Hash 64 bit của văn bản đã làm sạch, 0 nếu chưa biết.
+     */
+    public synchronized long hash(int chapter) {
+        return chapter > 0 && chapter < hashes.length ? hashes[chapter] : 0;
+    }
+
+    /**
+     * Bật thêm các cờ trạng thái cho chương. Hash khác 0 sẽ thay hash cũ.
+     */
+    public synchronized void mark(int chapter, int flags, long hash) {
+        update(chapter, state(chapter) | flags, hash != 0 ? hash : hash(chapter));
+    }
+
+    public void mark(int chapter, int flags) {
+        mark(chapter, flags, 0);
+    }
+
+    /**
+     * Tắt các cờ trạng thái của chương, ví dụ khi cần xử lý lại.
+     */
+    public synchronized void clear(int chapter, int flags) {
+        update(chapter, state(chapter) & ~flags, hash(chapter));
+    }
+
+    /** Số chương lớn nhất từng được ghi nhận trong manifest. */
+    public synchronized int getHighestChapter() {
+        return highestChapter;
+    }
+
+    /**
+     * Gộp nhật ký vào ảnh chụp mới (ghi file tạm rồi đổi tên) và làm rỗng nhật ký.
+     */
+    public synchronized void compact() throws IOException {
+        Path snapshot = dir.resolve(SNAPSHOT_FILE);
+        Path tmp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(highestChapter);
+            for (int chapter = 1; chapter <= highestChapter; chapter++) {
+                out.writeByte(states[chapter]);
+                out.writeLong(hashes[chapter]);
+            }
+            out.flush();
+            // Ảnh chụp phải nằm trên đĩa trước khi nhật ký bị làm rỗng
+            channel.force(true);
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal.truncate(0);
+        journal.position(0);
+        journalRecords = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (journal != null && journal.isOpen()) {
+            if (journalRecords > 0) {
+                compact();
+            }
+            journal.close();
+        }
+    }
+
+    /**
+     * Hash nội dung dùng cho manifest: 64 bit đầu của SHA-256 văn bản UTF-8.
+     */
+    public static long contentHash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            long hash = ByteBuffer.wrap(digest).getLong();
+            return hash != 0 ? hash : 1;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM không hỗ trợ SHA-256", e);
+        }
+    }
+
+    private void update(int chapter, int newState, long newHash) {
+        if (chapter <= 0) {
+            return;
+        }
+        if (state(chapter) == newState && hash(chapter) == newHash) {
+            return;
+        }
+        // Ghi và force nhật ký trước rồi mới đổi trạng thái trong bộ nhớ: trạng thái mà has() trả về
+        // luôn đã nằm trên đĩa, mất điện cũng không làm manifest báo xong một bước chưa được ghi nhận
+        try {
+            appendRecord(chapter, (byte) newState, newHash);
+        } catch (IOException e) {
+            logger.error("Không thể ghi nhật ký manifest {}, bỏ thay đổi chương {}: {}", dir, chapter, e.getMessage());
+            return;
+        }
+        apply(chapter, (byte) newState, newHash);
+        try {
+            if (journalRecords > Math.max(MIN_COMPACT_RECORDS, 2 * highestChapter)) {
+                compact();
+            }
+        } catch (IOException e) {
+            logger.error("Không thể gộp nhật ký manifest {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private void apply(int chapter, byte state, long hash) {
+        if (chapter >= states.length) {
+            int capacity = Math.max(chapter + 1, states.length * 2);
+            states = Arrays.copyOf(states, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        states[chapter] = state;
+        hashes[chapter] = hash;
+        highestChapter = Math.max(highestChapter, chapter);
+    }
+
+    private void appendRecord(int chapter, byte state, long hash) throws IOException {
+        record.clear();
+        record.putInt(chapter).put(state).putLong(hash);
+        crc.reset();
+        crc.update(record.array(), 0, RECORD_SIZE - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        long start = journal.position();
+        try {
+            while (record.hasRemaining()) {
+                journal.write(record);
+            }
+            journal.force(false);
+        } catch (IOException e) {
+            // Bỏ phần bản ghi đã ghi dở để bản ghi sau vẫn thẳng hàng
+            journal.truncate(start);
+            journal.position(start);
+            throw e;
+        }
+        journalRecords++;
+    }
+
+    private void loadSnapshot(Path snapshot) throws IOException {
+        if (!Files.exists(snapshot)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                logger.warn("Ảnh chụp manifest {} không hợp lệ, bỏ qua", snapshot);
+                return;
+            }
+            int count = in.readInt();
+            for (int chapter = 1; chapter <= count; chapter++) {
+                byte state = in.readByte();
+                long hash = in.readLong();
+                if (state != 0 || hash != 0) {
+                    apply(chapter, state, hash);
+                }
+            }
+        } catch (EOFException e) {
+            logger.warn("Ảnh chụp manifest {} bị cắt ngắn, dùng phần đọc được", snapshot);
+        }
+    }
+
+    private void replayJournal(Path journalPath) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+        long validBytes = 0;
+        byte[] buf = new byte[RECORD_SIZE];
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(journalPath))) {
+            while (in.readNBytes(buf, 0, RECORD_SIZE) == RECORD_SIZE) {
+                ByteBuffer rec = ByteBuffer.wrap(buf);
+                int chapter = rec.getInt();
+                byte state = rec.get();
+                long hash = rec.getLong();
+                crc.reset();
+                crc.update(buf, 0, RECORD_SIZE - 4);
+                if (rec.getInt() != (int) crc.getValue() || chapter <= 0) {
+                    break;
+                }
+                apply(chapter, state, hash);
+                validBytes += RECORD_SIZE;
+                journalRecords++;
+            }
+        }
+        if (validBytes < Files.size(journalPath)) {
+            // Bản ghi cuối bị ghi dở (ứng dụng dừng giữa chừng): cắt bỏ để nối tiếp từ chỗ hợp lệ
+            logger.warn("Nhật ký manifest {} có phần đuôi hỏng, cắt về {} bytes", journalPath, validBytes);
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+                channel.truncate(validBytes);
+            }
+        }
+    }
+
+    private void seedFromDirectory() throws IOException {
+        int seeded = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher m = CHAPTER_FILE.matcher(file.getFileName().toString());
+                if (m.matches() && Files.size(file) > 0) {
+                    int chapter = Integer.parseInt(m.group(1));
+                    apply(chapter, (byte) (FETCHED | CLEANED), 0);
+                    seeded++;
+                }
+            }
+        }
+        compact();
+        logger.info("Dựng manifest mới cho {} từ {} file chương có sẵn", dir, seeded);
+    }
+}
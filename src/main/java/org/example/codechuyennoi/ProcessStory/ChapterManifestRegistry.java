@@ -0,0 +1,56 @@
+package org.example.codechuyennoi.ProcessStory;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lớp ChapterManifestRegistry giữ một {@link ChapterManifest} cho mỗi truyện, mở lười lần đầu được hỏi
+ * và dùng chung cho StoryProcessor, ChapterMonitor và WorkflowCoordinator.
+ */
+@Component
+public class ChapterManifestRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(ChapterManifestRegistry.class);
+
+    private final Path storageDir;
+    private final Map<String, ChapterManifest> manifests = new ConcurrentHashMap<>();
+
+    public ChapterManifestRegistry(@Value("${story.storage.path:luutrutruyen}") String storagePath) {
+        this.storageDir = Path.of(storagePath);
+    }
+
+    /**
+     * Manifest của truyện, nằm trong thư mục luutrutruyen/&lt;storyName&gt;/.
+     */
+    public ChapterManifest forStory(String storyName) {
+        return manifests.computeIfAbsent(storyName, name -> {
+            try {
+                ChapterManifest manifest = ChapterManifest.open(storageDir.resolve(name));
+                logger.info("Đã mở manifest truyện '{}' (chương lớn nhất: {})", name, manifest.getHighestChapter());
+                return manifest;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Không thể mở manifest truyện " + name, e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        manifests.forEach((name, manifest) -> {
+            try {
+                manifest.close();
+            } catch (IOException e) {
+                logger.warn("Không thể đóng manifest truyện '{}': {}", name, e.getMessage());
+            }
+        });
+        manifests.clear();
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.codechuyennoi.ProcessStory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Lớp ChapterSequencer lưu các chương theo đúng thứ tự số chương dù chúng xử lý xong không theo thứ tự:
+ * chương về sớm được giữ lại cho tới khi mọi chương trước nó đã được lưu hoặc bỏ qua.
+ * Nhờ vậy khi một chương lỗi (điểm dừng), không có chương nào sau nó đã được ghi ra đĩa hay manifest.
+ */
+final class ChapterSequencer {
+    // Giá trị null: chương được bỏ qua (đã xử lý từ lần trước), chỉ cần đi tiếp
+    private final TreeMap<Integer, Story> pending = new TreeMap<>();
+    private final AtomicInteger stopAt;
+    private final Consumer<Story> persist;
+    private int next;
+
+    /**
+     * @param firstChapter chương đầu tiên của dải cần lưu
+     * @param stopAt       điểm dừng dùng chung với các stage; chương từ đây trở đi không bao giờ được lưu
+     * @param persist      ghi một chương, luôn được gọi theo thứ tự tăng dần và không đồng thời
+     */
+    ChapterSequencer(int firstChapter, AtomicInteger stopAt, Consumer<Story> persist) {
+        this.next = firstChapter;
+        this.stopAt = stopAt;
+        this.persist = persist;
+    }
+
+    /** Chương đã xử lý xong, lưu ngay nếu tới lượt. */
+    synchronized void complete(Story story) {
+        pending.put(story.getChapterNumber(), story);
+        drain();
+    }
+
+    /** Chương không cần lưu (đã xử lý từ lần trước), chỉ đánh dấu đã qua. */
+    synchronized void skip(int chapterNumber) {
+        pending.put(chapterNumber, null);
+        drain();
+    }
+
+    /** Chương kế tiếp đang chờ để lưu. */
+    synchronized int getNext() {
+        return next;
+    }
+
+    /** Số chương đã xử lý xong nhưng chưa được lưu vì còn chờ chương trước hoặc nằm sau điểm dừng. */
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private void drain() {
+        Map.Entry<Integer, Story> head;
+        while ((head = pending.firstEntry()) != null && head.getKey() == next && next < stopAt.get()) {
+            pending.pollFirstEntry();
+            if (head.getValue() != null) {
+                persist.accept(head.getValue());
+            }
+            next++;
+        }
+    }
+}
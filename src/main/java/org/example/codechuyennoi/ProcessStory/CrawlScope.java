@@ -0,0 +1,201 @@
+package org.example.codechuyennoi.ProcessStory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lớp CrawlScope gom các tác vụ crawl con vào một phạm vi có cấu trúc (giống StructuredTaskScope.ShutdownOnFailure):
+ * mọi tác vụ fork trong scope đều kết thúc trước khi scope đóng; tác vụ đầu tiên ném lỗi hoặc
+ * quá hạn chót sẽ hủy ngay toàn bộ tác vụ anh em (interrupt thread đang chạy, bỏ tác vụ chưa chạy).
+ *
+ * Mỗi tác vụ chạy trên một virtual thread nếu JVM hỗ trợ (Java 21+), ngược lại dùng pool platform thread
+ * với số thread cho trước. Số request thực sự chạy song song do {@link org.example.codechuyennoi.ProcessText.HostRateLimiter}
+ * giới hạn chứ không phải số thread.
+ */
+public final class CrawlScope implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CrawlScope.class);
+    private static final Duration CLOSE_GRACE = Duration.ofSeconds(10);
+
+    private final String name;
+    private final ExecutorService executor;
+    private final List<Future<?>> tasks = new CopyOnWriteArrayList<>();
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private int pending;
+    private volatile boolean shutdown;
+
+    /**
+     * @param name               tên scope, dùng đặt tên thread và ghi log
+     * @param fallbackParallelism số platform thread khi JVM không có virtual thread
+     */
+    public CrawlScope(String name, int fallbackParallelism) {
+        this.name = name;
+        this.executor = newExecutor(name, Math.max(1, fallbackParallelism));
+    }
+
+    /**
+     * Chạy tác vụ trong scope. Tác vụ fork sau khi scope đã shutdown sẽ bị hủy ngay.
+     */
+    public <T> Future<T> fork(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task) {
+            @Override
+            protected void done() {
+                onDone(this);
+            }
+        };
+        lock.lock();
+        try {
+            pending++;
+        } finally {
+            lock.unlock();
+        }
+        tasks.add(future);
+        if (shutdown) {
+            future.cancel(false);
+            return future;
+        }
+        try {
+            executor.execute(future);
+        } catch (RuntimeException e) {
+            // Executor đã bị tắt do scope shutdown giữa chừng
+            future.cancel(false);
+        }
+        return future;
+    }
+
+    /**
+     * Chờ tới khi mọi tác vụ kết thúc, scope bị shutdown (do lỗi hoặc bị gọi trực tiếp) hoặc tới hạn chót.
+     * Tới hạn chót thì scope tự shutdown để hủy các tác vụ còn lại.
+     *
+     * @throws TimeoutException nếu tới hạn chót mà còn tác vụ chưa xong
+     */
+    public void joinUntil(Instant deadline) throws InterruptedException, TimeoutException {
+        lock.lock();
+        try {
+            while (pending > 0 && !shutdown) {
+                long remaining = Duration.between(Instant.now(), deadline).toNanos();
+                if (remaining <= 0) {
+                    break;
+                }
+                changed.awaitNanos(remaining);
+            }
+            if (pending > 0 && !shutdown) {
+                logger.warn("Scope {} quá hạn với {} tác vụ chưa xong, hủy toàn bộ.", name, pending);
+                shutdown();
+                throw new TimeoutException("Scope " + name + " quá hạn");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ném lại lỗi của tác vụ thất bại đầu tiên (nếu có) sau khi join.
+     */
+    public void throwIfFailed() throws ExecutionException {
+        Throwable failure = firstFailure.get();
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+    }
+
+    /**
+     * Hủy mọi tác vụ chưa xong: tác vụ chưa chạy bị bỏ, thread đang chạy bị interrupt.
+     */
+    public void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        for (Future<?> task : tasks) {
+            task.cancel(true);
+        }
+        executor.shutdownNow();
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Đóng scope: hủy các tác vụ còn sót và chờ thread của chúng thoát hẳn.
+     */
+    @Override
+    public void close() {
+        shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_GRACE.toMillis(), TimeUnit.MILLISECONDS)) {
+                logger.warn("Scope {}: còn thread chưa dừng sau {} giây.", name, CLOSE_GRACE.getSeconds());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void onDone(FutureTask<?> task) {
+        if (!task.isCancelled()) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                if (firstFailure.compareAndSet(null, e.getCause())) {
+                    logger.error("Scope {}: tác vụ lỗi, hủy các tác vụ còn lại: {}", name, e.getCause().toString());
+                    shutdown();
+                }
+            } catch (InterruptedException | CancellationException ignored) {
+                // get() trên tác vụ đã xong không chặn; không xảy ra
+            }
+        }
+        lock.lock();
+        try {
+            pending--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ExecutorService newExecutor(String name, int fallbackParallelism) {
+        try {
+            // Java 21+: mỗi tác vụ một virtual thread. Gọi qua reflection để vẫn biên dịch với Java 17.
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newFixedThreadPool(fallbackParallelism, r -> {
+                Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
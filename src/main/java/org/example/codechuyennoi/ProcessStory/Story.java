@@ -1,5 +1,8 @@
 package org.example.codechuyennoi.ProcessStory;
 
+import org.example.codechuyennoi.ProcessText.SentenceSegmenter;
+import org.example.codechuyennoi.ProcessText.SentenceSegmenter.Sentences;
+
 import java.util.List;
 
 @lombok.Data // Tự động sinh getter, setter, equals, hashCode, toString, constructor mặc định
@@ -11,6 +14,13 @@ public class Story {
 
     private String storyName;
 
+    // Kết quả chia câu của processedText, tính một lần khi cần và bỏ đi khi văn bản thay đổi
+    @lombok.Getter(lombok.AccessLevel.NONE)
+    @lombok.Setter(lombok.AccessLevel.NONE)
+    @lombok.EqualsAndHashCode.Exclude
+    @lombok.ToString.Exclude
+    private Sentences segmentation;
+
      // Constructor khởi tạo Story với tên truyện, số chương và văn bản đã xử lý.
 
     public Story(String storyName, int chapterNumber, String processedText) {
@@ -19,16 +29,30 @@ public class Story {
         this.storyName = storyName;
     }
 
+    public void setProcessedText(String processedText) {
+        this.processedText = processedText;
+        this.segmentation = null;
+    }
+
+    /**
+     * Các câu của processedText theo {@link SentenceSegmenter}, dùng chung cho ảnh, TTS và phụ đề.
+     */
+    public Sentences getSegmentation() {
+        Sentences result = segmentation;
+        if (result == null) {
+            result = SentenceSegmenter.segment(processedText);
+            segmentation = result;
+        }
+        return result;
+    }
 
     /**
      * Trích xuất danh sách các câu từ processedText.
-     * Dựa trên dấu kết thúc câu: '.', '!', '?' và khoảng trắng sau đó.
      *
-     * @return danh sách các câu, hoặc danh sách rỗng nếu processedText rỗng
+     * @return danh sách các câu (chuỗi con chỉ được tạo khi đọc từng phần tử), hoặc danh sách rỗng nếu processedText rỗng
      */
     public List<String> getSentences() {
-        if (processedText == null || processedText.isBlank()) return List.of();
-        return List.of(processedText.split("(?<=[.!?])\\s+")); // Tách câu theo dấu câu kết thúc
+        return getSegmentation().asList();
     }
     public String getChapterText() {
         return processedText != null ? processedText : "";
@@ -5,6 +5,9 @@ package org.example.codechuyennoi.ProcessStory;
 import org.example.codechuyennoi.ProcessStory.Story;
 import org.example.codechuyennoi.ProcessText.CleanText;
 import org.example.codechuyennoi.ProcessText.ExtractorText;
+import org.example.codechuyennoi.ProcessText.HostRateLimiter;
+import org.example.codechuyennoi.ProcessText.HtmlFetcher;
+import org.example.codechuyennoi.ProcessText.RawHtmlCache;
 import org.example.codechuyennoi.ProcessText.SourceStory;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
@@ -13,10 +16,18 @@ import org.springframework.stereotype.Service;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Slf4j
 @Service
@@ -24,18 +35,39 @@ public class StoryProcessor {
 
     private final ExtractorText extractorText;
     private final CleanText cleanText;
+    private final HtmlFetcher htmlFetcher;
+    private final HostRateLimiter rateLimiter;
+    private final RawHtmlCache htmlCache;
+    private final ChapterManifestRegistry manifests;
 
     @Value("${story.batch.size:5}")
     private int batchSize;
 
+    @Value("${story.pipeline.queue.capacity:0}")
+    private int queueCapacity;
+
+    // pipeline: các stage fetch/extract/clean/persist nối bằng hàng đợi; virtual: mỗi chương một tác vụ trong CrawlScope;
+    // cache: không crawl, chỉ trích xuất/làm sạch lại HTML đã lưu trong RawHtmlCache
+    @Value("${story.crawl.mode:pipeline}")
+    private String crawlMode;
+
+    @Value("${story.crawl.timeout-minutes:30}")
+    private long crawlTimeoutMinutes;
+
     @Value("${story.storage.path:luutrutruyen}")
     private String storagePath;
 
     private Path storageDir;
 
-    public StoryProcessor(ExtractorText extractorText, CleanText cleanText) {
+    public StoryProcessor(ExtractorText extractorText, CleanText cleanText, HtmlFetcher htmlFetcher,
+                          HostRateLimiter rateLimiter, RawHtmlCache htmlCache,
+                          ChapterManifestRegistry manifests) {
         this.extractorText = extractorText;
         this.cleanText = cleanText;
+        this.htmlFetcher = htmlFetcher;
+        this.rateLimiter = rateLimiter;
+        this.htmlCache = htmlCache;
+        this.manifests = manifests;
     }
 
     @PostConstruct
@@ -49,6 +81,9 @@ public class StoryProcessor {
     }
 
     public List<Story> processChaptersInBatch(String storyName, String baseUrl, int startChapter, int endChapter) {
+        if ("cache".equalsIgnoreCase(crawlMode)) {
+            return reprocessFromCache(storyName, baseUrl, startChapter, endChapter);
+        }
         log.info("Bắt đầu xử lý truyện '{}' từ chương {} đến {}", storyName, startChapter, endChapter);
         Path storyDir = storageDir.resolve(storyName);
         try {
@@ -57,78 +92,364 @@ public class StoryProcessor {
             log.warn("Không thể tạo thư mục truyện {}: {}", storyName, e.getMessage());
         }
 
-        BlockingQueue<Integer> chapterQueue = new LinkedBlockingQueue<>();
+        String site = siteOf(baseUrl);
         List<Story> processedStories = Collections.synchronizedList(new ArrayList<>());
+        // Chương đầu tiên không tải/trích xuất được: coi như hết truyện, bỏ qua các chương sau nó
+        AtomicInteger stopAt = new AtomicInteger(endChapter + 1);
+        Instant deadline = Instant.now().plus(Duration.ofMinutes(crawlTimeoutMinutes));
+        try {
+            if ("virtual".equalsIgnoreCase(crawlMode)) {
+                crawlPerChapter(storyName, storyDir, baseUrl, site, startChapter, endChapter,
+                        stopAt, deadline, processedStories);
+            } else {
+                crawlPipeline(storyName, storyDir, baseUrl, site, startChapter, stopAt, deadline, processedStories);
+            }
+        } catch (TimeoutException e) {
+            log.warn("Crawl truyện '{}' quá {} phút, đã hủy các tác vụ còn lại.", storyName, crawlTimeoutMinutes);
+        } catch (InterruptedException e) {
+            log.warn("Crawl truyện '{}' bị ngắt, đã hủy các tác vụ còn lại.", storyName);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Lỗi khi crawl truyện '{}': {}", storyName, e.getCause().getMessage(), e.getCause());
+        }
+        // Cả hai chế độ chỉ lưu dải chương liền nhau trước điểm dừng, nên mọi chương đã lưu đều được trả về
+        processedStories.sort(Comparator.comparingInt(Story::getChapterNumber));
 
-        Thread producer = new Thread(() -> {
-            for (int chap = startChapter; chap <= endChapter; chap++) {
-                Path file = storyDir.resolve("chuong-" + chap + ".txt");
-                if (Files.exists(file)) {
-                    log.info("Producer: chương {} đã có file, bỏ qua.", chap);
-                    continue;
-                }
-                String url = baseUrl + "/chuong-" + chap + "/";
-                try {
-                    String html = new SourceStory(url).fetchHtmlContent();
-                    if (html == null || html.isEmpty()) break;
+        log.info("Hoàn thành xử lý '{}'. Tổng số chương: {}", storyName, processedStories.size());
+        log.info("Thống kê tải trang: {}", htmlFetcher.metricsSummary());
+        rateLimiter.getLimits().forEach((host, limits) -> log.info("Giới hạn crawl {}: {}", host, limits));
+        htmlCache.flush();
+        return processedStories;
+    }
 
+    /**
+     * Chạy lại bước trích xuất và làm sạch trên HTML đã lưu trong {@link RawHtmlCache}, không gửi request nào.
+     * Dùng khi thay đổi quy tắc trích xuất/làm sạch: file chương cũ bị ghi đè bằng kết quả mới.
+     * Chương không có trong cache được bỏ qua.
+     */
+    public List<Story> reprocessFromCache(String storyName, String baseUrl, int startChapter, int endChapter) {
+        log.info("Xử lý lại truyện '{}' từ cache, chương {} đến {}", storyName, startChapter, endChapter);
+        Path storyDir = storageDir.resolve(storyName);
+        String site = siteOf(baseUrl);
+        AtomicInteger missing = new AtomicInteger();
+        // Chỉ đọc đĩa và tốn CPU, nên chia đều cho các core
+        List<Story> stories = IntStream.rangeClosed(startChapter, endChapter).parallel()
+                .mapToObj(chap -> {
+                    String html = htmlCache.get(chapterUrl(baseUrl, chap));
+                    if (html == null) {
+                        missing.incrementAndGet();
+                        return null;
+                    }
                     String rawText = extractorText.extractText(html);
-                    if (rawText == null || rawText.isEmpty()) break;
+                    String cleaned = rawText == null || rawText.isEmpty() ? null : cleanText.cleanStoryText(rawText, site);
+                    if (cleaned == null || cleaned.isEmpty()) {
+                        log.warn("Cache: chương {} không trích xuất được nội dung.", chap);
+                        return null;
+                    }
+                    Story story = new Story(storyName, chap, cleaned);
+                    saveStoryToFile(story, storyDir.resolve("chuong-" + chap + ".txt"));
+                    return story;
+                })
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingInt(Story::getChapterNumber))
+                .collect(Collectors.toList());
+        htmlCache.flush();
+        log.info("Đã xử lý lại {} chương của '{}' từ cache ({} chương không có trong cache).",
+                stories.size(), storyName, missing.get());
+        return stories;
+    }
+
+    /**
+     * Chế độ pipeline: các stage fetch/extract/clean/persist chạy trong một CrawlScope, nối với nhau bằng
+     * hàng đợi có giới hạn. Hết hạn hoặc stage lỗi sẽ hủy toàn bộ các stage thay vì chờ pool tự dừng.
+     * Chương được lưu theo thứ tự số chương, nên khi dừng giữa chừng chỉ có một dải chương liền nhau đã lưu.
+     */
+    private void crawlPipeline(String storyName, Path storyDir, String baseUrl, String site, int startChapter,
+                               AtomicInteger stopAt, Instant deadline, List<Story> processedStories)
+            throws InterruptedException, TimeoutException, ExecutionException {
+        int capacity = queueCapacity > 0 ? queueCapacity : batchSize * 2;
+        BlockingQueue<ChapterPayload> fetchedQueue = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<ChapterPayload> extractedQueue = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<ChapterPayload> cleanedQueue = new ArrayBlockingQueue<>(capacity);
+
+        AtomicInteger nextChapter = new AtomicInteger(startChapter);
+        // Số worker fetch bằng giới hạn cứng mỗi host; số request thực sự chạy do rate limiter quyết định
+        int fetchWorkers = rateLimiter.getMaxConcurrency();
+        AtomicInteger activeFetchers = new AtomicInteger(fetchWorkers);
+        ChapterManifest manifest = manifests.forStory(storyName);
+        // Các chương tải song song nên về không theo thứ tự; chỉ lưu khi mọi chương trước đã lưu xong
+        ChapterSequencer sequencer = new ChapterSequencer(startChapter, stopAt, story -> {
+            saveStoryToFile(story, storyDir.resolve("chuong-" + story.getChapterNumber() + ".txt"));
+            processedStories.add(story);
+        });
+
+        try (CrawlScope scope = new CrawlScope("crawl-" + storyName, fetchWorkers + 3)) {
+            for (int i = 0; i < fetchWorkers; i++) {
+                scope.fork(() -> {
+                    fetchStage(manifest, baseUrl, nextChapter, stopAt, activeFetchers, fetchedQueue);
+                    return null;
+                });
+            }
+            scope.fork(() -> {
+                runStage("extract", fetchedQueue, extractedQueue, stopAt, payload -> {
+                    payload.text = extractorText.extractText(payload.html);
+                    payload.html = null;
+                    return payload.text != null && !payload.text.isEmpty();
+                });
+                return null;
+            });
+            scope.fork(() -> {
+                runStage("clean", extractedQueue, cleanedQueue, stopAt, payload -> {
+                    payload.text = cleanText.cleanStoryText(payload.text, site);
+                    return payload.text != null && !payload.text.isEmpty();
+                });
+                return null;
+            });
+            scope.fork(() -> {
+                persistStage(storyName, cleanedQueue, sequencer);
+                return null;
+            });
+            scope.joinUntil(deadline);
+            scope.throwIfFailed();
+        } finally {
+            if (sequencer.getPendingCount() > 0) {
+                log.info("Bỏ {} chương đã xử lý nhưng nằm sau chương {} chưa lưu được.",
+                        sequencer.getPendingCount(), sequencer.getNext());
+            }
+        }
+    }
 
-                    chapterQueue.put(chap);
-                    log.info("Producer: enqueue chương {}.", chap);
-                } catch (Exception e) {
-                    log.error("Lỗi producer chương {}: {}", chap, e.getMessage());
+    /**
+     * Chế độ virtual: mỗi chương là một tác vụ riêng (tải, trích xuất, làm sạch, lưu) trên virtual thread.
+     * Tác vụ rẻ nên fork cả dải chương cùng lúc; số request đồng thời do {@link HostRateLimiter} giới hạn.
+     * Chương không có nội dung đánh dấu điểm dừng và hủy ngay các tác vụ của chương sau nó;
+     * lỗi bất ngờ hoặc hết hạn sẽ hủy toàn bộ scope. Chương được lưu theo thứ tự qua {@link ChapterSequencer},
+     * nên chương nằm sau điểm dừng không bao giờ bị ghi ra đĩa hay đánh dấu CLEANED.
+     */
+    private void crawlPerChapter(String storyName, Path storyDir, String baseUrl, String site,
+                                 int startChapter, int endChapter, AtomicInteger stopAt, Instant deadline,
+                                 List<Story> processedStories)
+            throws InterruptedException, TimeoutException, ExecutionException {
+        NavigableMap<Integer, Future<?>> tasks = new ConcurrentSkipListMap<>();
+        ChapterSequencer sequencer = new ChapterSequencer(startChapter, stopAt, story -> {
+            saveStoryToFile(story, storyDir.resolve("chuong-" + story.getChapterNumber() + ".txt"));
+            processedStories.add(story);
+            log.info("Crawl: đã xử lý chương {}.", story.getChapterNumber());
+        });
+        try (CrawlScope scope = new CrawlScope("crawl-" + storyName, rateLimiter.getMaxConcurrency())) {
+            for (int chap = startChapter; chap <= endChapter && chap < stopAt.get(); chap++) {
+                int chapterNumber = chap;
+                tasks.put(chapterNumber, scope.fork(() -> {
+                    crawlChapter(storyName, baseUrl, site, chapterNumber, stopAt, tasks, sequencer);
+                    return null;
+                }));
+            }
+            scope.joinUntil(deadline);
+            scope.throwIfFailed();
+        } finally {
+            if (sequencer.getPendingCount() > 0) {
+                log.info("Bỏ {} chương đã xử lý nhưng nằm sau chương {} chưa lưu được.",
+                        sequencer.getPendingCount(), sequencer.getNext());
+            }
+        }
+    }
+
+    private void crawlChapter(String storyName, String baseUrl, String site, int chap,
+                              AtomicInteger stopAt, NavigableMap<Integer, Future<?>> tasks,
+                              ChapterSequencer sequencer) {
+        ChapterManifest manifest = manifests.forStory(storyName);
+        if (chap >= stopAt.get()) {
+            return;
+        }
+        if (manifest.has(chap, ChapterManifest.CLEANED)) {
+            log.info("Crawl: chương {} đã xử lý, bỏ qua.", chap);
+            sequencer.skip(chap);
+            return;
+        }
+        String html = new SourceStory(chapterUrl(baseUrl, chap), htmlFetcher).fetchHtmlContent();
+        if (html != null && !html.isEmpty()) {
+            manifest.mark(chap, ChapterManifest.FETCHED);
+        }
+        String text = html == null || html.isEmpty() ? null : extractorText.extractText(html);
+        text = text == null || text.isEmpty() ? null : cleanText.cleanStoryText(text, site);
+        if (text == null || text.isEmpty()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return; // bị hủy giữa chừng, không phải hết truyện
+            }
+            log.warn("Crawl: chương {} không có nội dung, dừng tại đây.", chap);
+            if (stopAt.accumulateAndGet(chap, Math::min) == chap) {
+                tasks.tailMap(chap, false).values().forEach(task -> task.cancel(true));
+            }
+            return;
+        }
+        sequencer.complete(new Story(storyName, chap, text));
+    }
+
+    /**
+     * Stage tải HTML: nhiều worker cùng lấy số chương kế tiếp và đẩy nội dung đã tải vào hàng đợi.
+     * Worker cuối cùng kết thúc sẽ gửi tín hiệu END_OF_STREAM cho stage sau.
+     */
+    private void fetchStage(ChapterManifest manifest, String baseUrl, AtomicInteger nextChapter, AtomicInteger stopAt,
+                            AtomicInteger activeFetchers, BlockingQueue<ChapterPayload> out) {
+        try {
+            int chap;
+            while ((chap = nextChapter.getAndIncrement()) < stopAt.get()) {
+                if (manifest.has(chap, ChapterManifest.CLEANED)) {
+                    log.info("Fetch: chương {} đã xử lý, bỏ qua.", chap);
+                    out.put(ChapterPayload.skipped(chap));
+                    continue;
+                }
+                String html = new SourceStory(chapterUrl(baseUrl, chap), htmlFetcher).fetchHtmlContent();
+                if (html == null || html.isEmpty()) {
+                    stopAt.accumulateAndGet(chap, Math::min);
                     break;
                 }
+                manifest.mark(chap, ChapterManifest.FETCHED);
+                out.put(new ChapterPayload(chap, html));
+                log.info("Fetch: đã tải chương {}.", chap);
             }
-        });
-        producer.start();
-
-        ExecutorService consumers = Executors.newFixedThreadPool(batchSize);
-        for (int i = 0; i < batchSize; i++) {
-            consumers.submit(() -> {
-                try {
-                    while (true) {
-                        Integer chap = chapterQueue.poll(3, TimeUnit.SECONDS);
-                        if (chap == null) {
-                            if (!producer.isAlive()) break;
-                            else continue;
-                        }
-                        Optional<Story> storyOpt = processSingleChapter(storyName, baseUrl + "/chuong-" + chap + "/", chap);
-                        storyOpt.ifPresent(processedStories::add);
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (activeFetchers.decrementAndGet() == 0) {
+                putQuietly(out, ChapterPayload.END_OF_STREAM);
+            }
+        }
+    }
+
+    /**
+     * Vòng lặp chung của một stage: lấy payload từ hàng đợi vào, xử lý, đẩy sang hàng đợi ra.
+     * Payload không có nội dung sẽ đánh dấu điểm dừng; payload của chương bỏ qua được chuyển thẳng đi;
+     * END_OF_STREAM được chuyển tiếp rồi stage kết thúc. Lỗi bất ngờ không bị nuốt mà ném ra để
+     * CrawlScope hủy cả pipeline.
+     */
+    private void runStage(String name, BlockingQueue<ChapterPayload> in, BlockingQueue<ChapterPayload> out,
+                          AtomicInteger stopAt, Predicate<ChapterPayload> step) {
+        try {
+            while (true) {
+                ChapterPayload payload = in.take();
+                if (payload == ChapterPayload.END_OF_STREAM) {
+                    break;
                 }
-            });
+                if (payload.chapterNumber >= stopAt.get()) {
+                    continue;
+                }
+                if (payload.skipped) {
+                    out.put(payload);
+                    continue;
+                }
+                if (!step.test(payload)) {
+                    log.warn("Stage {}: chương {} không có nội dung, dừng tại đây.", name, payload.chapterNumber);
+                    stopAt.accumulateAndGet(payload.chapterNumber, Math::min);
+                    continue;
+                }
+                out.put(payload);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            putQuietly(out, ChapterPayload.END_OF_STREAM);
         }
-        consumers.shutdown();
+    }
+
+    /**
+     * Stage cuối: giao chương đã làm sạch cho {@link ChapterSequencer} để lưu theo thứ tự số chương.
+     */
+    private void persistStage(String storyName, BlockingQueue<ChapterPayload> in, ChapterSequencer sequencer) {
         try {
-            consumers.awaitTermination(30, TimeUnit.MINUTES);
+            while (true) {
+                ChapterPayload payload = in.take();
+                if (payload == ChapterPayload.END_OF_STREAM) {
+                    break;
+                }
+                if (payload.skipped) {
+                    sequencer.skip(payload.chapterNumber);
+                } else {
+                    sequencer.complete(new Story(storyName, payload.chapterNumber, payload.text));
+                }
+            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+    }
 
-        log.info("Hoàn thành xử lý '{}'. Tổng số chương: {}", storyName, processedStories.size());
-        return processedStories;
+    private void putQuietly(BlockingQueue<ChapterPayload> queue, ChapterPayload payload) {
+        try {
+            queue.put(payload);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     public Optional<Story> processSingleChapter(String storyName, String chapterUrl, int chapterNumber) {
-        Path chapterFile = storageDir.resolve(storyName).resolve("chuong-" + chapterNumber + ".txt");
-        if (Files.exists(chapterFile)) {
-            log.info("Consumer: chương {} đã có file.", chapterNumber);
+        if (manifests.forStory(storyName).has(chapterNumber, ChapterManifest.CLEANED)) {
+            log.info("Consumer: chương {} đã xử lý.", chapterNumber);
+            return Optional.empty();
+        }
+        return crawlSingleChapter(storyName, chapterUrl, chapterNumber);
+    }
+
+    /**
+     * Lấy văn bản các chương trong dải cho các bước phía sau (TTS, video). Chương chưa làm sạch được crawl
+     * bằng {@link #processChaptersInBatch} (theo story.crawl.mode và giới hạn đồng thời của rate limiter),
+     * chương đã làm sạch từ trước thì đọc lại từ file.
+     *
+     * @return các chương liền nhau theo thứ tự bắt đầu từ startChapter, dừng trước chương đầu tiên
+     * không lấy được (chưa có trên nguồn hoặc lỗi)
+     */
+    public List<Story> loadOrFetchChapters(String storyName, String baseUrl, int startChapter, int endChapter) {
+        ChapterManifest manifest = manifests.forStory(storyName);
+        Map<Integer, Story> crawled = new HashMap<>();
+        // Chế độ cache luôn xử lý lại cả dải; các chế độ khác chỉ crawl khi dải còn chương chưa làm sạch
+        if ("cache".equalsIgnoreCase(crawlMode) || IntStream.rangeClosed(startChapter, endChapter)
+                .anyMatch(chap -> !manifest.has(chap, ChapterManifest.CLEANED))) {
+            for (Story story : processChaptersInBatch(storyName, baseUrl, startChapter, endChapter)) {
+                crawled.put(story.getChapterNumber(), story);
+            }
+        }
+        List<Story> stories = new ArrayList<>(endChapter - startChapter + 1);
+        for (int chap = startChapter; chap <= endChapter; chap++) {
+            Story story = crawled.get(chap);
+            if (story == null) {
+                story = loadSavedChapter(storyName, baseUrl, chap).orElse(null);
+            }
+            if (story == null) {
+                break;
+            }
+            stories.add(story);
+        }
+        return stories;
+    }
+
+    /** Đọc lại chương đã làm sạch từ file; file hỏng thì tải lại chương đó. */
+    private Optional<Story> loadSavedChapter(String storyName, String baseUrl, int chapterNumber) {
+        ChapterManifest manifest = manifests.forStory(storyName);
+        if (!manifest.has(chapterNumber, ChapterManifest.CLEANED)) {
             return Optional.empty();
         }
+        Path chapterFile = storageDir.resolve(storyName).resolve("chuong-" + chapterNumber + ".txt");
+        try {
+            String text = Files.readString(chapterFile);
+            if (!text.isEmpty()) {
+                return Optional.of(new Story(storyName, chapterNumber, text));
+            }
+        } catch (IOException e) {
+            log.warn("Không đọc được chương {} đã lưu, tải lại: {}", chapterNumber, e.getMessage());
+        }
+        manifest.clear(chapterNumber, ChapterManifest.CLEANED);
+        return crawlSingleChapter(storyName, chapterUrl(baseUrl, chapterNumber), chapterNumber);
+    }
 
+    private Optional<Story> crawlSingleChapter(String storyName, String chapterUrl, int chapterNumber) {
+        Path chapterFile = storageDir.resolve(storyName).resolve("chuong-" + chapterNumber + ".txt");
         try {
-            String html = new SourceStory(chapterUrl).fetchHtmlContent();
+            String html = new SourceStory(chapterUrl, htmlFetcher).fetchHtmlContent();
             if (html == null || html.isEmpty()) return Optional.empty();
 
             String rawText = extractorText.extractText(html);
             if (rawText == null || rawText.isEmpty()) return Optional.empty();
 
-            String cleaned = cleanText.cleanStoryText(rawText);
+            String cleaned = cleanText.cleanStoryText(rawText, siteOf(chapterUrl));
             if (cleaned == null || cleaned.isEmpty()) return Optional.empty();
 
             Story story = new Story(storyName, chapterNumber, cleaned);
@@ -140,15 +461,67 @@ public class StoryProcessor {
         }
     }
 
+    private static String chapterUrl(String baseUrl, int chapterNumber) {
+        return baseUrl + "/chuong-" + chapterNumber + "/";
+    }
+
+    private String siteOf(String url) {
+        try {
+            return URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ghi văn bản chương ra file rồi ghi nhận vào manifest (sau khi file đã ghi xong,
+     * để manifest không bao giờ báo đã làm sạch cho một file chưa tồn tại).
+     */
     private void saveStoryToFile(Story story, Path filePath) {
         try {
             Files.createDirectories(filePath.getParent());
             try (FileWriter writer = new FileWriter(filePath.toFile())) {
                 writer.write(story.getProcessedText());
             }
+            ChapterManifest manifest = manifests.forStory(story.getStoryName());
+            long hash = ChapterManifest.contentHash(story.getProcessedText());
+            long previous = manifest.hash(story.getChapterNumber());
+            if (previous != 0 && previous != hash) {
+                // Nội dung đổi (ví dụ xử lý lại từ cache): audio/video cũ không còn khớp
+                manifest.clear(story.getChapterNumber(),
+                        ChapterManifest.VOICED | ChapterManifest.RENDERED | ChapterManifest.UPLOADED);
+            }
+            manifest.mark(story.getChapterNumber(), ChapterManifest.FETCHED | ChapterManifest.CLEANED, hash);
         } catch (IOException e) {
             log.error("Lỗi lưu chương: {}", e.getMessage(), e);
+        } catch (UncheckedIOException e) {
+            // Manifest không mở được: file chương đã ghi xong, lần sau trạng thái được dựng lại từ file
+            log.error("Không ghi được manifest cho chương {} của truyện '{}': {}",
+                    story.getChapterNumber(), story.getStoryName(), e.getMessage());
         }
     }
-}
 
+    /**
+     * Dữ liệu của một chương truyền giữa các stage: HTML sau khi tải, văn bản sau khi trích xuất/làm sạch.
+     */
+    private static final class ChapterPayload {
+        static final ChapterPayload END_OF_STREAM = new ChapterPayload(-1, null);
+
+        final int chapterNumber;
+        // Chương đã xử lý từ lần trước: không tải lại, chỉ báo cho stage lưu để giữ đúng thứ tự
+        boolean skipped;
+        String html;
+        String text;
+
+        ChapterPayload(int chapterNumber, String html) {
+            this.chapterNumber = chapterNumber;
+            this.html = html;
+        }
+
+        static ChapterPayload skipped(int chapterNumber) {
+            ChapterPayload payload = new ChapterPayload(chapterNumber, null);
+            payload.skipped = true;
+            return payload;
+        }
+    }
+}
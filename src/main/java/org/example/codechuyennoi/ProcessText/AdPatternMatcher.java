@@ -0,0 +1,138 @@
+package org.example.codechuyennoi.ProcessText;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Lớp AdPatternMatcher là automaton Aho-Corasick tìm đồng thời nhiều chuỗi quảng cáo trong một lần quét.
+ * So khớp không phân biệt hoa thường với ký tự ASCII (giống cờ {@code (?i)} của regex Java),
+ * ký tự có dấu phải khớp chính xác.
+ */
+public final class AdPatternMatcher {
+
+    private final int[] rootNext = new int[Character.MAX_VALUE + 1];
+    private char[][] childKeys;
+    private int[][] childStates;
+    private int[] fail;
+    private int[] matchLength;
+    private int stateCount;
+    private final int maxPatternLength;
+
+    public AdPatternMatcher(List<String> patterns) {
+        int capacity = 1;
+        int maxLength = 0;
+        for (String pattern : patterns) {
+            capacity += pattern.length();
+            maxLength = Math.max(maxLength, pattern.length());
+        }
+        this.maxPatternLength = maxLength;
+        childKeys = new char[capacity][];
+        childStates = new int[capacity][];
+        fail = new int[capacity];
+        matchLength = new int[capacity];
+        stateCount = 1;
+        for (String pattern : patterns) {
+            if (!pattern.isEmpty()) {
+                addPattern(pattern);
+            }
+        }
+        buildFailureLinks();
+    }
+
+    /** Chuyển trạng thái khi đọc ký tự c (state 0 là gốc). */
+    public int next(int state, char c) {
+        c = fold(c);
+        while (state != 0) {
+            int target = child(state, c);
+            if (target >= 0) {
+                return target;
+            }
+            state = fail[state];
+        }
+        return rootNext[c];
+    }
+
+    /**
+     * Độ dài mẫu dài nhất kết thúc tại trạng thái này, 0 nếu không có mẫu nào khớp.
+     */
+    public int matchLength(int state) {
+        return matchLength[state];
+    }
+
+    public int getMaxPatternLength() {
+        return maxPatternLength;
+    }
+
+    private void addPattern(String pattern) {
+        int state = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = fold(pattern.charAt(i));
+            int target = state == 0 ? (rootNext[c] == 0 ? -1 : rootNext[c]) : child(state, c);
+            if (target < 0) {
+                target = stateCount++;
+                if (state == 0) {
+                    rootNext[c] = target;
+                } else {
+                    addChild(state, c, target);
+                }
+            }
+            state = target;
+        }
+        matchLength[state] = Math.max(matchLength[state], pattern.length());
+    }
+
+    private void buildFailureLinks() {
+        Deque<Integer> queue = new ArrayDeque<>();
+        List<Integer> rootChildren = new ArrayList<>();
+        for (int c = 0; c < rootNext.length; c++) {
+            if (rootNext[c] != 0) {
+                rootChildren.add(rootNext[c]);
+            }
+        }
+        for (int state : rootChildren) {
+            fail[state] = 0;
+            queue.add(state);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            char[] keys = childKeys[state];
+            if (keys == null) {
+                continue;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                int target = childStates[state][i];
+                fail[target] = next(fail[state], keys[i]);
+                matchLength[target] = Math.max(matchLength[target], matchLength[fail[target]]);
+                queue.add(target);
+            }
+        }
+    }
+
+    private int child(int state, char c) {
+        char[] keys = childKeys[state];
+        if (keys != null) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return childStates[state][i];
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void addChild(int state, char c, int target) {
+        char[] keys = childKeys[state];
+        int n = keys == null ? 0 : keys.length;
+        childKeys[state] = keys == null ? new char[1] : Arrays.copyOf(keys, n + 1);
+        childStates[state] = keys == null ? new int[1] : Arrays.copyOf(childStates[state], n + 1);
+        childKeys[state][n] = c;
+        childStates[state][n] = target;
+    }
+
+    private static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -2,53 +2,197 @@ package org.example.codechuyennoi.ProcessText;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Lớp CleanText làm sạch văn bản chương sau khi trích xuất: bỏ dòng quảng cáo, bỏ ký tự đặc biệt,
+ * gom khoảng trắng. Toàn bộ việc làm sạch chạy trong một lần quét với automaton quảng cáo dựng sẵn
+ * và một bộ đệm dùng lại cho mỗi thread.
+ *
+ * Cấu hình (mặc định giữ nguyên danh sách cũ):
+ *  - clean.ads.line-prefixes: các cụm mở đầu dòng quảng cáo (phân tách bằng dấu phẩy), bị xóa tới hết dòng
+ *  - clean.ads.strip-chars: các ký tự bị xóa ở mọi nơi
+ *  - clean.ads.site.&lt;host&gt;.line-prefixes: cụm quảng cáo bổ sung cho riêng một website
+ */
 @Component
 public class CleanText {
     private static final Logger logger = LoggerFactory.getLogger(CleanText.class);
 
+    // Danh sách các mẫu quảng cáo phổ biến
+    private static final String DEFAULT_LINE_PREFIXES = String.join(",",
+            "Đọc truyện tại",           // ví dụ: Đọc truyện tại abc.xyz
+            "Nhấn theo dõi",            // ví dụ: Nhấn theo dõi để xem chương tiếp
+            "Chương mới nhất tại",
+            "Truyện được đăng tải",
+            "Website chính",
+            "Theo dõi để cập nhật",
+            "Cập nhật sớm nhất tại",
+            "Fanpage",
+            "Donate");
+    private static final String DEFAULT_STRIP_CHARS = "🍊";
+
+    private final Environment environment;
+    private final List<String> defaultPrefixes;
+    private final int[] stripChars;
+    private final AdPatternMatcher defaultMatcher;
+    private final Map<String, AdPatternMatcher> siteMatchers = new ConcurrentHashMap<>();
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(16 * 1024));
+
+    public CleanText(Environment environment) {
+        this.environment = environment;
+        this.defaultPrefixes = splitList(environment.getProperty("clean.ads.line-prefixes", DEFAULT_LINE_PREFIXES));
+        this.stripChars = environment.getProperty("clean.ads.strip-chars", DEFAULT_STRIP_CHARS)
+                .codePoints().distinct().sorted().toArray();
+        this.defaultMatcher = new AdPatternMatcher(defaultPrefixes);
+        logger.info("Đã dựng bộ lọc quảng cáo với {} mẫu", defaultPrefixes.size());
+    }
+
     public String cleanStoryText(String rawText) {
+        return cleanStoryText(rawText, null);
+    }
+
+    /**
+     * Làm sạch văn bản chương, dùng thêm các mẫu quảng cáo riêng của website nếu có cấu hình.
+     *
+     * @param rawText văn bản thô sau khi trích xuất
+     * @param site    host của website nguồn (ví dụ "truyenfull.vn"), null nếu không rõ
+     */
+    public String cleanStoryText(String rawText, String site) {
         if (rawText == null || rawText.isEmpty()) {
             logger.warn("Văn bản thô rỗng");
             return "";
         }
         try {
             logger.info("Đang làm sạch văn bản");
-            String text = rawText;
-            text = removeAds(text);
-
-            // Chỉ loại bỏ ký tự đặc biệt không cần thiết, giữ lại câu và ngắt dòng
-            String cleanedText = text
-                    .replaceAll("[^\\p{L}\\p{N}\\s.,!?\"“”‘’]", "")  // giữ lại câu và dấu hợp lệ
-                    .replaceAll("\\s+", " ")                          // gom khoảng trắng
-                    .replaceAll("(?m)^\\s*", "")                      // xóa khoảng trắng đầu dòng
-                    .trim();
-            return cleanedText;
+            return clean(rawText, matcherFor(site));
         } catch (Exception e) {
             logger.error("Lỗi khi làm sạch văn bản: {}", e.getMessage());
             return "";
         }
     }
 
-    private String removeAds(String text) {
-        // Danh sách các mẫu quảng cáo phổ biến
-        String[] adPatterns = {
-                "🍊",
-                "Đọc truyện tại[^\\n]*",           // ví dụ: Đọc truyện tại abc.xyz
-                "Nhấn theo dõi[^\\n]*",            // ví dụ: Nhấn theo dõi để xem chương tiếp
-                "Chương mới nhất tại[^\\n]*",
-                "Truyện được đăng tải[^\\n]*",
-                "Website chính[^\\n]*",
-                "Theo dõi để cập nhật[^\\n]*",
-                "Cập nhật sớm nhất tại[^\\n]*",
-                "Fanpage[^\\n]*",
-                "Donate[^\\n]*"
-        };
-
-        for (String pattern : adPatterns) {
-            text = text.replaceAll("(?i)" + pattern, "");  // (?i) để không phân biệt hoa thường
+    /**
+     * Một lần quét duy nhất, tương đương chuỗi xử lý cũ:
+     * xóa ký tự strip, xóa từ cụm quảng cáo tới hết dòng, chỉ giữ chữ/số/dấu câu hợp lệ,
+     * gom khoảng trắng thành một dấu cách và bỏ khoảng trắng đầu/cuối.
+     */
+    private String clean(String text, AdPatternMatcher matcher) {
+        StringBuilder out = buffers.get();
+        out.setLength(0);
+
+        // Vòng đệm lưu trạng thái đầu ra trước mỗi ký tự, để cắt ngược về đầu cụm quảng cáo khi khớp
+        int ringSize = Integer.highestOneBit(Math.max(1, matcher.getMaxPatternLength())) << 1;
+        int mask = ringSize - 1;
+        int[] ringLength = new int[ringSize];
+        boolean[] ringPending = new boolean[ringSize];
+
+        boolean pendingSpace = false;
+        boolean skippingLine = false;
+        int state = 0;
+        long streamPos = 0;
+        int len = text.length();
+        for (int i = 0; i < len; ) {
+            int cp = text.codePointAt(i);
+            int units = Character.charCount(cp);
+            i += units;
+            if (Arrays.binarySearch(stripChars, cp) >= 0) {
+                continue;
+            }
+            if (skippingLine) {
+                if (cp != '\n') {
+                    continue;
+                }
+                skippingLine = false;
+            } else {
+                boolean matched = false;
+                for (int u = 0; u < units && !matched; u++) {
+                    int slot = (int) (streamPos & mask);
+                    ringLength[slot] = out.length();
+                    ringPending[slot] = pendingSpace;
+                    state = matcher.next(state, text.charAt(i - units + u));
+                    streamPos++;
+                    int matchLength = matcher.matchLength(state);
+                    if (matchLength > 0) {
+                        int start = (int) ((streamPos - matchLength) & mask);
+                        out.setLength(ringLength[start]);
+                        pendingSpace = ringPending[start];
+                        matched = true;
+                    }
+                }
+                if (matched) {
+                    // Xóa từ đầu cụm quảng cáo tới hết dòng (giữ lại ký tự xuống dòng)
+                    skippingLine = true;
+                    state = 0;
+                    continue;
+                }
+            }
+
+            if (isRegexWhitespace(cp)) {
+                pendingSpace = out.length() > 0;
+            } else if (isKept(cp)) {
+                if (pendingSpace) {
+                    out.append(' ');
+                    pendingSpace = false;
+                }
+                out.appendCodePoint(cp);
+            }
+        }
+        String cleaned = out.toString();
+        if (out.capacity() > 256 * 1024) {
+            buffers.remove();
+        }
+        return cleaned;
+    }
+
+    private AdPatternMatcher matcherFor(String site) {
+        if (site == null || site.isBlank()) {
+            return defaultMatcher;
+        }
+        return siteMatchers.computeIfAbsent(site.toLowerCase(), host -> {
+            String extra = environment.getProperty("clean.ads.site." + host + ".line-prefixes");
+            if (extra == null || extra.isBlank()) {
+                return defaultMatcher;
+            }
+            List<String> prefixes = new ArrayList<>(defaultPrefixes);
+            prefixes.addAll(splitList(extra));
+            logger.info("Dựng bộ lọc quảng cáo riêng cho {} với {} mẫu", host, prefixes.size());
+            return new AdPatternMatcher(prefixes);
+        });
+    }
+
+    private static List<String> splitList(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    // \s của regex Java mặc định chỉ gồm khoảng trắng ASCII
+    private static boolean isRegexWhitespace(int cp) {
+        return cp == ' ' || cp == '\n' || cp == '\t' || cp == '\r' || cp == '\f' || cp == 0x0B;
+    }
+
+    // Giữ lại chữ, số và dấu câu hợp lệ: tương đương [\p{L}\p{N}.,!?"“”‘’]
+    private static boolean isKept(int cp) {
+        if (Character.isLetter(cp)) {
+            return true;
+        }
+        switch (Character.getType(cp)) {
+            case Character.DECIMAL_DIGIT_NUMBER:
+            case Character.LETTER_NUMBER:
+            case Character.OTHER_NUMBER:
+                return true;
+            default:
+                return cp == '.' || cp == ',' || cp == '!' || cp == '?' || cp == '"'
+                        || cp == '“' || cp == '”' || cp == '‘' || cp == '’';
         }
-        return text;
     }
 }
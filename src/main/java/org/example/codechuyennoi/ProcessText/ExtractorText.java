@@ -5,15 +5,28 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /** Lớp ExtractorText chịu trách nhiệm trích xuất văn bản chính từ nội dung HTML thô.
- * Sử dụng thư viện Jsoup để phân tích cú pháp HTML và lấy đoạn văn bản chứa truyện.
+ * Mặc định quét HTML dạng luồng bằng {@link StreamingChapterExtractor} (không dựng DOM),
+ * và dùng Jsoup phân tích toàn trang khi không tìm thấy thẻ chứa truyện.
  */
 @Component
 public class ExtractorText {
     private static final Logger logger = LoggerFactory.getLogger(ExtractorText.class);
 
+    private final boolean streaming;
+    private final String containerClass;
+    private final StreamingChapterExtractor streamingExtractor;
+
+    public ExtractorText(@Value("${extractor.mode:streaming}") String mode,
+                         @Value("${extractor.container-class:chapter-c}") String containerClass) {
+        this.streaming = !"dom".equalsIgnoreCase(mode);
+        this.containerClass = containerClass;
+        this.streamingExtractor = new StreamingChapterExtractor(containerClass);
+    }
+
     /** Phương thức extractText nhận vào nội dung HTML thô của một chương truyện,
      * trích xuất và trả về phần văn bản chính của chương đó.
      *
@@ -27,17 +40,35 @@ public class ExtractorText {
             logger.warn("Nội dung HTML rỗng");
             return "";
         }
+        if (streaming) {
+            try {
+                String text = streamingExtractor.extract(rawHtmlContent);
+                if (text != null) {
+                    return text;
+                }
+                logger.debug("Không quét được thẻ '{}' theo luồng, chuyển sang phân tích DOM", containerClass);
+            } catch (Exception e) {
+                logger.warn("Lỗi khi quét HTML theo luồng, chuyển sang phân tích DOM: {}", e.getMessage());
+            }
+        }
+        return extractTextFromDom(rawHtmlContent);
+    }
+
+    /**
+     * Trích xuất bằng cách phân tích toàn bộ trang thành cây DOM với Jsoup.
+     */
+    public String extractTextFromDom(String rawHtmlContent) {
         try {
             logger.info("Đang trích xuất văn bản từ HTML...");
             // Phân tích cú pháp HTML thành Document
             Document doc = Jsoup.parse(rawHtmlContent);
 
-            // Tìm phần tử HTML chính chứa nội dung truyện theo class (ví dụ: "chapter-c")
-            // Nếu website khác có thể thay đổi selector này cho phù hợp
-            Element chapterContent = doc.selectFirst(".chapter-c");
+            // Tìm phần tử HTML chính chứa nội dung truyện theo class (mặc định: "chapter-c")
+            // Nếu website khác có thể đổi extractor.container-class cho phù hợp
+            Element chapterContent = doc.selectFirst("." + containerClass);
 
             if (chapterContent == null) {
-                logger.error("Không tìm thấy thẻ chứa nội dung truyện (class='chapter-c')");
+                logger.error("Không tìm thấy thẻ chứa nội dung truyện (class='{}')", containerClass);
                 return "";
             }
             // Lấy văn bản thuần từ phần tử đó, loại bỏ thẻ HTML bên trong
@@ -0,0 +1,28 @@
+package org.example.codechuyennoi.ProcessText;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.net.http.HttpHeaders;
+
+/**
+ * Lớp FetchResult mô tả kết quả một lần tải trang qua {@link HtmlFetcher}:
+ * mã trạng thái HTTP, header phản hồi, nội dung đã giải nén và số liệu đo đạc.
+ */
+@Getter
+@AllArgsConstructor
+public class FetchResult {
+    // Địa chỉ cuối cùng sau khi theo redirect
+    private final String url;
+    private final int statusCode;
+    // Nội dung đã giải nén và giải mã theo charset, null nếu lỗi mạng
+    private final String body;
+    private final HttpHeaders headers;
+    // Số byte thực sự nhận qua mạng (trước khi giải nén)
+    private final long bytesTransferred;
+    private final long latencyNanos;
+
+    public boolean isSuccess() {
+        return statusCode >= 200 && statusCode < 300 && body != null;
+    }
+}
@@ -0,0 +1,235 @@
+package org.example.codechuyennoi.ProcessText;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lớp HostRateLimiter điều tiết tốc độ crawl theo từng host.
+ * Mỗi host có một token bucket (số request mỗi giây) và một giới hạn số request đang chạy
+ * được điều chỉnh theo AIMD: tăng dần khi phản hồi nhanh và thành công,
+ * giảm một nửa khi gặp 429/503 hoặc lỗi kết nối, và tôn trọng header Retry-After.
+ */
+@Component
+public class HostRateLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(HostRateLimiter.class);
+
+    private final double initialRate;
+    private final double minRate;
+    private final double maxRate;
+    private final int maxConcurrency;
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+
+    public HostRateLimiter(@Value("${crawler.rate.initial-per-second:2}") double initialRate,
+                           @Value("${crawler.rate.min-per-second:0.2}") double minRate,
+                           @Value("${crawler.rate.max-per-second:10}") double maxRate,
+                           @Value("${crawler.http.max-connections-per-host:4}") int maxConcurrency) {
+        this.minRate = Math.max(0.01, minRate);
+        this.maxRate = Math.max(this.minRate, maxRate);
+        this.initialRate = Math.min(this.maxRate, Math.max(this.minRate, initialRate));
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+    }
+
+    /**
+     * Chờ cho tới khi host cho phép gửi thêm một request (còn token, chưa vượt giới hạn đồng thời,
+     * không trong thời gian Retry-After).
+     */
+    public void acquire(String host) throws InterruptedException {
+        hosts.computeIfAbsent(host, h -> new HostState(initialRate, maxConcurrency)).acquire();
+    }
+
+    /**
+     * Báo kết quả của một request đã acquire để điều chỉnh tốc độ và giới hạn đồng thời của host.
+     *
+     * @param statusCode  mã HTTP, -1 nếu lỗi kết nối (request bị hủy thì dùng {@link #cancel(String)})
+     * @param latencyNanos độ trễ quan sát được
+     * @param retryAfter  thời gian chờ server yêu cầu, null nếu không có
+     */
+    public void release(String host, int statusCode, long latencyNanos, Duration retryAfter) {
+        HostState state = hosts.get(host);
+        if (state != null) {
+            state.release(statusCode, latencyNanos, retryAfter);
+        }
+    }
+
+    /**
+     * Trả slot của một request đã acquire nhưng bị hủy giữa chừng (thread bị interrupt, tác vụ bị hủy):
+     * không có phản hồi nào từ host nên không điều chỉnh tốc độ hay giới hạn đồng thời.
+     */
+    public void cancel(String host) {
+        HostState state = hosts.get(host);
+        if (state != null) {
+            state.cancel();
+        }
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Ảnh chụp giới hạn hiện tại của tất cả các host, dùng để ghi log hoặc giám sát.
+     */
+    public Map<String, HostLimits> getLimits() {
+        Map<String, HostLimits> limits = new TreeMap<>();
+        hosts.forEach((host, state) -> limits.put(host, state.snapshot()));
+        return limits;
+    }
+
+    /**
+     * Đọc header Retry-After dạng số giây hoặc ngày giờ HTTP.
+     *
+     * @return thời gian cần chờ, hoặc null nếu header rỗng/không hợp lệ
+     */
+    public static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) return null;
+        String trimmed = value.trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(trimmed)));
+        } catch (NumberFormatException ignored) {
+            // không phải số giây, thử định dạng ngày giờ
+        }
+        try {
+            ZonedDateTime until = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration wait = Duration.between(ZonedDateTime.now(until.getZone()), until);
+            return wait.isNegative() ? Duration.ZERO : wait;
+        } catch (Exception e) {
+            logger.debug("Retry-After không hợp lệ: {}", value);
+            return null;
+        }
+    }
+
+    /**
+     * Giới hạn hiện tại của một host.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class HostLimits {
+        private final double ratePerSecond;
+        private final double concurrencyLimit;
+        private final int inFlight;
+        private final double latencyMillis;
+        private final long throttledCount;
+
+        @Override
+        public String toString() {
+            return String.format("%.2f req/s, đồng thời %.1f (đang chạy %d), trễ %.0f ms, bị chặn %d lần",
+                    ratePerSecond, concurrencyLimit, inFlight, latencyMillis, throttledCount);
+        }
+    }
+
+    private final class HostState {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final int hardLimit;
+        private double rate;
+        private double tokens = 1.0;
+        private long lastRefill = System.nanoTime();
+        private double concurrencyLimit;
+        private int inFlight;
+        private long cooldownUntil;
+        private double latencyEwma;
+        private double baselineLatency = Double.MAX_VALUE;
+        private long throttled;
+
+        HostState(double rate, int hardLimit) {
+            this.rate = rate;
+            this.hardLimit = hardLimit;
+            this.concurrencyLimit = Math.min(2, hardLimit);
+        }
+
+        void acquire() throws InterruptedException {
+            lock.lock();
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    refill(now);
+                    long waitNanos;
+                    if (now < cooldownUntil) {
+                        waitNanos = cooldownUntil - now;
+                    } else if (inFlight >= Math.max(1, (int) concurrencyLimit)) {
+                        waitNanos = TimeUnit.SECONDS.toNanos(1);
+                    } else if (tokens < 1.0) {
+                        waitNanos = (long) ((1.0 - tokens) / rate * 1_000_000_000L);
+                    } else {
+                        tokens -= 1.0;
+                        inFlight++;
+                        return;
+                    }
+                    changed.awaitNanos(Math.max(1_000_000L, waitNanos));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release(int statusCode, long latencyNanos, Duration retryAfter) {
+            lock.lock();
+            try {
+                inFlight = Math.max(0, inFlight - 1);
+                long now = System.nanoTime();
+                if (statusCode == 429 || statusCode == 503 || statusCode == -1) {
+                    // Giảm theo cấp số nhân khi bị server điều tiết hoặc kết nối bị reset
+                    throttled++;
+                    concurrencyLimit = Math.max(1.0, concurrencyLimit / 2);
+                    rate = Math.max(minRate, rate / 2);
+                    tokens = 0;
+                    long pause = retryAfter != null ? retryAfter.toNanos() : (long) (1_000_000_000L / rate);
+                    cooldownUntil = Math.max(cooldownUntil, now + pause);
+                    logger.warn("Host bị điều tiết ({}), giảm xuống {}", statusCode, snapshot());
+                } else if (statusCode < 500) {
+                    latencyEwma = latencyEwma == 0 ? latencyNanos : 0.8 * latencyEwma + 0.2 * latencyNanos;
+                    // Baseline là độ trễ thấp nhất gần đây, được nới dần để theo kịp thay đổi của mạng
+                    baselineLatency = Math.min(latencyNanos, baselineLatency * 1.01);
+                    if (latencyEwma > 2 * baselineLatency) {
+                        // Độ trễ tăng gấp đôi: server bắt đầu quá tải, giảm nhẹ số request đồng thời
+                        concurrencyLimit = Math.max(1.0, concurrencyLimit * 0.9);
+                    } else {
+                        concurrencyLimit = Math.min(hardLimit, concurrencyLimit + 1.0 / concurrencyLimit);
+                        rate = Math.min(maxRate, rate + 0.1);
+                    }
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void cancel() {
+            lock.lock();
+            try {
+                inFlight = Math.max(0, inFlight - 1);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(Math.max(1.0, rate), tokens + (now - lastRefill) / 1_000_000_000.0 * rate);
+            lastRefill = now;
+        }
+
+        HostLimits snapshot() {
+            lock.lock();
+            try {
+                return new HostLimits(rate, concurrencyLimit, inFlight, latencyEwma / 1_000_000.0, throttled);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
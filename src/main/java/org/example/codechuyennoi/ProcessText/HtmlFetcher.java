@@ -0,0 +1,284 @@
+package org.example.codechuyennoi.ProcessText;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Lớp HtmlFetcher là bean dùng chung để tải trang HTML từ nguồn truyện.
+ * Toàn bộ ứng dụng dùng một {@link HttpClient} duy nhất (HTTP/2, giữ kết nối, tái sử dụng phiên TLS)
+ * thay vì mở kết nối mới cho mỗi chương. Tốc độ và số kết nối đồng thời trên mỗi host
+ * do {@link HostRateLimiter} điều tiết; request bị 429/503 hoặc lỗi mạng được thử lại.
+ */
+@Component
+public class HtmlFetcher {
+    private static final Logger logger = LoggerFactory.getLogger(HtmlFetcher.class);
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final String userAgent;
+    private final int maxRetries;
+    private final HostRateLimiter rateLimiter;
+    private final RawHtmlCache htmlCache;
+
+    // Số liệu đo đạc: số request, số lỗi, byte nhận qua mạng, tổng/max độ trễ
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder notModifiedCount = new LongAdder();
+    private final LongAdder bytesTransferred = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public HtmlFetcher(HostRateLimiter rateLimiter,
+                       RawHtmlCache htmlCache,
+                       @Value("${crawler.http.max-retries:3}") int maxRetries,
+                       @Value("${crawler.http.connect-timeout-ms:10000}") long connectTimeoutMs,
+                       @Value("${crawler.http.request-timeout-ms:10000}") long requestTimeoutMs,
+                       @Value("${crawler.http.user-agent:Mozilla/5.0}") String userAgent) {
+        this.rateLimiter = rateLimiter;
+        this.htmlCache = htmlCache;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.userAgent = userAgent;
+        // SSLContext mặc định của client được dùng lại cho mọi request nên phiên TLS được resume
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+    }
+
+    /**
+     * Tải nội dung HTML của một URL. Nếu URL đã có trong {@link RawHtmlCache} thì gửi request có điều kiện
+     * (ETag/Last-Modified) và dùng lại bản lưu khi server trả 304; bản tải mới được lưu vào cache.
+     *
+     * @param url địa chỉ trang cần tải
+     * @return nội dung HTML, hoặc null nếu lỗi mạng hoặc mã trạng thái không phải 2xx
+     */
+    public String fetchHtml(String url) {
+        FetchResult result = fetch(url, htmlCache.validators(url));
+        if (result.getStatusCode() == 304) {
+            notModifiedCount.increment();
+            String cached = htmlCache.get(url);
+            if (cached != null) {
+                logger.debug("Không thay đổi (304), dùng bản trong cache: {}", url);
+                return cached;
+            }
+            // Bản trong cache đã mất, tải lại không điều kiện
+            result = fetch(url, Map.of());
+        }
+        if (!result.isSuccess()) {
+            logger.error("Tải HTML thất bại ({}): {}", result.getStatusCode(), url);
+            return null;
+        }
+        htmlCache.put(url, result.getBody(),
+                result.getHeaders().firstValue("ETag").orElse(null),
+                result.getHeaders().firstValue("Last-Modified").orElse(null));
+        return result.getBody();
+    }
+
+    /**
+     * Gửi GET tới URL với các header bổ sung và trả về kết quả đầy đủ.
+     * Lỗi mạng được trả về dưới dạng {@link FetchResult} có statusCode = -1.
+     */
+    public FetchResult fetch(String url, Map<String, String> extraHeaders) {
+        HttpRequest.Builder builder = newRequest(url)
+                .header("Accept", "text/html,application/xhtml+xml")
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+        extraHeaders.forEach(builder::header);
+        return execute(builder.build(), false);
+    }
+
+    /**
+     * Kiểm tra URL có tồn tại mà không tải nội dung: gửi HEAD, nếu server không hỗ trợ HEAD (405/501)
+     * thì gửi GET chỉ xin byte đầu tiên (Range: bytes=0-0). Body luôn bị bỏ qua.
+     *
+     * @return kết quả với url là địa chỉ cuối cùng sau khi theo redirect, body null
+     */
+    public FetchResult probe(String url) {
+        FetchResult result = execute(newRequest(url).method("HEAD", HttpRequest.BodyPublishers.noBody()).build(), true);
+        if (result.getStatusCode() == 405 || result.getStatusCode() == 501) {
+            result = execute(newRequest(url).header("Range", "bytes=0-0").GET().build(), true);
+        }
+        return result;
+    }
+
+    private HttpRequest.Builder newRequest(String url) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(requestTimeout)
+                .header("User-Agent", userAgent);
+    }
+
+    private FetchResult execute(HttpRequest request, boolean discardBody) {
+        String url = request.uri().toString();
+        String host = hostOf(request.uri());
+        FetchResult result = null;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            result = send(request, host, discardBody);
+            int status = result.getStatusCode();
+            if (status != 429 && status != 503 && status != -1) {
+                return result;
+            }
+            if (status == -1 && Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            if (attempt < maxRetries) {
+                // Rate limiter đã giảm tốc và đặt thời gian chờ cho host, lần thử sau sẽ tự được điều tiết
+                logger.warn("Tải {} thất bại ({}), thử lại lần {}/{}", url, status, attempt + 1, maxRetries);
+            } else {
+                logger.warn("Tải {} thất bại ({}) sau {} lần thử lại, bỏ qua", url, status, maxRetries);
+            }
+        }
+        return result;
+    }
+
+    private FetchResult send(HttpRequest request, String host, boolean discardBody) {
+        String url = request.uri().toString();
+        try {
+            rateLimiter.acquire(host);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return aborted(url, System.nanoTime());
+        }
+        long start = System.nanoTime();
+        int status = -1;
+        Duration retryAfter = null;
+        boolean aborted = false;
+        try {
+            logger.info("Đang tải HTML từ: {}", url);
+            HttpResponse<byte[]> response = client.send(request, discardBody
+                    ? HttpResponse.BodyHandlers.replacing(new byte[0])
+                    : HttpResponse.BodyHandlers.ofByteArray());
+            long latency = System.nanoTime() - start;
+            status = response.statusCode();
+            retryAfter = HostRateLimiter.parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null));
+            byte[] raw = response.body();
+            record(latency, raw.length, false);
+            String body = discardBody ? null : decodeBody(raw, response.headers());
+            logger.debug("Tải xong {} ({} bytes, {} ms, {})", url, raw.length, latency / 1_000_000, response.version());
+            return new FetchResult(response.uri().toString(), status, body, response.headers(), raw.length, latency);
+        } catch (InterruptedException e) {
+            // Bị hủy (chương khác lỗi, scope đóng): host không có lỗi gì nên không tính là thất bại
+            Thread.currentThread().interrupt();
+            aborted = true;
+            return aborted(url, start);
+        } catch (IOException | IllegalArgumentException e) {
+            if (status == -1 && Thread.currentThread().isInterrupted()) {
+                // Kênh bị đóng do interrupt cũng là hủy, không phải lỗi kết nối
+                aborted = true;
+                return aborted(url, start);
+            }
+            logger.error("Lỗi khi tải HTML từ {}: {}", url, e.getMessage());
+            return failed(url, start);
+        } finally {
+            if (aborted) {
+                rateLimiter.cancel(host);
+            } else {
+                rateLimiter.release(host, status, System.nanoTime() - start, retryAfter);
+            }
+        }
+    }
+
+    private FetchResult aborted(String url, long start) {
+        return new FetchResult(url, -1, null, null, 0, System.nanoTime() - start);
+    }
+
+    private FetchResult failed(String url, long start) {
+        long latency = System.nanoTime() - start;
+        record(latency, 0, true);
+        return new FetchResult(url, -1, null, null, 0, latency);
+    }
+
+    private String decodeBody(byte[] raw, HttpHeaders headers) throws IOException {
+        String encoding = headers.firstValue("Content-Encoding").orElse("").trim().toLowerCase();
+        InputStream in = new ByteArrayInputStream(raw);
+        if (encoding.equals("gzip")) {
+            in = new GZIPInputStream(in);
+        } else if (encoding.equals("deflate")) {
+            in = new InflaterInputStream(in);
+        }
+        try (InputStream body = in) {
+            return new String(body.readAllBytes(), charsetOf(headers));
+        }
+    }
+
+    private Charset charsetOf(HttpHeaders headers) {
+        String contentType = headers.firstValue("Content-Type").orElse("");
+        int idx = contentType.toLowerCase().indexOf("charset=");
+        if (idx >= 0) {
+            String name = contentType.substring(idx + 8).split(";")[0].replace("\"", "").trim();
+            try {
+                return Charset.forName(name);
+            } catch (Exception e) {
+                logger.debug("Charset không hỗ trợ: {}", name);
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private void record(long latencyNanos, long bytes, boolean failed) {
+        requestCount.increment();
+        if (failed) failureCount.increment();
+        bytesTransferred.add(bytes);
+        totalLatencyNanos.add(latencyNanos);
+        maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    static String hostOf(URI uri) {
+        return uri.getHost() != null ? uri.getHost().toLowerCase() : "";
+    }
+
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    public long getNotModifiedCount() {
+        return notModifiedCount.sum();
+    }
+
+    public long getBytesTransferred() {
+        return bytesTransferred.sum();
+    }
+
+    public double getAverageLatencyMillis() {
+        long count = requestCount.sum();
+        return count == 0 ? 0.0 : totalLatencyNanos.sum() / 1_000_000.0 / count;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Tóm tắt số liệu tải trang để ghi log cuối mỗi batch.
+     */
+    public String metricsSummary() {
+        return String.format("%d request (%d lỗi, %d không đổi), %d bytes, trễ TB %.1f ms, max %.1f ms",
+                getRequestCount(), getFailureCount(), getNotModifiedCount(), getBytesTransferred(),
+                getAverageLatencyMillis(), getMaxLatencyMillis());
+    }
+}
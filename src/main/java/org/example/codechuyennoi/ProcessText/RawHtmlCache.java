@@ -0,0 +1,342 @@
+package org.example.codechuyennoi.ProcessText;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Lớp RawHtmlCache lưu HTML thô đã tải xuống đĩa để có thể trích xuất/làm sạch lại mà không cần crawl lại.
+ *
+ * Nội dung được nén gzip và đặt tên theo SHA-256 của nội dung (blobs/ab/abcd....html.gz), nên các URL
+ * trả về cùng một trang chỉ tốn một blob. File index.tsv ánh xạ URL → hash cùng ETag/Last-Modified
+ * để gửi request có điều kiện, kích thước blob và thời điểm dùng gần nhất để loại bỏ theo LRU
+ * khi tổng dung lượng vượt crawler.cache.max-bytes.
+ */
+@Component
+public class RawHtmlCache {
+    private static final Logger logger = LoggerFactory.getLogger(RawHtmlCache.class);
+    private static final String INDEX_FILE = "index.tsv";
+    // Ghi lại index sau chừng này thay đổi; phần còn lại được ghi khi flush() hoặc khi tắt ứng dụng
+    private static final int FLUSH_EVERY = 32;
+
+    private final boolean enabled;
+    private final Path cacheDir;
+    private final long maxBytes;
+
+    // Thứ tự truy cập: phần tử đầu là URL lâu không dùng nhất
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    // Số URL đang trỏ tới mỗi blob, để chỉ xóa blob khi không còn ai dùng
+    private final Map<String, Integer> blobRefs = new HashMap<>();
+    private long totalBytes;
+    private int dirtyChanges;
+
+    public RawHtmlCache(@Value("${crawler.cache.enabled:true}") boolean enabled,
+                        @Value("${crawler.cache.path:html-cache}") String cachePath,
+                        @Value("${crawler.cache.max-bytes:536870912}") long maxBytes) {
+        this.enabled = enabled;
+        this.cacheDir = Path.of(cachePath);
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            logger.info("Cache HTML thô đang tắt");
+            return;
+        }
+        try {
+            Files.createDirectories(cacheDir.resolve("blobs"));
+            loadIndex();
+            logger.info("Cache HTML thô: {} URL, {} bytes tại {}", entries.size(), totalBytes, cacheDir.toAbsolutePath());
+        } catch (IOException e) {
+            logger.warn("Không thể mở cache HTML tại {}: {}", cacheDir, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Đọc HTML đã lưu của URL.
+     *
+     * @return nội dung HTML, hoặc null nếu chưa có trong cache hoặc blob bị hỏng
+     */
+    public String get(String url) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(url);
+            if (entry == null) {
+                return null;
+            }
+            entry.lastAccess = System.currentTimeMillis();
+            dirtyChanges++;
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(blobPath(entry.hash)))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Blob cache của {} bị hỏng hoặc mất: {}", url, e.getMessage());
+            // Đọc blob không giữ khóa: trong lúc đó URL có thể đã được put() nội dung mới, không được xóa mục mới
+            removeIfHash(url, entry.hash);
+            return null;
+        }
+    }
+
+    /**
+     * Header cho request có điều kiện (If-None-Match / If-Modified-Since) từ lần tải trước của URL.
+     */
+    public synchronized Map<String, String> validators(String url) {
+        Entry entry = enabled ? entries.get(url) : null;
+        if (entry == null) {
+            return Map.of();
+        }
+        Map<String, String> headers = new HashMap<>();
+        if (!entry.etag.isEmpty()) {
+            headers.put("If-None-Match", entry.etag);
+        }
+        if (!entry.lastModified.isEmpty()) {
+            headers.put("If-Modified-Since", entry.lastModified);
+        }
+        return headers;
+    }
+
+    /**
+     * Lưu HTML vừa tải của URL. Nội dung trùng hash với blob đã có thì chỉ cập nhật index.
+     */
+    public void put(String url, String html, String etag, String lastModified) {
+        if (!enabled || html == null) {
+            return;
+        }
+        byte[] raw = html.getBytes(StandardCharsets.UTF_8);
+        String hash = sha256(raw);
+        Path blob = blobPath(hash);
+        try {
+            if (!Files.exists(blob)) {
+                writeBlob(blob, raw);
+            }
+            synchronized (this) {
+                // Blob có thể vừa bị loại bởi thread khác giữa lúc kiểm tra và lúc giữ khóa
+                if (!blobRefs.containsKey(hash) && !Files.exists(blob)) {
+                    writeBlob(blob, raw);
+                }
+                long size = Files.size(blob);
+                Entry entry = new Entry(hash, clean(etag), clean(lastModified), size, System.currentTimeMillis());
+                // Tăng tham chiếu blob mới trước khi bỏ blob cũ, để không xóa nhầm khi nội dung không đổi
+                if (blobRefs.merge(hash, 1, Integer::sum) == 1) {
+                    totalBytes += size;
+                }
+                Entry old = entries.remove(url);
+                entries.put(url, entry);
+                if (old != null) {
+                    release(old);
+                }
+                evictIfNeeded();
+                if (++dirtyChanges >= FLUSH_EVERY) {
+                    flush();
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Không thể lưu cache cho {}: {}", url, e.getMessage());
+        }
+    }
+
+    public synchronized void remove(String url) {
+        Entry entry = entries.remove(url);
+        if (entry != null) {
+            release(entry);
+            dirtyChanges++;
+        }
+    }
+
+    /** Chỉ xóa mục của URL nếu nó vẫn trỏ tới blob có hash cho trước. */
+    private synchronized void removeIfHash(String url, String hash) {
+        Entry current = entries.get(url);
+        if (current != null && current.hash.equals(hash)) {
+            remove(url);
+        }
+    }
+
+    /**
+     * Ghi index xuống đĩa (ghi ra file tạm rồi đổi tên để không bao giờ để lại index dở dang).
+     */
+    public synchronized void flush() {
+        if (!enabled || dirtyChanges == 0) {
+            return;
+        }
+        Path index = cacheDir.resolve(INDEX_FILE);
+        Path tmp = cacheDir.resolve(INDEX_FILE + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                writer.write(String.join("\t", e.getKey(), entry.hash, entry.etag, entry.lastModified,
+                        Long.toString(entry.size), Long.toString(entry.lastAccess)));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            logger.warn("Không thể ghi index cache: {}", e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirtyChanges = 0;
+        } catch (IOException e) {
+            logger.warn("Không thể thay index cache: {}", e.getMessage());
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private void loadIndex() throws IOException {
+        Path index = cacheDir.resolve(INDEX_FILE);
+        if (!Files.exists(index)) {
+            return;
+        }
+        List<Map.Entry<String, Entry>> loaded = new ArrayList<>();
+        for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+            String[] f = line.split("\t", -1);
+            if (f.length != 6) {
+                continue;
+            }
+            try {
+                Entry entry = new Entry(f[1], f[2], f[3], Long.parseLong(f[4]), Long.parseLong(f[5]));
+                if (Files.exists(blobPath(entry.hash))) {
+                    loaded.add(Map.entry(f[0], entry));
+                }
+            } catch (NumberFormatException ignored) {
+                // dòng hỏng, bỏ qua
+            }
+        }
+        // Dựng lại thứ tự LRU theo thời điểm truy cập
+        loaded.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+        synchronized (this) {
+            for (Map.Entry<String, Entry> e : loaded) {
+                entries.put(e.getKey(), e.getValue());
+                if (blobRefs.merge(e.getValue().hash, 1, Integer::sum) == 1) {
+                    totalBytes += e.getValue().size;
+                }
+            }
+            evictIfNeeded();
+        }
+    }
+
+    private void evictIfNeeded() {
+        if (maxBytes <= 0) {
+            return;
+        }
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        int evicted = 0;
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Entry entry = it.next().getValue();
+            it.remove();
+            release(entry);
+            evicted++;
+        }
+        if (evicted > 0) {
+            dirtyChanges += evicted;
+            logger.info("Cache HTML vượt {} bytes, đã loại {} URL lâu không dùng", maxBytes, evicted);
+        }
+    }
+
+    /** Bỏ một tham chiếu tới blob; xóa blob khi không còn URL nào dùng. */
+    private void release(Entry entry) {
+        Integer refs = blobRefs.computeIfPresent(entry.hash, (hash, count) -> count > 1 ? count - 1 : null);
+        if (refs == null) {
+            totalBytes -= entry.size;
+            try {
+                Files.deleteIfExists(blobPath(entry.hash));
+            } catch (NoSuchFileException ignored) {
+                // đã bị xóa
+            } catch (IOException e) {
+                logger.warn("Không thể xóa blob {}: {}", entry.hash, e.getMessage());
+            }
+        }
+    }
+
+    private void writeBlob(Path blob, byte[] raw) throws IOException {
+        Files.createDirectories(blob.getParent());
+        Path tmp = Files.createTempFile(blob.getParent(), blob.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                out.write(raw);
+            }
+            Files.move(tmp, blob, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private Path blobPath(String hash) {
+        return cacheDir.resolve("blobs").resolve(hash.substring(0, 2)).resolve(hash + ".html.gz");
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ').trim();
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM không hỗ trợ SHA-256", e);
+        }
+    }
+
+    private static final class Entry {
+        final String hash;
+        final String etag;
+        final String lastModified;
+        final long size;
+        long lastAccess;
+
+        Entry(String hash, String etag, String lastModified, long size, long lastAccess) {
+            this.hash = hash;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
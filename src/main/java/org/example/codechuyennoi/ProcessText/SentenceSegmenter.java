@@ -0,0 +1,203 @@
+package org.example.codechuyennoi.ProcessText;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lớp SentenceSegmenter chia văn bản tiếng Việt thành câu trong một lần quét, dùng chung cho ảnh minh họa,
+ * đoạn TTS và phụ đề để ba bước luôn khớp nhau từng câu.
+ *
+ * Câu kết thúc tại '.', '!', '?', '…' (kể cả dấu nháy/ngoặc đóng theo sau) khi sau đó là khoảng trắng hoặc hết
+ * văn bản, và tại mỗi xuống dòng. Không cắt ở số thập phân ("3.5"), giữa dấu ba chấm, sau chữ viết tắt thường gặp
+ * ("TP.", "PGS.", ...), sau chữ cái viết tắt tên ("Nguyễn V. A.") và sau dấu chấm/ba chấm mà chữ tiếp theo
+ * viết thường. Đoạn chỉ có dấu câu bị bỏ.
+ *
+ * Kết quả chỉ giữ vị trí đầu/cuối của từng câu trong văn bản gốc; chuỗi con chỉ được tạo khi cần.
+ */
+public final class SentenceSegmenter {
+    private static final String CLOSERS = "\"'”’»)]";
+    private static final String[] ABBREVIATIONS = {
+            "TP", "Tp", "TT", "ThS", "TS", "PGS", "GS", "BS", "Mr", "Mrs", "Ms", "Dr", "St", "No"
+    };
+
+    private SentenceSegmenter() {
+    }
+
+    public static Sentences segment(String text) {
+        if (text == null || text.isEmpty()) {
+            return new Sentences("", new int[0], new int[0], 0);
+        }
+        int capacity = 16;
+        int[] starts = new int[capacity];
+        int[] ends = new int[capacity];
+        int count = 0;
+        int sentenceStart = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            int end = sentenceEnd(text, i);
+            if (end < 0 && i == length - 1) {
+                end = length;
+            }
+            if (end < 0) {
+                continue;
+            }
+            int from = sentenceStart;
+            int to = end;
+            while (from < to && Character.isWhitespace(text.charAt(from))) {
+                from++;
+            }
+            while (to > from && Character.isWhitespace(text.charAt(to - 1))) {
+                to--;
+            }
+            if (hasLetterOrDigit(text, from, to)) {
+                if (count == capacity) {
+                    capacity *= 2;
+                    starts = Arrays.copyOf(starts, capacity);
+                    ends = Arrays.copyOf(ends, capacity);
+                }
+                starts[count] = from;
+                ends[count] = to;
+                count++;
+            }
+            sentenceStart = end;
+            i = end - 1;
+        }
+        return new Sentences(text, starts, ends, count);
+    }
+
+    /** Vị trí ngay sau câu kết thúc tại i (kể cả dấu ngoặc/nháy đóng theo sau), hoặc -1 nếu câu chưa kết thúc. */
+    private static int sentenceEnd(String text, int i) {
+        char c = text.charAt(i);
+        if (c == '\n') {
+            return i + 1;
+        }
+        if (c != '.' && c != '!' && c != '?' && c != '…') {
+            return -1;
+        }
+        int end = i + 1;
+        while (end < text.length() && CLOSERS.indexOf(text.charAt(end)) >= 0) {
+            end++;
+        }
+        // Chỉ tính là hết câu khi sau dấu câu là khoảng trắng hoặc hết văn bản ("3.5", "..." giữa câu thì không)
+        if (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+            return -1;
+        }
+        if (c == '.' && end == i + 1 && end < text.length() && isAbbreviation(text, i)) {
+            return -1;
+        }
+        if ((c == '.' || c == '…') && continuesInLowerCase(text, end)) {
+            // "bạc... rất rẻ", "v.v. sau đó": câu vẫn tiếp tục
+            return -1;
+        }
+        return end;
+    }
+
+    /** Chữ đầu tiên sau from (trên cùng dòng) có phải chữ thường hay không. */
+    private static boolean continuesInLowerCase(String text, int from) {
+        int j = from;
+        while (j < text.length() && text.charAt(j) != '\n' && Character.isWhitespace(text.charAt(j))) {
+            j++;
+        }
+        return j < text.length() && Character.isLowerCase(text.charAt(j));
+    }
+
+    /** Từ ngay trước dấu chấm tại dot có phải chữ viết tắt hoặc chữ cái viết tắt tên hay không. */
+    private static boolean isAbbreviation(String text, int dot) {
+        int start = dot;
+        while (start > 0 && Character.isLetter(text.charAt(start - 1))) {
+            start--;
+        }
+        int length = dot - start;
+        if (length == 0 || (start > 0 && !Character.isWhitespace(text.charAt(start - 1)))) {
+            return false;
+        }
+        if (length == 1 && Character.isUpperCase(text.charAt(start))) {
+            return true;
+        }
+        for (String abbreviation : ABBREVIATIONS) {
+            if (abbreviation.length() == length && text.regionMatches(start, abbreviation, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasLetterOrDigit(String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (Character.isLetterOrDigit(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Kết quả chia câu: vị trí [start, end) của từng câu trong văn bản gốc, đã bỏ khoảng trắng hai đầu.
+     */
+    public static final class Sentences {
+        private final String text;
+        private final int[] starts;
+        private final int[] ends;
+        private final int count;
+
+        private Sentences(String text, int[] starts, int[] ends, int count) {
+            this.text = text;
+            this.starts = starts;
+            this.ends = ends;
+            this.count = count;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        public int start(int index) {
+            return starts[checkIndex(index)];
+        }
+
+        public int end(int index) {
+            return ends[checkIndex(index)];
+        }
+
+        /** Độ dài câu thứ index, không tạo chuỗi con. */
+        public int length(int index) {
+            return end(index) - start(index);
+        }
+
+        /** Chuỗi của câu thứ index (tạo chuỗi con mỗi lần gọi). */
+        public String get(int index) {
+            return text.substring(start(index), end(index));
+        }
+
+        /** Danh sách câu chỉ đọc; chuỗi con được tạo khi lấy từng phần tử. */
+        public List<String> asList() {
+            return new AbstractList<>() {
+                @Override
+                public String get(int index) {
+                    return Sentences.this.get(index);
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+
+        private int checkIndex(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Câu " + index + " ngoài khoảng [0, " + count + ")");
+            }
+            return index;
+        }
+    }
+}
@@ -1,28 +1,22 @@
 package org.example.codechuyennoi.ProcessText;
 
-import org.jsoup.Jsoup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Component;
 
 
 public class SourceStory {
     private static final Logger logger = LoggerFactory.getLogger(SourceStory.class);
 
     private final String urlSource;
-    public SourceStory( String urlSource) {
+    private final HtmlFetcher htmlFetcher;
+    public SourceStory(String urlSource, HtmlFetcher htmlFetcher) {
         this.urlSource = urlSource;
+        this.htmlFetcher = htmlFetcher;
     }
 
     public String fetchHtmlContent() {
         try {
-            logger.info("Đang tải HTML từ: {}", urlSource);
-            return Jsoup.connect(urlSource)
-                    .userAgent("Mozilla/5.0")
-                    .timeout(10000)
-                    .get()
-                    .html();
+            return htmlFetcher.fetchHtml(urlSource);
         } catch (Exception e) {
             logger.error("Lỗi khi tải HTML: {}", e.getMessage(), e);
             return null;
@@ -0,0 +1,403 @@
+package org.example.codechuyennoi.ProcessText;
+
+import org.jsoup.parser.Parser;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+
+/**
+ * Lớp StreamingChapterExtractor trích xuất văn bản chương bằng cách quét tuần tự chuỗi HTML
+ * mà không dựng cây DOM: bỏ qua mọi thứ trước thẻ chứa nội dung (class chỉ định),
+ * chỉ ghi lại phần chữ bên trong thẻ đó, chuẩn hóa khoảng trắng ngay khi ghi và dừng khi thẻ đóng.
+ * Kết quả tương đương {@code Element.text()} của Jsoup sau khi gom khoảng trắng.
+ */
+public class StreamingChapterExtractor {
+
+    private static final Set<String> VOID_TAGS = Set.of(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "keygen",
+            "link", "meta", "param", "source", "track", "wbr");
+
+    // Thẻ có nội dung thô, không phải HTML: không được quét tìm thẻ bên trong và không lấy chữ
+    private static final Set<String> RAW_TEXT_TAGS = Set.of(
+            "script", "style", "xmp", "iframe", "noembed", "noframes");
+
+    // Thẻ RCDATA: bên trong cũng không có thẻ con, nhưng chữ (kể cả thực thể) vẫn được Jsoup lấy vào text()
+    private static final Set<String> RCDATA_TAGS = Set.of("textarea", "title");
+
+    // Thẻ dạng khối: Jsoup chèn một khoảng trắng quanh nội dung của chúng khi lấy text()
+    private static final Set<String> BLOCK_TAGS = Set.of(
+            "address", "article", "aside", "blockquote", "center", "dd", "details", "dir", "div", "dl", "dt",
+            "fieldset", "figcaption", "figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6",
+            "header", "hgroup", "hr", "li", "main", "menu", "nav", "ol", "p", "pre", "section", "table",
+            "caption", "thead", "tbody", "tfoot", "tr", "td", "th", "ul", "br", "ins", "del", "noscript");
+
+    private final String containerClass;
+
+    public StreamingChapterExtractor(String containerClass) {
+        this.containerClass = containerClass;
+    }
+
+    /**
+     * Trích xuất văn bản của thẻ đầu tiên có class chỉ định.
+     *
+     * @param html chuỗi HTML thô
+     * @return văn bản đã chuẩn hóa khoảng trắng, hoặc null nếu không tìm thấy thẻ
+     *         hoặc thẻ không được đóng (khi đó nên dùng lại đường DOM)
+     */
+    public String extract(String html) {
+        Tag tag = new Tag();
+        int pos = findContainer(html, tag);
+        if (pos < 0) {
+            return null;
+        }
+
+        Deque<String> open = new ArrayDeque<>();
+        open.push(tag.name);
+        TextBuffer out = new TextBuffer(Math.min(html.length() - pos, 8 * 1024));
+        int len = html.length();
+        while (pos < len) {
+            int lt = html.indexOf('<', pos);
+            int textEnd = lt < 0 ? len : lt;
+            if (textEnd > pos) {
+                out.appendText(html, pos, textEnd);
+            }
+            if (lt < 0) {
+                break;
+            }
+            int next = readTag(html, lt, tag, false);
+            if (next < 0) {
+                // Dấu '<' không mở thẻ nào: coi là chữ thường
+                out.appendText(html, lt, lt + 1);
+                pos = lt + 1;
+                continue;
+            }
+            pos = next;
+            if (tag.name == null) {
+                continue; // comment, doctype
+            }
+            if (BLOCK_TAGS.contains(tag.name)) {
+                out.breakWord();
+            }
+            if (tag.end) {
+                if (closeTo(open, tag.name) && open.isEmpty()) {
+                    return out.toString();
+                }
+            } else if (RAW_TEXT_TAGS.contains(tag.name)) {
+                pos = skipRawText(html, pos, tag.name);
+            } else if (RCDATA_TAGS.contains(tag.name)) {
+                int close = rawTextEnd(html, pos, tag.name);
+                out.appendText(html, pos, close);
+                pos = skipRawText(html, close, tag.name);
+            } else if (!tag.selfClosing && !VOID_TAGS.contains(tag.name)) {
+                open.push(tag.name);
+            }
+        }
+        // Hết HTML mà thẻ chứa chưa đóng: cấu trúc bất thường, để đường DOM xử lý
+        return null;
+    }
+
+    private int findContainer(String html, Tag tag) {
+        int pos = 0;
+        int len = html.length();
+        while (pos < len) {
+            int lt = html.indexOf('<', pos);
+            if (lt < 0) {
+                return -1;
+            }
+            int next = readTag(html, lt, tag, true);
+            if (next < 0) {
+                pos = lt + 1;
+                continue;
+            }
+            pos = next;
+            if (tag.name == null || tag.end) {
+                continue;
+            }
+            if (RAW_TEXT_TAGS.contains(tag.name) || RCDATA_TAGS.contains(tag.name)) {
+                pos = skipRawText(html, pos, tag.name);
+            } else if (hasClass(tag.classAttr, containerClass)) {
+                return tag.selfClosing || VOID_TAGS.contains(tag.name) ? -1 : pos;
+            }
+        }
+        return -1;
+    }
+
+    /** Đóng các thẻ đang mở cho tới thẻ cùng tên gần nhất; bỏ qua thẻ đóng không khớp. */
+    private boolean closeTo(Deque<String> open, String name) {
+        if (!open.contains(name)) {
+            return false;
+        }
+        while (!open.pop().equals(name)) {
+            // pop các thẻ bị đóng ngầm (ví dụ <p> không có </p>)
+        }
+        return true;
+    }
+
+    /** Bỏ qua nội dung thô và thẻ đóng của nó, trả về vị trí ngay sau thẻ đóng. */
+    private int skipRawText(String html, int pos, String name) {
+        int len = html.length();
+        int close = rawTextEnd(html, pos, name);
+        if (close >= len) {
+            return len;
+        }
+        int gt = html.indexOf('>', close + 2 + name.length());
+        return gt < 0 ? len : gt + 1;
+    }
+
+    /** Vị trí '&lt;' của thẻ đóng nội dung thô, hoặc độ dài chuỗi nếu thẻ không được đóng. */
+    private int rawTextEnd(String html, int pos, String name) {
+        int len = html.length();
+        while (pos < len) {
+            int lt = html.indexOf("</", pos);
+            if (lt < 0) {
+                return len;
+            }
+            int nameEnd = lt + 2 + name.length();
+            if (nameEnd <= len && html.regionMatches(true, lt + 2, name, 0, name.length())
+                    && (nameEnd == len || !Character.isLetterOrDigit(html.charAt(nameEnd)))) {
+                return lt;
+            }
+            pos = lt + 2;
+        }
+        return len;
+    }
+
+    /**
+     * Đọc một thẻ bắt đầu tại vị trí '<'.
+     *
+     * @return vị trí ngay sau '>', hoặc -1 nếu '<' không mở thẻ (chữ thường)
+     */
+    private int readTag(String html, int lt, Tag tag, boolean wantClass) {
+        int len = html.length();
+        tag.reset();
+        int i = lt + 1;
+        if (i >= len) {
+            return -1;
+        }
+        char c = html.charAt(i);
+        if (c == '!' || c == '?') {
+            if (html.startsWith("!--", i)) {
+                int close = html.indexOf("-->", i + 3);
+                return close < 0 ? len : close + 3;
+            }
+            int gt = html.indexOf('>', i);
+            return gt < 0 ? len : gt + 1;
+        }
+        if (c == '/') {
+            tag.end = true;
+            i++;
+        }
+        int nameStart = i;
+        while (i < len && isNameChar(html.charAt(i))) {
+            i++;
+        }
+        if (i == nameStart || !Character.isLetter(html.charAt(nameStart))) {
+            return -1;
+        }
+        tag.name = html.substring(nameStart, i).toLowerCase();
+
+        // Đọc thuộc tính; chỉ giữ lại class khi đang tìm thẻ chứa
+        while (i < len) {
+            c = html.charAt(i);
+            if (c == '>') {
+                return i + 1;
+            }
+            if (c == '/') {
+                tag.selfClosing = i + 1 < len && html.charAt(i + 1) == '>';
+                i++;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int attrStart = i;
+            while (i < len && !Character.isWhitespace(html.charAt(i)) && "=>/".indexOf(html.charAt(i)) < 0) {
+                i++;
+            }
+            boolean isClass = wantClass && i - attrStart == 5 && html.regionMatches(true, attrStart, "class", 0, 5);
+            while (i < len && Character.isWhitespace(html.charAt(i))) {
+                i++;
+            }
+            if (i >= len || html.charAt(i) != '=') {
+                continue;
+            }
+            i++;
+            while (i < len && Character.isWhitespace(html.charAt(i))) {
+                i++;
+            }
+            int valueStart;
+            int valueEnd;
+            if (i < len && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+                char quote = html.charAt(i);
+                valueStart = i + 1;
+                valueEnd = html.indexOf(quote, valueStart);
+                if (valueEnd < 0) {
+                    return len;
+                }
+                i = valueEnd + 1;
+            } else {
+                valueStart = i;
+                while (i < len && !Character.isWhitespace(html.charAt(i)) && html.charAt(i) != '>') {
+                    i++;
+                }
+                valueEnd = i;
+            }
+            if (isClass) {
+                tag.classAttr = html.substring(valueStart, valueEnd);
+            }
+        }
+        return len;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == ':' || c == '_';
+    }
+
+    private static boolean hasClass(String classAttr, String className) {
+        if (classAttr == null) {
+            return false;
+        }
+        int from = 0;
+        int n = className.length();
+        while ((from = classAttr.indexOf(className, from)) >= 0) {
+            boolean startOk = from == 0 || Character.isWhitespace(classAttr.charAt(from - 1));
+            boolean endOk = from + n == classAttr.length() || Character.isWhitespace(classAttr.charAt(from + n));
+            if (startOk && endOk) {
+                return true;
+            }
+            from += n;
+        }
+        return false;
+    }
+
+    private static final class Tag {
+        String name;
+        boolean end;
+        boolean selfClosing;
+        String classAttr;
+
+        void reset() {
+            name = null;
+            end = false;
+            selfClosing = false;
+            classAttr = null;
+        }
+    }
+
+    /**
+     * Bộ đệm ghi chữ có gom khoảng trắng: mọi chuỗi khoảng trắng (kể cả &amp;nbsp;) thành một dấu cách,
+     * không có khoảng trắng ở đầu/cuối, bỏ ký tự vô hình giống Jsoup.
+     */
+    private static final class TextBuffer {
+        private final StringBuilder sb;
+        private boolean pendingSpace;
+
+        TextBuffer(int capacity) {
+            this.sb = new StringBuilder(capacity);
+        }
+
+        void appendText(String html, int from, int to) {
+            int i = from;
+            while (i < to) {
+                int amp = html.indexOf('&', i);
+                if (amp < 0 || amp >= to) {
+                    appendChars(html, i, to);
+                    return;
+                }
+                appendChars(html, i, amp);
+                i = appendEntity(html, amp, to);
+            }
+        }
+
+        /**
+         * Giải mã một thực thể HTML bắt đầu tại '&amp;' theo cùng quy tắc với Jsoup: dấu ';' có thể thiếu
+         * (ví dụ "&amp;nbsp" hay "&amp;#65"), tên không phải thực thể thì giữ nguyên '&amp;'.
+         * Các thực thể phổ biến được giải mã trực tiếp, còn lại nhờ Jsoup.
+         *
+         * @return vị trí ngay sau thực thể
+         */
+        private int appendEntity(String html, int amp, int to) {
+            int i = amp + 1;
+            boolean numeric = i < to && html.charAt(i) == '#';
+            boolean hex = false;
+            if (numeric) {
+                i++;
+                hex = i < to && (html.charAt(i) == 'x' || html.charAt(i) == 'X');
+                if (hex) {
+                    i++;
+                }
+            }
+            int nameStart = i;
+            while (i < to && Character.isLetterOrDigit(html.charAt(i))) {
+                i++;
+            }
+            if (i == nameStart) {
+                appendChars(html, amp, amp + 1);
+                return amp + 1;
+            }
+            int nameEnd = i;
+            int end = nameEnd < to && html.charAt(nameEnd) == ';' ? nameEnd + 1 : nameEnd;
+            char decoded = 0;
+            if (numeric) {
+                try {
+                    int codePoint = Integer.parseInt(html, nameStart, nameEnd, hex ? 16 : 10);
+                    if (codePoint > 0 && Character.isBmpCodePoint(codePoint)) {
+                        decoded = (char) codePoint;
+                    }
+                } catch (NumberFormatException ignored) {
+                    // để Jsoup xử lý bên dưới
+                }
+            } else if (isName(html, nameStart, nameEnd, "nbsp")) {
+                decoded = '\u00A0';
+            } else if (isName(html, nameStart, nameEnd, "amp")) {
+                decoded = '&';
+            } else if (isName(html, nameStart, nameEnd, "quot")) {
+                decoded = '"';
+            } else if (isName(html, nameStart, nameEnd, "lt")) {
+                decoded = '<';
+            } else if (isName(html, nameStart, nameEnd, "gt")) {
+                decoded = '>';
+            }
+            if (decoded != 0) {
+                appendChar(decoded);
+            } else {
+                String entity = Parser.unescapeEntities(html.substring(amp, end), false);
+                appendChars(entity, 0, entity.length());
+            }
+            return end;
+        }
+
+        private static boolean isName(String html, int from, int to, String name) {
+            return to - from == name.length() && html.startsWith(name, from);
+        }
+
+        private void appendChars(String s, int from, int to) {
+            for (int i = from; i < to; i++) {
+                appendChar(s.charAt(i));
+            }
+        }
+
+        private void appendChar(char c) {
+            if (c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f' || c == '\u000B' || c == '\u00A0') {
+                breakWord();
+            } else if (c != '\u200B' && c != '\u00AD') {
+                if (pendingSpace) {
+                    sb.append(' ');
+                    pendingSpace = false;
+                }
+                sb.append(c);
+            }
+        }
+
+        void breakWord() {
+            pendingSpace = sb.length() > 0;
+        }
+
+        @Override
+        public String toString() {
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.codechuyennoi.ProcessVideo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Lớp ChapterScratch là thư mục tạm riêng của một lần dựng video chương (danh sách concat, slideshow trung gian,
+ * phụ đề, video đang ghi), nằm trong &lt;thư mục video&gt;/.work/. Mỗi lần dựng có thư mục riêng nên nhiều chương
+ * (kể cả hai lần dựng cùng một chương) chạy song song được mà không ghi đè file của nhau.
+ *
+ * Khi đóng, thư mục được đổi tên sang tên ".deleting" trước rồi mới xóa, nên không bao giờ còn lại một thư mục
+ * tạm bị xóa dở mang tên hợp lệ; thư mục sót lại sau khi ứng dụng dừng đột ngột được dọn bằng {@link #purgeStale}.
+ */
+public final class ChapterScratch implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ChapterScratch.class);
+    private static final String WORK_DIR = ".work";
+    private static final String DELETING_SUFFIX = ".deleting";
+
+    private final Path dir;
+
+    private ChapterScratch(Path dir) {
+        this.dir = dir;
+    }
+
+    /** Tạo thư mục tạm mới cho chương trong outputDir/.work/. */
+    public static ChapterScratch create(Path outputDir, int chapterNumber) throws IOException {
+        Path workRoot = Files.createDirectories(outputDir.resolve(WORK_DIR));
+        return new ChapterScratch(Files.createTempDirectory(workRoot, "chuong_" + chapterNumber + "_"));
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    public File file(String name) {
+        return dir.resolve(name).toFile();
+    }
+
+    /**
+     * Xóa thư mục tạm sót lại của những lần chạy trước trong outputDir/.work/. Chỉ gọi khi chắc chắn không có
+     * lần dựng nào đang chạy trên thư mục này.
+     */
+    public static void purgeStale(Path outputDir) {
+        Path workRoot = outputDir.resolve(WORK_DIR);
+        if (!Files.isDirectory(workRoot)) {
+            return;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(workRoot)) {
+            for (Path entry : entries) {
+                deleteRecursively(entry);
+            }
+        } catch (IOException e) {
+            logger.warn("Không thể dọn thư mục tạm {}: {}", workRoot, e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        Path doomed = dir.resolveSibling(dir.getFileName() + DELETING_SUFFIX);
+        try {
+            Files.move(dir, doomed, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            doomed = dir;
+        } catch (IOException e) {
+            logger.warn("Không thể đổi tên thư mục tạm {}: {}", dir, e.getMessage());
+            doomed = dir;
+        }
+        deleteRecursively(doomed);
+    }
+
+    private static void deleteRecursively(Path root) {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    logger.warn("Không xóa được file tạm: {}", file);
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Không thể dọn thư mục tạm {}: {}", root, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package org.example.codechuyennoi.ProcessVideo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lớp FfmpegExecutor là nơi duy nhất trong ứng dụng chạy ffmpeg. Mỗi lần chạy phải thuê một số "slot CPU"
+ * bằng số thread nó được phép dùng (truyền cho ffmpeg qua -threads và số thread filter), tổng số slot mặc định bằng số nhân CPU,
+ * nên dựng nhiều chương song song không làm tràn CPU. Việc chờ slot được xếp theo độ ưu tiên rồi theo thứ tự đến.
+ *
+ * Mỗi lần chạy được ghi log thời gian chờ slot, thời gian chạy và thời gian CPU (lấy từ -benchmark của ffmpeg).
+ */
+@Component
+public class FfmpegExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(FfmpegExecutor.class);
+    // bench: utime=1.234s stime=0.056s rtime=0.789s
+    private static final Pattern BENCH = Pattern.compile("bench: utime=([0-9.]+)s stime=([0-9.]+)s");
+
+    /** Độ ưu tiên khi chờ slot: việc ưu tiên cao hơn được chạy trước mọi việc đang chờ có ưu tiên thấp hơn. */
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    /** Kết quả một lần chạy ffmpeg. */
+    public static final class Result {
+        private final int exitCode;
+        private final String output;
+        private final long queuedMillis;
+        private final long wallMillis;
+        private final long cpuMillis;
+
+        Result(int exitCode, String output, long queuedMillis, long wallMillis, long cpuMillis) {
+            this.exitCode = exitCode;
+            this.output = output;
+            this.queuedMillis = queuedMillis;
+            this.wallMillis = wallMillis;
+            this.cpuMillis = cpuMillis;
+        }
+
+        public boolean isSuccess() {
+            return exitCode == 0;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public String getOutput() {
+            return output;
+        }
+
+        public long getQueuedMillis() {
+            return queuedMillis;
+        }
+
+        public long getWallMillis() {
+            return wallMillis;
+        }
+
+        /** Thời gian CPU (user + system) của ffmpeg, -1 nếu ffmpeg không báo. */
+        public long getCpuMillis() {
+            return cpuMillis;
+        }
+    }
+
+    private final String ffmpegPath;
+    private final CpuSlots slots;
+    private final int defaultThreads;
+
+    public FfmpegExecutor(
+            @Value("${ffmpeg.path}") String ffmpegPath,
+            @Value("${ffmpeg.cpu-slots:0}") int cpuSlots,
+            @Value("${ffmpeg.threads-per-job:2}") int threadsPerJob
+    ) {
+        this.ffmpegPath = validateExecutable(ffmpegPath, "ffmpeg.path");
+        int total = cpuSlots > 0 ? cpuSlots : Runtime.getRuntime().availableProcessors();
+        this.slots = new CpuSlots(total);
+        this.defaultThreads = Math.max(1, Math.min(threadsPerJob, total));
+        logger.info("FfmpegExecutor: {} slot CPU, mặc định {} thread mỗi lần chạy", total, defaultThreads);
+    }
+
+    private String validateExecutable(String path, String name) {
+        File file = new File(path);
+        if (!file.exists() || !file.isFile() || !file.canExecute()) {
+            throw new IllegalArgumentException(name + " executable not found or not executable at: " + path);
+        }
+        return path;
+    }
+
+    /** Chạy ffmpeg với số thread mặc định. */
+    public Result run(String operation, List<String> args, Priority priority) throws IOException, InterruptedException {
+        return run(operation, args, defaultThreads, priority, null);
+    }
+
+    /**
+     * Chạy ffmpeg sau khi thuê được threads slot CPU.
+     *
+     * @param args       tham số sau tên chương trình, phần tử cuối là file đầu ra
+     * @param threads    số thread ffmpeg được dùng, cũng là số slot cần thuê (tối đa bằng tổng số slot)
+     * @param workingDir thư mục làm việc của ffmpeg, null là thư mục hiện tại
+     */
+    public Result run(String operation, List<String> args, int threads, Priority priority, File workingDir)
+            throws IOException, InterruptedException {
+        int lease = slots.clamp(threads);
+        List<String> command = buildCommand(ffmpegPath, args, lease);
+        long queuedAt = System.nanoTime();
+        slots.acquire(lease, priority);
+        long startedAt = System.nanoTime();
+        Process process = null;
+        try {
+            logger.info("Chạy lệnh FFmpeg: {}", String.join(" ", command));
+            ProcessBuilder pb = new ProcessBuilder(command);
+            if (workingDir != null) {
+                pb.directory(workingDir);
+            }
+            pb.redirectErrorStream(true);
+            process = pb.start();
+            StringBuilder output = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.append(line).append("\n");
+                    logger.debug("ffmpeg: {}", line);
+                }
+            }
+            int exitCode = process.waitFor();
+            long finishedAt = System.nanoTime();
+            Result result = new Result(exitCode, output.toString(),
+                    TimeUnit.NANOSECONDS.toMillis(startedAt - queuedAt),
+                    TimeUnit.NANOSECONDS.toMillis(finishedAt - startedAt),
+                    parseCpuMillis(output));
+            logger.info("FFmpeg {}: mã {}, {} thread, chờ slot {} ms, chạy {} ms, CPU {} ms",
+                    operation, exitCode, lease, result.getQueuedMillis(), result.getWallMillis(), result.getCpuMillis());
+            return result;
+        } finally {
+            if (process != null && process.isAlive()) {
+                process.destroy();
+            }
+            slots.release(lease);
+        }
+    }
+
+    /** Chạy ffmpeg và ném lỗi nếu ffmpeg thất bại, kèm log đầu ra của ffmpeg. */
+    public Result runOrThrow(String operation, List<String> args, Priority priority)
+            throws IOException, InterruptedException {
+        Result result = run(operation, args, priority);
+        if (!result.isSuccess()) {
+            logger.error("FFmpeg thất bại khi {}:\n{}", operation, result.getOutput());
+            throw new IOException("FFmpeg thất bại với mã lỗi: " + result.getExitCode());
+        }
+        return result;
+    }
+
+    /**
+     * Thêm -benchmark (để lấy thời gian CPU), giới hạn thread cho filter và -threads ngay trước file đầu ra.
+     * -threads đặt ở phía đầu ra chỉ giới hạn encoder, nên số thread của filter (-filter_threads cho filter
+     * đơn, -filter_complex_threads cho -filter_complex) được đặt riêng bằng tùy chọn toàn cục. Decoder vẫn
+     * dùng mặc định của ffmpeg: đầu vào ở đây là ảnh tĩnh và âm thanh, giải mã gần như không tốn CPU.
+     */
+    static List<String> buildCommand(String ffmpegPath, List<String> args, int threads) {
+        if (args.isEmpty()) {
+            throw new IllegalArgumentException("Thiếu file đầu ra cho ffmpeg");
+        }
+        List<String> command = new ArrayList<>(args.size() + 9);
+        command.add(ffmpegPath);
+        command.add("-benchmark");
+        command.add("-filter_threads");
+        command.add(String.valueOf(threads));
+        command.add("-filter_complex_threads");
+        command.add(String.valueOf(threads));
+        command.addAll(args.subList(0, args.size() - 1));
+        command.add("-threads");
+        command.add(String.valueOf(threads));
+        command.add(args.get(args.size() - 1));
+        return command;
+    }
+
+    static long parseCpuMillis(CharSequence output) {
+        Matcher m = BENCH.matcher(output);
+        long cpu = -1;
+        while (m.find()) {
+            cpu = Math.round((Double.parseDouble(m.group(1)) + Double.parseDouble(m.group(2))) * 1000);
+        }
+        return cpu;
+    }
+
+    /**
+     * Bể slot CPU dùng chung. Việc đang chờ được xếp theo (độ ưu tiên, thứ tự đến) và chỉ việc đứng đầu được
+     * lấy slot, nên một việc cần nhiều slot không bị các việc nhỏ đến sau vượt mặt mãi.
+     */
+    static final class CpuSlots {
+        private final int total;
+        private int available;
+        private long sequence;
+        private final PriorityQueue<Ticket> waiting = new PriorityQueue<>();
+
+        private static final class Ticket implements Comparable<Ticket> {
+            private final Priority priority;
+            private final long order;
+
+            Ticket(Priority priority, long order) {
+                this.priority = priority;
+                this.order = order;
+            }
+
+            @Override
+            public int compareTo(Ticket other) {
+                int byPriority = priority.compareTo(other.priority);
+                return byPriority != 0 ? byPriority : Long.compare(order, other.order);
+            }
+        }
+
+        CpuSlots(int total) {
+            this.total = Math.max(1, total);
+            this.available = this.total;
+        }
+
+        int clamp(int requested) {
+            return Math.max(1, Math.min(requested, total));
+        }
+
+        synchronized void acquire(int count, Priority priority) throws InterruptedException {
+            Ticket ticket = new Ticket(priority, sequence++);
+            waiting.add(ticket);
+            try {
+                while (waiting.peek() != ticket || available < count) {
+                    wait();
+                }
+                available -= count;
+            } finally {
+                waiting.remove(ticket);
+                // Việc kế tiếp trong hàng có thể đã đủ slot
+                notifyAll();
+            }
+        }
+
+        synchronized void release(int count) {
+            available += count;
+            notifyAll();
+        }
+
+        synchronized int getAvailable() {
+            return available;
+        }
+
+        /** Số việc đang chờ slot. */
+        synchronized int getWaitingCount() {
+            return waiting.size();
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package org.example.codechuyennoi.ProcessVideo;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Lớp FragmentedMp4 nối thêm fragment (cặp moof + mdat) của một file MP4 phân mảnh vào cuối một file MP4
+ * phân mảnh khác có cùng cấu hình track, không đọc hay ghi lại phần đã có của file đích.
+ *
+ * File được tạo bởi ffmpeg với -movflags frag_keyframe+empty_moov+default_base_moof: moov chỉ mô tả track,
+ * mẫu nằm trong các fragment, và offset dữ liệu trong trun tính từ đầu moof của chính fragment đó, nên chép
+ * nguyên moof + mdat sang file khác vẫn đúng. Khi nối chỉ sửa số thứ tự trong mfhd và thời điểm bắt đầu
+ * trong tfdt để dòng thời gian nối tiếp file đích.
+ *
+ * Trạng thái của file đích (các chương đã có, kích thước, số thứ tự và thời điểm kết thúc mỗi track) lưu trong
+ * một file .properties bên cạnh, nên lần nối sau không phải quét lại file đích.
+ */
+final class FragmentedMp4 {
+    private static final int BOX_HEADER_SIZE = 8;
+    // tfhd: base-data-offset có mặt (offset tuyệt đối trong file, không chép sang file khác được)
+    private static final int TFHD_BASE_DATA_OFFSET = 0x01;
+    private static final int TFHD_SAMPLE_DESCRIPTION_INDEX = 0x02;
+    private static final int TFHD_DEFAULT_DURATION = 0x08;
+    private static final int TRUN_DATA_OFFSET = 0x01;
+    private static final int TRUN_FIRST_SAMPLE_FLAGS = 0x04;
+    private static final int TRUN_SAMPLE_DURATION = 0x100;
+    private static final int TRUN_SAMPLE_SIZE = 0x200;
+    private static final int TRUN_SAMPLE_FLAGS = 0x400;
+    private static final int TRUN_SAMPLE_CTO = 0x800;
+
+    private FragmentedMp4() {
+    }
+
+    /** File MP4 không nối được (không phân mảnh, khác cấu hình track, ...); cần dựng lại toàn bộ. */
+    static final class IncompatibleException extends IOException {
+        IncompatibleException(String message) {
+            super(message);
+        }
+    }
+
+    /** Trạng thái của file tổng hợp, lưu cạnh file dưới dạng .properties. */
+    static final class State {
+        private final List<Integer> chapters = new ArrayList<>();
+        private long size;
+        private long nextSequence = 1;
+        // track id -> thời điểm kết thúc (đơn vị timescale của track)
+        private final Map<Integer, Long> trackEnds = new TreeMap<>();
+
+        List<Integer> getChapters() {
+            return chapters;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getTrackEnd(int trackId) {
+            return trackEnds.getOrDefault(trackId, 0L);
+        }
+
+        static State load(Path file) throws IOException {
+            Properties props = new Properties();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                props.load(reader);
+            }
+            State state = new State();
+            String chapters = props.getProperty("chapters", "");
+            if (!chapters.isBlank()) {
+                Arrays.stream(chapters.split(",")).map(String::trim).map(Integer::parseInt).forEach(state.chapters::add);
+            }
+            state.size = Long.parseLong(props.getProperty("size", "0"));
+            state.nextSequence = Long.parseLong(props.getProperty("sequence", "1"));
+            for (String key : props.stringPropertyNames()) {
+                if (key.startsWith("track.")) {
+                    state.trackEnds.put(Integer.parseInt(key.substring(6)), Long.parseLong(props.getProperty(key)));
+                }
+            }
+            return state;
+        }
+
+        /** Ghi ra file tạm rồi đổi tên, nên file trạng thái luôn là bản đầy đủ của một lần nối. */
+        void save(Path file) throws IOException {
+            Properties props = new Properties();
+            props.setProperty("chapters", chapters.stream().map(String::valueOf).collect(Collectors.joining(",")));
+            props.setProperty("size", String.valueOf(size));
+            props.setProperty("sequence", String.valueOf(nextSequence));
+            trackEnds.forEach((track, end) -> props.setProperty("track." + track, String.valueOf(end)));
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                props.store(writer, null);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Đọc trạng thái của một file vừa được dựng trọn (moov + các fragment).
+     */
+    static State describe(Path file, List<Integer> chapters) throws IOException {
+        State state = new State();
+        state.chapters.addAll(chapters);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Map<Integer, Track> tracks = readTracks(channel);
+            for (Box box : topLevelBoxes(channel)) {
+                if (box.type.equals("moof")) {
+                    ByteBuffer moof = readFully(channel, box.start, box.end - box.start);
+                    applyFragment(moof, box.bodyStart - box.start, tracks, state, null, null);
+                    state.size = box.end;
+                } else if (box.type.equals("mdat")) {
+                    state.size = box.end;
+                }
+            }
+            // Box sau fragment cuối (mfra) bị cắt bỏ ở lần nối đầu tiên
+            if (state.size == 0) {
+                throw new IncompatibleException("File không có fragment nào");
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Nối các fragment của piece vào cuối target và cập nhật state. Trước khi nối, target bị cắt về đúng kích
+     * thước trong state để bỏ phần ghi dở của một lần nối bị dừng giữa chừng.
+     *
+     * @throws IncompatibleException khi hai file khác cấu hình track hoặc piece không dùng offset tương đối
+     */
+    static void append(Path piece, Path target, State state, List<Integer> newChapters) throws IOException {
+        try (FileChannel in = FileChannel.open(piece, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Map<Integer, Track> targetTracks = readTracks(out);
+            Map<Integer, Track> pieceTracks = readTracks(in);
+            if (!targetTracks.equals(pieceTracks)) {
+                throw new IncompatibleException("Cấu hình track khác file tổng hợp");
+            }
+            if (out.size() < state.size) {
+                throw new IncompatibleException("File tổng hợp ngắn hơn trạng thái đã lưu");
+            }
+            out.truncate(state.size);
+
+            // Mọi track của piece bắt đầu cùng lúc, ngay sau track kết thúc muộn nhất của file đích
+            // (giống concat demuxer), nên tiếng và hình không lệch dần qua các lần nối
+            double endSeconds = 0;
+            for (Map.Entry<Integer, Track> entry : targetTracks.entrySet()) {
+                endSeconds = Math.max(endSeconds,
+                        (double) state.getTrackEnd(entry.getKey()) / Math.max(1, entry.getValue().timescale));
+            }
+            Map<Integer, Long> starts = new HashMap<>();
+            for (Map.Entry<Integer, Track> entry : targetTracks.entrySet()) {
+                starts.put(entry.getKey(), Math.round(endSeconds * entry.getValue().timescale));
+            }
+            Map<Integer, Long> shifts = new HashMap<>();
+            long pos = state.size;
+            for (Box box : topLevelBoxes(in)) {
+                if (box.type.equals("moof")) {
+                    ByteBuffer moof = readFully(in, box.start, box.end - box.start);
+                    applyFragment(moof, box.bodyStart - box.start, pieceTracks, state, starts, shifts);
+                    moof.rewind();
+                    while (moof.hasRemaining()) {
+                        pos += out.write(moof, pos);
+                    }
+                } else if (box.type.equals("mdat")) {
+                    long copied = 0;
+                    long length = box.end - box.start;
+                    out.position(pos);
+                    while (copied < length) {
+                        copied += in.transferTo(box.start + copied, length - copied, out);
+                    }
+                    pos += length;
+                }
+            }
+            out.force(false);
+            state.size = pos;
+            state.chapters.addAll(newChapters);
+        }
+    }
+
+    /**
+     * Đọc mfhd/traf của một moof. Khi shifts khác null: gán số thứ tự mới, dời tfdt (ghi thẳng vào moof) sao cho
+     * fragment đầu của mỗi track bắt đầu tại starts; luôn cập nhật số thứ tự kế tiếp và thời điểm kết thúc từng
+     * track trong state.
+     */
+    private static void applyFragment(ByteBuffer moof, long bodyOffset, Map<Integer, Track> tracks, State state,
+                                      Map<Integer, Long> starts, Map<Integer, Long> shifts) throws IOException {
+        for (Box box : children(moof, bodyOffset, moof.limit())) {
+            if (box.type.equals("mfhd")) {
+                int at = (int) box.bodyStart + 4;
+                if (shifts != null) {
+                    moof.putInt(at, (int) state.nextSequence);
+                }
+                state.nextSequence = (moof.getInt(at) & 0xFFFFFFFFL) + 1;
+            } else if (box.type.equals("traf")) {
+                applyTrackFragment(moof, box, tracks, state, starts, shifts);
+            }
+        }
+    }
+
+    private static void applyTrackFragment(ByteBuffer moof, Box traf, Map<Integer, Track> tracks, State state,
+                                           Map<Integer, Long> starts, Map<Integer, Long> shifts) throws IOException {
+        Box tfhd = null;
+        Box tfdt = null;
+        List<Box> truns = new ArrayList<>();
+        for (Box box : children(moof, traf.bodyStart, traf.end)) {
+            switch (box.type) {
+                case "tfhd" -> tfhd = box;
+                case "tfdt" -> tfdt = box;
+                case "trun" -> truns.add(box);
+                default -> {
+                    // box khác không ảnh hưởng dòng thời gian
+                }
+            }
+        }
+        if (tfhd == null || tfdt == null) {
+            throw new IncompatibleException("Fragment thiếu tfhd hoặc tfdt");
+        }
+        int tfhdAt = (int) tfhd.bodyStart;
+        int tfhdFlags = moof.getInt(tfhdAt) & 0xFFFFFF;
+        int trackId = moof.getInt(tfhdAt + 4);
+        if ((tfhdFlags & TFHD_BASE_DATA_OFFSET) != 0) {
+            throw new IncompatibleException("Fragment dùng base-data-offset tuyệt đối");
+        }
+        Track track = tracks.get(trackId);
+        if (track == null) {
+            throw new IncompatibleException("Fragment của track không có trong moov: " + trackId);
+        }
+        long defaultDuration = track.defaultDuration;
+        int field = tfhdAt + 8;
+        if ((tfhdFlags & TFHD_SAMPLE_DESCRIPTION_INDEX) != 0) {
+            field += 4;
+        }
+        if ((tfhdFlags & TFHD_DEFAULT_DURATION) != 0) {
+            defaultDuration = moof.getInt(field) & 0xFFFFFFFFL;
+        }
+
+        int tfdtAt = (int) tfdt.bodyStart;
+        boolean wide = (moof.get(tfdtAt) & 0xFF) == 1;
+        long decodeTime = wide ? moof.getLong(tfdtAt + 4) : moof.getInt(tfdtAt + 4) & 0xFFFFFFFFL;
+        long start = decodeTime;
+        if (shifts != null) {
+            start = decodeTime + shifts.computeIfAbsent(trackId, id -> starts.get(id) - decodeTime);
+            if (wide) {
+                moof.putLong(tfdtAt + 4, start);
+            } else if (start >= 0 && start <= 0xFFFFFFFFL) {
+                moof.putInt(tfdtAt + 4, (int) start);
+            } else {
+                throw new IncompatibleException("tfdt 32 bit không đủ chỗ cho thời điểm mới");
+            }
+        }
+        long end = start;
+        for (Box trun : truns) {
+            end += trunDuration(moof, trun, defaultDuration);
+        }
+        state.trackEnds.merge(trackId, end, Math::max);
+    }
+
+    private static long trunDuration(ByteBuffer moof, Box trun, long defaultDuration) {
+        int at = (int) trun.bodyStart;
+        int flags = moof.getInt(at) & 0xFFFFFF;
+        long sampleCount = moof.getInt(at + 4) & 0xFFFFFFFFL;
+        int pos = at + 8;
+        if ((flags & TRUN_DATA_OFFSET) != 0) {
+            pos += 4;
+        }
+        if ((flags & TRUN_FIRST_SAMPLE_FLAGS) != 0) {
+            pos += 4;
+        }
+        if ((flags & TRUN_SAMPLE_DURATION) == 0) {
+            return sampleCount * defaultDuration;
+        }
+        int stride = 4;
+        for (int flag : new int[]{TRUN_SAMPLE_SIZE, TRUN_SAMPLE_FLAGS, TRUN_SAMPLE_CTO}) {
+            if ((flags & flag) != 0) {
+                stride += 4;
+            }
+        }
+        long total = 0;
+        for (long i = 0; i < sampleCount; i++, pos += stride) {
+            total += moof.getInt(pos) & 0xFFFFFFFFL;
+        }
+        return total;
+    }
+
+    /** Track trong moov: timescale, mô tả mẫu (stsd) và thời lượng mẫu mặc định (trex). */
+    private static final class Track {
+        private long timescale;
+        private byte[] sampleDescription = new byte[0];
+        private long defaultDuration;
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Track other)) {
+                return false;
+            }
+            return timescale == other.timescale && defaultDuration == other.defaultDuration
+                    && Arrays.equals(sampleDescription, other.sampleDescription);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(timescale) * 31 + Arrays.hashCode(sampleDescription);
+        }
+    }
+
+    private static Map<Integer, Track> readTracks(FileChannel channel) throws IOException {
+        // moov nằm ở đầu file (empty_moov), không đi qua các fragment phía sau
+        Box moovBox = null;
+        for (long pos = 0; pos + BOX_HEADER_SIZE <= channel.size(); ) {
+            Box box = readTopLevelBox(channel, pos);
+            if (box.type.equals("moov")) {
+                moovBox = box;
+                break;
+            }
+            pos = box.end;
+        }
+        if (moovBox == null) {
+            throw new IncompatibleException("Không tìm thấy moov");
+        }
+        ByteBuffer moov = readFully(channel, moovBox.start, moovBox.end - moovBox.start);
+        Map<Integer, Track> tracks = new TreeMap<>();
+        boolean fragmented = false;
+        for (Box box : children(moov, moovBox.bodyStart - moovBox.start, moov.limit())) {
+            if (box.type.equals("trak")) {
+                readTrak(moov, box, tracks);
+            } else if (box.type.equals("mvex")) {
+                fragmented = true;
+                for (Box trex : children(moov, box.bodyStart, box.end)) {
+                    if (trex.type.equals("trex")) {
+                        int at = (int) trex.bodyStart;
+                        tracks.computeIfAbsent(moov.getInt(at + 4), id -> new Track()).defaultDuration =
+                                moov.getInt(at + 12) & 0xFFFFFFFFL;
+                    }
+                }
+            }
+        }
+        if (!fragmented) {
+            throw new IncompatibleException("File không phải MP4 phân mảnh");
+        }
+        return tracks;
+    }
+
+    private static void readTrak(ByteBuffer moov, Box trak, Map<Integer, Track> tracks) throws IOException {
+        Box tkhd = child(moov, trak, "tkhd");
+        Box mdia = child(moov, trak, "mdia");
+        Box mdhd = mdia == null ? null : child(moov, mdia, "mdhd");
+        Box minf = mdia == null ? null : child(moov, mdia, "minf");
+        Box stbl = minf == null ? null : child(moov, minf, "stbl");
+        Box stsd = stbl == null ? null : child(moov, stbl, "stsd");
+        if (tkhd == null || mdhd == null || stsd == null) {
+            throw new IncompatibleException("trak thiếu tkhd, mdhd hoặc stsd");
+        }
+        // tkhd/mdhd: version 1 dùng thời gian 64 bit
+        boolean tkhdWide = (moov.get((int) tkhd.bodyStart) & 0xFF) == 1;
+        int trackId = moov.getInt((int) tkhd.bodyStart + (tkhdWide ? 20 : 12));
+        boolean mdhdWide = (moov.get((int) mdhd.bodyStart) & 0xFF) == 1;
+        Track track = tracks.computeIfAbsent(trackId, id -> new Track());
+        track.timescale = moov.getInt((int) mdhd.bodyStart + (mdhdWide ? 20 : 12)) & 0xFFFFFFFFL;
+        track.sampleDescription = new byte[(int) (stsd.end - stsd.start)];
+        moov.get((int) stsd.start, track.sampleDescription);
+    }
+
+    private static Box child(ByteBuffer data, Box parent, String type) throws IOException {
+        for (Box box : children(data, parent.bodyStart, parent.end)) {
+            if (box.type.equals(type)) {
+                return box;
+            }
+        }
+        return null;
+    }
+
+    private static List<Box> children(ByteBuffer data, long from, long to) throws IOException {
+        List<Box> boxes = new ArrayList<>();
+        long pos = from;
+        while (pos + BOX_HEADER_SIZE <= to) {
+            long size = data.getInt((int) pos) & 0xFFFFFFFFL;
+            String type = new String(new byte[]{data.get((int) pos + 4), data.get((int) pos + 5),
+                    data.get((int) pos + 6), data.get((int) pos + 7)}, StandardCharsets.ISO_8859_1);
+            long header = BOX_HEADER_SIZE;
+            if (size == 1) {
+                size = data.getLong((int) pos + 8);
+                header = 16;
+            } else if (size == 0) {
+                size = to - pos;
+            }
+            if (size < header || pos + size > to) {
+                throw new IncompatibleException("Box hỏng: " + type);
+            }
+            boxes.add(new Box(type, pos, pos + header, pos + size));
+            pos += size;
+        }
+        return boxes;
+    }
+
+    private static List<Box> topLevelBoxes(FileChannel channel) throws IOException {
+        List<Box> boxes = new ArrayList<>();
+        long pos = 0;
+        while (pos + BOX_HEADER_SIZE <= channel.size()) {
+            Box box = readTopLevelBox(channel, pos);
+            boxes.add(box);
+            pos = box.end;
+        }
+        return boxes;
+    }
+
+    private static Box readTopLevelBox(FileChannel channel, long pos) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = readFully(channel, pos, Math.min(16, size - pos));
+        long boxSize = header.getInt(0) & 0xFFFFFFFFL;
+        String type = new String(new byte[]{header.get(4), header.get(5), header.get(6), header.get(7)},
+                StandardCharsets.ISO_8859_1);
+        long headerSize = BOX_HEADER_SIZE;
+        if (boxSize == 1) {
+            if (header.limit() < 16) {
+                throw new IncompatibleException("Box hỏng ở cuối file: " + type);
+            }
+            boxSize = header.getLong(8);
+            headerSize = 16;
+        } else if (boxSize == 0) {
+            boxSize = size - pos;
+        }
+        if (boxSize < headerSize || pos + boxSize > size) {
+            throw new IncompatibleException("Box hỏng hoặc bị cắt: " + type);
+        }
+        return new Box(type, pos, pos + headerSize, pos + boxSize);
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long pos, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IncompatibleException("Box quá lớn để đọc vào bộ nhớ");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pos + buffer.position()) < 0) {
+                throw new IncompatibleException("File kết thúc giữa chừng");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static final class Box {
+        private final String type;
+        private final long start;
+        private final long bodyStart;
+        private final long end;
+
+        Box(String type, long start, long bodyStart, long end) {
+            this.type = type;
+            this.start = start;
+            this.bodyStart = bodyStart;
+            this.end = end;
+        }
+    }
+}
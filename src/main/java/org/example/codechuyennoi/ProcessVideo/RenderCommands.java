@@ -0,0 +1,118 @@
+package org.example.codechuyennoi.ProcessVideo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lớp RenderCommands dựng tham số ffmpeg (không gồm đường dẫn ffmpeg) cho việc ghép video chương,
+ * theo chế độ một lần chạy hoặc hai lần chạy (slideshow rồi ghép âm thanh) và theo {@link RenderProfile}.
+ * Không chạy gì cả, nên có thể kiểm tra lệnh mà không cần ffmpeg.
+ */
+final class RenderCommands {
+    // Số frame/giây khi đốt phụ đề (phụ đề chỉ đổi khi có frame mới)
+    private final int subtitleFps;
+    // Profile STILL_IMAGE: số frame/giây khi không đốt phụ đề và độ dài tối đa một GOP (giây)
+    private final int stillFps;
+    private final int stillGopSeconds;
+
+    RenderCommands(int subtitleFps, int stillFps, int stillGopSeconds) {
+        this.subtitleFps = Math.max(1, subtitleFps);
+        this.stillFps = Math.max(1, stillFps);
+        this.stillGopSeconds = Math.max(1, stillGopSeconds);
+    }
+
+    /**
+     * Ghép slideshow ảnh (concat demuxer), âm thanh và phụ đề (nếu có) trong một đồ thị filter của một lần
+     * chạy ffmpeg: video chỉ được encode một lần và không cần file slideshow trung gian.
+     *
+     * @param subtitlePath file .ass cần đốt vào video, null nếu không có phụ đề
+     */
+    List<String> singlePass(String slideshowInput, String audioPath, String subtitlePath,
+                            List<SlideshowPlanner.Slide> slides, RenderProfile profile, String outputPath) {
+        String videoFilter;
+        List<String> frameRate;
+        // Phụ đề karaoke cần đủ frame để chữ đổi màu mượt, nên khi đốt phụ đề luôn dùng subtitleFps
+        int fps = subtitlePath != null ? subtitleFps : stillFps;
+        if (subtitlePath != null) {
+            String assFilePath = subtitlePath.replace("\\", "/").replace(":", "\\:").replace("'", "\\'");
+            videoFilter = "[0:v]fps=" + subtitleFps + ",format=yuv420p,subtitles='" + assFilePath + "'[v]";
+            frameRate = List.of();
+        } else if (profile == RenderProfile.STILL_IMAGE) {
+            videoFilter = "[0:v]fps=" + stillFps + ",format=yuv420p[v]";
+            frameRate = List.of();
+        } else {
+            // Không có phụ đề: mỗi ảnh chỉ cần một frame, giữ frame rate thay đổi như slideshow cũ
+            videoFilter = "[0:v]format=yuv420p[v]";
+            frameRate = List.of("-vsync", "vfr");
+        }
+        List<String> command = new ArrayList<>(List.of(
+                "-y",
+                "-f", "concat", "-safe", "0",
+                "-i", slideshowInput,
+                "-i", audioPath,
+                "-filter_complex", videoFilter,
+                "-map", "[v]", "-map", "1:a"
+        ));
+        command.addAll(frameRate);
+        command.addAll(videoEncoderArgs(profile, slides, fps));
+        command.addAll(List.of(
+                "-c:a", "aac",
+                "-shortest",
+                outputPath
+        ));
+        return command;
+    }
+
+    /** Lần chạy thứ nhất của chế độ hai lần chạy: encode slideshow ảnh thành video không tiếng. */
+    List<String> slideshow(String slideshowInput, List<SlideshowPlanner.Slide> slides, RenderProfile profile,
+                           String slideshowPath) {
+        List<String> command = new ArrayList<>(List.of(
+                "-y",
+                "-f", "concat", "-safe", "0",
+                "-i", slideshowInput
+        ));
+        if (profile == RenderProfile.STILL_IMAGE) {
+            command.addAll(List.of("-vf", "fps=" + stillFps + ",format=yuv420p"));
+            command.addAll(videoEncoderArgs(profile, slides, stillFps));
+        } else {
+            command.addAll(List.of("-vsync", "vfr", "-pix_fmt", "yuv420p"));
+        }
+        command.add(slideshowPath);
+        return command;
+    }
+
+    /** Lần chạy thứ hai của chế độ hai lần chạy: chép nguyên luồng video và ghép âm thanh. */
+    List<String> mux(String slideshowPath, String audioPath, String outputPath) {
+        return List.of(
+                "-y",
+                "-i", slideshowPath,
+                "-i", audioPath,
+                "-c:v", "copy",
+                "-c:a", "aac",
+                "-shortest",
+                outputPath
+        );
+    }
+
+    /**
+     * Tham số encoder video theo profile. STILL_IMAGE: -tune stillimage, keyframe đúng lúc đổi ảnh
+     * (-force_key_frames, tắt scene-cut) và GOP dài tối đa stillGopSeconds giây, nên mỗi ảnh chỉ tốn một
+     * keyframe còn các frame lặp lại gần như không tốn bit.
+     */
+    private List<String> videoEncoderArgs(RenderProfile profile, List<SlideshowPlanner.Slide> slides, int fps) {
+        List<String> args = new ArrayList<>(List.of("-c:v", "libx264", "-preset", "fast"));
+        if (profile != RenderProfile.STILL_IMAGE) {
+            return args;
+        }
+        args.addAll(List.of(
+                "-tune", "stillimage",
+                "-g", String.valueOf(fps * stillGopSeconds),
+                "-sc_threshold", "0"
+        ));
+        String keyframes = SlideshowPlanner.keyframeTimes(slides);
+        if (!keyframes.isEmpty()) {
+            args.addAll(List.of("-force_key_frames", keyframes));
+        }
+        return args;
+    }
+}
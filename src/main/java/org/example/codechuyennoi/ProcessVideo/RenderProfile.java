@@ -0,0 +1,28 @@
+package org.example.codechuyennoi.ProcessVideo;
+
+import java.util.Locale;
+
+/**
+ * Cách encode video slideshow của chương.
+ * STANDARD: giữ cách encode cũ (frame rate thay đổi theo ảnh, x264 mặc định).
+ * STILL_IMAGE: frame rate cố định thấp, x264 -tune stillimage, GOP dài và keyframe đặt đúng lúc đổi ảnh,
+ * nên encode nhanh hơn và file nhỏ hơn với ảnh tĩnh mà hình vẫn như cũ.
+ */
+public enum RenderProfile {
+    STANDARD,
+    STILL_IMAGE;
+
+    /** Đọc tên profile từ cấu hình ("standard", "still-image", "still_image", ...), sai tên thì trả về fallback. */
+    public static RenderProfile parse(String value, RenderProfile fallback) {
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        String normalized = value.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+        for (RenderProfile profile : values()) {
+            if (profile.name().equals(normalized) || profile.name().replace("_", "").equals(normalized)) {
+                return profile;
+            }
+        }
+        return fallback;
+    }
+}
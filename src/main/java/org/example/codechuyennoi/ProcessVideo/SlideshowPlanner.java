@@ -0,0 +1,118 @@
+package org.example.codechuyennoi.ProcessVideo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Lớp SlideshowPlanner lập danh sách ảnh cho concat demuxer của ffmpeg: các câu liền nhau dùng cùng một ảnh
+ * được gộp thành một mục với tổng thời lượng, nên ffmpeg chỉ mở và giải mã mỗi đoạn ảnh giống nhau một lần.
+ */
+public final class SlideshowPlanner {
+
+    private SlideshowPlanner() {
+    }
+
+    /** Một mục trong slideshow: ảnh và thời gian hiển thị (giây). */
+    public static final class Slide {
+        private final String imagePath;
+        private final double durationSeconds;
+
+        public Slide(String imagePath, double durationSeconds) {
+            this.imagePath = imagePath;
+            this.durationSeconds = durationSeconds;
+        }
+
+        public String getImagePath() {
+            return imagePath;
+        }
+
+        public double getDurationSeconds() {
+            return durationSeconds;
+        }
+    }
+
+    /** Chia đều totalSeconds cho mọi ảnh rồi gộp các ảnh giống nhau liền nhau. */
+    public static List<Slide> plan(List<String> imagePaths, double totalSeconds) {
+        double[] durations = new double[imagePaths.size()];
+        Arrays.fill(durations, totalSeconds / Math.max(1, imagePaths.size()));
+        return plan(imagePaths, durations);
+    }
+
+    /**
+     * Gộp các ảnh giống nhau liền nhau (cùng file sau khi chuẩn hóa đường dẫn) thành một mục.
+     *
+     * @param durations thời lượng hiển thị của từng ảnh, cùng thứ tự với imagePaths
+     */
+    public static List<Slide> plan(List<String> imagePaths, double[] durations) {
+        if (imagePaths.size() != durations.length) {
+            throw new IllegalArgumentException("Số ảnh (" + imagePaths.size() + ") khác số thời lượng (" + durations.length + ")");
+        }
+        List<Slide> slides = new ArrayList<>();
+        Path currentKey = null;
+        String currentPath = null;
+        double currentDuration = 0;
+        for (int i = 0; i < imagePaths.size(); i++) {
+            String path = imagePaths.get(i);
+            Path key = Path.of(path).toAbsolutePath().normalize();
+            if (key.equals(currentKey)) {
+                currentDuration += durations[i];
+                continue;
+            }
+            if (currentPath != null) {
+                slides.add(new Slide(currentPath, currentDuration));
+            }
+            currentKey = key;
+            currentPath = path;
+            currentDuration = durations[i];
+        }
+        if (currentPath != null) {
+            slides.add(new Slide(currentPath, currentDuration));
+        }
+        return slides;
+    }
+
+    /**
+     * Ghi file danh sách cho concat demuxer. Ảnh cuối được ghi lặp lại một lần không kèm duration,
+     * vì concat demuxer bỏ qua duration của mục cuối cùng.
+     */
+    public static void writeConcatFile(List<Slide> slides, File concatFile) throws IOException {
+        if (slides.isEmpty()) {
+            throw new IllegalArgumentException("Slideshow không có ảnh nào");
+        }
+        try (PrintWriter writer = new PrintWriter(concatFile, StandardCharsets.UTF_8)) {
+            for (Slide slide : slides) {
+                writer.println("file '" + escape(slide.getImagePath()) + "'");
+                writer.println("duration " + String.format(Locale.ROOT, "%.6f", slide.getDurationSeconds()));
+            }
+            writer.println("file '" + escape(slides.get(slides.size() - 1).getImagePath()) + "'");
+        }
+    }
+
+    /**
+     * Thời điểm bắt đầu (giây) của mọi ảnh trừ ảnh đầu, phân cách bằng dấu phẩy, dùng cho -force_key_frames
+     * để keyframe rơi đúng lúc đổi ảnh.
+     */
+    public static String keyframeTimes(List<Slide> slides) {
+        StringBuilder times = new StringBuilder();
+        double start = 0;
+        for (int i = 0; i < slides.size() - 1; i++) {
+            start += slides.get(i).getDurationSeconds();
+            if (times.length() > 0) {
+                times.append(',');
+            }
+            times.append(String.format(Locale.ROOT, "%.3f", start));
+        }
+        return times.toString();
+    }
+
+    private static String escape(String path) {
+        return path.replace("'", "'\\''").replace("\\", "/");
+    }
+}
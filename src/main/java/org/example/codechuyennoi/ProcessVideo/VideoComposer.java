@@ -1,16 +1,20 @@
 package org.example.codechuyennoi.ProcessVideo;
 
 import org.example.codechuyennoi.ProcessAudio.AudioStory;
+import org.example.codechuyennoi.ProcessAudio.MediaDurationProbe;
 import org.example.codechuyennoi.ProcessStory.Story;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 import org.example.codechuyennoi.ProcessingSubtitle.*;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.List;
 
 @Service
@@ -20,100 +24,41 @@ public class VideoComposer {
 
     private final SubtitleLineProvider subtitleLineProvider;
     private final SubtitleGenerator subtitleGenerator;
-    private final String ffmpegPath;
-    private final String ffprobePath;
+    private final MediaDurationProbe mediaDurationProbe;
+    private final FfmpegExecutor ffmpegExecutor;
+    // true: ảnh, âm thanh (và phụ đề) được ghép trong một lần chạy ffmpeg, một lần encode, không có file trung gian
+    private final boolean singlePass;
+    // true: đốt phụ đề .ass vào video khi chương có phụ đề (chỉ dùng ở chế độ một lần chạy)
+    private final boolean burnSubtitles;
+    // Profile encode mặc định; từng truyện đổi được bằng video.render.story.<tên truyện chuẩn hóa>.profile
+    private final RenderProfile defaultProfile;
+    private final RenderCommands renderCommands;
+    private final Environment environment;
 
     public VideoComposer(
             SubtitleLineProvider subtitleLineProvider,
             SubtitleGenerator subtitleGenerator,
-            @Value("${ffmpeg.path}") String ffmpegPath,
-            @Value("${ffprobe.path}") String ffprobePath
+            MediaDurationProbe mediaDurationProbe,
+            FfmpegExecutor ffmpegExecutor,
+            @Value("${video.render.single-pass:true}") boolean singlePass,
+            @Value("${video.render.subtitles:false}") boolean burnSubtitles,
+            @Value("${video.render.subtitle-fps:25}") int subtitleFps,
+            @Value("${video.render.profile:standard}") String defaultProfile,
+            @Value("${video.render.still.fps:2}") int stillFps,
+            @Value("${video.render.still.gop-seconds:60}") int stillGopSeconds,
+            Environment environment
     ) {
         this.subtitleLineProvider = subtitleLineProvider;
         this.subtitleGenerator = subtitleGenerator;
-        this.ffmpegPath = validateExecutable(ffmpegPath, "ffmpeg.path");
-        this.ffprobePath = validateExecutable(ffprobePath, "ffprobe.path");
+        this.mediaDurationProbe = mediaDurationProbe;
+        this.ffmpegExecutor = ffmpegExecutor;
+        this.singlePass = singlePass;
+        this.burnSubtitles = burnSubtitles;
+        this.defaultProfile = RenderProfile.parse(defaultProfile, RenderProfile.STANDARD);
+        this.renderCommands = new RenderCommands(subtitleFps, stillFps, stillGopSeconds);
+        this.environment = environment;
     }
 
-    private String validateExecutable(String path, String name) {
-        File file = new File(path);
-        if (!file.exists() || !file.isFile() || !file.canExecute()) {
-            throw new IllegalArgumentException(name + " executable not found or not executable at: " + path);
-        }
-        return path;
-    }
-
-    /**
-     * Tạo video slideshow ghép âm thanh, sau đó ghép phụ đề karaoke nếu có.
-
-    public VideoStory composeVideoWithSubtitles(Story story, AudioStory audioStory, List<String> imagePaths, String title, String description) throws IOException {
-        VideoStory videoStory = composeVideo(story, audioStory, imagePaths, title, description);
-        if (videoStory == null) return null;
-
-        String outputPath = videoStory.getVideoFilePath();
-        String outputDir = new File(outputPath).getParent();
-
-        // Lấy phụ đề
-        List<SubtitleLine> subtitleLines = subtitleLineProvider.getLinesForChapter(story.getStoryName(), story.getChapterNumber());
-        if (subtitleLines == null || subtitleLines.isEmpty()) {
-            logger.warn("Không có phụ đề cho truyện '{}', chương {}. Trả về video không phụ đề.", story.getStoryName(), story.getChapterNumber());
-            return videoStory;
-        }
-
-        // Tạo file .ass phụ đề
-        String subtitlePath = outputDir + "/subtitles_" + story.getChapterNumber() + ".ass";
-        subtitleGenerator.generateAss(subtitleLines, subtitlePath);
-
-        File assFile = new File(subtitlePath);
-        if (!assFile.exists()) {
-            logger.warn("File phụ đề .ass không được tạo: {}. Trả về video không phụ đề.", subtitlePath);
-            return videoStory;
-        }
-
-        // Kiểm tra nội dung file .ass
-        try {
-            List<String> assLines = Files.readAllLines(assFile.toPath());
-            if (assLines.isEmpty() || !assLines.get(0).startsWith("[Script Info]")) {
-                logger.warn("File .ass không hợp lệ: {}. Trả về video không phụ đề.", subtitlePath);
-                return videoStory;
-            }
-        } catch (IOException e) {
-            logger.error("Lỗi khi đọc file .ass {}: {}", subtitlePath, e.getMessage());
-            return videoStory;
-        }
-
-        logger.info("Ghép phụ đề karaoke vào video...");
-        File tempOutput = new File(outputDir + "/temp_video_with_subs.mp4");
-
-        try {
-            // Chuẩn hóa đường dẫn file .ass
-            String assFilePath = assFile.getAbsolutePath().replace("\\", "/").replace(":", "\\:").replace("'", "\\'");
-            String subtitleFilter = "subtitles='" + assFilePath + "'";
-
-            List<String> command = List.of(
-                    ffmpegPath, "-y",
-                    "-i", outputPath,
-                    "-vf", subtitleFilter,
-                    "-c:v", "libx264", "-preset", "fast",
-                    "-c:a", "copy",
-                    tempOutput.getAbsolutePath()
-            );
-            logger.info("Chạy lệnh FFmpeg: {}", String.join(" ", command));
-            runCommand(command, "Ghép phụ đề karaoke vào video");
-
-            Files.deleteIfExists(Paths.get(outputPath));
-            Files.move(tempOutput.toPath(), Paths.get(outputPath));
-
-            logger.info("Đã ghép phụ đề và ghi đè video tại: {}", outputPath);
-            return new VideoStory(outputPath, title, description, null, audioStory, audioStory, null);
-
-        } catch (IOException | InterruptedException e) {
-            logger.error("Lỗi khi ghép phụ đề: {}", e.getMessage(), e);
-            Files.deleteIfExists(tempOutput.toPath());
-            return videoStory;
-        }
-    }  */
-
     public VideoStory composeVideo(Story story, AudioStory audioStory, List<String> imagePaths, String title, String description) {
         if (story == null || audioStory == null || imagePaths == null || imagePaths.isEmpty()) {
             logger.warn("Thiếu đầu vào để tổng hợp video");
@@ -131,10 +76,11 @@ public class VideoComposer {
         logger.info("File âm thanh: {}", audioStory.getAudioFilePath());
 
         try {
-            String storyFolderName = "video_" + story.getStoryName()
+            String storyKey = story.getStoryName()
                     .toLowerCase()
                     .replaceAll("[^a-z0-9]+", "_")
                     .replaceAll("^_+|_+$", "");
+            String storyFolderName = "video_" + storyKey;
             String outputDir = "output/" + storyFolderName;
             File dir = new File(outputDir);
             if (!dir.exists() && !dir.mkdirs()) {
@@ -143,53 +89,52 @@ public class VideoComposer {
             }
 
             String outputPath = outputDir + "/video_chuong_" + story.getChapterNumber() + ".mp4";
-            String slideshowPath = outputDir + "/slideshow_" + story.getChapterNumber() + ".mp4";
-            File slideshowInput = new File(outputDir + "/slideshow_input.txt");
 
-            double totalDuration = getAudioDuration(audioStory.getAudioFilePath());
-            if (totalDuration <= 0) {
-                logger.error("Thời lượng audio không hợp lệ: {}", totalDuration);
-                return null;
+            double[] imageDurations = sentenceDurations(audioStory, imagePaths.size());
+            if (imageDurations == null) {
+                double totalDuration = getAudioDuration(audioStory.getAudioFilePath());
+                if (totalDuration <= 0) {
+                    logger.error("Thời lượng audio không hợp lệ: {}", totalDuration);
+                    return null;
+                }
+                // Không có thời lượng từng câu: chia đều thời lượng đo được cho mọi ảnh
+                imageDurations = new double[imagePaths.size()];
+                Arrays.fill(imageDurations, totalDuration / imagePaths.size());
             }
-            double imageDuration = totalDuration / imagePaths.size();
 
-            try (PrintWriter writer = new PrintWriter(slideshowInput)) {
-                for (String path : imagePaths) {
-                    String sanitizedPath = path.replace("'", "'\\''").replace("\\", "/");
-                    writer.println("file '" + sanitizedPath + "'");
-                    writer.println("duration " + imageDuration);
+            // File trung gian nằm trong thư mục tạm riêng của lần dựng này và bị xóa cùng thư mục khi xong
+            try (ChapterScratch scratch = ChapterScratch.create(dir.toPath(), story.getChapterNumber())) {
+                File slideshowInput = scratch.file("slideshow_input.txt");
+                File renderedVideo = scratch.file("video.mp4");
+
+                // Các câu liền nhau dùng cùng một ảnh được gộp thành một mục của concat demuxer
+                List<SlideshowPlanner.Slide> slides = SlideshowPlanner.plan(imagePaths, imageDurations);
+                SlideshowPlanner.writeConcatFile(slides, slideshowInput);
+                RenderProfile profile = profileFor(storyKey);
+                logger.info("Slideshow: {} ảnh gộp thành {} mục, profile {}", imagePaths.size(), slides.size(), profile);
+
+                if (singlePass) {
+                    File subtitleFile = burnSubtitles ? buildSubtitleFile(story, scratch) : null;
+                    runCommand(renderCommands.singlePass(slideshowInput.getAbsolutePath(), audioStory.getAudioFilePath(),
+                            subtitleFile != null ? subtitleFile.getAbsolutePath() : null, slides, profile,
+                            renderedVideo.getAbsolutePath()), "Tạo video chương (một lần chạy)");
+                } else {
+                    String slideshowPath = scratch.file("slideshow.mp4").getAbsolutePath();
+                    runCommand(renderCommands.slideshow(slideshowInput.getAbsolutePath(), slides, profile, slideshowPath),
+                            "Tạo slideshow video");
+                    runCommand(renderCommands.mux(slideshowPath, audioStory.getAudioFilePath(),
+                            renderedVideo.getAbsolutePath()), "Ghép slideshow với audio");
                 }
-                String lastImagePath = imagePaths.get(imagePaths.size() - 1).replace("'", "'\\''").replace("\\", "/");
-                writer.println("file '" + lastImagePath + "'");
-            }
 
-            runCommand(List.of(
-                    ffmpegPath, "-y",
-                    "-f", "concat", "-safe", "0",
-                    "-i", slideshowInput.getAbsolutePath(),
-                    "-vsync", "vfr", "-pix_fmt", "yuv420p",
-                    slideshowPath
-            ), "Tạo slideshow video");
-
-            runCommand(List.of(
-                    ffmpegPath, "-y",
-                    "-i", slideshowPath,
-                    "-i", audioStory.getAudioFilePath(),
-                    "-c:v", "copy",
-                    "-c:a", "aac",
-                    "-shortest",
-                    outputPath
-            ), "Ghép slideshow với audio");
-
-            File outFile = new File(outputPath);
-            if (outFile.exists() && outFile.length() > 0) {
+                if (!renderedVideo.exists() || renderedVideo.length() == 0) {
+                    logger.error("File video đầu ra không tồn tại hoặc rỗng: {}", renderedVideo);
+                    return null;
+                }
+                // Video chỉ xuất hiện dưới tên video_chuong_N.mp4 khi đã ghi xong
+                Files.move(renderedVideo.toPath(), Paths.get(outputPath),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
                 logger.info("Đã tạo video tại: {}", outputPath);
-                cleanupTempFiles(slideshowInput, new File(slideshowPath));
                 return new VideoStory(outputPath, title, description, null, audioStory, audioStory, null);
-            } else {
-                logger.error("File video đầu ra không tồn tại hoặc rỗng: {}", outputPath);
-                cleanupTempFiles(slideshowInput, new File(slideshowPath));
-                return null;
             }
         } catch (Exception e) {
             logger.error("Lỗi khi tổng hợp video: {}", e.getMessage(), e);
@@ -197,52 +142,64 @@ public class VideoComposer {
         }
     }
 
-    private double getAudioDuration(String audioPath) throws IOException, InterruptedException {
-        if (!Files.exists(Paths.get(audioPath))) {
-            throw new IOException("File âm thanh không tồn tại: " + audioPath);
+    private RenderProfile profileFor(String storyKey) {
+        return RenderProfile.parse(environment.getProperty("video.render.story." + storyKey + ".profile"),
+                defaultProfile);
+    }
+
+    /**
+     * Tạo file phụ đề .ass cho chương từ {@link SubtitleLineProvider}.
+     *
+     * @return file .ass hợp lệ, hoặc null nếu chương không có phụ đề hoặc tạo thất bại
+     */
+    private File buildSubtitleFile(Story story, ChapterScratch scratch) {
+        List<SubtitleLine> subtitleLines = subtitleLineProvider.getLinesForChapter(story.getStoryName(), story.getChapterNumber());
+        if (subtitleLines == null || subtitleLines.isEmpty()) {
+            logger.warn("Không có phụ đề cho truyện '{}', chương {}. Tạo video không phụ đề.", story.getStoryName(), story.getChapterNumber());
+            return null;
         }
-        ProcessBuilder pb = new ProcessBuilder(
-                ffprobePath, "-v", "error",
-                "-show_entries", "format=duration",
-                "-of", "default=noprint_wrappers=1:nokey=1",
-                audioPath
-        );
-        Process process = pb.start();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line = reader.readLine();
-            int exitCode = process.waitFor();
-            if (exitCode != 0 || line == null || line.trim().isEmpty()) {
-                throw new IOException("Không lấy được thời lượng âm thanh từ ffprobe. Exit code: " + exitCode);
+        String subtitlePath = scratch.file("subtitles.ass").getAbsolutePath();
+        try {
+            File assFile = subtitleGenerator.generateAss(subtitleLines, subtitlePath);
+            if (assFile == null || !assFile.exists() || assFile.length() == 0) {
+                logger.warn("File phụ đề .ass không được tạo: {}. Tạo video không phụ đề.", subtitlePath);
+                return null;
             }
-            return Double.parseDouble(line.trim());
+            return assFile;
+        } catch (IOException e) {
+            logger.warn("Lỗi khi tạo file phụ đề {}: {}. Tạo video không phụ đề.", subtitlePath, e.getMessage());
+            return null;
         }
     }
 
-    private void runCommand(List<String> command, String operation) throws IOException, InterruptedException {
-        logger.info("Chạy lệnh FFmpeg: {}", String.join(" ", command));
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectErrorStream(true);
-        Process process = pb.start();
-        StringBuilder ffmpegOutput = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                ffmpegOutput.append(line).append("\n");
-                logger.debug("ffmpeg: {}", line);
-            }
+    /**
+     * Thời lượng hiển thị (giây) của ảnh từng câu, lấy từ thời lượng các đoạn TTS đã ghép.
+     *
+     * @return null nếu âm thanh không kèm thời lượng từng câu hoặc số câu khác số ảnh
+     */
+    private static double[] sentenceDurations(AudioStory audioStory, int imageCount) {
+        long[] micros = audioStory.getSentenceDurationsMicros();
+        if (micros == null || micros.length != imageCount) {
+            return null;
         }
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            logger.error("FFmpeg thất bại khi {}:\n{}", operation, ffmpegOutput);
-            throw new RuntimeException("FFmpeg thất bại với mã lỗi: " + exitCode);
+        double[] seconds = new double[micros.length];
+        double total = 0;
+        for (int i = 0; i < micros.length; i++) {
+            seconds[i] = micros[i] / 1_000_000.0;
+            total += seconds[i];
         }
+        return total > 0 ? seconds : null;
     }
 
-    private void cleanupTempFiles(File... files) {
-        for (File file : files) {
-            if (file.exists() && !file.delete()) {
-                logger.warn("Không xóa được file tạm: {}", file.getAbsolutePath());
-            }
+    private double getAudioDuration(String audioPath) throws IOException {
+        double seconds = mediaDurationProbe.probeSeconds(audioPath);
+        if (seconds < 0) {
+            throw new IOException("Không lấy được thời lượng âm thanh: " + audioPath);
         }
+        return seconds;
+    }
+
+    private void runCommand(List<String> args, String operation) throws IOException, InterruptedException {
+        ffmpegExecutor.runOrThrow(operation, args, FfmpegExecutor.Priority.NORMAL);
     }
 }
\ No newline at end of file
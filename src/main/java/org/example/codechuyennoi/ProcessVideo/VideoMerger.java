@@ -6,161 +6,280 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 @Service
 public class VideoMerger {
     private static final Logger logger = LoggerFactory.getLogger(VideoMerger.class);
 
-    private final String ffmpegPath;
+    // Video của một batch: đúng các chương được yêu cầu, là file được upload
+    private static final String BATCH_VIDEO_NAME = "video_full.mp4";
+    // Chế độ nối dần: video tổng hợp mọi chương đã gộp của truyện, kèm file trạng thái .state
+    private static final String COMPILATION_NAME = "video_compilation.mp4";
+    private static final String STATE_SUFFIX = ".state";
+    // MP4 phân mảnh: moov chỉ mô tả track, offset mẫu tính từ đầu mỗi fragment, nên fragment nối thêm được
+    private static final List<String> FRAGMENTED_MOVFLAGS =
+            List.of("-movflags", "frag_keyframe+empty_moov+default_base_moof");
 
-    // Inject giá trị ffmpegPath từ application.properties hoặc application.yml
-    public VideoMerger(@Value("${ffmpeg.path}") String ffmpegPath) {
-        this.ffmpegPath = validateExecutable(ffmpegPath, "FFmpeg");
-    }
+    private final FfmpegExecutor ffmpegExecutor;
+    // true: duy trì thêm video_compilation.mp4 phân mảnh, chương mới được nối vào cuối thay vì gộp lại từ đầu
+    private final boolean incremental;
 
-    private String validateExecutable(String path, String name) {
-        File file = new File(path);
-        if (!file.exists() || !file.isFile()) {
-            throw new IllegalArgumentException(name + " executable not found at: " + path);
-        }
-        return path;
+    public VideoMerger(FfmpegExecutor ffmpegExecutor,
+                       @Value("${video.merge.incremental:false}") boolean incremental) {
+        this.ffmpegExecutor = ffmpegExecutor;
+        this.incremental = incremental;
     }
 
-    public String mergeVideos(String storyFolderPath) {
-        if (storyFolderPath == null || storyFolderPath.isBlank()) {
-            logger.error("Đường dẫn thư mục trống hoặc null");
+    /**
+     * Gộp video của đúng các chương được yêu cầu, theo thứ tự trong danh sách, thành video_full.mp4: video của
+     * batch, chỉ chứa các chương này.
+     *
+     * Ở chế độ nối dần (video.merge.incremental), ngoài video của batch còn duy trì video_compilation.mp4: MP4
+     * phân mảnh chứa mọi chương đã gộp của truyện. Video của batch được ghi ở dạng phân mảnh và fragment của nó
+     * được nối vào cuối video tổng hợp mà không ghi lại phần đã có, nên lượng đọc/ghi chỉ tăng theo số chương
+     * mới. Video tổng hợp được dựng lại toàn bộ khi chưa có, khi có chương nằm trước chương cuối đã gộp, hoặc
+     * khi chương mới khác cấu hình encode. Lỗi khi cập nhật video tổng hợp không làm hỏng video của batch.
+     *
+     * @return đường dẫn video của batch, hoặc null nếu thất bại
+     */
+    public String mergeChapters(String storyFolderPath, List<Integer> chapters) {
+        File folder = storyFolder(storyFolderPath);
+        if (folder == null) {
             return null;
         }
-
-        Path folderPath = Paths.get(storyFolderPath).toAbsolutePath().normalize();
-        File folder = folderPath.toFile();
-        if (!folder.isDirectory() || !Files.isReadable(folderPath) || !Files.isWritable(folderPath)) {
-            logger.error("Thư mục không tồn tại, không đọc được hoặc không ghi được: {}", folderPath);
+        if (chapters == null || chapters.isEmpty()) {
+            logger.error("Không có chương nào để gộp trong thư mục: {}", folder);
             return null;
         }
-
-        File[] videoFilesArray = folder.listFiles((dir, name) -> name.matches("video_chuong_\\d+\\.mp4"));
-        if (videoFilesArray == null || videoFilesArray.length == 0) {
-            logger.warn("Không tìm thấy file video chương trong thư mục: {}", folderPath);
+        List<File> videoFiles = chapterFiles(folder, chapters);
+        if (videoFiles == null) {
             return null;
         }
 
-        List<File> videoFiles = Arrays.stream(videoFilesArray)
-                .filter(file -> file.length() > 0)
-                .sorted(Comparator.comparingInt(this::extractChapterNumber))
-                .collect(Collectors.toList());
+        logger.info("Gộp {} file video chương:", videoFiles.size());
+        videoFiles.forEach(f -> logger.info(" - {} ({} bytes)", f.getName(), f.length()));
 
-        if (videoFiles.isEmpty()) {
-            logger.error("Không có file video chương hợp lệ để nối trong thư mục: {}", folderPath);
+        Path batchVideoPath = folder.toPath().resolve(BATCH_VIDEO_NAME).toAbsolutePath().normalize();
+        if (!concat(folder, videoFiles, batchVideoPath, incremental ? FRAGMENTED_MOVFLAGS : List.of())) {
             return null;
         }
+        if (incremental) {
+            updateCompilation(folder, chapters, batchVideoPath,
+                    folder.toPath().resolve(COMPILATION_NAME).toAbsolutePath().normalize());
+        }
+        return batchVideoPath.toString();
+    }
 
-        logger.info("Tìm thấy {} file video chương:", videoFiles.size());
-        videoFiles.forEach(f -> logger.info(" - {} ({} bytes)", f.getName(), f.length()));
+    /** Đưa các chương của batch vào video tổng hợp của truyện: nối vào cuối nếu được, nếu không thì dựng lại. */
+    private void updateCompilation(File folder, List<Integer> chapters, Path batchVideo, Path compilation) {
+        Path statePath = compilation.resolveSibling(COMPILATION_NAME + STATE_SUFFIX);
+        FragmentedMp4.State state = null;
+        if (Files.isRegularFile(compilation) && Files.isRegularFile(statePath)) {
+            try {
+                state = FragmentedMp4.State.load(statePath);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Không đọc được trạng thái video tổng hợp, dựng lại: {}", e.getMessage());
+            }
+        }
 
-        File concatFile = new File(folder, "concat_list.txt");
-        try (PrintWriter writer = new PrintWriter(concatFile)) {
-            for (File file : videoFiles) {
-                String filePath = file.getCanonicalPath().replace("\\", "/");
-                writer.println("file '" + filePath + "'");
+        if (state != null) {
+            List<Integer> included = state.getChapters();
+            List<Integer> newChapters = chapters.stream()
+                    .filter(chapter -> !included.contains(chapter))
+                    .collect(Collectors.toList());
+            if (newChapters.isEmpty()) {
+                logger.info("✅ Video tổng hợp đã có đủ {} chương: {}", chapters.size(), compilation);
+                return;
+            }
+            int lastIncluded = included.stream().mapToInt(Integer::intValue).max().orElse(Integer.MIN_VALUE);
+            if (newChapters.stream().allMatch(chapter -> chapter > lastIncluded)) {
+                if (appendChapters(folder, newChapters, chapters, batchVideo, compilation, statePath, state)) {
+                    return;
+                }
+            } else {
+                logger.info("Có chương nằm trước chương {} đã gộp, dựng lại video tổng hợp", lastIncluded);
             }
-            logger.info("Đã tạo file concat_list.txt tại: {}", concatFile.getAbsolutePath());
-        } catch (IOException e) {
-            logger.error("Lỗi ghi file concat_list.txt: {}", e.getMessage(), e);
-            return null;
         }
 
-        Path mergedVideoPath = folderPath.resolve("video_full.mp4").toAbsolutePath().normalize();
-        File outputFile = mergedVideoPath.toFile();
+        // Dựng lại: mọi chương đã gộp trước đây (còn file) cùng các chương của batch, theo thứ tự số chương
+        TreeSet<Integer> all = new TreeSet<>(chapters);
+        if (state != null) {
+            state.getChapters().stream()
+                    .filter(chapter -> chapterFile(folder, chapter).length() > 0)
+                    .forEach(all::add);
+        }
+        List<Integer> ordered = new ArrayList<>(all);
+        deleteQuietly(statePath);
+        if (!rebuildCompilation(folder, ordered, chapters, batchVideo, compilation)) {
+            logger.warn("Không dựng lại được video tổng hợp: {}", compilation);
+            return;
+        }
+        try {
+            FragmentedMp4.describe(compilation, ordered).save(statePath);
+        } catch (IOException e) {
+            // Thiếu trạng thái thì lần sau dựng lại toàn bộ, video vừa tạo vẫn dùng được
+            logger.warn("Không lưu được trạng thái video tổng hợp: {}", e.getMessage());
+            deleteQuietly(statePath);
+        }
+    }
 
-        if (outputFile.exists()) {
+    /** Dựng video tổng hợp từ đầu; nếu nó trùng đúng các chương của batch thì chỉ cần chép video của batch. */
+    private boolean rebuildCompilation(File folder, List<Integer> ordered, List<Integer> batchChapters,
+                                       Path batchVideo, Path compilation) {
+        if (ordered.equals(batchChapters)) {
             try {
-                Files.delete(outputFile.toPath());
-                logger.info("Đã xóa file output cũ: {}", mergedVideoPath);
+                Files.copy(batchVideo, compilation, StandardCopyOption.REPLACE_EXISTING);
+                return true;
             } catch (IOException e) {
-                logger.error("Không thể xóa file output cũ: {}. Vui lòng kiểm tra quyền truy cập.", mergedVideoPath, e);
-                return null;
+                logger.warn("Không chép được video batch sang video tổng hợp: {}", e.getMessage());
+                deleteQuietly(compilation);
+                return false;
             }
         }
+        List<File> videoFiles = chapterFiles(folder, ordered);
+        return videoFiles != null && concat(folder, videoFiles, compilation, FRAGMENTED_MOVFLAGS);
+    }
 
-        Path outputDir = mergedVideoPath.getParent();
-        if (!Files.exists(outputDir)) {
-            try {
-                Files.createDirectories(outputDir);
-                logger.info("Đã tạo thư mục đầu ra: {}", outputDir);
-            } catch (IOException e) {
-                logger.error("Không thể tạo thư mục đầu ra: {}", outputDir, e);
+    /**
+     * Nối fragment của các chương mới vào cuối video tổng hợp. Khi batch chỉ gồm chương mới thì nối thẳng video
+     * của batch, nếu không thì gộp riêng các chương mới thành một đoạn MP4 phân mảnh rồi nối đoạn đó.
+     *
+     * @return true nếu đã nối xong, false nếu phải dựng lại toàn bộ
+     */
+    private boolean appendChapters(File folder, List<Integer> newChapters, List<Integer> batchChapters,
+                                   Path batchVideo, Path compilation, Path statePath, FragmentedMp4.State state) {
+        boolean wholeBatch = newChapters.equals(batchChapters);
+        Path piece = wholeBatch ? batchVideo : compilation.resolveSibling("merge_piece.mp4");
+        try {
+            if (!wholeBatch) {
+                List<File> videoFiles = chapterFiles(folder, newChapters);
+                if (videoFiles == null || !concat(folder, videoFiles, piece, FRAGMENTED_MOVFLAGS)) {
+                    return false;
+                }
+            }
+            long before = state.getSize();
+            // Xóa trạng thái trước khi ghi: nếu dừng giữa chừng, lần sau sẽ dựng lại thay vì tin trạng thái cũ
+            Files.deleteIfExists(statePath);
+            FragmentedMp4.append(piece, compilation, state, newChapters);
+            state.save(statePath);
+            logger.info("✅ Đã nối {} chương mới ({} bytes) vào video tổng hợp: {}",
+                    newChapters.size(), state.getSize() - before, compilation);
+            return true;
+        } catch (FragmentedMp4.IncompatibleException e) {
+            logger.warn("Không nối thêm được vào video tổng hợp ({}), dựng lại toàn bộ", e.getMessage());
+            return false;
+        } catch (IOException e) {
+            logger.error("❌ Lỗi khi nối chương mới vào video tổng hợp: {}", e.getMessage(), e);
+            return false;
+        } finally {
+            if (!wholeBatch) {
+                deleteQuietly(piece);
+            }
+        }
+    }
+
+    /** File video của từng chương theo đúng thứ tự, null nếu có chương thiếu file hoặc file rỗng. */
+    private List<File> chapterFiles(File folder, List<Integer> chapters) {
+        List<File> videoFiles = new ArrayList<>(chapters.size());
+        for (int chapter : chapters) {
+            File file = chapterFile(folder, chapter);
+            if (!file.isFile() || file.length() == 0) {
+                logger.error("❌ Thiếu video chương {} để gộp: {}", chapter, file);
                 return null;
             }
+            videoFiles.add(file);
+        }
+        return videoFiles;
+    }
+
+    private static File chapterFile(File folder, int chapter) {
+        return new File(folder, "video_chuong_" + chapter + ".mp4");
+    }
+
+    private File storyFolder(String storyFolderPath) {
+        if (storyFolderPath == null || storyFolderPath.isBlank()) {
+            logger.error("Đường dẫn thư mục trống hoặc null");
+            return null;
         }
-        if (!Files.isWritable(outputDir)) {
-            logger.error("Thư mục đầu ra không có quyền ghi: {}", outputDir);
+        Path folderPath = Paths.get(storyFolderPath).toAbsolutePath().normalize();
+        if (!Files.isDirectory(folderPath) || !Files.isReadable(folderPath) || !Files.isWritable(folderPath)) {
+            logger.error("Thư mục không tồn tại, không đọc được hoặc không ghi được: {}", folderPath);
             return null;
         }
+        return folderPath.toFile();
+    }
+
+    /**
+     * Nối các file video bằng concat demuxer (copy luồng, không encode lại) ra outputPath.
+     * File được ghi dưới tên tạm rồi mới đổi tên, nên outputPath cũ vẫn nguyên vẹn nếu ffmpeg thất bại.
+     */
+    private boolean concat(File folder, List<File> videoFiles, Path outputPath, List<String> outputOptions) {
+        File concatFile = new File(folder, "concat_list.txt");
+        try (PrintWriter writer = new PrintWriter(concatFile, StandardCharsets.UTF_8)) {
+            for (File file : videoFiles) {
+                String filePath = file.getCanonicalPath().replace("\\", "/").replace("'", "'\\''");
+                writer.println("file '" + filePath + "'");
+            }
+            logger.info("Đã tạo file concat_list.txt tại: {}", concatFile.getAbsolutePath());
+        } catch (IOException e) {
+            logger.error("Lỗi ghi file concat_list.txt: {}", e.getMessage(), e);
+            return false;
+        }
 
-        List<String> command = List.of(
-                ffmpegPath,
+        Path partPath = outputPath.resolveSibling(outputPath.getFileName() + ".part.mp4");
+        List<String> command = new ArrayList<>(List.of(
+                "-y",
                 "-f", "concat",
                 "-safe", "0",
                 "-i", concatFile.getAbsolutePath(),
-                "-c", "copy",
-                mergedVideoPath.toString().replace("\\", "/")
-        );
+                "-c", "copy"
+        ));
+        command.addAll(outputOptions);
+        command.add(partPath.toString().replace("\\", "/"));
 
-        logger.info("Đang chạy lệnh FFmpeg: {}", String.join(" ", command));
-        Process process = null;
         try {
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.directory(folder);
-            pb.redirectErrorStream(true);
-            process = pb.start();
-
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    logger.debug("ffmpeg: {}", line);
-                }
+            // Chỉ copy luồng nên một thread là đủ; ưu tiên cao vì video tổng đang chờ để upload
+            FfmpegExecutor.Result result = ffmpegExecutor.run("Gộp video chương", command, 1,
+                    FfmpegExecutor.Priority.HIGH, folder);
+            if (!result.isSuccess()) {
+                logger.error("❌ FFmpeg thất bại với mã lỗi: {}\n{}", result.getExitCode(), result.getOutput());
+                logConcatFileContent(concatFile);
+                return false;
             }
-            int exitCode = process.waitFor();
-            if (exitCode == 0) {
-                if (outputFile.exists() && outputFile.length() > 0) {
-                    logger.info("✅ Đã tạo video dài thành công: {}", mergedVideoPath);
-                    return mergedVideoPath.toString();
-                } else {
-                    logger.error("❌ FFmpeg kết thúc nhưng file output không được tạo hoặc rỗng: {}", mergedVideoPath);
-                    logConcatFileContent(concatFile);
-                    return null;
-                }
-            } else {
-                logger.error("❌ FFmpeg thất bại với mã lỗi: {}", exitCode);
+            if (!Files.isRegularFile(partPath) || Files.size(partPath) == 0) {
+                logger.error("❌ FFmpeg kết thúc nhưng file output không được tạo hoặc rỗng: {}", outputPath);
                 logConcatFileContent(concatFile);
-                return null;
+                return false;
             }
+            Files.move(partPath, outputPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("✅ Đã tạo video dài thành công: {}", outputPath);
+            return true;
         } catch (IOException | InterruptedException e) {
             logger.error("❌ Lỗi khi chạy FFmpeg: {}", e.getMessage(), e);
-            return null;
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
         } finally {
-            if (process != null) process.destroy();
+            deleteQuietly(partPath);
             cleanupTempFiles(concatFile);
         }
     }
 
-    private int extractChapterNumber(File file) {
+    private static void deleteQuietly(Path path) {
         try {
-            String name = file.getName();
-            int start = name.indexOf("_chuong_") + 8;
-            int end = name.lastIndexOf('.');
-            return Integer.parseInt(name.substring(start, end));
-        } catch (Exception e) {
-            logger.warn("Không thể lấy số chương từ file: {}", file.getName());
-            return Integer.MAX_VALUE;
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Không xóa được file tạm: {}", path);
         }
     }
 
@@ -0,0 +1,289 @@
+package org.example.codechuyennoi.Workflow;
+
+import org.example.codechuyennoi.ProcessStory.Story;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Lớp ChapterPrefetcher tải và làm sạch trước các chương tiếp theo trên một thread riêng trong lúc
+ * bước TTS/video đang xử lý chương hiện tại, để văn bản đã sẵn sàng khi bước sau cần.
+ *
+ * Cửa sổ đọc trước bị giới hạn theo số chương và theo dung lượng văn bản. Số chương tự điều chỉnh theo
+ * tốc độ hai phía: mục tiêu là đủ chương để che thời gian tải một chương trong lúc xử lý các chương
+ * trước đó; cửa sổ tăng gấp đôi khi bước sau phải chờ và giảm dần khi văn bản đọc trước bị nằm chờ.
+ * Mỗi lượt tải lấy cả phần còn trống của cửa sổ bằng một lần gọi {@link ChapterSource}, nên nguồn có thể tải
+ * song song nhiều chương (theo chế độ crawl và giới hạn của rate limiter). Chương đầu tiên không lấy được
+ * sẽ kết thúc luồng chương.
+ */
+public class ChapterPrefetcher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ChapterPrefetcher.class);
+    // Trọng số của mẫu mới trong trung bình trượt thời gian tải/xử lý
+    private static final double EWMA_ALPHA = 0.3;
+
+    private final int startChapter;
+    private final int endChapter;
+    private final ChapterSource source;
+    private final IntPredicate skip;
+    private final int minWindow;
+    private final int maxWindow;
+    private final long maxBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Story> buffer = new ArrayDeque<>();
+    private final Thread producer;
+
+    private int window;
+    private long bufferedBytes;
+    private boolean finished;
+    private boolean closed;
+    // Thời gian trung bình (ns) để tải một chương và để bước sau xử lý một chương
+    private double fetchNanos;
+    private double consumeNanos;
+    // Dung lượng trung bình một chương, để một lượt tải không vượt quá maxBytes
+    private double chapterBytes;
+    private long lastTakenAt;
+    private int stallCount;
+
+    /** Nguồn chương của bộ đọc trước. */
+    @FunctionalInterface
+    public interface ChapterSource {
+        /**
+         * Lấy các chương đã làm sạch trong dải [from, to].
+         *
+         * @return các chương liền nhau theo thứ tự bắt đầu từ from, dừng trước chương đầu tiên không lấy được
+         */
+        List<Story> fetch(int from, int to);
+    }
+
+    /**
+     * @param source nguồn chương, được gọi với dải chương vừa phần còn trống của cửa sổ
+     * @param skip   chương không cần xử lý lại (ví dụ đã có video)
+     */
+    public ChapterPrefetcher(String name,
+                             int startChapter,
+                             int endChapter,
+                             ChapterSource source,
+                             IntPredicate skip,
+                             int initialWindow,
+                             int minWindow,
+                             int maxWindow,
+                             long maxBytes) {
+        this.startChapter = startChapter;
+        this.endChapter = endChapter;
+        this.source = source;
+        this.skip = skip;
+        this.minWindow = Math.max(1, minWindow);
+        this.maxWindow = Math.max(this.minWindow, maxWindow);
+        this.window = Math.min(this.maxWindow, Math.max(this.minWindow, initialWindow));
+        this.maxBytes = Math.max(1, maxBytes);
+        this.producer = new Thread(this::produce, "ChapterPrefetcher-" + name);
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    /**
+     * Lấy chương tiếp theo theo thứ tự, chờ nếu chương chưa tải xong.
+     *
+     * @return chương tiếp theo, hoặc null khi đã hết chương (hoặc gặp chương không lấy được)
+     */
+    public Story next() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long now = System.nanoTime();
+            if (lastTakenAt != 0) {
+                consumeNanos = ewma(consumeNanos, now - lastTakenAt);
+            }
+            if (buffer.isEmpty() && !finished) {
+                // Bước sau phải chờ: cửa sổ hiện tại không đủ che thời gian tải
+                stallCount++;
+                resizeWindow(Math.max(window * 2, targetWindow()));
+                notFull.signal();
+                while (buffer.isEmpty() && !finished) {
+                    notEmpty.await();
+                }
+            } else if (!buffer.isEmpty() && window > targetWindow()) {
+                resizeWindow(window - 1);
+            }
+            lastTakenAt = System.nanoTime();
+            Story story = buffer.poll();
+            if (story == null) {
+                return null;
+            }
+            bufferedBytes -= sizeOf(story);
+            notFull.signal();
+            return story;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWindow() {
+        lock.lock();
+        try {
+            return window;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Số lần bước sau phải chờ chương chưa tải xong. */
+    public int getStallCount() {
+        lock.lock();
+        try {
+            return stallCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            finished = true;
+            buffer.clear();
+            bufferedBytes = 0;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        producer.interrupt();
+        try {
+            producer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void produce() {
+        try {
+            int chapter = startChapter;
+            while (true) {
+                while (chapter <= endChapter && skip.test(chapter)) {
+                    logger.info("Bỏ qua chương {}: đã xử lý xong.", chapter);
+                    chapter++;
+                }
+                if (chapter > endChapter) {
+                    return;
+                }
+                int count = awaitRoom();
+                if (count == 0) {
+                    return;
+                }
+                // Dải kết thúc sau count chương cần xử lý; chương bỏ qua nằm giữa dải không được đưa ra
+                int to = chapter;
+                for (int wanted = count - 1; wanted > 0 && to < endChapter; ) {
+                    to++;
+                    if (!skip.test(to)) {
+                        wanted--;
+                    }
+                }
+                long started = System.nanoTime();
+                Map<Integer, Story> fetched = new HashMap<>();
+                for (Story story : source.fetch(chapter, to)) {
+                    fetched.put(story.getChapterNumber(), story);
+                }
+                lock.lock();
+                try {
+                    fetchNanos = ewma(fetchNanos, (System.nanoTime() - started) / Math.max(1, fetched.size()));
+                    if (closed) {
+                        return;
+                    }
+                    for (; chapter <= to; chapter++) {
+                        if (skip.test(chapter)) {
+                            continue;
+                        }
+                        Story story = fetched.get(chapter);
+                        if (story == null) {
+                            logger.warn("Không lấy được chương {}, dừng đọc trước.", chapter);
+                            return;
+                        }
+                        buffer.add(story);
+                        bufferedBytes += sizeOf(story);
+                        chapterBytes = ewma(chapterBytes, sizeOf(story));
+                    }
+                    notEmpty.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Lỗi khi đọc trước chương: {}", e.getMessage(), e);
+        } finally {
+            lock.lock();
+            try {
+                finished = true;
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Chờ tới khi cửa sổ còn chỗ; luôn cho phép ít nhất một chương để chương lớn không chặn mãi.
+     *
+     * @return số chương được tải trong lượt này (theo chỗ trống của cửa sổ và dung lượng còn lại),
+     * 0 nếu bộ đọc trước đã đóng
+     */
+    private int awaitRoom() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!closed && !buffer.isEmpty() && (buffer.size() >= window || bufferedBytes >= maxBytes)) {
+                notFull.await();
+            }
+            if (closed) {
+                return 0;
+            }
+            if (chapterBytes == 0) {
+                // Chưa biết chương dài bao nhiêu: tải một chương trước để không vượt dung lượng
+                return 1;
+            }
+            int byBytes = (int) ((maxBytes - bufferedBytes) / chapterBytes);
+            return Math.max(1, Math.min(window - buffer.size(), byBytes));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Số chương cần đọc trước để che thời gian tải một chương, theo tốc độ đo được. */
+    private int targetWindow() {
+        if (fetchNanos == 0 || consumeNanos == 0) {
+            return window;
+        }
+        int target = (int) Math.ceil(fetchNanos / consumeNanos) + 1;
+        return Math.min(maxWindow, Math.max(minWindow, target));
+    }
+
+    private void resizeWindow(int newWindow) {
+        newWindow = Math.min(maxWindow, Math.max(minWindow, newWindow));
+        if (newWindow != window) {
+            logger.debug("Cửa sổ đọc trước: {} -> {} chương", window, newWindow);
+            window = newWindow;
+        }
+    }
+
+    private static double ewma(double current, long sample) {
+        return current == 0 ? sample : current + EWMA_ALPHA * (sample - current);
+    }
+
+    private static long sizeOf(Story story) {
+        String text = story.getProcessedText();
+        return text == null ? 0 : 2L * text.length();
+    }
+}
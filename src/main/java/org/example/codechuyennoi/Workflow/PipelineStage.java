@@ -0,0 +1,145 @@
+package org.example.codechuyennoi.Workflow;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Lớp PipelineStage là một giai đoạn của pipeline xử lý chương: một nhóm thread riêng, số thread chọn theo tài
+ * nguyên giai đoạn dùng (mạng cho TTS/ảnh, CPU cho ffmpeg), và một hàng đợi bàn giao có giới hạn.
+ * submit() chặn khi mọi thread đều bận và hàng đợi đã đầy, nên giai đoạn trước tự chậm lại theo giai đoạn sau
+ * thay vì dồn việc không giới hạn.
+ *
+ * Giai đoạn đo thời gian bận của các thread và thời gian giai đoạn trước phải chờ để bàn giao, để thấy
+ * giai đoạn nào là nút cổ chai.
+ */
+class PipelineStage implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PipelineStage.class);
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+
+    private final String name;
+    private final int threads;
+    private final ExecutorService executor;
+    private final Semaphore slots;
+    // Đếm việc đang chạy hoặc đang chờ: đăng ký khi submit, rời khi xong
+    private final Phaser inFlight = new Phaser(1);
+
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicLong startedAt = new AtomicLong();
+    private volatile long finishedAt;
+
+    /**
+     * @param queueCapacity số việc được chờ sẵn ngoài số việc đang chạy
+     */
+    PipelineStage(String name, int threads, int queueCapacity) {
+        this.name = name;
+        this.threads = Math.max(1, threads);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "pipeline-" + name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.slots = new Semaphore(this.threads + Math.max(0, queueCapacity));
+    }
+
+    void submit(Runnable task) throws InterruptedException {
+        supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Chạy task trên giai đoạn này, chặn tới khi có chỗ.
+     *
+     * @return kết quả của task; lỗi của task được ghi log và trả về qua future
+     */
+    <T> CompletableFuture<T> supply(Supplier<T> task) throws InterruptedException {
+        long waitStart = System.nanoTime();
+        slots.acquire();
+        long now = System.nanoTime();
+        blockedNanos.addAndGet(now - waitStart);
+        startedAt.compareAndSet(0, now);
+        inFlight.register();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                long begin = System.nanoTime();
+                try {
+                    result.complete(task.get());
+                } catch (Throwable e) {
+                    // Kể cả Error: future phải luôn hoàn tất, nếu không nơi đang join() sẽ chờ mãi
+                    logger.error("Lỗi trong giai đoạn {}: {}", name, e.getMessage(), e);
+                    result.completeExceptionally(e);
+                } finally {
+                    long end = System.nanoTime();
+                    busyNanos.addAndGet(end - begin);
+                    finishedAt = end;
+                    completed.incrementAndGet();
+                    inFlight.arriveAndDeregister();
+                    slots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.arriveAndDeregister();
+            slots.release();
+            throw e;
+        }
+        return result;
+    }
+
+    /** Chờ mọi việc đã submit chạy xong. */
+    void awaitAll() throws InterruptedException {
+        inFlight.awaitAdvanceInterruptibly(inFlight.arrive());
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getCompletedCount() {
+        return completed.get();
+    }
+
+    /** Tỉ lệ thời gian các thread của giai đoạn bận, từ việc đầu tiên tới việc cuối cùng (0..1). */
+    double getUtilization() {
+        long start = startedAt.get();
+        long wall = finishedAt - start;
+        if (start == 0 || wall <= 0) {
+            return 0;
+        }
+        return Math.min(1.0, (double) busyNanos.get() / ((double) wall * threads));
+    }
+
+    /** Tổng thời gian giai đoạn trước phải chờ vì giai đoạn này đầy. */
+    long getBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(blockedNanos.get());
+    }
+
+    String summary() {
+        return String.format("%s: %d việc, %d thread, bận %d%%, bàn giao phải chờ %d ms",
+                name, completed.get(), threads, Math.round(getUtilization() * 100), getBlockedMillis());
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        // Bình thường awaitAll() đã chờ xong; ở đây chỉ chờ nốt việc đang ghi file khi batch bị dừng giữa chừng
+        executor.shutdown();
+        if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            logger.warn("Giai đoạn {} vẫn còn việc sau {} giây, dừng hẳn", name, CLOSE_TIMEOUT_SECONDS);
+            executor.shutdownNow();
+        }
+    }
+}
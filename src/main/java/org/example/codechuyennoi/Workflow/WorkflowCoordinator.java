@@ -2,13 +2,17 @@ package org.example.codechuyennoi.Workflow;
 
 import org.example.codechuyennoi.Integation.VideoMetadata;
 import org.example.codechuyennoi.Integation.YouTubeUploader;
-import org.example.codechuyennoi.Notification.ChapterMonitor;
+import org.example.codechuyennoi.Notification.ChapterMonitorScheduler;
 import org.example.codechuyennoi.Notification.NotificationService;
+import org.example.codechuyennoi.ProcessAudio.AudioBookPublisher;
 import org.example.codechuyennoi.ProcessAudio.AudioGenerator;
 import org.example.codechuyennoi.ProcessAudio.AudioProcessor;
 import org.example.codechuyennoi.ProcessAudio.AudioStory;
+import org.example.codechuyennoi.ProcessStory.ChapterManifest;
+import org.example.codechuyennoi.ProcessStory.ChapterManifestRegistry;
 import org.example.codechuyennoi.ProcessStory.Story;
 import org.example.codechuyennoi.ProcessStory.StoryProcessor;
+import org.example.codechuyennoi.ProcessVideo.ChapterScratch;
 import org.example.codechuyennoi.ProcessVideo.VideoComposer;
 import org.example.codechuyennoi.ProcessVideo.VideoStory;
 import org.example.codechuyennoi.Image.AiImageGenerator;
@@ -20,6 +24,7 @@ import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -36,11 +41,13 @@ public class WorkflowCoordinator {
     private final YouTubeUploader youTubeUploader;
     private final NotificationService notificationService;
     private final VideoMerger videoMerger;
+    private final ChapterMonitorScheduler monitorScheduler;
+    private final ChapterManifestRegistry manifests;
+    private final AudioBookPublisher audioBookPublisher;
     private String videoTitle;
     private String videoDescription;
 
     private final BlockingQueue<Integer> chapterQueue = new LinkedBlockingQueue<>();
-    private Thread monitorThread;
 
     private String storyName;
     private String baseUrl;
@@ -48,6 +55,31 @@ public class WorkflowCoordinator {
     @Value("${last.chapter.file:lastChapter.txt}")
     private String lastChapterFilePath;
 
+    // Đọc trước các chương tiếp theo trong lúc TTS/video xử lý chương hiện tại
+    @Value("${workflow.prefetch.enabled:true}")
+    private boolean prefetchEnabled;
+    @Value("${workflow.prefetch.initial-window:2}")
+    private int prefetchInitialWindow;
+    @Value("${workflow.prefetch.min-window:1}")
+    private int prefetchMinWindow;
+    @Value("${workflow.prefetch.max-window:16}")
+    private int prefetchMaxWindow;
+    @Value("${workflow.prefetch.max-bytes:33554432}")
+    private long prefetchMaxBytes;
+
+    // Pipeline theo giai đoạn: TTS + ảnh (chờ mạng) chạy song song với dựng video (chiếm CPU)
+    @Value("${workflow.pipeline.io-threads:4}")
+    private int ioThreads;
+    @Value("${workflow.pipeline.render-threads:${workflow.render.parallelism:1}}")
+    private int renderThreads;
+    // Số chương được chờ sẵn giữa hai giai đoạn, ngoài số chương đang chạy
+    @Value("${workflow.pipeline.queue-capacity:2}")
+    private int pipelineQueueCapacity;
+
+    // true: chỉ tạo âm thanh và ghép các chương thành một file MP3 dài, không tạo ảnh/video
+    @Value("${workflow.audio-only:false}")
+    private boolean audioOnly;
+
     public WorkflowCoordinator(
             StoryProcessor storyProcessor,
             AudioGenerator audioGenerator,
@@ -56,7 +88,10 @@ public class WorkflowCoordinator {
             VideoComposer videoComposer,
             YouTubeUploader youTubeUploader,
             NotificationService notificationService,
-            VideoMerger videoMerger
+            VideoMerger videoMerger,
+            ChapterMonitorScheduler monitorScheduler,
+            ChapterManifestRegistry manifests,
+            AudioBookPublisher audioBookPublisher
     ) {
         this.storyProcessor = storyProcessor;
         this.audioGenerator = audioGenerator;
@@ -66,6 +101,9 @@ public class WorkflowCoordinator {
         this.youTubeUploader = youTubeUploader;
         this.notificationService = notificationService;
         this.videoMerger = videoMerger;
+        this.monitorScheduler = monitorScheduler;
+        this.manifests = manifests;
+        this.audioBookPublisher = audioBookPublisher;
     }
     public void setVideoTitle(String videoTitle) {
         this.videoTitle = videoTitle;
@@ -98,14 +136,8 @@ public class WorkflowCoordinator {
     }
 
     public void stop() {
-        if (monitorThread != null && monitorThread.isAlive()) {
-            monitorThread.interrupt();
-            try {
-                monitorThread.join(5000);
-            } catch (InterruptedException e) {
-                logger.warn("Interrupted while waiting for monitor thread to stop.");
-                Thread.currentThread().interrupt();
-            }
+        if (storyName != null) {
+            monitorScheduler.unwatch(storyName);
         }
     }
 
@@ -114,33 +146,60 @@ public class WorkflowCoordinator {
         if (!isValidChapterRange(startChapter, endChapter, baseUrl)) {
             return;
         }
-        List<VideoStory> chapterVideos = new ArrayList<>();
-        try {
-              // Xử lý nhiều chương: crawl và làm sạch văn bản
-            List<Story> processedStories = storyProcessor.processChaptersInBatch(
-                    storyName, baseUrl, startChapter, endChapter
-            );
-              // Với mỗi chương đã xử lý, tạo audio và video tương ứng
-            for (Story story : processedStories) {
-                AudioStory audioStory = generateAudio(story);              // Sinh file âm thanh
-                VideoStory chapterVideo = composeVideo(story, audioStory); // Tạo video chương
-                // Chỉ thêm video chương nếu tạo thành công
-              if (chapterVideo != null) {
-                  chapterVideos.add(chapterVideo);
-               }
+        // Thư mục tạm của các lần dựng bị dừng giữa chừng trước đây
+        ChapterScratch.purgeStale(new File(videoFolder(storyName)).toPath());
+        try (PipelineStage prepare = new PipelineStage("tts+ảnh", ioThreads, pipelineQueueCapacity);
+             PipelineStage images = new PipelineStage("ảnh", ioThreads, pipelineQueueCapacity);
+             PipelineStage render = new PipelineStage("dựng video", renderThreads, pipelineQueueCapacity);
+             PipelineStage merge = new PipelineStage("gộp", 1, 0)) {
+            ChapterPipeline pipeline = new ChapterPipeline(prepare, images, render);
+            ChapterManifest manifest = manifests.forStory(storyName);
+            if (prefetchEnabled) {
+                // Chương được crawl trước theo từng phần của cửa sổ trên thread riêng, đưa vào pipeline ngay
+                // khi chương sẵn sàng
+                renderWithPrefetch(manifest, startChapter, endChapter, pipeline);
+            } else {
+                // Xử lý nhiều chương: crawl và làm sạch văn bản
+                List<Story> processedStories = storyProcessor.processChaptersInBatch(
+                        storyName, baseUrl, startChapter, endChapter
+                );
+                // Với mỗi chương đã xử lý, tạo audio và video tương ứng
+                for (Story story : processedStories) {
+                    submitChapter(pipeline, manifest, story);
+                }
+            }
+            // Mọi lần bàn giao sang giai đoạn dựng đều nằm trong việc của giai đoạn tts+ảnh, nên chờ theo thứ tự
+            prepare.awaitAll();
+            render.awaitAll();
+            logStageUtilization(prepare, images, render);
+            if (audioOnly) {
+                publishAudioOnly(startChapter, endChapter);
+                return;
             }
+            // Chương đã có video tính theo manifest và file trên đĩa, gồm cả chương dựng từ lần chạy trước
+            // (ví dụ chạy lại batch sau khi gộp hoặc upload thất bại)
+            List<Integer> renderedChapters = renderedChapters(manifest, startChapter, endChapter);
             // Nếu chỉ có 1 chương thì không cần gộp video và upload
-            if (chapterVideos.size() <= 1) {
-                logger.warn("⚠️ Chỉ có {} chương được xử lý, bỏ qua bước gộp và upload YouTube.", chapterVideos.size());
-                notifyFailure("Chỉ có 1 chương được xử lý, không gộp video");
+            if (renderedChapters.size() <= 1) {
+                logger.warn("⚠️ Chỉ có {} chương đã có video, bỏ qua bước gộp và upload YouTube.", renderedChapters.size());
+                notifyFailure("Chỉ có " + renderedChapters.size() + " chương có video, không gộp video");
                 return;
             }
               // Gộp toàn bộ video các chương thành 1 video hoàn chỉnh
-            VideoStory fullVideo = mergeAllChapterVideos(storyName, startChapter, endChapter);
+            VideoStory fullVideo = merge.supply(() ->
+                    mergeAllChapterVideos(storyName, startChapter, endChapter, renderedChapters)).join();
+            logStageUtilization(merge);
+            if (fullVideo == null) {
+                notifyFailure("Gộp video chương " + startChapter + " đến " + endChapter + " thất bại");
+                return;
+            }
               // Gắn tiêu đề và mô tả nếu được cung cấp
             applyMetadataIfPresent(fullVideo, videoTitle, videoDescription);
               // Tải video lên YouTube, nhận về ID
             String youtubeId = uploadToYouTube(fullVideo, fullVideo.getTitle(), fullVideo.getDescription());
+            if (youtubeId != null) {
+                renderedChapters.forEach(chapter -> manifest.mark(chapter, ChapterManifest.UPLOADED));
+            }
               // Gửi thông báo khi thành công
             sendSuccessNotification(youtubeId);
         } catch (Exception e) {
@@ -152,15 +211,75 @@ public class WorkflowCoordinator {
         logger.info("Hoàn thành xử lý batch chương.");
     }
 
+    private void renderWithPrefetch(ChapterManifest manifest, int startChapter, int endChapter,
+                                    ChapterPipeline pipeline) throws InterruptedException {
+        try (ChapterPrefetcher prefetcher = new ChapterPrefetcher(storyName, startChapter, endChapter,
+                (from, to) -> storyProcessor.loadOrFetchChapters(storyName, baseUrl, from, to),
+                chapter -> manifest.has(chapter, audioOnly ? ChapterManifest.VOICED : ChapterManifest.RENDERED),
+                prefetchInitialWindow, prefetchMinWindow, prefetchMaxWindow, prefetchMaxBytes)) {
+            Story story;
+            while ((story = prefetcher.next()) != null) {
+                submitChapter(pipeline, manifest, story);
+            }
+            logger.info("Đọc trước: cửa sổ cuối {} chương, {} lần phải chờ tải chương",
+                    prefetcher.getWindow(), prefetcher.getStallCount());
+        }
+    }
+
+    /** Các giai đoạn của một batch; ảnh của một chương được dựng video chờ qua future nên không cần bàn giao. */
+    private record ChapterPipeline(PipelineStage prepare, PipelineStage images, PipelineStage render) {
+    }
+
+    /**
+     * Đưa chương vào pipeline: ảnh được sinh trên giai đoạn ảnh trong khi giai đoạn tts+ảnh sinh âm thanh,
+     * rồi chương được bàn giao sang giai đoạn dựng video. Chặn khi giai đoạn ảnh hoặc tts+ảnh đầy.
+     */
+    private void submitChapter(ChapterPipeline pipeline, ChapterManifest manifest, Story story)
+            throws InterruptedException {
+        // Gửi việc sinh ảnh từ thread gọi, trước việc âm thanh, để hai việc chạy song song
+        CompletableFuture<List<String>> imagePaths = audioOnly ? null
+                : pipeline.images().supply(() -> aiImageGenerator.generateImages(story.getSentences()));
+        pipeline.prepare().submit(() -> {
+            AudioStory audioStory = generateAudio(story);              // Sinh file âm thanh
+            if (audioStory != null) {
+                manifest.mark(story.getChapterNumber(), ChapterManifest.VOICED);
+            }
+            if (audioOnly) {
+                return;
+            }
+            try {
+                // Chặn khi giai đoạn dựng đầy, giai đoạn tts+ảnh tự chậm lại theo tốc độ dựng
+                pipeline.render().submit(() -> renderChapter(manifest, story, audioStory, imagePaths));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Bị ngắt khi bàn giao chương {} sang giai đoạn dựng video", story.getChapterNumber());
+            }
+        });
+    }
+
+    private void renderChapter(ChapterManifest manifest, Story story, AudioStory audioStory,
+                               CompletableFuture<List<String>> imagePaths) {
+        VideoStory chapterVideo = composeVideo(story, audioStory, imagePaths); // Tạo video chương
+        // Chỉ ghi nhận video chương nếu tạo thành công
+        if (chapterVideo != null) {
+            manifest.mark(story.getChapterNumber(), ChapterManifest.RENDERED);
+        }
+    }
+
+    private void logStageUtilization(PipelineStage... stages) {
+        for (PipelineStage stage : stages) {
+            logger.info("📊 Giai đoạn {}", stage.summary());
+        }
+    }
+
     private AudioStory generateAudio(Story story) {
-        AudioStory audioStory = audioGenerator.generateAudio(storyName, story.getChapterNumber(), story.getProcessedText());
+        AudioStory audioStory = audioGenerator.generateAudio(story);
         return audioProcessor.processAudio(audioStory);
     }
 
-    private VideoStory composeVideo(Story story, AudioStory audioStory) {
+    private VideoStory composeVideo(Story story, AudioStory audioStory, CompletableFuture<List<String>> images) {
         try {
-            List<String> prompts = story.getSentences();
-            List<String> imagePaths = aiImageGenerator.generateImages(prompts);
+            List<String> imagePaths = images.join();
 
             VideoStory chapterVideo = videoComposer.composeVideo(
                     story, audioStory, imagePaths,
@@ -179,33 +298,55 @@ public class WorkflowCoordinator {
         }
     }
 
-    private VideoStory mergeAllChapterVideos(String storyName, int startChapter, int endChapter) {
+    private void publishAudioOnly(int startChapter, int endChapter) {
+        Path audioBook = audioBookPublisher.publishRange(storyName, startChapter, endChapter);
+        if (audioBook == null) {
+            notifyFailure("Ghép âm thanh chương " + startChapter + " đến " + endChapter + " thất bại");
+            return;
+        }
+        notificationService.sendCompletionNotification(true, "Đã tạo bản âm thanh: " + audioBook.toAbsolutePath());
+    }
+
+    /** Thư mục chứa video chương của truyện, cùng cách đặt tên với VideoComposer. */
+    private static String videoFolder(String storyName) {
         String storyFolderName = "video_" + storyName.toLowerCase()
                 .replaceAll("[^a-z0-9]+", "_")
                 .replaceAll("^_+|_+$", "");
-        String storyFolder = "output/" + storyFolderName;
+        return "output/" + storyFolderName;
+    }
 
-        File folder = new File(storyFolder);
-        if (!folder.exists() || !folder.isDirectory()) {
-            logger.error("❌ Thư mục chứa video chương không tồn tại: {}", storyFolder);
-            return null;
+    /**
+     * Các chương của batch (tối đa MAX_CHAPTERS_PER_BATCH chương từ startChapter) đã có video: manifest ghi
+     * nhận RENDERED và file video chương còn trên đĩa.
+     */
+    private List<Integer> renderedChapters(ChapterManifest manifest, int startChapter, int endChapter) {
+        File folder = new File(videoFolder(storyName));
+        int expectedChapterCount = Math.min(endChapter - startChapter + 1, MAX_CHAPTERS_PER_BATCH);
+        List<Integer> chapters = new ArrayList<>(expectedChapterCount);
+        for (int chapter = startChapter; chapter < startChapter + expectedChapterCount; chapter++) {
+            if (manifest.has(chapter, ChapterManifest.RENDERED)
+                    && new File(folder, "video_chuong_" + chapter + ".mp4").isFile()) {
+                chapters.add(chapter);
+            }
         }
+        return chapters;
+    }
 
-        File[] videoFiles = folder.listFiles((dir, name) -> name.matches("video_chuong_\\d+\\.mp4"));
-        if (videoFiles == null || videoFiles.length == 0) {
-            logger.error("❌ Không tìm thấy file video chương để gộp trong thư mục: {}", storyFolder);
-            return null;
-        }
+    private VideoStory mergeAllChapterVideos(String storyName, int startChapter, int endChapter,
+                                             List<Integer> chapters) {
+        String storyFolder = videoFolder(storyName);
 
+        // Chỉ gộp đúng các chương của batch, theo thứ tự chương
         int expectedChapterCount = Math.min(endChapter - startChapter + 1, MAX_CHAPTERS_PER_BATCH);
-        if (videoFiles.length < expectedChapterCount) {
+        if (chapters.size() < expectedChapterCount) {
             logger.error("Số file video chương ({}) không khớp với số chương mong đợi ({})",
-                    videoFiles.length, expectedChapterCount);
+                    chapters.size(), expectedChapterCount);
             return null;
         }
 
-        logger.info("🔄 Gộp {} video chương trong thư mục: {}", videoFiles.length, storyFolder);
-        String fullVideoPath = videoMerger.mergeVideos(storyFolder);
+        logger.info("🔄 Gộp {} video chương (từ {} đến {}) trong thư mục: {}",
+                chapters.size(), startChapter, chapters.get(chapters.size() - 1), storyFolder);
+        String fullVideoPath = videoMerger.mergeChapters(storyFolder, chapters);
         if (fullVideoPath == null) {
             logger.error("❌ Gộp video chương thất bại.");
             return null;
@@ -261,11 +402,8 @@ public class WorkflowCoordinator {
         }
     }
     private void startChapterMonitoring() {
-        ChapterMonitor monitor = new ChapterMonitor(chapterQueue, baseUrl);
-        monitor.initWithStoryName(storyName);
-        monitorThread = new Thread(monitor, "ChapterMonitorThread");
-        monitorThread.setDaemon(true);
-        monitorThread.start();
+        // Lịch kiểm tra chạy trên scheduler dùng chung cho mọi truyện, không tạo thread riêng
+        monitorScheduler.watch(storyName, baseUrl, chapterQueue);
         logger.info("ChapterMonitor đã được khởi động cho truyện: {}", storyName);
     }
 
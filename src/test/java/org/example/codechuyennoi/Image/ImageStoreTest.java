@@ -0,0 +1,32 @@
+package org.example.codechuyennoi.Image;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ImageStoreTest {
+
+    @Test
+    void storesIdenticalContentOnce() throws IOException {
+        Path work = Files.createTempDirectory("images-src");
+        Path dir = Files.createTempDirectory("images");
+        ImageStore store = new ImageStore(dir.toString());
+        Path first = Files.write(work.resolve("a.jpg"), new byte[]{1, 2, 3});
+        Path copy = Files.write(work.resolve("b.JPG"), new byte[]{1, 2, 3});
+        Path other = Files.write(work.resolve("c.jpg"), new byte[]{4, 5, 6});
+
+        Path stored = store.put(first);
+        assertEquals(stored, store.put(first));
+        assertEquals(stored, store.put(copy));
+        assertNotEquals(stored, store.put(other));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(2, files.count());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.codechuyennoi.Notification;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChapterProbeSearchTest {
+
+    private static ChapterProbeSearch siteWith(int newest, AtomicInteger requests) {
+        return new ChapterProbeSearch(chapter -> {
+            requests.incrementAndGet();
+            return chapter <= newest ? ChapterProbeSearch.Probe.EXISTS : ChapterProbeSearch.Probe.MISSING;
+        }, chapter -> false, 64);
+    }
+
+    @Test
+    void findsNewestChapterInLogarithmicRequests() {
+        AtomicInteger requests = new AtomicInteger();
+        ChapterProbeSearch search = siteWith(1337, requests);
+        assertEquals(1337, search.findNewestChapter(100));
+        // ~log2(1237) bước lũy thừa + ~log2(1024) bước nhị phân
+        assertTrue(requests.get() <= 2 * 11 + 2, "requests=" + requests.get());
+    }
+
+    @Test
+    void singleRequestWhenNothingNew() {
+        AtomicInteger requests = new AtomicInteger();
+        ChapterProbeSearch search = siteWith(50, requests);
+        assertEquals(50, search.findNewestChapter(50));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void remembersExistingChaptersAcrossSearches() {
+        AtomicInteger requests = new AtomicInteger();
+        ChapterProbeSearch search = siteWith(40, requests);
+        assertEquals(40, search.findNewestChapter(0));
+        int first = requests.get();
+        requests.set(0);
+        assertEquals(40, search.findNewestChapter(0));
+        // Chương đã thấy không bị hỏi lại, chỉ các chương chưa có được thăm dò lại
+        assertTrue(requests.get() < first, "first=" + first + " second=" + requests.get());
+    }
+
+    @Test
+    void reportsErrorInsteadOfGuessing() {
+        ChapterProbeSearch search = new ChapterProbeSearch(chapter -> ChapterProbeSearch.Probe.ERROR, chapter -> false, 64);
+        assertEquals(-1, search.findNewestChapter(10));
+    }
+
+    @Test
+    void matchesOnlyTheProbedChapterUrl() {
+        assertTrue(ChapterProbeSearch.pointsToChapter("https://truyen.vn/abc/chuong-12/", 12));
+        assertTrue(ChapterProbeSearch.pointsToChapter("https://truyen.vn/abc/chuong-12", 12));
+        assertFalse(ChapterProbeSearch.pointsToChapter("https://truyen.vn/abc/chuong-123/", 12));
+        assertFalse(ChapterProbeSearch.pointsToChapter("https://truyen.vn/abc/", 12));
+    }
+}
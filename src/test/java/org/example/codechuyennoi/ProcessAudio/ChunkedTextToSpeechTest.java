@@ -0,0 +1,117 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChunkedTextToSpeechTest {
+    // MPEG 1 layer III, 128 kbps, 44.1 kHz: mỗi frame 417 byte, 1152 mẫu
+    private static final int FRAME_LENGTH = 417;
+
+    /** Mỗi đoạn văn bản được "đọc" thành số frame bằng số ký tự, byte dữ liệu đánh dấu theo ký tự đầu. */
+    private static byte[] frames(String text) {
+        byte[] data = new byte[text.length() * FRAME_LENGTH];
+        for (int i = 0; i < text.length(); i++) {
+            int off = i * FRAME_LENGTH;
+            data[off] = (byte) 0xFF;
+            data[off + 1] = (byte) 0xFB;
+            data[off + 2] = (byte) 0x90;
+            data[off + 3] = 0;
+            data[off + 4] = (byte) text.charAt(0);
+        }
+        return data;
+    }
+
+    private static class FlakyBackend implements TtsBackend {
+        final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+        final int failuresPerChunk;
+
+        FlakyBackend(int failuresPerChunk) {
+            this.failuresPerChunk = failuresPerChunk;
+        }
+
+        @Override
+        public String name() {
+            return "flaky";
+        }
+
+        @Override
+        public CompletableFuture<Path> synthesize(String text, String voice, String speed, Path target) {
+            int call = calls.computeIfAbsent(text, t -> new AtomicInteger()).incrementAndGet();
+            if (text.startsWith("B") && call <= failuresPerChunk) {
+                return CompletableFuture.failedFuture(new IOException("503"));
+            }
+            try {
+                return CompletableFuture.completedFuture(Files.write(target, frames(text)));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+    }
+
+    /** TextToSpeech thử tối đa hai lần mỗi đoạn; ChunkedTextToSpeech không thử lại thêm. */
+    private static TextToSpeech tts(TtsBackend backend) {
+        return new TextToSpeech(List.of(backend), backend.name(), "v", "1.0", 10, 2, 0.2, false, 0, 1000, 1);
+    }
+
+    @Test
+    void retriesOnlyFailedChunksAndKeepsOrder() throws Exception {
+        FlakyBackend tts = new FlakyBackend(1);
+        ChunkedTextToSpeech chunked = new ChunkedTextToSpeech(tts(tts), new TtsCache(false, "tts-cache", 0), 16, 3);
+        Path out = Files.createTempDirectory("tts").resolve("audio.mp3");
+        try {
+            ChunkedAudio audio = chunked.synthesizeToFile("Aaaa aaaa. Bbb bbb. Cc cc cc.", out);
+
+            assertEquals(3, audio.getChunks().size());
+            assertEquals(1, tts.calls.get("Aaaa aaaa.").get());
+            assertEquals(2, tts.calls.get("Bbb bbb.").get());
+            assertEquals(1, tts.calls.get("Cc cc cc.").get());
+            double frame = 1152 * 1_000_000.0 / 44100;
+            assertArrayEquals(new long[]{Math.round(10 * frame), Math.round(8 * frame), Math.round(9 * frame)},
+                    audio.getChunkDurationsMicros());
+            // Mỗi câu nằm trọn trong một đoạn: thời lượng câu bằng thời lượng đoạn
+            assertArrayEquals(audio.getChunkDurationsMicros(), audio.getSentenceDurationsMicros());
+
+            // Frame Xing đứng đầu, sau đó là frame của các đoạn theo đúng thứ tự
+            byte[] written = Files.readAllBytes(out);
+            assertEquals(28 * FRAME_LENGTH, written.length);
+            assertEquals('A', written[FRAME_LENGTH + 4]);
+            assertEquals('B', written[11 * FRAME_LENGTH + 4]);
+            assertEquals('C', written[19 * FRAME_LENGTH + 4]);
+            // Thư mục tạm của các đoạn đã được dọn
+            try (Stream<Path> files = Files.list(out.getParent())) {
+                assertEquals(1, files.count());
+            }
+        } finally {
+            chunked.shutdown();
+        }
+    }
+
+    @Test
+    void leavesNoFileWhenAChunkKeepsFailing() throws Exception {
+        FlakyBackend backend = new FlakyBackend(10);
+        ChunkedTextToSpeech chunked = new ChunkedTextToSpeech(tts(backend), new TtsCache(false, "tts-cache", 0), 16, 2);
+        Path out = Files.createTempDirectory("tts").resolve("audio.mp3");
+        try {
+            assertThrows(IOException.class, () -> chunked.synthesizeToFile("Aaaa aaaa. Bbb bbb.", out));
+            assertFalse(Files.exists(out));
+            // Không có vòng thử lại riêng theo đoạn chồng lên lần thử lại của TextToSpeech
+            assertEquals(2, backend.calls.get("Bbb bbb.").get());
+        } finally {
+            chunked.shutdown();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MediaDurationProbeTest {
+    // MPEG 1 layer III, 128 kbps, 44.1 kHz, stereo: mỗi frame 417 byte, 1152 mẫu
+    private static final int FRAME_LENGTH = 417;
+    private static final double FRAME_MICROS = 1152 * 1_000_000.0 / 44100;
+
+    // ffprobe không tồn tại: nếu bị gọi tới thì kết quả là -1
+    private final MediaDurationProbe probe = new MediaDurationProbe("ffprobe-khong-ton-tai");
+
+    private static byte[] mp3(int frames, byte[] firstFrameTag) {
+        byte[] data = new byte[frames * FRAME_LENGTH];
+        for (int i = 0; i < frames; i++) {
+            int off = i * FRAME_LENGTH;
+            data[off] = (byte) 0xFF;
+            data[off + 1] = (byte) 0xFB;
+            data[off + 2] = (byte) 0x90;
+            data[off + 3] = 0;
+        }
+        if (firstFrameTag != null) {
+            // Tag Xing nằm sau header 4 byte và side info 32 byte
+            System.arraycopy(firstFrameTag, 0, data, 4 + 32, firstFrameTag.length);
+        }
+        return data;
+    }
+
+    private static byte[] xing(int frames) {
+        return ByteBuffer.allocate(12).putInt(0x58696E67).putInt(1).putInt(frames).array();
+    }
+
+    private static byte[] box(String type, byte[]... children) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (byte[] child : children) {
+            body.write(child);
+        }
+        return ByteBuffer.allocate(8 + body.size()).putInt(8 + body.size())
+                .put(type.getBytes(StandardCharsets.US_ASCII)).put(body.toByteArray()).array();
+    }
+
+    /** Box mvhd/mdhd version 0: version+flags, creation, modification, timescale, duration. */
+    private static byte[] mediaHeader(String type, int timescale, int duration) throws IOException {
+        return box(type, ByteBuffer.allocate(20).putInt(0).putInt(0).putInt(0)
+                .putInt(timescale).putInt(duration).array());
+    }
+
+    @Test
+    void countsFramesOfMp3WithoutVbrTag() throws IOException {
+        Path dir = Files.createTempDirectory("media-probe");
+        Path file = Files.write(dir.resolve("cbr.mp3"), mp3(100, null));
+        assertEquals(Math.round(100 * FRAME_MICROS), probe.probeMicros(file));
+    }
+
+    @Test
+    void usesFrameCountFromXingTag() throws IOException {
+        Path dir = Files.createTempDirectory("media-probe");
+        // Tag ghi 1000 frame dù file chỉ có 10 frame: thời lượng phải lấy từ tag, không đếm file
+        Path file = Files.write(dir.resolve("vbr.mp3"), mp3(10, xing(1000)));
+        assertEquals(Math.round(1000 * FRAME_MICROS), probe.probeMicros(file));
+    }
+
+    @Test
+    void walkingSkipsXingFrameWithoutFrameCount() throws IOException {
+        Path dir = Files.createTempDirectory("media-probe");
+        byte[] tag = ByteBuffer.allocate(8).putInt(0x496E666F).putInt(0).array();
+        Path file = Files.write(dir.resolve("info.mp3"), mp3(11, tag));
+        assertEquals(Math.round(10 * FRAME_MICROS), probe.probeMicros(file));
+    }
+
+    @Test
+    void readsLongestTrackOfMp4() throws IOException {
+        Path dir = Files.createTempDirectory("media-probe");
+        byte[] ftyp = box("ftyp", "isom".getBytes(), new byte[4]);
+        byte[] moov = box("moov",
+                mediaHeader("mvhd", 1000, 5000),
+                box("trak", box("mdia", mediaHeader("mdhd", 44100, 44100 * 6))),
+                box("trak", box("mdia", mediaHeader("mdhd", 90000, 90000 * 4))));
+        Path file = dir.resolve("video.mp4");
+        Files.write(file, ftyp);
+        Files.write(file, box("mdat", new byte[100]), StandardOpenOption.APPEND);
+        Files.write(file, moov, StandardOpenOption.APPEND);
+        assertEquals(6_000_000L, probe.probeMicros(file));
+    }
+
+    @Test
+    void returnsMinusOneForUnknownFormatWhenFfprobeMissing() throws IOException {
+        Path dir = Files.createTempDirectory("media-probe");
+        Path file = Files.write(dir.resolve("x.bin"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertEquals(-1, probe.probeMicros(file));
+        assertEquals(-1.0, probe.probeSeconds(dir.resolve("missing.mp3").toString()));
+    }
+}
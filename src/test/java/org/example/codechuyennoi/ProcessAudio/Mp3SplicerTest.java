@@ -0,0 +1,123 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class Mp3SplicerTest {
+    // MPEG 1 layer III, 128 kbps, 44.1 kHz, stereo: mỗi frame 417 byte, 1152 mẫu
+    private static final int MPEG1_HEADER = 0xFFFB9000;
+    private static final int MPEG1_FRAME = 417;
+    private static final double MPEG1_FRAME_MICROS = 1152 * 1_000_000.0 / 44100;
+
+    /** frames frame liên tiếp, byte thứ 5 của mỗi frame đánh dấu bằng marker để kiểm tra thứ tự. */
+    private static byte[] frames(int header, int frameLength, int frames, int marker) {
+        ByteBuffer data = ByteBuffer.allocate(frames * frameLength);
+        for (int i = 0; i < frames; i++) {
+            data.putInt(i * frameLength, header);
+            data.put(i * frameLength + 4, (byte) marker);
+        }
+        return data.array();
+    }
+
+    private static byte[] id3v2() {
+        byte[] tag = new byte[10 + 20];
+        tag[0] = 'I';
+        tag[1] = 'D';
+        tag[2] = '3';
+        tag[3] = 4;
+        tag[9] = 20;
+        return tag;
+    }
+
+    private static byte[] id3v1() {
+        byte[] tag = new byte[128];
+        tag[0] = 'T';
+        tag[1] = 'A';
+        tag[2] = 'G';
+        return tag;
+    }
+
+    /** Frame Xing cũ (như file do LAME tạo) ghi số frame sai để chắc chắn nó không được giữ lại. */
+    private static byte[] oldXingFrame() {
+        ByteBuffer frame = ByteBuffer.wrap(frames(MPEG1_HEADER, MPEG1_FRAME, 1, 0));
+        frame.putInt(4 + 32, 0x58696E67).putInt(4 + 36, 1).putInt(4 + 40, 999);
+        return frame.array();
+    }
+
+    private static byte[] concat(byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void joinsFramesAndWritesOneInfoHeader() throws IOException {
+        Path dir = Files.createTempDirectory("mp3-splice");
+        Path a = Files.write(dir.resolve("a.mp3"), concat(id3v2(), frames(MPEG1_HEADER, MPEG1_FRAME, 3, 'A'), id3v1()));
+        Path b = Files.write(dir.resolve("b.mp3"), concat(id3v2(), oldXingFrame(),
+                frames(MPEG1_HEADER, MPEG1_FRAME, 5, 'B'), new byte[]{1, 2, 3}));
+        Path out = dir.resolve("out.mp3");
+
+        long[] durations = Mp3Splicer.splice(List.of(a, b), out);
+
+        assertArrayEquals(new long[]{Math.round(3 * MPEG1_FRAME_MICROS), Math.round(5 * MPEG1_FRAME_MICROS)}, durations);
+        byte[] written = Files.readAllBytes(out);
+        assertEquals(9 * MPEG1_FRAME, written.length);
+        ByteBuffer data = ByteBuffer.wrap(written);
+        assertEquals(MPEG1_HEADER, data.getInt(0));
+        assertEquals(0x496E666F, data.getInt(4 + 32));
+        assertEquals(8, data.getInt(4 + 40));
+        assertEquals(written.length, data.getInt(4 + 44));
+        assertEquals('A', written[MPEG1_FRAME + 4]);
+        assertEquals('B', written[4 * MPEG1_FRAME + 4]);
+        // Đo lại file ghép: frame Info mới không được tính vào thời lượng
+        try (FileChannel channel = FileChannel.open(out, StandardOpenOption.READ)) {
+            assertEquals(Math.round(8 * MPEG1_FRAME_MICROS), Mp3FrameHeader.durationMicros(channel));
+        }
+        assertFalse(Files.exists(dir.resolve("out.mp3.part")));
+    }
+
+    @Test
+    void growsXingFrameWhenBitrateIsTooLowForTheTag() throws IOException {
+        // MPEG 2 layer III, 8 kbps, 22.05 kHz: frame 26 byte, không đủ chỗ cho tag Xing
+        int header = 0xFFF31000;
+        Path dir = Files.createTempDirectory("mp3-splice");
+        Path a = Files.write(dir.resolve("a.mp3"), frames(header, 26, 4, 'A'));
+        Path out = dir.resolve("out.mp3");
+
+        Mp3Splicer.splice(List.of(a), out);
+
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(out));
+        Mp3FrameHeader xing = Mp3FrameHeader.parse(data, 0);
+        assertEquals(16, xing.getBitrateKbps());
+        assertEquals(xing.getFrameLength() + 4 * 26, data.limit());
+        assertEquals(4, data.getInt(4 + 17 + 8));
+    }
+
+    @Test
+    void rejectsFilesWithDifferentSampleRate() throws IOException {
+        Path dir = Files.createTempDirectory("mp3-splice");
+        Path a = Files.write(dir.resolve("a.mp3"), frames(MPEG1_HEADER, MPEG1_FRAME, 2, 'A'));
+        // Cùng bitrate nhưng 48 kHz: frame 384 byte
+        Path b = Files.write(dir.resolve("b.mp3"), frames(0xFFFB9400, 384, 2, 'B'));
+        Path out = dir.resolve("out.mp3");
+
+        assertThrows(IOException.class, () -> Mp3Splicer.splice(List.of(a, b), out));
+        assertFalse(Files.exists(out));
+    }
+}
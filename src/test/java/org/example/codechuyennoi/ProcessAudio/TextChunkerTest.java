@@ -0,0 +1,70 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import org.example.codechuyennoi.ProcessText.SentenceSegmenter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextChunkerTest {
+
+    @Test
+    void packsWholeSentencesUnderTheCap() {
+        String text = "Trời đã tối. Hắn bước vào quán! Ai đó hỏi: \"Ngươi là ai?\" Không ai trả lời.";
+        List<String> chunks = TextChunker.split(text, 40);
+        assertEquals(List.of("Trời đã tối. Hắn bước vào quán!", "Ai đó hỏi: \"Ngươi là ai?\"",
+                "Không ai trả lời."), chunks);
+    }
+
+    @Test
+    void doesNotBreakOnDecimalPoints() {
+        assertEquals(List.of("Giá 3.5 lượng bạc. Rẻ."), TextChunker.split("Giá 3.5 lượng bạc. Rẻ.", 100));
+    }
+
+    @Test
+    void splitsOverlongSentenceAtCommasOrSpaces() {
+        String sentence = "Hắn đi qua núi, qua sông, qua rừng rậm, qua sa mạc mênh mông không bóng người.";
+        List<String> chunks = TextChunker.split(sentence, 30);
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(chunk.length() <= 30, chunk);
+        }
+        assertEquals(sentence, String.join(" ", chunks));
+    }
+
+    @Test
+    void reportsSentencePiecesOfEveryChunk() {
+        SentenceSegmenter.Sentences sentences = SentenceSegmenter.segment(
+                "Một hai ba. Bốn năm. Sáu bảy tám chín mười, mười một mười hai mười ba. Hết.");
+        List<TextChunker.Piece> pieces = new ArrayList<>();
+        List<String> chunks = TextChunker.split(sentences, 30, pieces);
+
+        int[] chars = new int[chunks.size()];
+        int[] count = new int[chunks.size()];
+        for (TextChunker.Piece piece : pieces) {
+            chars[piece.chunk()] += piece.chars();
+            count[piece.chunk()]++;
+        }
+        // Các phần câu của một đoạn nối bằng một khoảng trắng thành đúng văn bản của đoạn
+        for (int c = 0; c < chunks.size(); c++) {
+            assertEquals(chunks.get(c).length(), chars[c] + count[c] - 1, chunks.get(c));
+        }
+        assertEquals(sentences.size(), pieces.stream().mapToInt(TextChunker.Piece::sentence).distinct().count());
+    }
+
+    @Test
+    void splitsChunkDurationsAcrossSentencesByLength() {
+        // Câu 0 và 1 chung đoạn 0; câu 2 dài trải qua đoạn 1 và đầu đoạn 2; câu 3 ở cuối đoạn 2
+        List<TextChunker.Piece> pieces = List.of(
+                new TextChunker.Piece(0, 0, 6), new TextChunker.Piece(0, 1, 4),
+                new TextChunker.Piece(1, 2, 10),
+                new TextChunker.Piece(2, 2, 5), new TextChunker.Piece(2, 3, 5));
+
+        assertArrayEquals(new long[]{600, 400, 3500, 1500},
+                TextChunker.sentenceDurations(pieces, new long[]{1000, 2000, 3000}, 4));
+    }
+}
@@ -0,0 +1,138 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextToSpeechTest {
+
+    /** Backend giả: lần gọi thứ n (tính từ 1) làm theo kịch bản cho trước. */
+    private static class ScriptedBackend implements TtsBackend {
+        final AtomicInteger calls = new AtomicInteger();
+        final IntFunction<String> script;
+
+        ScriptedBackend(IntFunction<String> script) {
+            this.script = script;
+        }
+
+        @Override
+        public String name() {
+            return "scripted";
+        }
+
+        @Override
+        public CompletableFuture<Path> synthesize(String text, String voice, String speed, Path target) {
+            String action = script.apply(calls.incrementAndGet());
+            if (action.equals("hang")) {
+                return new CompletableFuture<>();
+            }
+            if (action.equals("fail")) {
+                return CompletableFuture.failedFuture(new IOException("503"));
+            }
+            try {
+                return CompletableFuture.completedFuture(Files.writeString(target, action));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+    }
+
+    private static TextToSpeech tts(TtsBackend backend, int maxAttempts, boolean hedge, int breakerThreshold) {
+        return new TextToSpeech(List.of(backend), backend.name(), "v", "1.0", 5, maxAttempts, 0.2, hedge, 50,
+                breakerThreshold, 60);
+    }
+
+    @Test
+    void hedgedRequestWinsWhenPrimaryStalls() throws Exception {
+        ScriptedBackend backend = new ScriptedBackend(n -> n == 1 ? "hang" : "hedge");
+        TextToSpeech tts = tts(backend, 1, true, 5);
+        Path target = Files.createTempDirectory("tts").resolve("a.mp3");
+
+        long started = System.nanoTime();
+        tts.synthesizeToFile("xin chào", target);
+
+        assertEquals("hedge", Files.readString(target));
+        assertEquals(1, tts.getHedgeCount());
+        // Không phải chờ hết timeout 5 giây của request đầu
+        assertTrue(System.nanoTime() - started < 3_000_000_000L);
+        try (Stream<Path> files = Files.list(target.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void retriesAfterFailureWithinBudget() throws Exception {
+        ScriptedBackend backend = new ScriptedBackend(n -> n < 3 ? "fail" : "ok");
+        TextToSpeech tts = tts(backend, 3, false, 5);
+        Path target = Files.createTempDirectory("tts").resolve("a.mp3");
+
+        tts.synthesizeToFile("xin chào", target);
+
+        assertEquals("ok", Files.readString(target));
+        assertEquals(2, tts.getRetryCount());
+    }
+
+    @Test
+    void opensCircuitAfterConsecutiveFailures() throws Exception {
+        ScriptedBackend backend = new ScriptedBackend(n -> "fail");
+        TextToSpeech tts = tts(backend, 1, false, 2);
+        Path target = Files.createTempDirectory("tts").resolve("a.mp3");
+
+        assertThrows(IOException.class, () -> tts.synthesizeToFile("một", target));
+        assertThrows(IOException.class, () -> tts.synthesizeToFile("hai", target));
+        assertThrows(IOException.class, () -> tts.synthesizeToFile("ba", target));
+
+        // Lần thứ ba bị từ chối ngay, không gọi backend
+        assertEquals(2, backend.calls.get());
+        assertEquals(1, tts.getRejectedCount());
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    void interruptedProbeReleasesHalfOpenCircuit() throws Exception {
+        ScriptedBackend backend = new ScriptedBackend(n -> n == 1 ? "fail" : n == 2 ? "hang" : "ok");
+        // Ngưỡng 1 lỗi, mở mạch 0 giây: lần gọi sau lỗi đầu tiên là lần gọi thử khi nửa mở
+        TextToSpeech tts = new TextToSpeech(List.of(backend), backend.name(), "v", "1.0", 5, 1, 0.2, false, 50, 1, 0);
+        Path target = Files.createTempDirectory("tts").resolve("a.mp3");
+        assertThrows(IOException.class, () -> tts.synthesizeToFile("một", target));
+
+        Thread probe = new Thread(() -> {
+            try {
+                tts.synthesizeToFile("hai", target);
+            } catch (IOException | InterruptedException ignored) {
+                // bị ngắt giữa lần gọi thử
+            }
+        });
+        probe.start();
+        while (backend.calls.get() < 2) {
+            Thread.onSpinWait();
+        }
+        probe.interrupt();
+        probe.join(5000);
+
+        // Lần gọi thử bị ngắt không giữ mạch ở trạng thái nửa mở mãi mãi
+        tts.synthesizeToFile("ba", target);
+        assertEquals("ok", Files.readString(target));
+        assertEquals(0, tts.getRejectedCount());
+    }
+
+    @Test
+    void parsesAudioUrlFromJson() {
+        AiServiceTtsBackend backend = new AiServiceTtsBackend("http://localhost", 1, 1);
+        assertEquals("https://cdn/a.mp3", backend.parseAudioUrl("{\"url\":\"https://cdn/a.mp3\",\"id\":\"x\"}"));
+        assertEquals("https://cdn/b.mp3",
+                backend.parseAudioUrl("{\"status\":\"ok\",\"result\":{\"file\":\"https://cdn/b.mp3\"}}"));
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.codechuyennoi.ProcessAudio;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TtsCacheTest {
+
+    @Test
+    void keyIgnoresWhitespaceButNotVoiceOrSpeed() {
+        String key = TtsCache.key("Trời  đã\ntối.", "hcm_thanhthao", "1.0");
+        assertEquals(key, TtsCache.key(" Trời đã tối. ", "hcm_thanhthao", "1.0"));
+        assertNotEquals(key, TtsCache.key("Trời đã tối.", "hn_namkhanh", "1.0"));
+        assertNotEquals(key, TtsCache.key("Trời đã tối.", "hcm_thanhthao", "1.2"));
+    }
+
+    private static Path file(Path dir, String name, int size) throws Exception {
+        return Files.write(dir.resolve(name), new byte[size]);
+    }
+
+    @Test
+    void survivesRestartAndCountsHits() throws Exception {
+        Path dir = Files.createTempDirectory("tts-cache");
+        Path work = Files.createTempDirectory("tts-work");
+        TtsCache cache = new TtsCache(true, dir.toString(), 1 << 20);
+        cache.init();
+        String key = TtsCache.key("Chương một.", "v", "1.0");
+        assertFalse(cache.copyTo(key, work.resolve("miss.mp3")));
+        Path audio = Files.write(work.resolve("audio.mp3"), new byte[]{1, 2, 3});
+        cache.putFile(key, audio, true);
+        assertTrue(Files.exists(audio));
+
+        TtsCache reopened = new TtsCache(true, dir.toString(), 1 << 20);
+        reopened.init();
+        Path copy = work.resolve("copy.mp3");
+        assertTrue(reopened.copyTo(key, copy));
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(copy));
+        assertEquals(1, reopened.getHitCount());
+        assertEquals(0, reopened.getMissCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(3, reopened.getTotalBytes());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverBudget() throws Exception {
+        Path dir = Files.createTempDirectory("tts-cache");
+        Path work = Files.createTempDirectory("tts-work");
+        TtsCache cache = new TtsCache(true, dir.toString(), 250);
+        cache.init();
+        cache.putFile("aa01", file(work, "a", 100), false);
+        cache.putFile("bb02", file(work, "b", 100), false);
+        Path copyA = work.resolve("copy-a");
+        assertTrue(cache.copyTo("aa01", copyA));
+        cache.putFile("cc03", file(work, "c", 100), false);
+
+        assertFalse(cache.copyTo("bb02", work.resolve("copy-b")));
+        assertTrue(cache.copyTo("cc03", work.resolve("copy-c")));
+        assertEquals(100, Files.size(work.resolve("copy-c")));
+        assertEquals(200, cache.getTotalBytes());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(0, Files.list(dir.resolve("bb")).count());
+        assertFalse(Files.exists(work.resolve("a")));
+
+        // Bản đã lấy ra vẫn dùng được sau khi mục của nó bị loại khỏi cache
+        cache.putFile("dd04", file(work, "d", 100), false);
+        cache.putFile("ee05", file(work, "e", 100), false);
+        assertFalse(cache.copyTo("aa01", work.resolve("copy-a2")));
+        assertEquals(100, Files.size(copyA));
+    }
+}
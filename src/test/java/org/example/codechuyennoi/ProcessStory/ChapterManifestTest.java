@@ -0,0 +1,73 @@
+package org.example.codechuyennoi.ProcessStory;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChapterManifestTest {
+
+    @Test
+    void seedsFromExistingChapterFiles() throws Exception {
+        Path dir = Files.createTempDirectory("manifest");
+        Files.writeString(dir.resolve("chuong-1.txt"), "Chương một");
+        Files.writeString(dir.resolve("chuong-3.txt"), "Chương ba");
+        Files.writeString(dir.resolve("chuong-4.txt"), "");
+
+        try (ChapterManifest manifest = ChapterManifest.open(dir)) {
+            assertTrue(manifest.has(1, ChapterManifest.FETCHED | ChapterManifest.CLEANED));
+            assertFalse(manifest.has(2, ChapterManifest.CLEANED));
+            assertTrue(manifest.has(3, ChapterManifest.CLEANED));
+            assertFalse(manifest.has(4, ChapterManifest.CLEANED));
+        }
+    }
+
+    @Test
+    void replaysJournalAfterRestart() throws Exception {
+        Path dir = Files.createTempDirectory("manifest");
+        long hash = ChapterManifest.contentHash("Chương năm");
+        ChapterManifest manifest = ChapterManifest.open(dir);
+        manifest.mark(5, ChapterManifest.FETCHED | ChapterManifest.CLEANED, hash);
+        manifest.mark(5, ChapterManifest.VOICED);
+        manifest.mark(700, ChapterManifest.FETCHED);
+        manifest.clear(700, ChapterManifest.FETCHED);
+        // Không đóng: mô phỏng ứng dụng dừng đột ngột, chỉ còn nhật ký
+
+        try (ChapterManifest reopened = ChapterManifest.open(dir)) {
+            assertEquals(ChapterManifest.FETCHED | ChapterManifest.CLEANED | ChapterManifest.VOICED, reopened.state(5));
+            assertEquals(hash, reopened.hash(5));
+            assertEquals(0, reopened.state(700));
+            assertEquals(700, reopened.getHighestChapter());
+        }
+        try (ChapterManifest compacted = ChapterManifest.open(dir)) {
+            assertEquals(hash, compacted.hash(5));
+            assertEquals(0, Files.size(dir.resolve(ChapterManifest.JOURNAL_FILE)));
+        }
+    }
+
+    @Test
+    void ignoresTornJournalTail() throws Exception {
+        Path dir = Files.createTempDirectory("manifest");
+        ChapterManifest manifest = ChapterManifest.open(dir);
+        manifest.mark(2, ChapterManifest.FETCHED);
+        manifest.mark(3, ChapterManifest.FETCHED);
+        Path journal = dir.resolve(ChapterManifest.JOURNAL_FILE);
+        // Bản ghi cuối chỉ được ghi một nửa
+        Files.write(journal, new byte[]{0, 0, 0, 9, 1, 0, 0}, StandardOpenOption.APPEND);
+
+        try (ChapterManifest reopened = ChapterManifest.open(dir)) {
+            assertTrue(reopened.has(2, ChapterManifest.FETCHED));
+            assertTrue(reopened.has(3, ChapterManifest.FETCHED));
+            assertEquals(0, reopened.state(9));
+            reopened.mark(4, ChapterManifest.FETCHED);
+        }
+        try (ChapterManifest again = ChapterManifest.open(dir)) {
+            assertTrue(again.has(4, ChapterManifest.FETCHED));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.codechuyennoi.ProcessStory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChapterSequencerTest {
+
+    @Test
+    void persistsInChapterOrderAndPassesSkippedChapters() {
+        List<Integer> saved = new ArrayList<>();
+        ChapterSequencer sequencer = new ChapterSequencer(1, new AtomicInteger(100),
+                story -> saved.add(story.getChapterNumber()));
+
+        sequencer.complete(new Story("truyen", 3, "c3"));
+        sequencer.complete(new Story("truyen", 4, "c4"));
+        assertEquals(List.of(), saved);
+
+        sequencer.complete(new Story("truyen", 1, "c1"));
+        assertEquals(List.of(1), saved);
+
+        sequencer.skip(2);
+        assertEquals(List.of(1, 3, 4), saved);
+        assertEquals(5, sequencer.getNext());
+        assertEquals(0, sequencer.getPendingCount());
+    }
+
+    @Test
+    void neverPersistsChaptersAfterStopPoint() {
+        List<Integer> saved = new ArrayList<>();
+        AtomicInteger stopAt = new AtomicInteger(100);
+        ChapterSequencer sequencer = new ChapterSequencer(1, stopAt,
+                story -> saved.add(story.getChapterNumber()));
+
+        sequencer.complete(new Story("truyen", 1, "c1"));
+        sequencer.complete(new Story("truyen", 3, "c3"));
+        // Chương 2 lỗi sau khi chương 3 đã xử lý xong
+        stopAt.accumulateAndGet(2, Math::min);
+        sequencer.skip(2);
+
+        assertEquals(List.of(1), saved);
+        assertEquals(2, sequencer.getNext());
+        assertEquals(2, sequencer.getPendingCount());
+    }
+}
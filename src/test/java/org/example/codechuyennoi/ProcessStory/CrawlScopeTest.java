@@ -0,0 +1,76 @@
+package org.example.codechuyennoi.ProcessStory;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrawlScopeTest {
+
+    @Test
+    void joinsAllTasks() throws Exception {
+        AtomicInteger done = new AtomicInteger();
+        try (CrawlScope scope = new CrawlScope("test", 4)) {
+            for (int i = 0; i < 100; i++) {
+                scope.fork(done::incrementAndGet);
+            }
+            scope.joinUntil(Instant.now().plusSeconds(10));
+            scope.throwIfFailed();
+        }
+        assertEquals(100, done.get());
+    }
+
+    @Test
+    void failureCancelsSiblings() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        long start = System.nanoTime();
+        try (CrawlScope scope = new CrawlScope("test", 4)) {
+            Future<Object> sleeper = scope.fork(() -> {
+                try {
+                    Thread.sleep(60_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            });
+            scope.fork(() -> {
+                Thread.sleep(50);
+                throw new IllegalStateException("boom");
+            });
+            scope.joinUntil(Instant.now().plusSeconds(30));
+            ExecutionException failure = assertThrows(ExecutionException.class, scope::throwIfFailed);
+            assertEquals("boom", failure.getCause().getMessage());
+            assertTrue(sleeper.isCancelled());
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(10).toNanos());
+    }
+
+    @Test
+    void deadlineCancelsRemainingTasks() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try (CrawlScope scope = new CrawlScope("test", 2)) {
+            scope.fork(() -> {
+                try {
+                    Thread.sleep(60_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            });
+            assertThrows(TimeoutException.class, () -> scope.joinUntil(Instant.now().plusMillis(100)));
+            assertTrue(scope.isShutdown());
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.codechuyennoi.ProcessText;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class CleanTextTest {
+
+    private final CleanText cleanText = new CleanText(new MockEnvironment());
+
+    @Test
+    void matchesLegacyCleanerOnStoredChapters() throws Exception {
+        Path corpus = Path.of("luutrutruyen");
+        if (!Files.isDirectory(corpus)) {
+            return;
+        }
+        List<String> chapters = TextPipelineBenchmark.loadCorpus(corpus);
+        assertFalse(chapters.isEmpty());
+        for (String chapter : chapters) {
+            assertEquals(LegacyCleanText.cleanStoryText(chapter), cleanText.cleanStoryText(chapter));
+        }
+    }
+
+    @Test
+    void matchesLegacyCleanerOnAdsAndSpecialCharacters() {
+        List<String> samples = List.of(
+                "Mở đầu.\nĐọc truyện tại abc.xyz nhé!\nDòng tiếp theo.",
+                "  Chào 🍊bạn\t\t  đọc   TRUYỆN.  ",
+                "Nội dung Nhấn theo dõi để cập nhật chương mới\r\nhết",
+                "Đọc 🍊truyện tại đây\nCòn lại",
+                "FANPAGE: fb.com/abc\nDONATE ủng hộ\nfanPage nữa",
+                "Ký tự lạ: @#$%^&*()[]{}<>~` “trích dẫn” ‘đơn’ số ١٢٣ và ½",
+                "Emoji 😀 và 𝔘𝔫𝔦𝔠𝔬𝔡𝔢 và dấu tách é",
+                "Theo dõi để cập nhật sớm nhất tại web\nCập nhật sớm nhất tại x",
+                "Website chính thức: a.b\n\n\n  Truyện được đăng tải tại c.d  \n  Kết thúc  ",
+                " khoảng trắng dòng\u0085mới\u000bdọc",
+                "🍊🍊🍊",
+                "Chương mới nhất tại");
+        for (String sample : samples) {
+            assertEquals(LegacyCleanText.cleanStoryText(sample), cleanText.cleanStoryText(sample), sample);
+        }
+    }
+
+    @Test
+    void appliesSiteSpecificAdPrefixes() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("clean.ads.site.truyenfull.vn.line-prefixes", "Nguồn truyện, Ủng hộ tác giả");
+        CleanText siteCleaner = new CleanText(environment);
+        String raw = "Câu một. Nguồn truyện: truyenfull.vn\nCâu hai. Ủng hộ tác giả tại x\nCâu ba.";
+        assertEquals("Câu một. Câu hai. Câu ba.", siteCleaner.cleanStoryText(raw, "truyenfull.vn"));
+        assertEquals(LegacyCleanText.cleanStoryText(raw), siteCleaner.cleanStoryText(raw, "other.site"));
+    }
+}
@@ -0,0 +1,34 @@
+package org.example.codechuyennoi.ProcessText;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HostRateLimiterTest {
+
+    @Test
+    void cancelledRequestFreesSlotWithoutThrottlingHost() throws InterruptedException {
+        HostRateLimiter limiter = new HostRateLimiter(2, 0.2, 10, 4);
+        limiter.acquire("truyen.vn");
+        limiter.cancel("truyen.vn");
+
+        HostRateLimiter.HostLimits limits = limiter.getLimits().get("truyen.vn");
+        assertEquals(0, limits.getInFlight());
+        assertEquals(2.0, limits.getRatePerSecond(), 1e-9);
+        assertEquals(2.0, limits.getConcurrencyLimit(), 1e-9);
+        assertEquals(0, limits.getThrottledCount());
+    }
+
+    @Test
+    void connectionErrorHalvesRateAndConcurrency() throws InterruptedException {
+        HostRateLimiter limiter = new HostRateLimiter(2, 0.2, 10, 4);
+        limiter.acquire("truyen.vn");
+        limiter.release("truyen.vn", -1, 1_000_000, null);
+
+        HostRateLimiter.HostLimits limits = limiter.getLimits().get("truyen.vn");
+        assertEquals(0, limits.getInFlight());
+        assertEquals(1.0, limits.getRatePerSecond(), 1e-9);
+        assertEquals(1.0, limits.getConcurrencyLimit(), 1e-9);
+        assertEquals(1, limits.getThrottledCount());
+    }
+}
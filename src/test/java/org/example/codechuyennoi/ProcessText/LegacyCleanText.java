@@ -0,0 +1,42 @@
+package org.example.codechuyennoi.ProcessText;
+
+/**
+ * Bản sao nguyên trạng của cách làm sạch cũ (nhiều lượt regex), dùng làm chuẩn so sánh
+ * cho {@link CleanText} trong test và benchmark.
+ */
+final class LegacyCleanText {
+
+    private LegacyCleanText() {
+    }
+
+    static String cleanStoryText(String rawText) {
+        if (rawText == null || rawText.isEmpty()) {
+            return "";
+        }
+        String text = removeAds(rawText);
+        return text
+                .replaceAll("[^\\p{L}\\p{N}\\s.,!?\"“”‘’]", "")
+                .replaceAll("\\s+", " ")
+                .replaceAll("(?m)^\\s*", "")
+                .trim();
+    }
+
+    private static String removeAds(String text) {
+        String[] adPatterns = {
+                "🍊",
+                "Đọc truyện tại[^\\n]*",
+                "Nhấn theo dõi[^\\n]*",
+                "Chương mới nhất tại[^\\n]*",
+                "Truyện được đăng tải[^\\n]*",
+                "Website chính[^\\n]*",
+                "Theo dõi để cập nhật[^\\n]*",
+                "Cập nhật sớm nhất tại[^\\n]*",
+                "Fanpage[^\\n]*",
+                "Donate[^\\n]*"
+        };
+        for (String pattern : adPatterns) {
+            text = text.replaceAll("(?i)" + pattern, "");
+        }
+        return text;
+    }
+}
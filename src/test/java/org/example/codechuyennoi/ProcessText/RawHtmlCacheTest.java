@@ -0,0 +1,73 @@
+package org.example.codechuyennoi.ProcessText;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RawHtmlCacheTest {
+
+    @Test
+    void storesAndReloadsPagesWithValidators() throws Exception {
+        Path dir = Files.createTempDirectory("html-cache");
+        RawHtmlCache cache = new RawHtmlCache(true, dir.toString(), 0);
+        cache.init();
+        cache.put("https://a/chuong-1/", "<p>Chương một</p>", "\"v1\"", "Mon, 01 Jan 2024 00:00:00 GMT");
+        cache.put("https://a/chuong-2/", "<p>Chương một</p>", null, null);
+        assertEquals(2, cache.size());
+        cache.close();
+
+        RawHtmlCache reopened = new RawHtmlCache(true, dir.toString(), 0);
+        reopened.init();
+        assertEquals("<p>Chương một</p>", reopened.get("https://a/chuong-2/"));
+        assertEquals(Map.of("If-None-Match", "\"v1\"", "If-Modified-Since", "Mon, 01 Jan 2024 00:00:00 GMT"),
+                reopened.validators("https://a/chuong-1/"));
+        assertEquals(Map.of(), reopened.validators("https://a/chuong-2/"));
+        // Hai URL cùng nội dung dùng chung một blob
+        try (var blobs = Files.walk(dir.resolve("blobs"))) {
+            assertEquals(1, blobs.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedWhenOverBudget() throws Exception {
+        Path dir = Files.createTempDirectory("html-cache");
+        Random random = new Random(1);
+        String[] pages = new String[4];
+        for (int i = 0; i < pages.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 4000; j++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            pages[i] = sb.toString();
+        }
+        RawHtmlCache cache = new RawHtmlCache(true, dir.toString(), 8 * 1024);
+        cache.init();
+        cache.put("u0", pages[0], null, null);
+        cache.put("u1", pages[1], null, null);
+        cache.get("u0");
+        cache.put("u2", pages[2], null, null);
+        cache.put("u3", pages[3], null, null);
+
+        assertTrue(cache.getTotalBytes() <= 8 * 1024);
+        assertNull(cache.get("u1"));
+        assertEquals(pages[3], cache.get("u3"));
+    }
+
+    @Test
+    void updatingUrlWithSameContentKeepsBlob() throws Exception {
+        Path dir = Files.createTempDirectory("html-cache");
+        RawHtmlCache cache = new RawHtmlCache(true, dir.toString(), 0);
+        cache.init();
+        cache.put("u", "<p>x</p>", "\"1\"", null);
+        cache.put("u", "<p>x</p>", "\"2\"", null);
+        assertEquals("<p>x</p>", cache.get("u"));
+        assertEquals(Map.of("If-None-Match", "\"2\""), cache.validators("u"));
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.codechuyennoi.ProcessText;
+
+import org.example.codechuyennoi.ProcessText.SentenceSegmenter.Sentences;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SentenceSegmenterTest {
+
+    @Test
+    void splitsOnSentenceEndsAndLineBreaks() {
+        String text = "Trời đã tối. Hắn bước vào quán!\nAi đó hỏi: \"Ngươi là ai?\" Không ai trả lời…  Im lặng";
+        assertEquals(List.of("Trời đã tối.", "Hắn bước vào quán!", "Ai đó hỏi: \"Ngươi là ai?\"",
+                "Không ai trả lời…", "Im lặng"), SentenceSegmenter.segment(text).asList());
+    }
+
+    @Test
+    void keepsDecimalsEllipsesAndAbbreviationsInsideTheSentence() {
+        String text = "Giá 3.5 lượng bạc... rất rẻ. Ông ở TP. Hồ Chí Minh gặp Nguyễn V. A. hôm qua.";
+        assertEquals(List.of("Giá 3.5 lượng bạc... rất rẻ.", "Ông ở TP. Hồ Chí Minh gặp Nguyễn V. A. hôm qua."),
+                SentenceSegmenter.segment(text).asList());
+    }
+
+    @Test
+    void offsetsPointIntoTheOriginalTextAndSkipPunctuationOnlyLines() {
+        String text = "  Một.\n***\n\nHai?  ";
+        Sentences sentences = SentenceSegmenter.segment(text);
+        assertEquals(2, sentences.size());
+        assertEquals(2, sentences.start(0));
+        assertEquals(6, sentences.end(0));
+        assertEquals("Hai?", text.substring(sentences.start(1), sentences.end(1)));
+        assertTrue(SentenceSegmenter.segment("   ").isEmpty());
+        assertTrue(SentenceSegmenter.segment(null).isEmpty());
+    }
+}
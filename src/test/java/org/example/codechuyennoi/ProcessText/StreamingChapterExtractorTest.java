@@ -0,0 +1,65 @@
+package org.example.codechuyennoi.ProcessText;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StreamingChapterExtractorTest {
+
+    private final StreamingChapterExtractor extractor = new StreamingChapterExtractor("chapter-c");
+
+    @Test
+    void matchesJsoupOnNestedAndImplicitlyClosedTags() {
+        assertMatchesJsoup("<html><body><div class=\"header\">Tiêu đề</div>"
+                + "<div id=\"x\" class=\"box chapter-c\"><p>Câu một.<p>Câu <b>hai <i>nghiêng</i></b>."
+                + "<div><span>Câu</span>ba</div>dòng<br>mới<img src=a.png>hết</div>"
+                + "<div class=\"footer\">Chân trang</div></body></html>");
+    }
+
+    @Test
+    void ignoresScriptStyleAndCommentsInsideContainer() {
+        assertMatchesJsoup("<div class=chapter-c>Đầu <script>var s = '<div class=\"chapter-c\">';</script>"
+                + "<style>p { color: red } </div></style><!-- </div> -->giữa"
+                + "<textarea></div></textarea> cuối</div>");
+    }
+
+    @Test
+    void skipsRawTextBeforeContainer() {
+        assertMatchesJsoup("<head><script>document.write('<div class=\"chapter-c\">giả</div>')</script></head>"
+                + "<body><div class=\"chapter-c\">thật</div></body>");
+    }
+
+    @Test
+    void decodesEntitiesWithAndWithoutSemicolon() {
+        assertMatchesJsoup("<div class=\"chapter-c\">A&nbsp;B&nbspC &amp; D &amp E &lt;p&gt; &lt F"
+                + " &#65;&#x42;&#67 &quot;x&quot; &hellip; &copy &notanentity; &ampx Tom&Jerry &</div>");
+    }
+
+    @Test
+    void collapsesWhitespaceAndInvisibleCharacters() {
+        assertMatchesJsoup("<div class=\"chapter-c\">\n\t  Một ​hai&nbsp;&nbsp; ba­bốn  \r\n</div>");
+    }
+
+    @Test
+    void returnsNullWhenContainerMissingOrUnclosed() {
+        assertNull(extractor.extract("<div class=\"chapter-cc\">không khớp class</div>"));
+        assertNull(extractor.extract("<div class=\"chapter-c\"><p>chưa đóng"));
+        assertNull(extractor.extract("<div class=\"chapter-c\"><script>chưa đóng</div>"));
+    }
+
+    @Test
+    void extractorTextFallsBackToDomWhenStreamingFails() {
+        ExtractorText extractorText = new ExtractorText("streaming", "chapter-c");
+        // Thẻ chứa không đóng: quét luồng trả null, Jsoup vẫn lấy được chữ
+        assertEquals("Nội dung chương", extractorText.extractText("<div class=\"chapter-c\"><p>Nội dung chương"));
+        assertEquals("", extractorText.extractText("<div>không có thẻ chứa</div>"));
+        assertEquals("Một hai", extractorText.extractText("<div class=\"chapter-c\">Một <b>hai</b></div>"));
+    }
+
+    private void assertMatchesJsoup(String html) {
+        String expected = Jsoup.parse(html).selectFirst(".chapter-c").text().replaceAll("\\s+", " ").trim();
+        assertEquals(expected, extractor.extract(html));
+    }
+}
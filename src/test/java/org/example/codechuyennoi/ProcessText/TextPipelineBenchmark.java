@@ -0,0 +1,138 @@
+package org.example.codechuyennoi.ProcessText;
+
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark đơn giản cho các bước xử lý văn bản, chạy trên các chương đã lưu trong luutrutruyen/.
+ * Đo thời gian CPU và số byte cấp phát trên mỗi chương, đồng thời kiểm tra các cách làm cho cùng kết quả.
+ *
+ * Chạy: java -cp target/classes:target/test-classes:&lt;deps&gt; org.example.codechuyennoi.ProcessText.TextPipelineBenchmark [thư mục]
+ */
+public final class TextPipelineBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private TextPipelineBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        Path corpusDir = Path.of(args.length > 0 ? args[0] : "luutrutruyen");
+        List<String> chapters = loadCorpus(corpusDir);
+        System.out.printf("Corpus: %d chương từ %s%n", chapters.size(), corpusDir.toAbsolutePath());
+        benchmarkExtraction(chapters);
+        benchmarkCleaning(chapters);
+    }
+
+    static List<String> loadCorpus(Path corpusDir) throws IOException {
+        try (Stream<Path> files = Files.walk(corpusDir)) {
+            List<Path> paths = files
+                    .filter(p -> p.getFileName().toString().matches("chuong-\\d+\\.txt"))
+                    .sorted()
+                    .collect(Collectors.toList());
+            List<String> chapters = new ArrayList<>(paths.size());
+            for (Path path : paths) {
+                chapters.add(Files.readString(path, StandardCharsets.UTF_8));
+            }
+            return chapters;
+        }
+    }
+
+    private static void benchmarkExtraction(List<String> chapters) {
+        List<String> pages = chapters.stream().map(TextPipelineBenchmark::toChapterPage).collect(Collectors.toList());
+        ExtractorText streaming = new ExtractorText("streaming", "chapter-c");
+        ExtractorText dom = new ExtractorText("dom", "chapter-c");
+
+        int mismatches = 0;
+        for (String page : pages) {
+            if (!streaming.extractText(page).equals(dom.extractText(page))) {
+                mismatches++;
+            }
+        }
+        System.out.printf("Trích xuất: %d/%d chương khác kết quả giữa streaming và DOM%n", mismatches, pages.size());
+
+        measure("extract/dom", pages, dom::extractText);
+        measure("extract/streaming", pages, streaming::extractText);
+    }
+
+    private static void benchmarkCleaning(List<String> chapters) {
+        // Chèn lại vài dòng quảng cáo để bộ lọc có việc làm
+        List<String> raw = chapters.stream()
+                .map(text -> "🍊 " + text + "\nĐọc truyện tại truyenfull.vn\nFanpage: fb.com/truyen")
+                .collect(Collectors.toList());
+        CleanText cleanText = new CleanText(new MockEnvironment());
+
+        int mismatches = 0;
+        for (String text : raw) {
+            if (!cleanText.cleanStoryText(text).equals(LegacyCleanText.cleanStoryText(text))) {
+                mismatches++;
+            }
+        }
+        System.out.printf("Làm sạch: %d/%d chương khác kết quả so với bản regex cũ%n", mismatches, raw.size());
+
+        measure("clean/legacy-regex", raw, LegacyCleanText::cleanStoryText);
+        measure("clean/single-pass", raw, cleanText::cleanStoryText);
+    }
+
+    /**
+     * Dựng một trang chương giống trang nguồn: header, menu, quảng cáo, script,
+     * nội dung trong div.chapter-c ngắt dòng bằng &lt;br&gt; và phần bình luận phía sau.
+     */
+    static String toChapterPage(String chapterText) {
+        StringBuilder html = new StringBuilder(chapterText.length() * 2);
+        html.append("<!DOCTYPE html><html lang=\"vi\"><head><meta charset=\"utf-8\"><title>Chương</title>")
+                .append("<script>var ads = '<div class=\"chapter-c\">';</script>")
+                .append("<style>.chapter-c{font-size:18px}</style></head><body>")
+                .append("<nav class=\"navbar\"><ul><li><a href=\"/\">Trang chủ</a></li>")
+                .append("<li><a href=\"/the-loai/ngon-tinh/\">Ngôn tình</a></li></ul></nav>")
+                .append("<div id=\"ads-top\"><ins class=\"adsbygoogle\"></ins><script>(adsbygoogle=[]).push({});</script></div>")
+                .append("<div class=\"chapter\"><h2><a class=\"chapter-title\" href=\"#\">Chương</a></h2>")
+                .append("<div id=\"chapter-c\" class=\"chapter-c\" itemprop=\"articleBody\">");
+        String[] sentences = chapterText.split("(?<=[.!?])\\s+");
+        for (int i = 0; i < sentences.length; i++) {
+            if (i % 40 == 20) {
+                html.append("<div class=\"ads-holder\"><script>load('ad');</script></div>");
+            }
+            html.append(i % 7 == 3 ? "<em>" + sentences[i] + "</em>" : sentences[i]).append("<br/>\n&nbsp;");
+        }
+        html.append("</div></div>")
+                .append("<div class=\"comments\"><!-- bình luận --><p>Bình luận hay quá!</p><p>Hóng chương sau.</p></div>")
+                .append("<footer><p>Bản quyền</p></footer></body></html>");
+        return html.toString();
+    }
+
+    static void measure(String name, List<String> inputs, Function<String, String> step) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sink = 0;
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            for (String input : inputs) {
+                sink += step.apply(input).length();
+            }
+        }
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long allocStart = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int r = 0; r < MEASURED_ROUNDS; r++) {
+            for (String input : inputs) {
+                sink += step.apply(input).length();
+            }
+        }
+        long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+        long alloc = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocStart;
+        long runs = (long) MEASURED_ROUNDS * inputs.size();
+        System.out.printf("%-22s %10.1f µs CPU/chương %12d bytes cấp phát/chương (sink=%d)%n",
+                name, cpu / 1000.0 / runs, alloc / runs, sink);
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.codechuyennoi.ProcessVideo;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ChapterScratchTest {
+
+    @Test
+    void eachRenderGetsItsOwnDirectoryRemovedOnClose() throws IOException {
+        Path output = Files.createTempDirectory("video-out");
+        Path first;
+        try (ChapterScratch a = ChapterScratch.create(output, 7);
+             ChapterScratch b = ChapterScratch.create(output, 7)) {
+            first = a.getDir();
+            assertNotEquals(a.getDir(), b.getDir());
+            Files.writeString(a.file("slideshow_input.txt").toPath(), "a");
+            Files.writeString(b.file("slideshow_input.txt").toPath(), "b");
+            assertEquals("a", Files.readString(a.file("slideshow_input.txt").toPath()));
+        }
+        assertFalse(Files.exists(first));
+        try (Stream<Path> left = Files.list(output.resolve(".work"))) {
+            assertEquals(0, left.count());
+        }
+    }
+
+    @Test
+    void purgeStaleRemovesLeftoversFromEarlierRuns() throws IOException {
+        Path output = Files.createTempDirectory("video-out");
+        ChapterScratch abandoned = ChapterScratch.create(output, 1);
+        Files.writeString(abandoned.file("video.mp4").toPath(), "dở dang");
+
+        ChapterScratch.purgeStale(output);
+
+        assertFalse(Files.exists(abandoned.getDir()));
+    }
+}
@@ -0,0 +1,72 @@
+package org.example.codechuyennoi.ProcessVideo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FfmpegExecutorTest {
+
+    @Test
+    void limitsFilterAndEncoderThreads() {
+        List<String> command = FfmpegExecutor.buildCommand("ffmpeg",
+                List.of("-y", "-i", "in.mp4", "-c", "copy", "out.mp4"), 3);
+        assertEquals(List.of("ffmpeg", "-benchmark", "-filter_threads", "3", "-filter_complex_threads", "3", "-y", "-i", "in.mp4", "-c", "copy", "-threads", "3", "out.mp4"),
+                command);
+    }
+
+    @Test
+    void parsesCpuTimeFromBenchmarkOutput() {
+        String output = "frame=  10 fps=0.0\nbench: utime=1.250s stime=0.250s rtime=0.900s\nbench: maxrss=1234kB\n";
+        assertEquals(1500, FfmpegExecutor.parseCpuMillis(output));
+        assertEquals(-1, FfmpegExecutor.parseCpuMillis("no bench here"));
+    }
+
+    @Test
+    void higherPriorityWaiterGetsSlotsFirst() throws Exception {
+        FfmpegExecutor.CpuSlots slots = new FfmpegExecutor.CpuSlots(2);
+        assertEquals(2, slots.clamp(8));
+        slots.acquire(2, FfmpegExecutor.Priority.NORMAL);
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        Thread low = waiter(slots, FfmpegExecutor.Priority.LOW, "low", order);
+        awaitWaiting(slots, 1);
+        Thread high = waiter(slots, FfmpegExecutor.Priority.HIGH, "high", order);
+        awaitWaiting(slots, 2);
+        assertEquals(List.of(), order);
+
+        slots.release(2);
+        low.join(5000);
+        high.join(5000);
+        assertEquals(List.of("high", "low"), order);
+        assertEquals(2, slots.getAvailable());
+    }
+
+    // Chờ tới khi đủ số việc đã vào hàng chờ slot, để thứ tự vào hàng không phụ thuộc vào lịch của thread
+    private static void awaitWaiting(FfmpegExecutor.CpuSlots slots, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (slots.getWaitingCount() < count) {
+            assertTrue(System.nanoTime() < deadline, "Hết thời gian chờ việc vào hàng");
+            Thread.sleep(1);
+        }
+    }
+
+    private static Thread waiter(FfmpegExecutor.CpuSlots slots, FfmpegExecutor.Priority priority, String name,
+                                 List<String> order) {
+        Thread t = new Thread(() -> {
+            try {
+                slots.acquire(2, priority);
+                order.add(name);
+                slots.release(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        t.start();
+        return t;
+    }
+}
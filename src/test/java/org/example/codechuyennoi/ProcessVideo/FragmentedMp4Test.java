@@ -0,0 +1,132 @@
+package org.example.codechuyennoi.ProcessVideo;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FragmentedMp4Test {
+    private static final int VIDEO = 1;
+    private static final int AUDIO = 2;
+    // Vị trí trong moof do fragment() tạo: số thứ tự của mfhd và thời điểm 64 bit của tfdt
+    private static final int MOOF_SEQUENCE_AT = 20;
+    private static final int MOOF_TFDT_AT = 60;
+
+    @Test
+    void appendsFragmentsAfterExistingBytesAndContinuesTimeline() throws IOException {
+        Path dir = Files.createTempDirectory("fmp4");
+        Path compilation = dir.resolve("video_full.mp4");
+        Files.write(compilation, concat(init("avc1"),
+                fragment(1, VIDEO, 0, 2, false),        // 2 mẫu x 45000 = 1 giây ở timescale 90000
+                fragment(2, AUDIO, 0, 2, true)));        // 2 mẫu x 1024 ở timescale 24000
+        byte[] before = Files.readAllBytes(compilation);
+
+        FragmentedMp4.State state = FragmentedMp4.describe(compilation, List.of(1, 2));
+        assertEquals(before.length, state.getSize());
+        assertEquals(90000, state.getTrackEnd(VIDEO));
+        assertEquals(2048, state.getTrackEnd(AUDIO));
+
+        Path piece = dir.resolve("piece.mp4");
+        byte[] videoFragment = fragment(1, VIDEO, 0, 1, false);
+        Files.write(piece, concat(init("avc1"), videoFragment, fragment(2, AUDIO, 0, 1, true), box("mfra", new byte[8])));
+        FragmentedMp4.append(piece, compilation, state, List.of(3));
+
+        byte[] after = Files.readAllBytes(compilation);
+        assertArrayEquals(before, Arrays.copyOf(after, before.length));
+        ByteBuffer appended = ByteBuffer.wrap(after, before.length, after.length - before.length).slice();
+        // Cả hai track bắt đầu lúc 1 giây (track kết thúc muộn nhất), số thứ tự nối tiếp 3, 4
+        assertEquals(3, appended.getInt(MOOF_SEQUENCE_AT));
+        assertEquals(90000, appended.getLong(MOOF_TFDT_AT));
+        assertEquals(4, appended.getInt(videoFragment.length + MOOF_SEQUENCE_AT));
+        assertEquals(24000, appended.getLong(videoFragment.length + MOOF_TFDT_AT));
+        assertEquals(after.length, state.getSize());
+        assertEquals(135000, state.getTrackEnd(VIDEO));
+        assertEquals(25024, state.getTrackEnd(AUDIO));
+        assertEquals(List.of(1, 2, 3), state.getChapters());
+
+        Path statePath = dir.resolve("video_full.mp4.state");
+        state.save(statePath);
+        FragmentedMp4.State loaded = FragmentedMp4.State.load(statePath);
+        assertEquals(List.of(1, 2, 3), loaded.getChapters());
+        assertEquals(state.getSize(), loaded.getSize());
+        assertEquals(25024, loaded.getTrackEnd(AUDIO));
+    }
+
+    @Test
+    void rejectsPieceWithDifferentTrackConfiguration() throws IOException {
+        Path dir = Files.createTempDirectory("fmp4");
+        Path compilation = dir.resolve("video_full.mp4");
+        Files.write(compilation, concat(init("avc1"), fragment(1, VIDEO, 0, 2, false)));
+        FragmentedMp4.State state = FragmentedMp4.describe(compilation, List.of(1));
+        byte[] before = Files.readAllBytes(compilation);
+
+        Path piece = dir.resolve("piece.mp4");
+        Files.write(piece, concat(init("hev1"), fragment(1, VIDEO, 0, 1, false)));
+        assertThrows(FragmentedMp4.IncompatibleException.class,
+                () -> FragmentedMp4.append(piece, compilation, state, List.of(2)));
+        assertArrayEquals(before, Files.readAllBytes(compilation));
+    }
+
+    private static byte[] init(String codec) throws IOException {
+        return concat(
+                box("ftyp", "isom".getBytes(StandardCharsets.ISO_8859_1)),
+                box("moov",
+                        trak(VIDEO, 90000, codec),
+                        trak(AUDIO, 24000, "mp4a"),
+                        box("mvex", trex(VIDEO, 45000), trex(AUDIO, 1024))));
+    }
+
+    private static byte[] trak(int trackId, int timescale, String codec) throws IOException {
+        byte[] tkhd = ByteBuffer.allocate(20).putInt(0).putInt(0).putInt(0).putInt(trackId).array();
+        byte[] mdhd = ByteBuffer.allocate(20).putInt(0).putInt(0).putInt(0).putInt(timescale).array();
+        byte[] stsd = ByteBuffer.allocate(12).putInt(0).putInt(1).put(codec.getBytes(StandardCharsets.ISO_8859_1)).array();
+        return box("trak", box("tkhd", tkhd),
+                box("mdia", box("mdhd", mdhd), box("minf", box("stbl", box("stsd", stsd)))));
+    }
+
+    private static byte[] trex(int trackId, int defaultDuration) throws IOException {
+        return box("trex", ByteBuffer.allocate(20).putInt(0).putInt(trackId).putInt(1).putInt(defaultDuration).putInt(0).array());
+    }
+
+    /** moof (mfhd, traf: tfhd default-base-is-moof, tfdt v1, trun) + mdat với sampleCount byte dữ liệu. */
+    private static byte[] fragment(int sequence, int trackId, long decodeTime, int sampleCount,
+                                   boolean explicitDurations) throws IOException {
+        int trunFlags = 0x001 | (explicitDurations ? 0x100 : 0);
+        ByteBuffer trun = ByteBuffer.allocate(12 + (explicitDurations ? 4 * sampleCount : 0))
+                .putInt(trunFlags).putInt(sampleCount).putInt(0);
+        for (int i = 0; explicitDurations && i < sampleCount; i++) {
+            trun.putInt(1024);
+        }
+        byte[] moof = box("moof",
+                box("mfhd", ByteBuffer.allocate(8).putInt(0).putInt(sequence).array()),
+                box("traf",
+                        box("tfhd", ByteBuffer.allocate(8).putInt(0x020000).putInt(trackId).array()),
+                        box("tfdt", ByteBuffer.allocate(12).putInt(0x01000000).putLong(decodeTime).array()),
+                        box("trun", trun.array())));
+        return concat(moof, box("mdat", new byte[sampleCount]));
+    }
+
+    private static byte[] box(String type, byte[]... children) throws IOException {
+        byte[] body = concat(children);
+        return concat(ByteBuffer.allocate(8).putInt(8 + body.length)
+                .put(type.getBytes(StandardCharsets.ISO_8859_1)).array(), body);
+    }
+
+    private static byte[] concat(byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        return out.toByteArray();
+    }
+}
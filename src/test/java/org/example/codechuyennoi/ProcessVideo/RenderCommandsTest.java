@@ -0,0 +1,66 @@
+package org.example.codechuyennoi.ProcessVideo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class RenderCommandsTest {
+
+    private final RenderCommands commands = new RenderCommands(25, 2, 60);
+    private final List<SlideshowPlanner.Slide> slides = SlideshowPlanner.plan(
+            List.of("a.jpg", "a.jpg", "b.jpg"), new double[]{1, 1.5, 2});
+
+    @Test
+    void singlePassStandardKeepsVariableFrameRate() {
+        assertEquals(List.of(
+                "-y", "-f", "concat", "-safe", "0", "-i", "in.txt", "-i", "audio.mp3",
+                "-filter_complex", "[0:v]format=yuv420p[v]", "-map", "[v]", "-map", "1:a",
+                "-vsync", "vfr",
+                "-c:v", "libx264", "-preset", "fast",
+                "-c:a", "aac", "-shortest", "out.mp4"
+        ), commands.singlePass("in.txt", "audio.mp3", null, slides, RenderProfile.STANDARD, "out.mp4"));
+    }
+
+    @Test
+    void singlePassStillImageUsesLongGopAndKeyframesAtImageChanges() {
+        assertEquals(List.of(
+                "-y", "-f", "concat", "-safe", "0", "-i", "in.txt", "-i", "audio.mp3",
+                "-filter_complex", "[0:v]fps=2,format=yuv420p[v]", "-map", "[v]", "-map", "1:a",
+                "-c:v", "libx264", "-preset", "fast",
+                "-tune", "stillimage", "-g", "120", "-sc_threshold", "0",
+                "-force_key_frames", SlideshowPlanner.keyframeTimes(slides),
+                "-c:a", "aac", "-shortest", "out.mp4"
+        ), commands.singlePass("in.txt", "audio.mp3", null, slides, RenderProfile.STILL_IMAGE, "out.mp4"));
+    }
+
+    @Test
+    void singlePassWithSubtitlesBurnsEscapedAssAtSubtitleFps() {
+        List<String> command = commands.singlePass("in.txt", "audio.mp3", "C:\\tmp\\it's.ass", slides,
+                RenderProfile.STILL_IMAGE, "out.mp4");
+
+        assertEquals("[0:v]fps=25,format=yuv420p,subtitles='C\\:/tmp/it\\'s.ass'[v]",
+                command.get(command.indexOf("-filter_complex") + 1));
+        assertEquals("1500", command.get(command.indexOf("-g") + 1));
+        assertFalse(command.contains("-vsync"));
+    }
+
+    @Test
+    void twoPassEncodesSlideshowThenCopiesVideoWithAudio() {
+        assertEquals(List.of(
+                "-y", "-f", "concat", "-safe", "0", "-i", "in.txt",
+                "-vsync", "vfr", "-pix_fmt", "yuv420p", "slideshow.mp4"
+        ), commands.slideshow("in.txt", slides, RenderProfile.STANDARD, "slideshow.mp4"));
+
+        List<String> still = commands.slideshow("in.txt", slides, RenderProfile.STILL_IMAGE, "slideshow.mp4");
+        assertEquals("fps=2,format=yuv420p", still.get(still.indexOf("-vf") + 1));
+        assertEquals("stillimage", still.get(still.indexOf("-tune") + 1));
+        assertEquals("slideshow.mp4", still.get(still.size() - 1));
+
+        assertEquals(List.of(
+                "-y", "-i", "slideshow.mp4", "-i", "audio.mp3", "-c:v", "copy", "-c:a", "aac", "-shortest", "out.mp4"
+        ), commands.mux("slideshow.mp4", "audio.mp3", "out.mp4"));
+    }
+}
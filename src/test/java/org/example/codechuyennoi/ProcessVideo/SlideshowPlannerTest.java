@@ -0,0 +1,45 @@
+package org.example.codechuyennoi.ProcessVideo;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SlideshowPlannerTest {
+
+    @Test
+    void mergesConsecutiveIdenticalImages() {
+        List<SlideshowPlanner.Slide> slides = SlideshowPlanner.plan(
+                List.of("img/a.jpg", "img/./a.jpg", "img/b.jpg", "img/a.jpg", "img/a.jpg"),
+                new double[]{1, 2, 3, 4, 5});
+
+        assertEquals(3, slides.size());
+        assertEquals("img/a.jpg", slides.get(0).getImagePath());
+        assertEquals(3.0, slides.get(0).getDurationSeconds(), 1e-9);
+        assertEquals("img/b.jpg", slides.get(1).getImagePath());
+        assertEquals(3.0, slides.get(1).getDurationSeconds(), 1e-9);
+        assertEquals(9.0, slides.get(2).getDurationSeconds(), 1e-9);
+    }
+
+    @Test
+    void writesOneConcatEntryPerRun() throws IOException {
+        File concat = Files.createTempFile("slideshow", ".txt").toFile();
+        SlideshowPlanner.writeConcatFile(SlideshowPlanner.plan(List.of("a.jpg", "a.jpg", "a.jpg", "a.jpg"), 10.0), concat);
+
+        assertEquals(List.of("file 'a.jpg'", "duration 10.000000", "file 'a.jpg'"), Files.readAllLines(concat.toPath()));
+    }
+
+    @Test
+    void placesKeyframesAtImageChanges() {
+        List<SlideshowPlanner.Slide> slides = SlideshowPlanner.plan(
+                List.of("img/a.jpg", "img/a.jpg", "img/b.jpg", "img/c.jpg"),
+                new double[]{1.5, 2, 0.25, 4});
+
+        assertEquals("3.500,3.750", SlideshowPlanner.keyframeTimes(slides));
+        assertEquals("", SlideshowPlanner.keyframeTimes(slides.subList(0, 1)));
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.codechuyennoi.Workflow;
+
+import org.example.codechuyennoi.ProcessStory.Story;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChapterPrefetcherTest {
+
+    /** Nguồn trả về các chương liền nhau từ from, dừng trước chương missing. */
+    private static ChapterPrefetcher.ChapterSource site(int missing, String text, AtomicInteger fetched,
+                                                        List<int[]> calls) {
+        return (from, to) -> {
+            calls.add(new int[]{from, to});
+            List<Story> stories = new ArrayList<>();
+            for (int n = from; n <= to && n != missing; n++) {
+                fetched.incrementAndGet();
+                stories.add(new Story("truyen", n, text != null ? text : "Chương " + n));
+            }
+            return stories;
+        };
+    }
+
+    @Test
+    void deliversChaptersInOrderSkippingAndStoppingAtFirstMissing() throws Exception {
+        List<Integer> seen = new ArrayList<>();
+        try (ChapterPrefetcher prefetcher = new ChapterPrefetcher("test", 1, 10,
+                site(6, null, new AtomicInteger(), new CopyOnWriteArrayList<>()),
+                n -> n == 2, 2, 1, 4, 1 << 20)) {
+            Story story;
+            while ((story = prefetcher.next()) != null) {
+                seen.add(story.getChapterNumber());
+            }
+            assertNull(prefetcher.next());
+        }
+        assertEquals(List.of(1, 3, 4, 5), seen);
+    }
+
+    @Test
+    void neverFetchesBeyondWindowOrByteBudget() throws Exception {
+        AtomicInteger fetched = new AtomicInteger();
+        String text = "x".repeat(100);
+        // 200 byte mỗi chương, giới hạn 450 byte: tối đa 3 chương nằm chờ dù cửa sổ là 8
+        try (ChapterPrefetcher prefetcher = new ChapterPrefetcher("test", 1, 50,
+                site(-1, text, fetched, new CopyOnWriteArrayList<>()),
+                n -> false, 8, 8, 8, 450)) {
+            Thread.sleep(200);
+            assertEquals(3, fetched.get());
+            assertEquals(1, prefetcher.next().getChapterNumber());
+            Thread.sleep(200);
+            assertEquals(4, fetched.get());
+        }
+    }
+
+    @Test
+    void fetchesFreeWindowInOneCallOnceChapterSizeIsKnown() throws Exception {
+        List<int[]> calls = new CopyOnWriteArrayList<>();
+        try (ChapterPrefetcher prefetcher = new ChapterPrefetcher("test", 1, 50,
+                site(-1, "x".repeat(10), new AtomicInteger(), calls),
+                n -> n == 3, 6, 6, 6, 1 << 20)) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (calls.size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            // Lượt đầu một chương để biết dung lượng, lượt sau lấy 5 chương còn trống (chương 3 bỏ qua nằm trong dải)
+            assertArrayEquals(new int[]{1, 1}, calls.get(0));
+            assertArrayEquals(new int[]{2, 7}, calls.get(1));
+            assertEquals(1, prefetcher.next().getChapterNumber());
+            assertEquals(2, prefetcher.next().getChapterNumber());
+            assertEquals(4, prefetcher.next().getChapterNumber());
+        }
+    }
+
+    @Test
+    void growsWindowWhenConsumerWaits() throws Exception {
+        try (ChapterPrefetcher prefetcher = new ChapterPrefetcher("test", 1, 20,
+                (from, to) -> {
+                    try {
+                        Thread.sleep(30);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    List<Story> stories = new ArrayList<>();
+                    for (int n = from; n <= to; n++) {
+                        stories.add(new Story("truyen", n, "Chương " + n));
+                    }
+                    return stories;
+                },
+                n -> false, 1, 1, 16, 1 << 20)) {
+            for (int i = 0; i < 5; i++) {
+                prefetcher.next();
+                Thread.sleep(5);
+            }
+            assertTrue(prefetcher.getStallCount() > 0);
+            assertTrue(prefetcher.getWindow() > 1, "window=" + prefetcher.getWindow());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.example.codechuyennoi.Workflow;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelineStageTest {
+
+    @Test
+    void runsAtMostThreadCountTasksAndWaitsForAll() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        try (PipelineStage stage = new PipelineStage("test", 3, 1)) {
+            for (int i = 0; i < 12; i++) {
+                stage.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    sleep(20);
+                    running.decrementAndGet();
+                    done.incrementAndGet();
+                });
+            }
+            stage.awaitAll();
+            assertEquals(12, done.get());
+            assertEquals(12, stage.getCompletedCount());
+            assertTrue(stage.getUtilization() > 0.5, stage.summary());
+        }
+        assertTrue(maxRunning.get() <= 3, "max " + maxRunning.get());
+        assertTrue(maxRunning.get() > 1, "max " + maxRunning.get());
+    }
+
+    @Test
+    void submitBlocksWhenStageAndQueueAreFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (PipelineStage stage = new PipelineStage("test", 1, 1)) {
+            stage.submit(() -> await(release));
+            stage.submit(() -> await(release));
+            CompletableFuture<Void> third = CompletableFuture.runAsync(() -> {
+                try {
+                    stage.submit(() -> { });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            sleep(100);
+            assertFalse(third.isDone());
+            release.countDown();
+            third.get(5, TimeUnit.SECONDS);
+            stage.awaitAll();
+            assertEquals(3, stage.getCompletedCount());
+            assertTrue(stage.getBlockedMillis() >= 50, stage.summary());
+        }
+    }
+
+    @Test
+    void supplyReturnsResultAndReportsFailure() throws Exception {
+        try (PipelineStage stage = new PipelineStage("test", 2, 0)) {
+            assertEquals("42", stage.supply(() -> "42").get(5, TimeUnit.SECONDS));
+            CompletableFuture<Object> failed = stage.supply(() -> {
+                throw new IllegalStateException("lỗi");
+            });
+            stage.awaitAll();
+            assertTrue(failed.isCompletedExceptionally());
+        }
+    }
+
+    @Test
+    void errorInTaskStillCompletesFuture() throws Exception {
+        try (PipelineStage stage = new PipelineStage("test", 1, 0)) {
+            CompletableFuture<Object> failed = stage.supply(() -> {
+                throw new AssertionError("lỗi nghiêm trọng");
+            });
+            stage.awaitAll();
+            assertTrue(failed.isCompletedExceptionally());
+            assertEquals(1, stage.getCompletedCount());
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}